@@ -5,12 +5,15 @@ import com.ourshop.streaming.streams.api.dto.StreamMetaPageResponse;
 import com.ourshop.streaming.streams.api.dto.StreamMetaResponse;
 import com.ourshop.streaming.streams.application.StreamMetaService;
 import com.ourshop.streaming.streams.domain.StreamMeta;
+import com.ourshop.streaming.streams.domain.StreamMetaCursor;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
 import java.util.UUID;
 
 @RestController
@@ -28,24 +31,87 @@ public class StreamMetaController {
         return StreamMetaResponse.from(meta, null);
     }
 
+    /**
+     * Without {@code cursor}: page/size offset paging with an exact total, as before.
+     * With {@code cursor} (empty for the first page): keyset paging from the previous page's
+     * {@code nextCursor}, which stays cheap however deep the client scrolls; no total unless asked for.
+     *
+     * {@code search}: streams whose title or description (or the given {@code fields}) contain it. A query
+     * made only of words of 3+ characters goes through the full-text index and matches each word as a word
+     * prefix ("cook" finds "cooking" but not "precooked"); any other query is a case-insensitive substring match.
+     *
+     * {@code count}: exact (COUNT(*)), estimate (table statistics; unfiltered listings only) or none.
+     * {@code sort}: recent (default) or relevance, which ranks full-text matches first (offset paging only).
+     */
     @GetMapping
     public Mono<StreamMetaPageResponse> list(
             @RequestParam(value = "page", defaultValue = "0") int page,
             @RequestParam(value = "size", defaultValue = "20") int size,
             @RequestParam(value = "search", required = false) String search,
-            @RequestParam(value = "fields", required = false) List<String> fields
+            @RequestParam(value = "fields", required = false) List<String> fields,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "count", required = false) String count,
+            @RequestParam(value = "sort", defaultValue = "recent") String sort
     ) {
+        int safeSize = Math.min(200, Math.max(1, size));
+        String countMode = count != null ? count.trim().toLowerCase(Locale.ROOT) : (cursor == null ? "exact" : "none");
+
+        boolean byRelevance = switch (sort.trim().toLowerCase(Locale.ROOT)) {
+            case "recent" -> false;
+            case "relevance" -> true;
+            default -> throw new IllegalArgumentException("sort must be recent or relevance");
+        };
+
+        if (cursor == null) {
+            return Mono.zip(
+                    service.searchPage(search, fields, page, safeSize, byRelevance),
+                    total(countMode, search, fields)
+            ).map(tuple -> {
+                List<StreamMeta> items = tuple.getT1();
+                Long total = tuple.getT2().orElse(null);
+                Integer totalPages = total != null ? (int) Math.ceil(total / (double) safeSize) : null;
+                // Keyset cursors follow recency order only.
+                String nextCursor = items.size() == safeSize && !byRelevance
+                        ? StreamMetaCursor.after(items.get(items.size() - 1)).encode()
+                        : null;
+                return new StreamMetaPageResponse(items.stream().map(this::toResponse).toList(),
+                        Math.max(0, page), safeSize, total, totalPages, nextCursor);
+            });
+        }
+
+        if (byRelevance) {
+            // The cursor encodes a (created_at, id) position, which says nothing about a relevance ranking.
+            throw new IllegalArgumentException("sort=relevance is not supported with cursor paging");
+        }
+        StreamMetaCursor after = cursor.isBlank() ? null : StreamMetaCursor.decode(cursor);
         return Mono.zip(
-             service.searchPage(search, fields, page, size),
-                service.countAll(search, fields)
-        ).
-                map(tuple -> {
-                    var pageItems = tuple.getT1().stream().map(this::toResponse).toList();
-                    long total = tuple.getT2();
-                    int safeSize = Math.min(200, Math.max(1, size));
-                    int totalPages = (int) Math.ceil(total / (double) safeSize);
-                    return new StreamMetaPageResponse(pageItems, Math.max(0, page), safeSize, total, totalPages);
-                });
+                // One extra row tells us whether there is a next page.
+                service.searchAfter(search, fields, after, safeSize + 1),
+                total(countMode, search, fields)
+        ).map(tuple -> {
+            List<StreamMeta> items = tuple.getT1();
+            String nextCursor = null;
+            if (items.size() > safeSize) {
+                items = items.subList(0, safeSize);
+                nextCursor = StreamMetaCursor.after(items.get(safeSize - 1)).encode();
+            }
+            Long total = tuple.getT2().orElse(null);
+            Integer totalPages = total != null ? (int) Math.ceil(total / (double) safeSize) : null;
+            return new StreamMetaPageResponse(items.stream().map(this::toResponse).toList(),
+                    null, safeSize, total, totalPages, nextCursor);
+        });
+    }
+
+    private Mono<Optional<Long>> total(String countMode, String search, List<String> fields) {
+        return switch (countMode) {
+            case "exact" -> service.countAll(search, fields).map(Optional::of);
+            // Statistics know nothing about the filter, so a filtered listing gets no total rather than a wrong one.
+            case "estimate" -> search == null || search.isBlank()
+                    ? service.estimateCount().map(Optional::of)
+                    : Mono.just(Optional.empty());
+            case "none" -> Mono.just(Optional.empty());
+            default -> Mono.error(new IllegalArgumentException("count must be exact, estimate or none"));
+        };
     }
 
     @GetMapping("/{id}")
@@ -4,9 +4,13 @@ import java.util.List;
 
 public record StreamMetaPageResponse(
         List<StreamMetaResponse> items,
-        int page,
+        // null in cursor mode
+        Integer page,
         int size,
-        long totalElements,
-        int totalPages
+        // null when not counted (count=none); approximate with count=estimate
+        Long totalElements,
+        Integer totalPages,
+        // opaque; pass as ?cursor= for the next page, null on the last page
+        String nextCursor
 ) {
 }
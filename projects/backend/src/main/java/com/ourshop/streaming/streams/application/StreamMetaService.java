@@ -2,6 +2,7 @@ package com.ourshop.streaming.streams.application;
 
 import com.ourshop.streaming.streams.api.dto.CreateStreamMetaRequest;
 import com.ourshop.streaming.streams.domain.StreamMeta;
+import com.ourshop.streaming.streams.domain.StreamMetaCursor;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
@@ -18,7 +19,28 @@ public interface StreamMetaService {
 
     Mono<StreamMeta> end(UUID id);
 
-    Mono<List<StreamMeta>> searchPage(String search, List<String> fields, int page, int size);
+    /**
+     * Makes a CREATED stream LIVE in a single conditional update.
+     *
+     * @return false if the stream was not CREATED (or does not exist); nothing changed then
+     */
+    Mono<Boolean> startIfCreated(UUID id);
+
+    /**
+     * Makes a LIVE stream ENDED in a single conditional update.
+     *
+     * @return false if the stream was not LIVE (or does not exist); nothing changed then
+     */
+    Mono<Boolean> endIfLive(UUID id);
+
+    Mono<List<StreamMeta>> searchPage(String search, List<String> fields, int page, int size, boolean byRelevance);
 
     Mono<Long> countAll(String search, List<String> fields);
+
+    /**
+     * Keyset page: up to {@code size} streams after {@code after} (newest first when null).
+     */
+    Mono<List<StreamMeta>> searchAfter(String search, List<String> fields, StreamMetaCursor after, int size);
+
+    Mono<Long> estimateCount();
 }
@@ -2,6 +2,7 @@ package com.ourshop.streaming.streams.application;
 
 import com.ourshop.streaming.streams.api.dto.CreateStreamMetaRequest;
 import com.ourshop.streaming.streams.domain.StreamMeta;
+import com.ourshop.streaming.streams.domain.StreamMetaCursor;
 import com.ourshop.streaming.streams.domain.StreamStatus;
 import com.ourshop.streaming.streams.domain.exceptions.InvalidStreamStateException;
 import com.ourshop.streaming.streams.domain.exceptions.StreamNotFoundException;
@@ -57,56 +58,54 @@ public class StreamMetaServiceImpl implements StreamMetaService {
 
     @Override
     public Mono<StreamMeta> start(UUID id) {
-        return get(id)
-                .flatMap(current -> {
-                    if(current.status() != StreamStatus.CREATED) {
-                        return Mono.error(new InvalidStreamStateException(
-                                current.streamKey(), current.status(), StreamStatus.CREATED
-                        ));
-                    }
-                   StreamMeta updated = new StreamMeta(
-                           current.id(),
-                           current.streamKey(),
-                           current.title(),
-                           current.description(),
-                           StreamStatus.LIVE,
-                           current.createdAt(),
-                           Instant.now(),
-                           null
-                   );
-                    return repository.save(updated);
-                });
+        return transitionOrConflict(id, StreamStatus.CREATED, StreamStatus.LIVE);
     }
 
     @Override
     public Mono<StreamMeta> end(UUID id) {
-        return get(id)
-                .flatMap(current -> {
-                    if (current.status() != StreamStatus.LIVE) {
-                        return Mono.error(new InvalidStreamStateException(
-                                current.streamKey(), current.status(), StreamStatus.LIVE));
-                    }
-                    StreamMeta updated = new StreamMeta(
-                            current.id(),
-                            current.streamKey(),
-                            current.title(),
-                            current.description(),
-                            StreamStatus.ENDED,
-                            current.createdAt(),
-                            current.startedAt(),
-                            Instant.now()
-                    );
-                    return repository.save(updated);
-                });
+        return transitionOrConflict(id, StreamStatus.LIVE, StreamStatus.ENDED);
     }
 
     @Override
-    public Mono<List<StreamMeta>> searchPage(String search, List<String> fields, int page, int size) {
-        return repository.searchPage(search, fields, page, size).collectList();
+    public Mono<Boolean> startIfCreated(UUID id) {
+        return repository.transition(id, StreamStatus.CREATED, StreamStatus.LIVE, Instant.now());
+    }
+
+    @Override
+    public Mono<Boolean> endIfLive(UUID id) {
+        return repository.transition(id, StreamStatus.LIVE, StreamStatus.ENDED, Instant.now());
+    }
+
+    /**
+     * The status check is part of the UPDATE, so two concurrent calls cannot both succeed. Only when it did
+     * not apply is the row read, to tell a missing stream from one in the wrong state.
+     */
+    private Mono<StreamMeta> transitionOrConflict(UUID id, StreamStatus from, StreamStatus to) {
+        return repository.transition(id, from, to, Instant.now())
+                .flatMap(applied -> applied
+                        ? get(id)
+                        : get(id).flatMap(current -> Mono.error(
+                                new InvalidStreamStateException(current.streamKey(), current.status(), from))));
+    }
+
+    @Override
+    public Mono<List<StreamMeta>> searchPage(String search, List<String> fields, int page, int size,
+            boolean byRelevance) {
+        return repository.searchPage(search, fields, page, size, byRelevance).collectList();
     }
 
     @Override
     public Mono<Long> countAll(String search, List<String> fields) {
         return repository.countSearch(search, fields);
     }
+
+    @Override
+    public Mono<List<StreamMeta>> searchAfter(String search, List<String> fields, StreamMetaCursor after, int size) {
+        return repository.searchAfter(search, fields, after, size).collectList();
+    }
+
+    @Override
+    public Mono<Long> estimateCount() {
+        return repository.estimateCount();
+    }
 }
@@ -0,0 +1,35 @@
+package com.ourshop.streaming.streams.domain;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in the stream listing, which is ordered by {@code (created_at, id)} descending: the next
+ * page starts right after this row. Clients get it as an opaque string.
+ */
+public record StreamMetaCursor(Instant createdAt, UUID id) {
+
+    public static StreamMetaCursor after(StreamMeta meta) {
+        return new StreamMetaCursor(meta.createdAt(), meta.id());
+    }
+
+    public String encode() {
+        String raw = createdAt.toString() + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code cursor} was not produced by {@link #encode()}
+     */
+    public static StreamMetaCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf('|');
+            return new StreamMetaCursor(Instant.parse(raw.substring(0, sep)), UUID.fromString(raw.substring(sep + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.ourshop.streaming.streams.domain.exceptions;
 
+import com.ourshop.streaming.webrtc.errors.JanusUnavailableException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -20,6 +22,13 @@ public class GlobalExceptionHandler {
                 .body(ApiErrorResponse.of("INVALID_STREAM_STATE", ex.getMessage()));
     }
 
+    @ExceptionHandler(JanusUnavailableException.class)
+    public ResponseEntity<ApiErrorResponse> handleJanusUnavailable(JanusUnavailableException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(ApiErrorResponse.of("JANUS_UNAVAILABLE", ex.getMessage()));
+    }
+
     @ExceptionHandler(IllegalStateException.class)
     public ResponseEntity<ApiErrorResponse> handleIllegalState(IllegalStateException ex) {
         return ResponseEntity.status(HttpStatus.CONFLICT)
@@ -0,0 +1,215 @@
+package com.ourshop.streaming.streams.infrastructure.persistence;
+
+import com.ourshop.streaming.streams.domain.StreamMeta;
+import com.ourshop.streaming.streams.domain.StreamMetaCursor;
+import com.ourshop.streaming.streams.domain.StreamStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache in front of {@link R2dbcStreamMetaRepository} for single-stream lookups.
+ *
+ * One signaling request looks the same stream up several times ({@code get}, then {@code start} and
+ * {@code get} again), so {@code findById}/{@code findByStreamKey} are served from memory for a short TTL.
+ * Concurrent misses for the same key share one query, unless a write landed since it started. Writes
+ * ({@link #save}, {@link #transition}) drop the stream's entry, and a load that raced with a write is not
+ * stored, so this instance never serves a value older than its last write. Other instances may see a
+ * change up to one TTL late.
+ *
+ * Lookups that found nothing are not cached. Listings and counts go straight to the database.
+ */
+@Primary
+@Repository
+public class CachingStreamMetaRepository implements StreamMetaRepository {
+
+    private final R2dbcStreamMetaRepository delegate;
+    private final long ttlNanos;
+    private final int maxEntries;
+
+    private final ConcurrentHashMap<UUID, Entry> entries = new ConcurrentHashMap<>();
+    /** Stream key to id of the cached streams, so a write only needs the id to drop both lookups. */
+    private final ConcurrentHashMap<String, UUID> idsByStreamKey = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Load> inflight = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<UUID> insertionOrder = new ConcurrentLinkedQueue<>();
+    /** Size of {@link #insertionOrder}, which is O(n) to ask the queue itself. */
+    private final AtomicInteger queued = new AtomicInteger();
+    /**
+     * Bumped by every write; a load only stores its result if no write happened while it ran, and is only
+     * shared with misses that arrive before the next one.
+     */
+    private final AtomicLong writes = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public CachingStreamMetaRepository(
+            R2dbcStreamMetaRepository delegate,
+            MeterRegistry meterRegistry,
+            @Value("${streams.cache.ttl-ms:10000}") long ttlMs,
+            @Value("${streams.cache.max-entries:10000}") int maxEntries) {
+        this.delegate = delegate;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ttlMs));
+        this.maxEntries = Math.max(1, maxEntries);
+
+        this.hits = Counter.builder("streams.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("streams.cache.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("streams.cache.entries", entries, ConcurrentHashMap::size).register(meterRegistry);
+    }
+
+    @Override
+    public Mono<StreamMeta> findById(UUID id) {
+        return cached(id, "id:" + id, () -> delegate.findById(id));
+    }
+
+    @Override
+    public Mono<StreamMeta> findByStreamKey(String streamKey) {
+        return Mono.defer(() -> cached(idsByStreamKey.get(streamKey), "key:" + streamKey,
+                () -> delegate.findByStreamKey(streamKey)));
+    }
+
+    @Override
+    public Mono<StreamMeta> save(StreamMeta meta) {
+        return delegate.save(meta)
+                // Before and after the write: a lookup that read the old row in between must not survive it.
+                .doFirst(() -> invalidate(meta.id()))
+                .doOnSuccess(saved -> invalidate(meta.id()));
+    }
+
+    @Override
+    public Mono<Boolean> transition(UUID id, StreamStatus from, StreamStatus to, Instant at) {
+        return delegate.transition(id, from, to, at)
+                .doFirst(() -> invalidate(id))
+                .doOnSuccess(applied -> invalidate(id));
+    }
+
+    @Override
+    public Flux<StreamMeta> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public Flux<StreamMeta> searchPage(String search, List<String> fields, int page, int size, boolean byRelevance) {
+        return delegate.searchPage(search, fields, page, size, byRelevance);
+    }
+
+    @Override
+    public Mono<Long> countSearch(String search, List<String> fields) {
+        return delegate.countSearch(search, fields);
+    }
+
+    @Override
+    public Flux<StreamMeta> searchAfter(String search, List<String> fields, StreamMetaCursor after, int limit) {
+        return delegate.searchAfter(search, fields, after, limit);
+    }
+
+    @Override
+    public Mono<Long> estimateCount() {
+        return delegate.estimateCount();
+    }
+
+    /**
+     * @param id       id of the stream if known, to look it up in the cache
+     * @param loadKey  key under which concurrent loads are shared
+     */
+    private Mono<StreamMeta> cached(UUID id, String loadKey, Supplier<Mono<StreamMeta>> loader) {
+        return Mono.defer(() -> {
+            Entry cached = id != null ? entries.get(id) : null;
+            if (cached != null && !cached.isExpired()) {
+                hits.increment();
+                return Mono.just(cached.meta());
+            }
+            misses.increment();
+            // A load that started before the latest write may have read the old row: don't join it.
+            return inflight.compute(loadKey, (k, running) ->
+                    running != null && running.writesAtStart() == writes.get() ? running : load(k, loader))
+                    .result();
+        });
+    }
+
+    private Load load(String loadKey, Supplier<Mono<StreamMeta>> loader) {
+        long writesAtStart = writes.get();
+        AtomicReference<Load> self = new AtomicReference<>();
+        Mono<StreamMeta> result = loader.get()
+                .doOnNext(meta -> {
+                    if (writes.get() == writesAtStart) {
+                        put(meta);
+                    }
+                })
+                // Only this load's slot: a newer load may have taken the key over meanwhile.
+                .doFinally(signal -> inflight.remove(loadKey, self.get()))
+                .cache();
+        self.set(new Load(writesAtStart, result));
+        return self.get();
+    }
+
+    private void put(StreamMeta meta) {
+        if (entries.put(meta.id(), new Entry(meta, System.nanoTime() + ttlNanos)) == null) {
+            insertionOrder.add(meta.id());
+            queued.incrementAndGet();
+        }
+        idsByStreamKey.put(meta.streamKey(), meta.id());
+        evictOverCapacity();
+    }
+
+    private void invalidate(UUID id) {
+        writes.incrementAndGet();
+        Entry previous = entries.remove(id);
+        if (previous != null) {
+            idsByStreamKey.remove(previous.meta().streamKey(), id);
+        }
+    }
+
+    private void remove(UUID id) {
+        Entry removed = entries.remove(id);
+        if (removed != null) {
+            idsByStreamKey.remove(removed.meta().streamKey(), id);
+        }
+    }
+
+    /**
+     * Oldest insertions go first; keys in the queue that were invalidated meanwhile are just skipped.
+     */
+    private void evictOverCapacity() {
+        while (entries.size() > maxEntries) {
+            UUID oldest = insertionOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            queued.decrementAndGet();
+            remove(oldest);
+        }
+        // Invalidated keys leave stale queue slots behind; keep the queue from outgrowing the map.
+        if (queued.get() > 2 * maxEntries) {
+            insertionOrder.removeIf(id -> !entries.containsKey(id));
+            queued.set(insertionOrder.size());
+        }
+    }
+
+    /** A lookup in flight, shared by misses that arrive before the next write. */
+    private record Load(long writesAtStart, Mono<StreamMeta> result) {
+    }
+
+    private record Entry(StreamMeta meta, long expiresAt) {
+
+        boolean isExpired() {
+            return System.nanoTime() - expiresAt > 0;
+        }
+    }
+}
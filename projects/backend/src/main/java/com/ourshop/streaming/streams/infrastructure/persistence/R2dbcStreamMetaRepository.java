@@ -1,6 +1,7 @@
 package com.ourshop.streaming.streams.infrastructure.persistence;
 
 import com.ourshop.streaming.streams.domain.StreamMeta;
+import com.ourshop.streaming.streams.domain.StreamMetaCursor;
 import com.ourshop.streaming.streams.domain.StreamStatus;
 import lombok.RequiredArgsConstructor;
 import org.springframework.r2dbc.core.DatabaseClient;
@@ -20,6 +21,13 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class R2dbcStreamMetaRepository implements StreamMetaRepository {
 
+    /** InnoDB's default {@code innodb_ft_min_token_size}. */
+    private static final int FULLTEXT_MIN_TOKEN = 3;
+
+    /** InnoDB's default stopword list, minus the words already below {@link #FULLTEXT_MIN_TOKEN}. */
+    private static final Set<String> FULLTEXT_STOPWORDS = Set.of("about", "are", "com", "for", "from", "how",
+            "that", "the", "this", "was", "what", "when", "where", "who", "will", "with", "und", "www");
+
     private final DatabaseClient db;
 
     @Override
@@ -85,6 +93,27 @@ public class R2dbcStreamMetaRepository implements StreamMetaRepository {
                 .one();
     }
 
+    @Override
+    public Mono<Boolean> transition(UUID id, StreamStatus from, StreamStatus to, Instant at) {
+        String stamp = switch (to) {
+            case LIVE -> ", started_at = ?, ended_at = NULL";
+            case ENDED -> ", ended_at = ?";
+            case CREATED -> "";
+        };
+        String sql = "UPDATE stream_meta SET status = ?" + stamp + " WHERE id = ? AND status = ?";
+
+        DatabaseClient.GenericExecuteSpec spec = db.sql(sql).bind(0, to.name());
+        int idx = 1;
+        if (!stamp.isEmpty()) {
+            spec = spec.bind(idx++, at);
+        }
+        spec = spec
+                .bind(idx++, id.toString())
+                .bind(idx, from.name());
+
+        return spec.fetch().rowsUpdated().map(rows -> rows > 0);
+    }
+
     @Override
     public Mono<StreamMeta> findByStreamKey(String streamKey) {
         String sql = """
@@ -128,17 +157,24 @@ public class R2dbcStreamMetaRepository implements StreamMetaRepository {
     }
 
     @Override
-    public Flux<StreamMeta> searchPage(String search, List<String> fields, int page, int size) {
+    public Flux<StreamMeta> searchPage(String search, List<String> fields, int page, int size, boolean byRelevance) {
         int safePage = Math.max(0, page);
         int safeSize = Math.min(200, Math.max(1, size));
         long offset = (long) safePage * (long) safeSize;
 
         SearchSql built = buildSearchSql(search, fields, false);
-        String sql = built.sql + " ORDER BY created_at DESC LIMIT ? OFFSET ?";
+        List<Object> args = new ArrayList<>(built.args);
+        String orderBy = " ORDER BY created_at DESC, id DESC";
+        if (byRelevance && built.match != null) {
+            // Same MATCH expression as the WHERE clause, so MySQL scores each row once.
+            orderBy = " ORDER BY " + built.match + " DESC, created_at DESC, id DESC";
+            args.add(built.matchArg);
+        }
+        String sql = built.sql + orderBy + " LIMIT ? OFFSET ?";
 
         DatabaseClient.GenericExecuteSpec spec = db.sql(sql);
         int idx = 0;
-        for (Object arg : built.args) {
+        for (Object arg : args) {
             spec = spec.bind(idx++, arg);
         }
         spec = spec.bind(idx++, safeSize);
@@ -172,7 +208,64 @@ public class R2dbcStreamMetaRepository implements StreamMetaRepository {
                 .defaultIfEmpty(0L);
     }
 
-    private record SearchSql(String sql, List<Object> args) {
+    @Override
+    public Flux<StreamMeta> searchAfter(String search, List<String> fields, StreamMetaCursor after, int limit) {
+        int safeLimit = Math.min(201, Math.max(1, limit));
+
+        SearchSql built = buildSearchSql(search, fields, false);
+        StringBuilder sql = new StringBuilder(built.sql);
+        List<Object> args = new ArrayList<>(built.args);
+        if (after != null) {
+            // The leading created_at bound is what lets MySQL range-scan idx_stream_meta_created_at_id.
+            sql.append(built.sql.contains(" WHERE ") ? " AND " : " WHERE ")
+                    .append("created_at <= ? AND (created_at < ? OR id < ?)");
+            args.add(after.createdAt());
+            args.add(after.createdAt());
+            args.add(after.id().toString());
+        }
+        sql.append(" ORDER BY created_at DESC, id DESC LIMIT ?");
+        args.add(safeLimit);
+
+        DatabaseClient.GenericExecuteSpec spec = db.sql(sql.toString());
+        int idx = 0;
+        for (Object arg : args) {
+            spec = spec.bind(idx++, arg);
+        }
+
+        return spec
+                .map((row, meta) -> mapRow(row.get("id", String.class),
+                        row.get("stream_key", String.class),
+                        row.get("title", String.class),
+                        row.get("description", String.class),
+                        row.get("status", String.class),
+                        row.get("created_at", Instant.class),
+                        row.get("started_at", Instant.class),
+                        row.get("ended_at", Instant.class)))
+                .all();
+    }
+
+    @Override
+    public Mono<Long> estimateCount() {
+        String sql = """
+                SELECT TABLE_ROWS
+                FROM information_schema.TABLES
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'stream_meta'
+                """;
+
+        return db.sql(sql)
+                .map((row, meta) -> row.get(0, Long.class))
+                .one()
+                .defaultIfEmpty(0L);
+    }
+
+    /**
+     * @param match full-text MATCH expression used in the WHERE clause (one placeholder), or null for LIKE search
+     */
+    private record SearchSql(String sql, List<Object> args, String match, String matchArg) {
+
+        SearchSql(String sql, List<Object> args) {
+            this(sql, args, null, null);
+        }
     }
 
     private SearchSql buildSearchSql(String search, List<String> fields, boolean countOnly) {
@@ -184,15 +277,33 @@ public class R2dbcStreamMetaRepository implements StreamMetaRepository {
             return new SearchSql(base, List.of());
         }
 
-        String needle = "%" + search.toLowerCase(Locale.ROOT) + "%";
-
         Set<String> normalizedFields = (fields == null ? List.<String>of() : fields).stream()
                 .filter(f -> f != null && !f.isBlank())
                 .map(f -> f.trim().toLowerCase(Locale.ROOT))
                 .collect(Collectors.toSet());
 
         boolean defaultFields = normalizedFields.isEmpty();
+        boolean searchTitle = defaultFields || normalizedFields.contains("title");
+        boolean searchDescription = defaultFields || normalizedFields.contains("description");
+        boolean searchKey = !defaultFields && (normalizedFields.contains("streamkey")
+                || normalizedFields.contains("stream_key") || normalizedFields.contains("key"));
+
+        String query = toBooleanQuery(search);
+        if (query != null && (searchTitle || searchDescription)) {
+            // Column lists must match one of the FULLTEXT indexes exactly.
+            String columns = searchTitle && searchDescription ? "title, description" : searchTitle ? "title" : "description";
+            String match = "MATCH(" + columns + ") AGAINST (? IN BOOLEAN MODE)";
+            List<Object> args = new ArrayList<>();
+            args.add(query);
+            String where = match;
+            if (searchKey) {
+                where = "(" + match + " OR LOWER(stream_key) LIKE ?)";
+                args.add("%" + search.toLowerCase(Locale.ROOT) + "%");
+            }
+            return new SearchSql(base + " WHERE " + where, args, match, query);
+        }
 
+        String needle = "%" + search.toLowerCase(Locale.ROOT) + "%";
         List<String> clauses = new ArrayList<>();
         List<Object> args = new ArrayList<>();
 
@@ -218,6 +329,34 @@ public class R2dbcStreamMetaRepository implements StreamMetaRepository {
         return new SearchSql(base + where, args);
     }
 
+    /**
+     * Turns free text into a boolean-mode query where every word must match, as a word prefix:
+     * {@code "live cook"} becomes {@code "+live* +cook*"}. Operator characters are dropped with the rest of
+     * the punctuation.
+     *
+     * Words shorter than the index' minimum token size and stopwords are never indexed, so the index cannot
+     * answer a query containing them; rather than silently ignoring those words, such queries keep the
+     * substring (LIKE) search.
+     *
+     * @return null when the query is not fully answerable by the index, in which case callers fall back to LIKE
+     */
+    static String toBooleanQuery(String search) {
+        StringBuilder query = new StringBuilder();
+        for (String word : search.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}_]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (word.length() < FULLTEXT_MIN_TOKEN || FULLTEXT_STOPWORDS.contains(word)) {
+                return null;
+            }
+            if (!query.isEmpty()) {
+                query.append(' ');
+            }
+            query.append('+').append(word).append('*');
+        }
+        return query.isEmpty() ? null : query.toString();
+    }
+
     private static StreamMeta mapRow(
             String id,
             String streamKey,
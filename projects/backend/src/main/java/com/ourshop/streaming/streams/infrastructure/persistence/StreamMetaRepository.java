@@ -1,9 +1,12 @@
 package com.ourshop.streaming.streams.infrastructure.persistence;
 
 import com.ourshop.streaming.streams.domain.StreamMeta;
+import com.ourshop.streaming.streams.domain.StreamMetaCursor;
+import com.ourshop.streaming.streams.domain.StreamStatus;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 
@@ -13,11 +16,34 @@ public interface StreamMetaRepository {
 
     Mono<StreamMeta> findById(UUID id);
 
+    /**
+     * Moves the stream from {@code from} to {@code to} in one conditional UPDATE, stamping
+     * {@code started_at} (LIVE) or {@code ended_at} (ENDED) with {@code at}.
+     *
+     * @return true if the stream was in {@code from} and now is in {@code to}; false if it was in another
+     *         state or does not exist
+     */
+    Mono<Boolean> transition(UUID id, StreamStatus from, StreamStatus to, Instant at);
+
     Mono<StreamMeta> findByStreamKey(String streamKey);
 
     Flux<StreamMeta> findAll();
 
-    Flux<StreamMeta> searchPage(String search, List<String> fields, int page, int size);
+    /**
+     * @param byRelevance order by full-text relevance first (newest first among equals); ignored without a search
+     */
+    Flux<StreamMeta> searchPage(String search, List<String> fields, int page, int size, boolean byRelevance);
 
     Mono<Long> countSearch(String search, List<String> fields);
+
+    /**
+     * Up to {@code limit} streams matching the search that come after {@code after} in
+     * {@code (created_at, id)} descending order; from the newest when {@code after} is null.
+     */
+    Flux<StreamMeta> searchAfter(String search, List<String> fields, StreamMetaCursor after, int limit);
+
+    /**
+     * Row count from table statistics: cheap, but only approximate.
+     */
+    Mono<Long> estimateCount();
 }
@@ -4,6 +4,7 @@ import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
 
 @Configuration
 public class StreamMetaSchemaInitializer {
@@ -21,7 +22,11 @@ public class StreamMetaSchemaInitializer {
                                 started_at TIMESTAMP(6) NULL,
                                 ended_at TIMESTAMP(6) NULL,
                                 PRIMARY KEY (id),
-                                UNIQUE KEY uk_stream_meta_stream_key (stream_key)
+                                UNIQUE KEY uk_stream_meta_stream_key (stream_key),
+                                KEY idx_stream_meta_created_at_id (created_at, id),
+                                FULLTEXT KEY ft_stream_meta_title_description (title, description),
+                                FULLTEXT KEY ft_stream_meta_title (title),
+                                FULLTEXT KEY ft_stream_meta_description (description)
             )
             """).fetch()
                 .rowsUpdated()
@@ -38,6 +43,7 @@ public class StreamMetaSchemaInitializer {
                             janus_handle_id BIGINT NULL,
                             janus_room_id BIGINT NULL,
                             janus_publisher_id BIGINT NULL,
+                            janus_node VARCHAR(64) NULL,
                             last_error VARCHAR(512) NULL,
                             PRIMARY KEY (id),
                             KEY idx_stream_session_stream_id (stream_id),
@@ -47,6 +53,29 @@ public class StreamMetaSchemaInitializer {
                         .fetch()
                         .rowsUpdated()
                         .then())
+                // Tables created before Janus clustering lack janus_node; MySQL has no ADD COLUMN IF NOT EXISTS.
+                .then(db.sql("ALTER TABLE stream_session ADD COLUMN janus_node VARCHAR(64) NULL AFTER janus_publisher_id")
+                        .fetch()
+                        .rowsUpdated()
+                        .then()
+                        .onErrorResume(e -> Mono.empty()))
+                // Keyset pagination index.
+                .then(addIndex(db, "INDEX idx_stream_meta_created_at_id (created_at, id)"))
+                // Full-text search indexes, one per searchable column set (MATCH needs an exact column match).
+                .then(addIndex(db, "FULLTEXT INDEX ft_stream_meta_title_description (title, description)"))
+                .then(addIndex(db, "FULLTEXT INDEX ft_stream_meta_title (title)"))
+                .then(addIndex(db, "FULLTEXT INDEX ft_stream_meta_description (description)"))
                 .block();
     }
+
+    /**
+     * Adds an index to stream_meta tables created before it existed; fails harmlessly if it is already there.
+     */
+    private static Mono<Void> addIndex(DatabaseClient db, String definition) {
+        return db.sql("ALTER TABLE stream_meta ADD " + definition)
+                .fetch()
+                .rowsUpdated()
+                .then()
+                .onErrorResume(e -> Mono.empty());
+    }
 }
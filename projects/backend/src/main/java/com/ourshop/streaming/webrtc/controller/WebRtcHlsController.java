@@ -1,56 +1,120 @@
 package com.ourshop.streaming.webrtc.controller;
 
-import com.ourshop.streaming.webrtc.hls.FfmpegHlsService;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
+import com.ourshop.streaming.webrtc.hls.HlsSegmentCache;
+import com.ourshop.streaming.webrtc.hls.LowLatencyHlsService;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/webrtc-hls")
 public class WebRtcHlsController {
 
-    private final FfmpegHlsService hls;
+    private static final MediaType PLAYLIST = MediaType.parseMediaType("application/vnd.apple.mpegurl");
+    private static final MediaType MPEG_TS = MediaType.parseMediaType("video/mp2t");
+    private static final MediaType FMP4_SEGMENT = MediaType.parseMediaType("video/iso.segment");
+    private static final MediaType MP4 = MediaType.parseMediaType("video/mp4");
 
-    public WebRtcHlsController(FfmpegHlsService hls) {
-        this.hls = hls;
+    private final HlsSegmentCache cache;
+    private final LowLatencyHlsService lowLatency;
+
+    public WebRtcHlsController(HlsSegmentCache cache, LowLatencyHlsService lowLatency) {
+        this.cache = cache;
+        this.lowLatency = lowLatency;
     }
 
     @GetMapping("/{streamKey}/index.m3u8")
-    public Mono<ResponseEntity<Resource>> playlist(@PathVariable String streamKey) {
-        return serve(streamKey, "index.m3u8", MediaType.parseMediaType("application/vnd.apple.mpegurl"), true);
+    public Mono<ResponseEntity<Flux<DataBuffer>>> playlist(
+            @PathVariable String streamKey,
+            @RequestParam(value = "_HLS_msn", required = false) Long msn,
+            @RequestParam(value = "_HLS_part", required = false) Integer part) {
+        if (lowLatency.isLowLatency(streamKey)) {
+            return lowLatency.playlist(streamKey, msn, part)
+                    .map(text -> DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8)))
+                    .map(buffer -> ok(PLAYLIST, CacheControl.noStore(), List.of(buffer)))
+                    .defaultIfEmpty(ResponseEntity.notFound().build())
+                    // The blocking reload timed out: a stale 200 would only make the client ask again.
+                    .onErrorResume(TimeoutException.class, e -> Mono.just(
+                            ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                    .cacheControl(CacheControl.noStore())
+                                    .build()));
+        }
+        return serve(streamKey, "index.m3u8", PLAYLIST, true);
+    }
+
+    /**
+     * Master playlist and the per-rendition media playlists of the ABR ladder.
+     */
+    @GetMapping("/{streamKey}/{playlist}.m3u8")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> otherPlaylist(@PathVariable String streamKey,
+            @PathVariable String playlist) {
+        return serve(streamKey, playlist + ".m3u8", PLAYLIST, true);
     }
 
     @GetMapping("/{streamKey}/{segment}.ts")
-    public Mono<ResponseEntity<Resource>> segment(@PathVariable String streamKey, @PathVariable String segment) {
-        return serve(streamKey, segment + ".ts", MediaType.parseMediaType("video/mp2t"), false);
-    }
-
-    private Mono<ResponseEntity<Resource>> serve(String streamKey, String fileName, MediaType mediaType, boolean noStore) {
-        return Mono.fromCallable(() -> {
-            Path p = hls.resolveFile(streamKey, fileName);
-            if (p == null || !Files.exists(p) || !Files.isRegularFile(p)) {
-                return ResponseEntity.notFound().build();
-            }
-
-            CacheControl cacheControl = noStore
-                    ? CacheControl.noStore()
-                    : CacheControl.maxAge(Duration.ofSeconds(30)).cachePublic();
-
-            return ResponseEntity.ok()
-                    .contentType(mediaType)
-                    .cacheControl(cacheControl)
-                    .body(new FileSystemResource(p));
-        });
+    public Mono<ResponseEntity<Flux<DataBuffer>>> segment(@PathVariable String streamKey,
+            @PathVariable String segment) {
+        return serve(streamKey, segment + ".ts", MPEG_TS, false);
+    }
+
+    @GetMapping("/{streamKey}/{segment}.m4s")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> fmp4Segment(@PathVariable String streamKey,
+            @PathVariable String segment) {
+        String fileName = segment + ".m4s";
+        if (lowLatency.isLowLatency(streamKey)) {
+            Mono<List<DataBuffer>> body = fileName.startsWith("seg_")
+                    ? lowLatency.segment(streamKey, fileName)
+                    : lowLatency.part(streamKey, fileName).map(List::of);
+            return body.map(buffers -> ok(FMP4_SEGMENT, segmentCacheControl(), buffers))
+                    .defaultIfEmpty(ResponseEntity.notFound().build());
+        }
+        return serve(streamKey, fileName, FMP4_SEGMENT, false);
+    }
+
+    @GetMapping("/{streamKey}/{name}.mp4")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> initSegment(@PathVariable String streamKey,
+            @PathVariable String name) {
+        return serve(streamKey, name + ".mp4", MP4, true);
+    }
+
+    private Mono<ResponseEntity<Flux<DataBuffer>>> serve(String streamKey, String fileName, MediaType mediaType,
+            boolean noStore) {
+        CacheControl cacheControl = noStore ? CacheControl.noStore() : segmentCacheControl();
+
+        return cache.get(streamKey, fileName)
+                .map(buffer -> ok(mediaType, cacheControl, List.of(buffer)))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    private static ResponseEntity<Flux<DataBuffer>> ok(MediaType mediaType, CacheControl cacheControl,
+            List<DataBuffer> buffers) {
+        long length = 0;
+        for (DataBuffer buffer : buffers) {
+            length += buffer.readableByteCount();
+        }
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .cacheControl(cacheControl)
+                .contentLength(length)
+                .body(Flux.fromIterable(buffers));
+    }
+
+    private static CacheControl segmentCacheControl() {
+        return CacheControl.maxAge(Duration.ofSeconds(30)).cachePublic();
     }
 }
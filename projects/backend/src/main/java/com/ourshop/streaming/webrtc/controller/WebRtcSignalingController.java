@@ -3,17 +3,24 @@ package com.ourshop.streaming.webrtc.controller;
 import com.ourshop.streaming.webrtc.dto.IceCandidateRequest;
 import com.ourshop.streaming.webrtc.dto.SdpAnswerResponse;
 import com.ourshop.streaming.webrtc.dto.SdpOfferRequest;
+import com.ourshop.streaming.webrtc.dto.WebRtcEventResponse;
 import com.ourshop.streaming.webrtc.service.WebRtcSignalingService;
 import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/v1/streams/{streamId}/webrtc")
 public class WebRtcSignalingController {
 
+    private static final Duration HEARTBEAT = Duration.ofSeconds(15);
+
     private final WebRtcSignalingService service;
 
     public WebRtcSignalingController(WebRtcSignalingService service) {
@@ -36,6 +43,21 @@ public class WebRtcSignalingController {
         return service.addIceCandidate(streamId, request);
     }
 
+    /**
+     * Server-sent signaling events for the stream's publisher: session state changes and Janus ICE
+     * candidates. Offers posted with {@code trickle=true} get their answer without waiting for Janus'
+     * candidates, which arrive here instead.
+     */
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<WebRtcEventResponse>> events(@PathVariable UUID streamId) {
+        Flux<ServerSentEvent<WebRtcEventResponse>> events = service.events(streamId)
+                .map(event -> ServerSentEvent.builder(event).event(event.type()).build());
+        // Comment lines keep idle connections open through proxies.
+        Flux<ServerSentEvent<WebRtcEventResponse>> heartbeats = Flux.interval(HEARTBEAT)
+                .map(tick -> ServerSentEvent.<WebRtcEventResponse>builder().comment("keepalive").build());
+        return Flux.merge(events, heartbeats);
+    }
+
     @DeleteMapping
     public Mono<Void> close(@PathVariable UUID streamId) {
         return service.closePublisher(streamId);
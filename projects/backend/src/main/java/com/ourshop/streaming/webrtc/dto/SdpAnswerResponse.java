@@ -1,12 +1,23 @@
 package com.ourshop.streaming.webrtc.dto;
 
+import com.ourshop.streaming.webrtc.hls.HlsAdmission;
+import com.ourshop.streaming.webrtc.hls.HlsRendition;
+import com.ourshop.streaming.webrtc.hls.HlsStartResult;
+
+import java.util.List;
+
 public record SdpAnswerResponse(
         String type,
     String sdp,
     String status,
     Long timestamp,
     String hlsUrl,
-    String streamKey
+    String streamKey,
+    // admitted | downgraded | queued | rejected (null when HLS was not attempted)
+    String hlsAdmission,
+    List<String> hlsRenditions,
+    // ready (first segment listed) | pending (still starting) | unavailable (not started)
+    String hlsState
 ) {
     public static SdpAnswerResponse answer(String sdp, String hlsUrl, String streamKey) {
         return new SdpAnswerResponse(
@@ -15,7 +26,32 @@ public record SdpAnswerResponse(
                 "OK",
                 System.currentTimeMillis(),
                 hlsUrl,
-                streamKey
+                streamKey,
+                null,
+                List.of(),
+                null
+        );
+    }
+
+    public static SdpAnswerResponse answer(String sdp, String streamKey, HlsStartResult hls) {
+        HlsAdmission admission = hls == null ? null : hls.admission();
+        return new SdpAnswerResponse(
+                "answer",
+                sdp,
+                "OK",
+                System.currentTimeMillis(),
+                hls == null ? null : hls.hlsUrl(),
+                streamKey,
+                admission == null ? null : admission.decision().value(),
+                admission == null ? List.of() : admission.renditions().stream().map(HlsRendition::name).toList(),
+                hlsState(hls)
         );
     }
+
+    private static String hlsState(HlsStartResult hls) {
+        if (hls == null || hls.hlsUrl() == null || hls.admission() == null) {
+            return "unavailable";
+        }
+        return hls.ready() ? "ready" : "pending";
+    }
 }
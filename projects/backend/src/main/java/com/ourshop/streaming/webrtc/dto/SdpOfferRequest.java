@@ -8,11 +8,15 @@ public record SdpOfferRequest(
                 String streamKey,
                 String facing,
                 String platform,
-                Boolean filtersEnabled
+                Boolean filtersEnabled,
+                String hlsMode,
+                // true when the client listens on /webrtc/events for Janus candidates
+                Boolean trickle
 ) {
 
         public SdpOfferRequest {
                 type = (type == null || type.isBlank()) ? "offer" : type;
                 filtersEnabled = filtersEnabled != null && filtersEnabled;
+                trickle = trickle != null && trickle;
         }
 }
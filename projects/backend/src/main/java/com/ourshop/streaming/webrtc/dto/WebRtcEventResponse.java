@@ -0,0 +1,48 @@
+package com.ourshop.streaming.webrtc.dto;
+
+import com.ourshop.streaming.webrtc.model.StreamSession;
+
+import java.util.UUID;
+
+/**
+ * One server-to-client signaling event on {@code /webrtc/events}.
+ *
+ * {@code type} is {@code state} (session status changed) or {@code candidate} (a Janus ICE candidate,
+ * or {@code completed=true} once Janus has no more).
+ */
+public record WebRtcEventResponse(
+        String type,
+        UUID sessionId,
+        String status,
+        String candidate,
+        String sdpMid,
+        Integer sdpMLineIndex,
+        Boolean completed,
+        Long timestamp
+) {
+    public static WebRtcEventResponse state(StreamSession session) {
+        return new WebRtcEventResponse(
+                "state",
+                session.id(),
+                session.status().name(),
+                null,
+                null,
+                null,
+                null,
+                System.currentTimeMillis()
+        );
+    }
+
+    public static WebRtcEventResponse candidate(UUID sessionId, IceCandidateRequest candidate) {
+        return new WebRtcEventResponse(
+                "candidate",
+                sessionId,
+                null,
+                candidate.candidate(),
+                candidate.sdpMid(),
+                candidate.sdpMLineIndex(),
+                Boolean.TRUE.equals(candidate.completed()) ? Boolean.TRUE : null,
+                System.currentTimeMillis()
+        );
+    }
+}
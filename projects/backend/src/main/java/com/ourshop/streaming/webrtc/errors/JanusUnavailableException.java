@@ -0,0 +1,11 @@
+package com.ourshop.streaming.webrtc.errors;
+
+/**
+ * A Janus call was refused locally (circuit open or too many calls in flight) instead of being sent.
+ */
+public class JanusUnavailableException extends RuntimeException {
+
+    public JanusUnavailableException(String node, String reason) {
+        super("Janus node '" + node + "' unavailable: " + reason);
+    }
+}
@@ -0,0 +1,179 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-stream CPU usage of FFmpeg processes, exported as {@code hls.ffmpeg.cpu.cores}
+ * and logged as a lifetime average on stop.
+ *
+ * The gauge reports cores used over the last fixed sampling interval, so the value does not depend on
+ * how often, or by how many registries, it is scraped.
+ *
+ * The OS only reports CPU time for a live process, so the last reading of each process is kept and
+ * stands for its total once it has exited; {@link #checkpoint} takes a fresh one right before a stop.
+ */
+final class FfmpegCpuMeter {
+
+    private static final Logger log = LoggerFactory.getLogger(FfmpegCpuMeter.class);
+
+    /** Shorter runs are dominated by startup and say little about steady-state cost. */
+    private static final long MIN_REPRESENTATIVE_NANOS = 30_000_000_000L;
+
+    private static final Duration SAMPLE_INTERVAL = Duration.ofSeconds(5);
+
+    private final MeterRegistry meterRegistry;
+    private final long minRepresentativeNanos;
+    private final ConcurrentHashMap<String, Tracked> tracked = new ConcurrentHashMap<>();
+    private final Disposable sampler;
+
+    FfmpegCpuMeter(MeterRegistry meterRegistry) {
+        this(meterRegistry, MIN_REPRESENTATIVE_NANOS);
+    }
+
+    FfmpegCpuMeter(MeterRegistry meterRegistry, long minRepresentativeNanos) {
+        this.meterRegistry = meterRegistry;
+        this.minRepresentativeNanos = minRepresentativeNanos;
+        this.sampler = Schedulers.parallel().schedulePeriodically(this::sampleAll,
+                SAMPLE_INTERVAL.toMillis(), SAMPLE_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    void close() {
+        sampler.dispose();
+    }
+
+    void sampleAll() {
+        for (Tracked t : tracked.values()) {
+            t.sample();
+        }
+    }
+
+    /**
+     * Starts (or, after an FFmpeg restart within the session, switches) measurement for a stream's process.
+     */
+    void track(String streamKey, String sessionId, Process process, HlsVideoMode videoMode) {
+        Tracked current = tracked.get(streamKey);
+        if (current != null && current.sessionId.equals(sessionId) && current.videoMode == videoMode) {
+            current.switchTo(process);
+            return;
+        }
+        if (current != null) {
+            untrack(streamKey, current.sessionId);
+        }
+
+        Tracked t = new Tracked(sessionId, process, videoMode);
+        t.gauge = Gauge.builder("hls.ffmpeg.cpu.cores", t, Tracked::lastSampledCores)
+                .description("CPU cores used by the FFmpeg process of a stream")
+                .tag("stream", streamKey)
+                .tag("video", videoMode.name().toLowerCase())
+                .register(meterRegistry);
+        tracked.put(streamKey, t);
+    }
+
+    /**
+     * Reads the stream's current process while it is still alive, e.g. right before it is destroyed.
+     */
+    void checkpoint(String streamKey) {
+        Tracked t = tracked.get(streamKey);
+        if (t != null) {
+            t.checkpoint();
+        }
+    }
+
+    /**
+     * Stops measurement for a stream's session; a no-op once a newer session of the stream is tracked.
+     *
+     * @return average cores used over the session's lifetime, or -1 if it ran too briefly to tell
+     */
+    double untrack(String streamKey, String sessionId) {
+        Tracked t = tracked.get(streamKey);
+        if (t == null || !t.sessionId.equals(sessionId) || !tracked.remove(streamKey, t)) {
+            return -1;
+        }
+        meterRegistry.remove(t.gauge);
+        double cores = t.lifetimeCores();
+        long wallNanos = t.wallNanos();
+        log.info("📊 FFmpeg CPU for {} ({}): {} cores on average over {}s",
+                streamKey, t.videoMode, String.format("%.2f", cores), wallNanos / 1_000_000_000L);
+        return wallNanos >= minRepresentativeNanos ? cores : -1;
+    }
+
+    private static final class Tracked {
+        private final String sessionId;
+        private final HlsVideoMode videoMode;
+        private final long startedNanos = System.nanoTime();
+        private volatile Process process;
+        private Gauge gauge;
+
+        // CPU of processes that already exited (FFmpeg restarts) plus the sampling cursor.
+        private long finishedCpuNanos;
+        /** Latest CPU time read from the current process while it was alive. */
+        private long processCpuNanos;
+        private long lastCpuNanos;
+        private long lastWallNanos = startedNanos;
+        private volatile double lastSampledCores;
+
+        Tracked(String sessionId, Process process, HlsVideoMode videoMode) {
+            this.sessionId = sessionId;
+            this.process = process;
+            this.videoMode = videoMode;
+        }
+
+        synchronized void switchTo(Process next) {
+            finishedCpuNanos += readProcess();
+            processCpuNanos = 0;
+            process = next;
+        }
+
+        synchronized void checkpoint() {
+            readProcess();
+        }
+
+        /**
+         * Called by the sampler only; moves the cursor by one interval.
+         */
+        synchronized void sample() {
+            long cpu = totalCpuNanos();
+            long wall = System.nanoTime();
+            double cores = wall > lastWallNanos ? (cpu - lastCpuNanos) / (double) (wall - lastWallNanos) : 0;
+            lastCpuNanos = cpu;
+            lastWallNanos = wall;
+            lastSampledCores = Math.max(0, cores);
+        }
+
+        double lastSampledCores() {
+            return lastSampledCores;
+        }
+
+        synchronized double lifetimeCores() {
+            long wall = wallNanos();
+            return wall > 0 ? totalCpuNanos() / (double) wall : 0;
+        }
+
+        long wallNanos() {
+            return System.nanoTime() - startedNanos;
+        }
+
+        private long totalCpuNanos() {
+            return finishedCpuNanos + readProcess();
+        }
+
+        /**
+         * CPU time of the current process; once it has exited (and the OS no longer reports it), the last
+         * reading taken while it ran.
+         */
+        private long readProcess() {
+            process.toHandle().info().totalCpuDuration()
+                    .ifPresent(cpu -> processCpuNanos = Math.max(processCpuNanos, cpu.toNanos()));
+            return processCpuNanos;
+        }
+    }
+}
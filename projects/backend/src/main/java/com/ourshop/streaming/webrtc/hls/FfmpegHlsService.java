@@ -1,5 +1,12 @@
 package com.ourshop.streaming.webrtc.hls;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import com.ourshop.streaming.webrtc.rtp.OpusConfig;
+import com.ourshop.streaming.webrtc.rtp.RtpIngestService;
+import com.ourshop.streaming.webrtc.rtp.RtpPortAllocator;
+import com.ourshop.streaming.webrtc.rtp.RtpReceiver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -11,11 +18,14 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -33,53 +43,260 @@ public class FfmpegHlsService {
     private static final String TRANSPOSE_CLOCK = "1"; // 90° clockwise
     private static final String TRANSPOSE_COUNTER_CLOCK = "2"; // 90° counter-clockwise
     private static final String TRANSPOSE_180 = "2,transpose=2"; // 180° rotation
+    // a=imageattr:<pt> send [x=WIDTH,y=HEIGHT]
+    private static final Pattern IMAGE_ATTR =
+            Pattern.compile("a=imageattr:[^\\s]+\\s+\\w+\\s*\\[x=(\\d+),y=(\\d+)\\]");
 
     // Resilience constants
     private static final int MAX_RETRY_ATTEMPTS = 20;
     private static final long CRASH_RECOVERY_DELAY_MS = 2000;
     private static final long STABLE_STREAM_THRESHOLD_MS = 30000;
 
+    // Public entry point; lists one media playlist per rendition
+    static final String MASTER_PLAYLIST = "master.m3u8";
+    static final String MEDIA_PLAYLIST = "index.m3u8";
+    // Advertised for single-rendition outputs whose bitrate is not capped (passthrough, LL)
+    private static final long SINGLE_RENDITION_BANDWIDTH = 3_000_000L;
+
+    // ABR ladder: segment grid, shared audio rendition and the codecs the encoder is pinned to
+    private static final int LADDER_SEGMENT_SECONDS = 2;
+    private static final String LADDER_AUDIO_GROUP = "aud";
+    private static final String LADDER_AUDIO_NAME = "audio";
+    private static final String LADDER_VIDEO_CODEC = "avc1.640029"; // High@4.1
+    private static final String LADDER_AUDIO_CODEC = "mp4a.40.2";   // AAC-LC
+
+    // Low-latency packaging (FFmpeg writes LL-HLS parts, see LowLatencyHlsService)
+    static final String LL_PARTS_PLAYLIST = "parts.m3u8";
+    static final String LL_PART_PREFIX = "part_";
+    // fMP4 init segment (LL-HLS parts and passthrough segments)
+    static final String FMP4_INIT_SEGMENT = "init.mp4";
+
     private final Path outputRoot;
     private final String publicBaseUrl;
+    private final HlsSegmentWatcher segmentWatcher;
+    private final HlsOutputMode defaultMode;
+    private final double llPartSeconds;
+    private final int llPartsPerSegment;
+    private final boolean passthroughEnabled;
+    private final List<HlsRendition> ladder;
+    private final FfmpegCpuMeter cpuMeter;
+    private final HlsTranscodeScheduler scheduler;
+    private final RtpIngestService rtpIngest;
+    private final RtpReceiver rtpReceiver;
+    private final RtpPortAllocator portAllocator;
+    private final MeterRegistry meterRegistry;
+    private final Duration readyTimeout;
 
     private final ConcurrentHashMap<String, Process> processes = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, String> streamSessions = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, Boolean> shouldKeepRunning = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Mono<Boolean>> readiness = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Pipeline> inJvmPipelines = new ConcurrentHashMap<>();
 
     public FfmpegHlsService(
             @Value("${webrtc.hls.output-dir:./tmp/hls}") String outputDir,
-            @Value("${webrtc.hls.public-base-url:}") String publicBaseUrl) {
+            @Value("${webrtc.hls.public-base-url:}") String publicBaseUrl,
+            @Value("${webrtc.hls.mode:standard}") String defaultMode,
+            @Value("${webrtc.hls.ll.part-duration-ms:500}") long llPartMs,
+            @Value("${webrtc.hls.ll.parts-per-segment:4}") int llPartsPerSegment,
+            @Value("${webrtc.hls.passthrough.enabled:true}") boolean passthroughEnabled,
+            @Value("${webrtc.hls.abr.ladder:1080p:5000k,720p:2800k,360p:800k}") String ladder,
+            @Value("${webrtc.hls.ready-timeout-ms:0}") long readyTimeoutMs,
+            HlsSegmentWatcher segmentWatcher,
+            HlsTranscodeScheduler scheduler,
+            RtpIngestService rtpIngest,
+            RtpReceiver rtpReceiver,
+            RtpPortAllocator portAllocator,
+            MeterRegistry meterRegistry) {
         this.outputRoot = Path.of(outputDir).toAbsolutePath().normalize();
         this.publicBaseUrl = publicBaseUrl == null ? "" : publicBaseUrl.trim();
+        this.defaultMode = HlsOutputMode.parse(defaultMode, HlsOutputMode.STANDARD);
+        this.llPartSeconds = Math.max(200, llPartMs) / 1000.0;
+        this.llPartsPerSegment = Math.max(2, llPartsPerSegment);
+        this.passthroughEnabled = passthroughEnabled;
+        this.ladder = List.copyOf(HlsRendition.parseLadder(ladder));
+        this.segmentWatcher = segmentWatcher;
+        this.cpuMeter = new FfmpegCpuMeter(meterRegistry);
+        this.scheduler = scheduler;
+        this.rtpIngest = rtpIngest;
+        this.rtpReceiver = rtpReceiver;
+        this.portAllocator = portAllocator;
+        this.meterRegistry = meterRegistry;
+        this.readyTimeout = Duration.ofMillis(Math.max(0, readyTimeoutMs));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        cpuMeter.close();
+    }
+
+    public Mono<HlsStartResult> start(String streamKey, int audioPort, int videoPort, String sdpOffer) {
+        return start(streamKey, audioPort, videoPort, sdpOffer, null, null, null);
+    }
+
+    /**
+     * Starts the pipeline once {@link HlsTranscodeScheduler} grants encoder capacity. A rejected stream
+     * gets no FFmpeg process and a {@code null} URL; the admission is returned either way.
+     *
+     * Waits up to {@code webrtc.hls.ready-timeout-ms} for the first segment and otherwise returns with
+     * {@link HlsStartResult#ready()} false; callers can follow up with {@link #awaitReady}.
+     *
+     * @param negotiatedSdp SDP answer from Janus (decides whether video can be remuxed), or {@code null}
+     * @param mode          requested packaging mode, or {@code null} for the configured default
+     * @param keyframeRequester asks the publisher for a keyframe (used by in-JVM ingest), or {@code null}
+     */
+    public Mono<HlsStartResult> start(String streamKey, int audioPort, int videoPort, String sdpOffer,
+            String negotiatedSdp, HlsOutputMode mode, Runnable keyframeRequester) {
+        HlsOutputMode effectiveMode = mode == null ? defaultMode : mode;
+        HlsVideoMode videoMode = resolveVideoMode(negotiatedSdp, effectiveMode);
+        boolean inJvm = canIngestInJvm(negotiatedSdp, effectiveMode, videoMode);
+        VideoDimensions output = outputDimensions(sdpOffer);
+        return scheduler.admit(streamKey, effectiveMode, videoMode, ladderFor(effectiveMode, videoMode, output))
+                .flatMap(admission -> admission.admitted()
+                        ? launch(streamKey, audioPort, videoPort, sdpOffer,
+                                new Pipeline(effectiveMode, videoMode, admission.renditions(),
+                                        admission.reservationId(), inJvm, output),
+                                keyframeRequester == null ? () -> { } : keyframeRequester)
+                                .flatMap(url -> awaitReady(streamKey, readyTimeout)
+                                        .map(ready -> new HlsStartResult(url, admission, ready)))
+                        : Mono.just(new HlsStartResult(null, admission, false)));
+    }
+
+    /**
+     * Emits {@code true} once the stream's first segment is listed in a playlist (it is playable), or
+     * {@code false} if that does not happen within {@code timeout} or the pipeline stops first.
+     */
+    public Mono<Boolean> awaitReady(String streamKey, Duration timeout) {
+        Mono<Boolean> ready = readiness.get(streamKey);
+        if (ready == null) {
+            return Mono.just(false);
+        }
+        // Not timeout(): with a zero timeout it fires before an already cached true.
+        return Mono.firstWithSignal(ready, Mono.delay(timeout).thenReturn(false));
     }
 
-    public Mono<String> start(String streamKey, int audioPort, int videoPort, String sdpOffer) {
+    private Mono<String> launch(String streamKey, int audioPort, int videoPort, String sdpOffer,
+            Pipeline pipeline, Runnable keyframeRequester) {
+        if (pipeline.inJvm()) {
+            return Mono.fromCallable(() -> {
+                try {
+                    launchInJvm(streamKey, audioPort, videoPort, sdpOffer, pipeline, keyframeRequester);
+                    return buildPublicHlsUrl(streamKey);
+                } catch (IOException e) {
+                    log.warn("⚠️ In-JVM RTP ingest failed for {}, falling back to FFmpeg: {}", streamKey, e.toString());
+                    return null;
+                }
+            })
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .switchIfEmpty(Mono.defer(() -> launch(streamKey, audioPort, videoPort, sdpOffer,
+                            pipeline.withoutInJvm(), keyframeRequester)));
+        }
+
+        HlsOutputMode effectiveMode = pipeline.mode();
+        HlsVideoMode videoMode = pipeline.videoMode();
         return Mono.fromCallable(() -> {
             String sessionId = UUID.randomUUID().toString();
             streamSessions.put(streamKey, sessionId);
             shouldKeepRunning.put(streamKey, true);
 
-            log.info("🆔 Starting FFmpeg session {} for stream {}", sessionId, streamKey);
+            log.info("🆔 Starting FFmpeg session {} for stream {} (mode={}, video={}, renditions={})",
+                    sessionId, streamKey, effectiveMode, videoMode,
+                    pipeline.renditions().stream().map(HlsRendition::name).toList());
+
+            if (rtpReceiver.relay(streamKey, audioPort, videoPort)) {
+                log.info("📡 Relaying shared-receiver RTP for {} to FFmpeg on ports {}/{}", streamKey, audioPort,
+                        videoPort);
+            }
+
+            // Subscribe before FFmpeg runs so the first segment cannot be missed.
+            Mono<Boolean> ready = watchFirstSegment(streamKey, pipeline);
+            readiness.put(streamKey, ready);
 
             // Launch resilient loop in background
             Schedulers.boundedElastic().schedule(() -> {
                 try {
-                    runResilientLoop(streamKey, audioPort, videoPort, sdpOffer, sessionId);
+                    runResilientLoop(streamKey, audioPort, videoPort, sdpOffer, sessionId, pipeline);
                 } catch (Exception e) {
                     log.error("❌ Resilient loop failed for {}: {}", streamKey, e.getMessage());
                 } finally {
-                    cleanup(streamKey);
+                    readiness.remove(streamKey, ready);
+                    cleanup(streamKey, sessionId, pipeline);
+                    portAllocator.release(streamKey, audioPort);
                 }
             });
 
-            // Wait a bit for first startup
-            Thread.sleep(1000);
             return buildPublicHlsUrl(streamKey);
         }).subscribeOn(Schedulers.boundedElastic());
     }
 
+    /**
+     * Packages the stream with {@link RtpIngestService} instead of an FFmpeg process. The output layout is
+     * the same as FFmpeg's passthrough output, so watcher, cache and readiness do not care which one runs.
+     */
+    private void launchInJvm(String streamKey, int audioPort, int videoPort, String sdpOffer, Pipeline pipeline,
+            Runnable keyframeRequester) throws IOException {
+        log.info("🆔 Starting in-JVM RTP ingest for stream {} (no FFmpeg)", streamKey);
+
+        Path outDir = outputRoot.resolve(streamKey).normalize();
+        Files.createDirectories(outDir);
+        clearStaleOutput(outDir);
+        writeMasterPlaylist(outDir, pipeline, false);
+
+        Mono<Boolean> ready = watchFirstSegment(streamKey, pipeline);
+        readiness.put(streamKey, ready);
+        try {
+            SdpRtpForwardParser.Section audio = SdpRtpForwardParser.parseOffer(sdpOffer).audio();
+            OpusConfig opus = audio == null ? null : OpusConfig.fromFmtp(SdpRtpForwardParser.fmtp(audio, "opus"));
+            rtpIngest.start(streamKey, audioPort, videoPort, opus, keyframeRequester);
+        } catch (IOException | RuntimeException e) {
+            readiness.remove(streamKey, ready);
+            throw e instanceof IOException io ? io : new IOException(e);
+        }
+        inJvmPipelines.put(streamKey, pipeline);
+    }
+
+    /**
+     * Hot, cached readiness of a new session, recording time-to-first-segment.
+     */
+    private Mono<Boolean> watchFirstSegment(String streamKey, Pipeline pipeline) {
+        long startedNanos = System.nanoTime();
+        Timer timeToFirstSegment = Timer.builder("hls.time_to_first_segment")
+                .description("Time from FFmpeg launch until the first HLS segment is listed")
+                .tag("mode", pipeline.mode().name().toLowerCase(Locale.ROOT))
+                .tag("video", pipeline.videoMode().name().toLowerCase(Locale.ROOT))
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        Mono<Boolean> ready = segmentWatcher.events(streamKey)
+                .filter(e -> e.type() == SegmentEvent.Type.SEGMENT_READY)
+                .next()
+                .map(e -> {
+                    Duration elapsed = Duration.ofNanos(System.nanoTime() - startedNanos);
+                    timeToFirstSegment.record(elapsed);
+                    log.info("🎬 First HLS segment for {} after {}ms ({})", streamKey, elapsed.toMillis(), e.name());
+                    return true;
+                })
+                .defaultIfEmpty(false)
+                .cache();
+        ready.subscribe(r -> {
+        }, e -> log.debug("Readiness watch failed for {}: {}", streamKey, e.toString()));
+        return ready;
+    }
+
     public Mono<Void> stop(String streamKey) {
-        return Mono.fromRunnable(() -> stopBlocking(streamKey))
+        return Mono.fromRunnable(() -> {
+                    scheduler.cancelQueued(streamKey);
+                    Pipeline inJvm = inJvmPipelines.remove(streamKey);
+                    if (inJvm != null) {
+                        rtpIngest.stop(streamKey);
+                        readiness.remove(streamKey);
+                        scheduler.release(streamKey, inJvm.reservationId(), -1);
+                    }
+                    stopBlocking(streamKey);
+                    rtpReceiver.unregister(streamKey);
+                    portAllocator.release(streamKey);
+                    segmentWatcher.forget(streamKey);
+                })
                 .subscribeOn(Schedulers.boundedElastic())
                 .then();
     }
@@ -88,7 +305,7 @@ public class FfmpegHlsService {
         String base = publicBaseUrl;
         if (base == null || base.isBlank()) {
             // If not configured (local dev), return a relative URL.
-            return "/webrtc-hls/" + streamKey + "/index.m3u8";
+            return "/webrtc-hls/" + streamKey + "/" + MASTER_PLAYLIST;
         }
 
         // Ensure no double slashes.
@@ -97,10 +314,10 @@ public class FfmpegHlsService {
         }
 
         if (base.endsWith("/webrtc-hls")) {
-            return base + "/" + streamKey + "/index.m3u8";
+            return base + "/" + streamKey + "/" + MASTER_PLAYLIST;
         }
 
-        return base + "/webrtc-hls/" + streamKey + "/index.m3u8";
+        return base + "/webrtc-hls/" + streamKey + "/" + MASTER_PLAYLIST;
     }
 
     public Path resolveFile(String streamKey, String fileName) {
@@ -125,118 +342,6 @@ public class FfmpegHlsService {
         return p;
     }
 
-    private String startBlocking(String streamKey, int audioPort, int videoPort, String sdpOffer) throws IOException {
-        if (streamKey == null || streamKey.isBlank()) {
-            throw new IllegalArgumentException("streamKey is required");
-        }
-
-        stopBlocking(streamKey);
-
-        Path outDir = outputRoot.resolve(streamKey).normalize();
-        Files.createDirectories(outDir);
-
-        Path sdpPath = outDir.resolve("input.sdp");
-        String sdpForFfmpeg = buildFfmpegSdp(audioPort, videoPort, sdpOffer);
-        Files.writeString(sdpPath, sdpForFfmpeg, StandardCharsets.UTF_8);
-
-        Path playlist = outDir.resolve("index.m3u8");
-        Path segmentPattern = outDir.resolve("seg_%05d.ts");
-        Path logPath = outDir.resolve("ffmpeg.log");
-
-        List<String> cmd = new ArrayList<>();
-        cmd.add("ffmpeg");
-        cmd.add("-hide_banner");
-        cmd.add("-loglevel");
-        cmd.add("info");
-        cmd.add("-protocol_whitelist");
-        cmd.add("file,udp,rtp");
-        cmd.add("-fflags");
-        cmd.add("nobuffer");
-        cmd.add("-flags");
-        cmd.add("low_delay");
-        cmd.add("-i");
-        cmd.add(sdpPath.toString());
-
-        // TEMPORARY: Test front camera rotation
-        // Frontend camera needs vertical flip in addition to rotation
-        cmd.add("-vf");
-        cmd.add("transpose=1,vflip");
-        log.info("[{}] Applying FRONT camera rotation: transpose=1,vflip (test)", streamKey);
-
-        // Transcode to HLS-friendly formats.
-        cmd.add("-c:v");
-        cmd.add("libx264");
-        cmd.add("-preset");
-        cmd.add("veryfast");
-        cmd.add("-tune");
-        cmd.add("zerolatency");
-        cmd.add("-pix_fmt");
-        cmd.add("yuv420p");
-        cmd.add("-g");
-        cmd.add("48");
-        cmd.add("-keyint_min");
-        cmd.add("48");
-        cmd.add("-sc_threshold");
-        cmd.add("0");
-
-        cmd.add("-c:a");
-        cmd.add("aac");
-        cmd.add("-b:a");
-        cmd.add("128k");
-
-        cmd.add("-f");
-        cmd.add("hls");
-        cmd.add("-hls_time");
-        cmd.add("2");
-        cmd.add("-hls_list_size");
-        cmd.add("6");
-        cmd.add("-hls_flags");
-        cmd.add("delete_segments+append_list");
-        cmd.add("-hls_segment_filename");
-        cmd.add(segmentPattern.toString());
-        cmd.add(playlist.toString());
-
-        ProcessBuilder pb = new ProcessBuilder(cmd);
-        pb.redirectErrorStream(true);
-
-        Process process = pb.start();
-        processes.put(streamKey, process);
-
-        // Async log consumption to avoid blocking buffers.
-        Schedulers.boundedElastic().schedule(() -> {
-            try (BufferedReader r = new BufferedReader(
-                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
-                List<String> buffer = new ArrayList<>();
-                String line;
-                while ((line = r.readLine()) != null) {
-                    buffer.add(line);
-                    if (buffer.size() >= 200) {
-                        Files.write(logPath, buffer, StandardCharsets.UTF_8,
-                                Files.exists(logPath) ? java.nio.file.StandardOpenOption.APPEND
-                                        : java.nio.file.StandardOpenOption.CREATE);
-                        buffer.clear();
-                    }
-                }
-                if (!buffer.isEmpty()) {
-                    Files.write(logPath, buffer, StandardCharsets.UTF_8,
-                            Files.exists(logPath) ? java.nio.file.StandardOpenOption.APPEND
-                                    : java.nio.file.StandardOpenOption.CREATE);
-                }
-            } catch (Exception ignored) {
-            }
-        });
-
-        // Best-effort: wait a little so callers can assume HLS files will appear
-        // shortly.
-        try {
-            Thread.sleep(Duration.ofMillis(500).toMillis());
-        } catch (InterruptedException ignored) {
-            Thread.currentThread().interrupt();
-        }
-
-        return buildPublicHlsUrl(streamKey);
-    }
-
     private void stopBlocking(String streamKey) {
         log.info("🛑 Stopping FFmpeg for stream {}", streamKey);
 
@@ -251,6 +356,8 @@ public class FfmpegHlsService {
             return;
         }
 
+        // Last chance to read its CPU time; the OS stops reporting it once the process is gone.
+        cpuMeter.checkpoint(streamKey);
         existing.destroy();
         try {
             boolean exited = existing.waitFor(800, TimeUnit.MILLISECONDS);
@@ -263,11 +370,20 @@ public class FfmpegHlsService {
         }
     }
 
-    private void cleanup(String streamKey) {
-        shouldKeepRunning.remove(streamKey);
-        streamSessions.remove(streamKey);
-        processes.remove(streamKey);
-        log.info("🧹 Cleaned up resources for stream {}", streamKey);
+    /**
+     * Drops what a finished FFmpeg session left behind. Every removal is checked against the session, so
+     * a loop that ends after the stream was restarted leaves the new session's state alone.
+     */
+    private void cleanup(String streamKey, String sessionId, Pipeline pipeline) {
+        if (streamSessions.remove(streamKey, sessionId)) {
+            shouldKeepRunning.remove(streamKey);
+        } else {
+            // Stopped (or replaced): only clear a stop flag, never a newer session's run flag.
+            shouldKeepRunning.remove(streamKey, false);
+        }
+        double measuredCores = cpuMeter.untrack(streamKey, sessionId);
+        scheduler.release(streamKey, pipeline.reservationId(), measuredCores);
+        log.info("🧹 Cleaned up resources for stream {} (Session: {})", streamKey, sessionId);
     }
 
     /**
@@ -275,7 +391,7 @@ public class FfmpegHlsService {
      * Monitors process health and retries with exponential backoff.
      */
     private void runResilientLoop(String streamKey, int audioPort, int videoPort,
-            String sdpOffer, String sessionId) throws IOException {
+            String sdpOffer, String sessionId, Pipeline pipeline) throws IOException {
         int retryCount = 0;
         long lastStartTime = 0;
 
@@ -285,9 +401,14 @@ public class FfmpegHlsService {
         Path sdpPath = outDir.resolve("input.sdp");
         String sdpForFfmpeg = buildFfmpegSdp(audioPort, videoPort, sdpOffer);
         Files.writeString(sdpPath, sdpForFfmpeg, StandardCharsets.UTF_8);
+        boolean hasAudio = SdpRtpForwardParser.parseOffer(sdpOffer).audio() != null;
+
+        clearStaleOutput(outDir);
+        writeMasterPlaylist(outDir, pipeline, hasAudio);
 
         log.info("🔄 Starting resilient FFmpeg loop for {} (Session: {})", streamKey, sessionId);
 
+        Process current = null;
         while (shouldKeepRunning.getOrDefault(streamKey, false)) {
             // Zombie check: verify session is still active
             String activeSession = streamSessions.get(streamKey);
@@ -304,8 +425,11 @@ public class FfmpegHlsService {
                     log.warn("🔄 Restarting FFmpeg for {} (Attempt {})", streamKey, retryCount + 1);
                 }
 
-                Process process = startFfmpegProcess(streamKey, audioPort, videoPort, sdpPath, outDir);
+                Process process = startFfmpegProcess(streamKey, sdpPath, outDir, pipeline, hasAudio);
                 processes.put(streamKey, process);
+                current = process;
+                portAllocator.bindProcess(streamKey, process.toHandle());
+                cpuMeter.track(streamKey, sessionId, process, pipeline.videoMode());
 
                 // Wait for process to complete (blocking)
                 int exitCode = process.waitFor();
@@ -357,19 +481,20 @@ public class FfmpegHlsService {
             }
         }
 
+        if (current != null) {
+            processes.remove(streamKey, current);
+        }
         log.info("✅ FFmpeg loop terminated for {} (Session: {})", streamKey, sessionId);
     }
 
     /**
      * Start FFmpeg process with configured command.
      */
-    private Process startFfmpegProcess(String streamKey, int audioPort, int videoPort,
-            Path sdpPath, Path outDir) throws IOException {
-        Path playlist = outDir.resolve("index.m3u8");
-        Path segmentPattern = outDir.resolve("seg_%05d.ts");
+    private Process startFfmpegProcess(String streamKey, Path sdpPath, Path outDir, Pipeline pipeline,
+            boolean hasAudio) throws IOException {
         Path logPath = outDir.resolve("ffmpeg.log");
 
-        List<String> cmd = buildFfmpegCommand(streamKey, sdpPath, playlist, segmentPattern);
+        List<String> cmd = buildFfmpegCommand(streamKey, sdpPath, outDir, pipeline, hasAudio);
 
         ProcessBuilder pb = new ProcessBuilder(cmd);
         pb.redirectErrorStream(true);
@@ -385,8 +510,9 @@ public class FfmpegHlsService {
     /**
      * Build FFmpeg command with all parameters.
      */
-    private List<String> buildFfmpegCommand(String streamKey, Path sdpPath,
-            Path playlist, Path segmentPattern) {
+    private List<String> buildFfmpegCommand(String streamKey, Path sdpPath, Path outDir, Pipeline pipeline,
+            boolean hasAudio) {
+        HlsVideoMode videoMode = pipeline.videoMode();
         List<String> cmd = new ArrayList<>();
         cmd.add("ffmpeg");
         cmd.add("-hide_banner");
@@ -398,15 +524,125 @@ public class FfmpegHlsService {
         cmd.add("nobuffer");
         cmd.add("-flags");
         cmd.add("low_delay");
+
+        if (videoMode == HlsVideoMode.PASSTHROUGH) {
+            // Same correction as transpose=1,vflip, but written to the display matrix instead of the pixels
+            // (input options, FFmpeg >= 6.1).
+            cmd.add("-display_rotation:v:0");
+            cmd.add("-90");
+            cmd.add("-display_vflip:v:0");
+        }
+
         cmd.add("-i");
         cmd.add(sdpPath.toString());
 
-        // TEMPORARY: Test front camera rotation
-        cmd.add("-vf");
-        cmd.add("transpose=1,vflip");
-        log.debug("[{}] Applying FRONT camera rotation: transpose=1,vflip", streamKey);
+        if (!pipeline.renditions().isEmpty()) {
+            appendLadder(cmd, outDir, pipeline.renditions(), hasAudio);
+            return cmd;
+        }
+
+        if (videoMode == HlsVideoMode.PASSTHROUGH) {
+            cmd.add("-c:v");
+            cmd.add("copy");
+            log.debug("[{}] Remuxing H.264 without transcoding", streamKey);
+        } else {
+            // TEMPORARY: Test front camera rotation
+            cmd.add("-vf");
+            cmd.add("transpose=1,vflip");
+            log.debug("[{}] Applying FRONT camera rotation: transpose=1,vflip", streamKey);
+
+            // Transcode to HLS-friendly formats
+            cmd.add("-c:v");
+            cmd.add("libx264");
+            cmd.add("-preset");
+            cmd.add("veryfast");
+            cmd.add("-tune");
+            cmd.add("zerolatency");
+            cmd.add("-pix_fmt");
+            cmd.add("yuv420p");
+            cmd.add("-g");
+            cmd.add("48");
+            cmd.add("-keyint_min");
+            cmd.add("48");
+            cmd.add("-sc_threshold");
+            cmd.add("0");
+        }
+
+        cmd.add("-c:a");
+        cmd.add("aac");
+        cmd.add("-b:a");
+        cmd.add("128k");
+
+        if (pipeline.mode() == HlsOutputMode.LOW_LATENCY) {
+            appendLowLatencyOutput(cmd, outDir);
+        } else {
+            // MPEG-TS has no display matrix, so remuxed video needs fMP4 segments to keep its rotation.
+            appendStandardOutput(cmd, outDir, videoMode == HlsVideoMode.PASSTHROUGH);
+        }
+
+        return cmd;
+    }
+
+    private static void appendStandardOutput(List<String> cmd, Path outDir, boolean fmp4) {
+        cmd.add("-f");
+        cmd.add("hls");
+        if (fmp4) {
+            cmd.add("-hls_segment_type");
+            cmd.add("fmp4");
+            cmd.add("-hls_fmp4_init_filename");
+            cmd.add(FMP4_INIT_SEGMENT);
+        }
+        cmd.add("-hls_time");
+        cmd.add("2");
+        cmd.add("-hls_list_size");
+        cmd.add("6");
+        cmd.add("-hls_flags");
+        cmd.add("delete_segments+append_list");
+        cmd.add("-hls_segment_filename");
+        cmd.add(outDir.resolve(fmp4 ? "seg_%05d.m4s" : "seg_%05d.ts").toString());
+        cmd.add(outDir.resolve(MEDIA_PLAYLIST).toString());
+    }
+
+    /**
+     * ABR ladder from a single decode: the rotated frames are split once and scaled per rendition, and
+     * one HLS muxer writes a media playlist per variant ({@code index_<name>.m3u8}). Keyframes are forced
+     * on the segment grid (no scene cuts) so every rendition cuts its segments at the same instants and
+     * players can switch on any segment. Audio is encoded once into its own rendition
+     * ({@code index_audio.m3u8}) that all variants share.
+     */
+    private static void appendLadder(List<String> cmd, Path outDir, List<HlsRendition> renditions,
+            boolean hasAudio) {
+        int n = renditions.size();
+        StringBuilder graph = new StringBuilder("[0:v]transpose=1,vflip,split=").append(n);
+        for (int i = 0; i < n; i++) {
+            graph.append("[s").append(i).append(']');
+        }
+        for (int i = 0; i < n; i++) {
+            graph.append(";[s").append(i).append("]scale=-2:")
+                    .append(renditions.get(i).height()).append("[v").append(i).append(']');
+        }
+        cmd.add("-filter_complex");
+        cmd.add(graph.toString());
+
+        StringBuilder streamMap = new StringBuilder();
+        if (hasAudio) {
+            cmd.add("-map");
+            cmd.add("0:a:0");
+            streamMap.append("a:0,agroup:").append(LADDER_AUDIO_GROUP).append(",name:").append(LADDER_AUDIO_NAME);
+        }
+        for (int i = 0; i < n; i++) {
+            cmd.add("-map");
+            cmd.add("[v" + i + "]");
+            if (!streamMap.isEmpty()) {
+                streamMap.append(' ');
+            }
+            streamMap.append("v:").append(i);
+            if (hasAudio) {
+                streamMap.append(",agroup:").append(LADDER_AUDIO_GROUP);
+            }
+            streamMap.append(",name:").append(renditions.get(i).name());
+        }
 
-        // Transcode to HLS-friendly formats
         cmd.add("-c:v");
         cmd.add("libx264");
         cmd.add("-preset");
@@ -415,31 +651,204 @@ public class FfmpegHlsService {
         cmd.add("zerolatency");
         cmd.add("-pix_fmt");
         cmd.add("yuv420p");
-        cmd.add("-g");
-        cmd.add("48");
-        cmd.add("-keyint_min");
-        cmd.add("48");
+        cmd.add("-profile:v");
+        cmd.add("high");
+        cmd.add("-level:v");
+        cmd.add("4.1");
+        cmd.add("-force_key_frames");
+        cmd.add("expr:gte(t,n_forced*" + LADDER_SEGMENT_SECONDS + ")");
         cmd.add("-sc_threshold");
         cmd.add("0");
+        for (int i = 0; i < n; i++) {
+            int kbps = renditions.get(i).videoKbps();
+            cmd.add("-b:v:" + i);
+            cmd.add(kbps + "k");
+            cmd.add("-maxrate:v:" + i);
+            cmd.add((kbps * 11 / 10) + "k");
+            cmd.add("-bufsize:v:" + i);
+            cmd.add((kbps * 3 / 2) + "k");
+        }
 
-        cmd.add("-c:a");
-        cmd.add("aac");
-        cmd.add("-b:a");
-        cmd.add("128k");
+        if (hasAudio) {
+            cmd.add("-c:a");
+            cmd.add("aac");
+            cmd.add("-b:a");
+            cmd.add("128k");
+        }
 
         cmd.add("-f");
         cmd.add("hls");
         cmd.add("-hls_time");
-        cmd.add("2");
+        cmd.add(String.valueOf(LADDER_SEGMENT_SECONDS));
         cmd.add("-hls_list_size");
         cmd.add("6");
         cmd.add("-hls_flags");
-        cmd.add("delete_segments+append_list");
+        cmd.add("delete_segments+append_list+independent_segments");
+        cmd.add("-var_stream_map");
+        cmd.add(streamMap.toString());
         cmd.add("-hls_segment_filename");
-        cmd.add(segmentPattern.toString());
-        cmd.add(playlist.toString());
+        cmd.add(outDir.resolve("seg_%v_%05d.ts").toString());
+        cmd.add(outDir.resolve("index_%v.m3u8").toString());
+    }
 
-        return cmd;
+    /**
+     * Full ladder requested for a stream; {@link HlsTranscodeScheduler} may grant fewer rungs. The ladder
+     * only applies to transcoded standard HLS, and is cut to the rungs the source can fill.
+     */
+    private List<HlsRendition> ladderFor(HlsOutputMode mode, HlsVideoMode videoMode, VideoDimensions output) {
+        if (mode == HlsOutputMode.LOW_LATENCY || videoMode == HlsVideoMode.PASSTHROUGH) {
+            return List.of();
+        }
+        return HlsRendition.fitToSource(ladder, output.height());
+    }
+
+    /**
+     * Removes playlists and segments left by a previous session, so neither players nor readiness
+     * mistake them for the new stream. Restarts within a session keep them (append_list).
+     */
+    private static void clearStaleOutput(Path outDir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(outDir,
+                "*.{m3u8,ts,m4s,mp4}")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Players always start from the master playlist, whatever the packaging: it lists the ladder's media
+     * playlists, or the single {@code index.m3u8} for passthrough and LL-HLS. Written atomically so the
+     * segment watcher and cache never see a partial file.
+     */
+    private static void writeMasterPlaylist(Path outDir, Pipeline pipeline, boolean hasAudio) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#EXTM3U\n");
+        sb.append("#EXT-X-VERSION:3\n");
+        if (pipeline.renditions().isEmpty()) {
+            sb.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(SINGLE_RENDITION_BANDWIDTH).append('\n');
+            sb.append(MEDIA_PLAYLIST).append('\n');
+        } else {
+            sb.append("#EXT-X-INDEPENDENT-SEGMENTS\n");
+            String codecs = LADDER_VIDEO_CODEC;
+            if (hasAudio) {
+                codecs += "," + LADDER_AUDIO_CODEC;
+                sb.append("#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"").append(LADDER_AUDIO_GROUP)
+                        .append("\",NAME=\"").append(LADDER_AUDIO_NAME)
+                        .append("\",DEFAULT=YES,AUTOSELECT=YES,URI=\"index_").append(LADDER_AUDIO_NAME)
+                        .append(".m3u8\"\n");
+            }
+            for (HlsRendition r : pipeline.renditions()) {
+                sb.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(r.bandwidth())
+                        .append(",RESOLUTION=").append(r.width(pipeline.output().width(), pipeline.output().height()))
+                        .append('x').append(r.height())
+                        .append(",CODECS=\"").append(codecs).append('"');
+                if (hasAudio) {
+                    sb.append(",AUDIO=\"").append(LADDER_AUDIO_GROUP).append('"');
+                }
+                sb.append('\n');
+                sb.append(r.playlistName()).append('\n');
+            }
+        }
+
+        Path tmp = outDir.resolve(MASTER_PLAYLIST + ".tmp");
+        Files.writeString(tmp, sb.toString(), StandardCharsets.UTF_8);
+        Files.move(tmp, outDir.resolve(MASTER_PLAYLIST), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Remux instead of transcode when the negotiated video codec is H.264: FFmpeg then only repackages
+     * and CPU per stream drops to a few percent. LL-HLS keeps transcoding because it needs keyframes
+     * on its part grid, which the publisher does not guarantee.
+     */
+    HlsVideoMode resolveVideoMode(String negotiatedSdp, HlsOutputMode mode) {
+        if (!passthroughEnabled || mode == HlsOutputMode.LOW_LATENCY
+                || negotiatedSdp == null || negotiatedSdp.isBlank()) {
+            return HlsVideoMode.TRANSCODE;
+        }
+
+        SdpRtpForwardParser.ParsedSdp parsed;
+        try {
+            parsed = SdpRtpForwardParser.parseOffer(negotiatedSdp);
+        } catch (Exception e) {
+            log.debug("Could not parse negotiated SDP, transcoding: {}", e.getMessage());
+            return HlsVideoMode.TRANSCODE;
+        }
+
+        return "h264".equals(negotiatedCodec(parsed.video())) ? HlsVideoMode.PASSTHROUGH : HlsVideoMode.TRANSCODE;
+    }
+
+    /**
+     * Passthrough streams whose audio is Opus (or absent) can be packaged by {@link RtpIngestService}
+     * without an FFmpeg process.
+     */
+    private boolean canIngestInJvm(String negotiatedSdp, HlsOutputMode mode, HlsVideoMode videoMode) {
+        if (!rtpIngest.isEnabled() || mode != HlsOutputMode.STANDARD || videoMode != HlsVideoMode.PASSTHROUGH) {
+            return false;
+        }
+        try {
+            SdpRtpForwardParser.Section audio = SdpRtpForwardParser.parseOffer(negotiatedSdp).audio();
+            return audio == null || "opus".equals(negotiatedCodec(audio));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Encoding name of the first payload type, which in an answer is the codec that will actually be sent.
+     */
+    private static String negotiatedCodec(SdpRtpForwardParser.Section section) {
+        if (section == null || section.payloadTypes().isEmpty()) {
+            return null;
+        }
+        for (String attr : section.attributes().getOrDefault(section.payloadTypes().get(0), List.of())) {
+            if (attr.startsWith("a=rtpmap:")) {
+                int space = attr.indexOf(' ');
+                int slash = attr.indexOf('/', space + 1);
+                if (space > 0 && slash > space) {
+                    return attr.substring(space + 1, slash).toLowerCase(Locale.ROOT);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * LL-HLS: FFmpeg cuts short fMP4 fragments ("parts") on a fixed time grid and lists them in an
+     * internal playlist. Keyframes are forced on segment boundaries so every Nth part is independent;
+     * {@link LowLatencyHlsService} groups parts into segments and serves the public playlist.
+     */
+    private void appendLowLatencyOutput(List<String> cmd, Path outDir) {
+        double segmentSeconds = llPartSeconds * llPartsPerSegment;
+
+        cmd.add("-force_key_frames");
+        cmd.add("expr:gte(t,n_forced*" + segmentSeconds + ")");
+
+        cmd.add("-f");
+        cmd.add("hls");
+        cmd.add("-hls_segment_type");
+        cmd.add("fmp4");
+        cmd.add("-hls_fmp4_init_filename");
+        cmd.add(FMP4_INIT_SEGMENT);
+        cmd.add("-hls_time");
+        cmd.add(String.valueOf(llPartSeconds));
+        cmd.add("-hls_list_size");
+        cmd.add(String.valueOf(llPartsPerSegment * 6));
+        cmd.add("-hls_delete_threshold");
+        cmd.add(String.valueOf(llPartsPerSegment));
+        cmd.add("-hls_flags");
+        cmd.add("delete_segments+split_by_time+temp_file");
+        cmd.add("-hls_segment_filename");
+        cmd.add(outDir.resolve(LL_PART_PREFIX + "%05d.m4s").toString());
+        cmd.add(outDir.resolve(LL_PARTS_PLAYLIST).toString());
+    }
+
+    double llPartSeconds() {
+        return llPartSeconds;
+    }
+
+    int llPartsPerSegment() {
+        return llPartsPerSegment;
     }
 
     /**
@@ -595,6 +1004,19 @@ public class FfmpegHlsService {
         }
     }
 
+    /**
+     * Size of the transcoded picture before scaling. The ladder filter transposes the source, so width and
+     * height swap. Without an explicit {@code a=imageattr} a 1080p landscape publisher is assumed, like
+     * {@link HlsTranscodeScheduler} does for its cost estimate.
+     */
+    private static VideoDimensions outputDimensions(String sdpOffer) {
+        Matcher matcher = sdpOffer == null ? null : IMAGE_ATTR.matcher(sdpOffer);
+        if (matcher != null && matcher.find()) {
+            return new VideoDimensions(Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(1)));
+        }
+        return new VideoDimensions(1080, 1920);
+    }
+
     /**
      * Extracts video dimensions from SDP offer.
      * Searches for common patterns:
@@ -611,8 +1033,7 @@ public class FfmpegHlsService {
 
         // Pattern 1: a=imageattr:* [x=WIDTH,y=HEIGHT]
         // Example: a=imageattr:100 send [x=1920,y=1080]
-        Pattern imageAttrPattern = Pattern.compile("a=imageattr:[^\\s]+\\s+\\w+\\s*\\[x=(\\d+),y=(\\d+)\\]");
-        Matcher matcher = imageAttrPattern.matcher(sdpOffer);
+        Matcher matcher = IMAGE_ATTR.matcher(sdpOffer);
         if (matcher.find()) {
             int width = Integer.parseInt(matcher.group(1));
             int height = Integer.parseInt(matcher.group(2));
@@ -642,6 +1063,17 @@ public class FfmpegHlsService {
         return new VideoDimensions(1920, 1080);
     }
 
+    /**
+     * Packaging decisions taken once per stream start.
+     */
+    private record Pipeline(HlsOutputMode mode, HlsVideoMode videoMode, List<HlsRendition> renditions,
+            long reservationId, boolean inJvm, VideoDimensions output) {
+
+        Pipeline withoutInJvm() {
+            return new Pipeline(mode, videoMode, renditions, reservationId, false, output);
+        }
+    }
+
     /**
      * Video dimensions record
      */
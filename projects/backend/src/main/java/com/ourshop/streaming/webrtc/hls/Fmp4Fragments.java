@@ -0,0 +1,154 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads just enough of an fMP4 fragment ({@code moof} → {@code traf} → {@code tfhd}/{@code trun}) to tell
+ * whether it starts with a sync sample, i.e. whether a player can start decoding from it.
+ */
+final class Fmp4Fragments {
+
+    /** The first moof of an LL-HLS part is a few hundred bytes; this leaves plenty of room. */
+    private static final int HEAD_BYTES = 64 * 1024;
+
+    private static final int SAMPLE_IS_NON_SYNC = 0x0001_0000;
+
+    private Fmp4Fragments() {
+    }
+
+    /**
+     * @return false if the file is missing or its first fragment cannot be read, as a part that might
+     *         not start on a keyframe must not be advertised as independent
+     */
+    static boolean startsWithSyncSample(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(HEAD_BYTES, channel.size()));
+            while (head.hasRemaining() && channel.read(head) > 0) {
+                // keep reading
+            }
+            head.flip();
+            return startsWithSyncSample(head);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * True if the first sample of every track in the first {@code moof} is a sync sample. Audio tracks
+     * only have sync samples, so with audio + video this is the video keyframe check.
+     */
+    static boolean startsWithSyncSample(ByteBuffer buf) {
+        int pos = buf.position();
+        int end = buf.limit();
+        while (pos + 8 <= end) {
+            long size = Integer.toUnsignedLong(buf.getInt(pos));
+            int type = buf.getInt(pos + 4);
+            int header = 8;
+            if (size == 1) {
+                if (pos + 16 > end) {
+                    return false;
+                }
+                size = buf.getLong(pos + 8);
+                header = 16;
+            } else if (size == 0) {
+                size = end - pos;
+            }
+            if (size < header) {
+                return false;
+            }
+            if (type == fourCc("moof")) {
+                return moofStartsWithSync(buf, pos + header, (int) Math.min(end, pos + size));
+            }
+            pos += (int) Math.min(size, end - pos);
+        }
+        return false;
+    }
+
+    private static boolean moofStartsWithSync(ByteBuffer buf, int from, int to) {
+        boolean anyTrack = false;
+        for (int pos = from; pos + 8 <= to; ) {
+            int size = buf.getInt(pos);
+            if (size < 8 || pos + size > to) {
+                return false;
+            }
+            if (buf.getInt(pos + 4) == fourCc("traf")) {
+                Integer flags = firstSampleFlags(buf, pos + 8, pos + size);
+                if (flags == null || (flags & SAMPLE_IS_NON_SYNC) != 0) {
+                    return false;
+                }
+                anyTrack = true;
+            }
+            pos += size;
+        }
+        return anyTrack;
+    }
+
+    /**
+     * Flags of the first sample of a {@code traf}, or null if they are only in the init segment's
+     * {@code trex} (or the box is malformed).
+     */
+    private static Integer firstSampleFlags(ByteBuffer buf, int from, int to) {
+        Integer defaultFlags = null;
+        for (int pos = from; pos + 8 <= to; ) {
+            int size = buf.getInt(pos);
+            if (size < 8 || pos + size > to) {
+                return null;
+            }
+            int type = buf.getInt(pos + 4);
+            int body = pos + 8;
+            // Both are full boxes with at least one field after version/flags.
+            if ((type == fourCc("tfhd") || type == fourCc("trun")) && size < 16) {
+                return null;
+            }
+            int flags = size >= 12 ? buf.getInt(body) & 0xFFFFFF : 0;
+            if (type == fourCc("tfhd")) {
+                int field = body + 8; // version/flags, track_ID
+                if ((flags & 0x01) != 0) {
+                    field += 8; // base_data_offset
+                }
+                if ((flags & 0x02) != 0) {
+                    field += 4; // sample_description_index
+                }
+                if ((flags & 0x08) != 0) {
+                    field += 4; // default_sample_duration
+                }
+                if ((flags & 0x10) != 0) {
+                    field += 4; // default_sample_size
+                }
+                if ((flags & 0x20) != 0 && field + 4 <= pos + size) {
+                    defaultFlags = buf.getInt(field);
+                }
+            } else if (type == fourCc("trun")) {
+                int sampleCount = buf.getInt(body + 4);
+                int field = body + 8;
+                if ((flags & 0x001) != 0) {
+                    field += 4; // data_offset
+                }
+                if ((flags & 0x004) != 0) {
+                    return field + 4 <= pos + size ? buf.getInt(field) : null;
+                }
+                if ((flags & 0x400) != 0 && sampleCount > 0) {
+                    if ((flags & 0x100) != 0) {
+                        field += 4; // sample_duration
+                    }
+                    if ((flags & 0x200) != 0) {
+                        field += 4; // sample_size
+                    }
+                    return field + 4 <= pos + size ? buf.getInt(field) : null;
+                }
+                // Only the first trun describes the first sample.
+                return defaultFlags;
+            }
+            pos += size;
+        }
+        return defaultFlags;
+    }
+
+    private static int fourCc(String type) {
+        return (type.charAt(0) << 24) | (type.charAt(1) << 16) | (type.charAt(2) << 8) | type.charAt(3);
+    }
+}
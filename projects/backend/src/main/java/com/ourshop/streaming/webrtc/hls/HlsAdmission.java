@@ -0,0 +1,46 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Outcome of asking {@link HlsTranscodeScheduler} for encoder capacity.
+ *
+ * @param decision       what the scheduler did
+ * @param renditions     ABR rungs granted (empty for single-rendition outputs or when rejected)
+ * @param estimatedCores cores reserved for the stream
+ * @param queueWait      time spent waiting for capacity
+ * @param reservationId  handle used to release the reservation
+ */
+public record HlsAdmission(
+        Decision decision,
+        List<HlsRendition> renditions,
+        double estimatedCores,
+        Duration queueWait,
+        long reservationId
+) {
+
+    public enum Decision {
+        /** Started with the requested profile. */
+        ADMITTED,
+        /** Started with fewer/cheaper renditions to fit the budget. */
+        DOWNGRADED,
+        /** Started after waiting for another stream to release capacity. */
+        QUEUED,
+        /** No capacity: the stream is published over WebRTC only, without HLS. */
+        REJECTED;
+
+        public String value() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public boolean admitted() {
+        return decision != Decision.REJECTED;
+    }
+
+    static HlsAdmission rejected(Duration queueWait) {
+        return new HlsAdmission(Decision.REJECTED, List.of(), 0, queueWait, -1);
+    }
+}
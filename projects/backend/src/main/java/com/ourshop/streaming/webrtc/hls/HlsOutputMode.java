@@ -0,0 +1,30 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import java.util.Locale;
+
+/**
+ * HLS packaging mode of a stream.
+ */
+public enum HlsOutputMode {
+
+    /** MPEG-TS segments, classic playlist polling (6-10 s glass-to-glass). */
+    STANDARD,
+
+    /** LL-HLS: fMP4 parts, EXT-X-PART/PRELOAD-HINT and blocking playlist reload. */
+    LOW_LATENCY;
+
+    /**
+     * Lenient parsing for API/config values ("standard", "ll", "low-latency", ...).
+     */
+    public static HlsOutputMode parse(String raw, HlsOutputMode fallback) {
+        if (raw == null || raw.isBlank()) {
+            return fallback;
+        }
+        String v = raw.trim().toLowerCase(Locale.ROOT).replace('-', '_');
+        return switch (v) {
+            case "standard", "hls", "ts" -> STANDARD;
+            case "ll", "llhls", "ll_hls", "low_latency", "lowlatency" -> LOW_LATENCY;
+            default -> fallback;
+        };
+    }
+}
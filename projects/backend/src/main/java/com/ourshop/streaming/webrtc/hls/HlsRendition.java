@@ -0,0 +1,72 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One rung of the ABR ladder.
+ *
+ * @param name       variant name used in file names ({@code index_<name>.m3u8})
+ * @param height     output height in pixels (never upscaled)
+ * @param videoKbps  target video bitrate
+ */
+public record HlsRendition(String name, int height, int videoKbps) {
+
+    /**
+     * Parses a ladder spec such as {@code "1080p:5000k,720p:2800k,360p:800k"}, highest rung first.
+     * Invalid entries are ignored; an empty spec disables the ladder.
+     */
+    public static List<HlsRendition> parseLadder(String spec) {
+        List<HlsRendition> ladder = new ArrayList<>();
+        if (spec == null || spec.isBlank()) {
+            return ladder;
+        }
+        for (String raw : spec.split(",")) {
+            String[] parts = raw.trim().toLowerCase(Locale.ROOT).split(":");
+            if (parts.length != 2) {
+                continue;
+            }
+            try {
+                int height = Integer.parseInt(parts[0].replace("p", "").trim());
+                int kbps = Integer.parseInt(parts[1].replace("k", "").trim());
+                if (height > 0 && kbps > 0) {
+                    ladder.add(new HlsRendition(height + "p", height, kbps));
+                }
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        ladder.sort(Comparator.comparingInt(HlsRendition::height).reversed());
+        return ladder;
+    }
+
+    /**
+     * Drops rungs taller than the source: they would be upscaled, or repeat the top rung at the same
+     * size. A source below the lowest rung keeps that rung, scaled down to the source height.
+     */
+    public static List<HlsRendition> fitToSource(List<HlsRendition> ladder, int sourceHeight) {
+        List<HlsRendition> fitted = ladder.stream().filter(r -> r.height() <= sourceHeight).toList();
+        if (!fitted.isEmpty() || ladder.isEmpty()) {
+            return fitted;
+        }
+        HlsRendition lowest = ladder.get(ladder.size() - 1);
+        int height = sourceHeight & ~1;
+        return List.of(new HlsRendition(height + "p", height, lowest.videoKbps()));
+    }
+
+    /** Output width for a source of the given size, rounded to even like {@code scale=-2}. */
+    public int width(int sourceWidth, int sourceHeight) {
+        long scaled = Math.round((double) sourceWidth * height / sourceHeight);
+        return (int) Math.max(2, scaled & ~1L);
+    }
+
+    public String playlistName() {
+        return "index_" + name + ".m3u8";
+    }
+
+    /** Peak bandwidth for EXT-X-STREAM-INF: video plus 128k AAC, with maxrate headroom. */
+    public long bandwidth() {
+        return (long) (videoKbps * 1.1 + 128) * 1000L;
+    }
+}
@@ -0,0 +1,345 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bounded in-memory cache of live HLS playlists and segments.
+ *
+ * Every viewer polls the same playlist and downloads the same few segments, so we keep them in
+ * pooled Netty buffers and serve retained slices instead of going to disk once per viewer.
+ *
+ * {@link HlsSegmentWatcher} events drive admission: a segment is only cached once FFmpeg lists it in a
+ * playlist (it is complete) and is dropped again as soon as it rolls off ({@code delete_segments}). For
+ * streams that have viewers, playlists are refreshed and segments preloaded as soon as they are written;
+ * a short TTL on playlists and init segments remains as a safety net. A global byte budget evicts the
+ * oldest entries first, which matches the FIFO nature of a live window.
+ */
+@Service
+public class HlsSegmentCache {
+
+    private static final Logger log = LoggerFactory.getLogger(HlsSegmentCache.class);
+
+    private final FfmpegHlsService hls;
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final long playlistTtlNanos;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> listedSegments = new ConcurrentHashMap<>();
+    private final Set<String> hotStreams = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, Mono<Entry>> inflight = new ConcurrentHashMap<>();
+    /** Eviction order; keys removed meanwhile stay queued and are skipped when polled. */
+    private final ConcurrentLinkedQueue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+    /** Size of {@link #insertionOrder}, which is O(n) to ask the queue itself. */
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter rolloffEvictions;
+    private final Counter capacityEvictions;
+
+    public HlsSegmentCache(
+            FfmpegHlsService hls,
+            HlsSegmentWatcher watcher,
+            MeterRegistry meterRegistry,
+            @Value("${webrtc.hls.cache.max-bytes:268435456}") long maxBytes,
+            @Value("${webrtc.hls.cache.playlist-ttl-ms:500}") long playlistTtlMs) {
+        this.hls = hls;
+        this.maxBytes = Math.max(1L << 20, maxBytes);
+        this.maxEntryBytes = this.maxBytes / 4;
+        this.playlistTtlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(50, playlistTtlMs));
+
+        this.hits = Counter.builder("hls.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("hls.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.rolloffEvictions = Counter.builder("hls.cache.evictions").tag("reason", "rolloff")
+                .register(meterRegistry);
+        this.capacityEvictions = Counter.builder("hls.cache.evictions").tag("reason", "capacity")
+                .register(meterRegistry);
+        Gauge.builder("hls.cache.bytes", usedBytes, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("hls.cache.entries", entries, ConcurrentHashMap::size).register(meterRegistry);
+
+        watcher.events().subscribe(this::onSegmentEvent);
+    }
+
+    /**
+     * Returns the file content as a single buffer, or empty if the file does not exist.
+     * The buffer is retained for the caller; the HTTP writer releases it after sending.
+     */
+    public Mono<DataBuffer> get(String streamKey, String fileName) {
+        return Mono.defer(() -> {
+            Path path = hls.resolveFile(streamKey, fileName);
+            if (path == null) {
+                return Mono.empty();
+            }
+            // Only streams the watcher reported output for: any unauthenticated key can be requested.
+            if (listedSegments.containsKey(streamKey)) {
+                hotStreams.add(streamKey);
+            }
+
+            String key = key(streamKey, fileName);
+            Entry cached = entries.get(key);
+            if (cached != null && !cached.isStale()) {
+                DataBuffer buffer = cached.retainedBuffer();
+                if (buffer != null) {
+                    hits.increment();
+                    return Mono.just(buffer);
+                }
+            }
+
+            misses.increment();
+            if (!isMutable(fileName) && !isListed(streamKey, fileName)) {
+                // Not (yet) a complete, listed segment: serve it without caching.
+                return readUncached(path);
+            }
+            return load(key, streamKey, fileName, path)
+                    .flatMap(entry -> {
+                        DataBuffer buffer = entry.retainedBuffer();
+                        // Lost a race with eviction: fall back to a private copy.
+                        return buffer != null ? Mono.just(buffer) : readUncached(path);
+                    })
+                    .switchIfEmpty(Mono.defer(() -> isMutable(fileName) ? Mono.empty() : readUncached(path)));
+        });
+    }
+
+    /**
+     * Drops everything cached for a stream (e.g. after the pipeline has been stopped).
+     */
+    public void evictStream(String streamKey) {
+        String prefix = streamKey + "/";
+        Iterator<String> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            String key = it.next();
+            if (key.startsWith(prefix)) {
+                remove(key, rolloffEvictions);
+            }
+        }
+        listedSegments.remove(streamKey);
+        hotStreams.remove(streamKey);
+    }
+
+    private void onSegmentEvent(SegmentEvent event) {
+        String streamKey = event.streamKey();
+        switch (event.type()) {
+            case SEGMENT_READY -> {
+                listedSegments.computeIfAbsent(streamKey, k -> ConcurrentHashMap.newKeySet()).add(event.name());
+                // Nobody watching yet: load lazily on the first request instead.
+                if (hotStreams.contains(streamKey)) {
+                    preload(streamKey, event.name());
+                }
+            }
+            case PLAYLIST_UPDATED -> {
+                if (entries.containsKey(key(streamKey, event.name()))) {
+                    preload(streamKey, event.name());
+                }
+            }
+            case SEGMENT_REMOVED -> {
+                Set<String> listed = listedSegments.get(streamKey);
+                if (listed != null) {
+                    listed.remove(event.name());
+                }
+                remove(key(streamKey, event.name()), rolloffEvictions);
+            }
+            case STREAM_STOPPED -> evictStream(streamKey);
+        }
+    }
+
+    private void preload(String streamKey, String fileName) {
+        Path path = hls.resolveFile(streamKey, fileName);
+        if (path == null) {
+            return;
+        }
+        load(key(streamKey, fileName), streamKey, fileName, path)
+                .subscribe(entry -> {
+                }, e -> log.debug("HLS cache preload failed for {}/{}: {}", streamKey, fileName, e.toString()));
+    }
+
+    private Mono<Entry> load(String key, String streamKey, String fileName, Path path) {
+        // Single-flight: concurrent misses for the same file share one disk read.
+        return inflight.computeIfAbsent(key, k -> {
+            AtomicReference<Mono<Entry>> self = new AtomicReference<>();
+            Mono<Entry> read = Mono.fromCallable(() -> readEntry(key, streamKey, fileName, path))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    // Only this read's slot: a newer one may have taken the key over meanwhile.
+                    .doFinally(signal -> inflight.remove(k, self.get()))
+                    .cache();
+            self.set(read);
+            return read;
+        });
+    }
+
+    private Entry readEntry(String key, String streamKey, String fileName, Path path) throws IOException {
+        boolean mutable = isMutable(fileName);
+        ByteBuf buf = readFile(path);
+        if (buf == null) {
+            remove(key, rolloffEvictions);
+            return null;
+        }
+
+        if (!mutable && (!isListed(streamKey, fileName) || buf.readableBytes() > maxEntryBytes)) {
+            buf.release();
+            return null;
+        }
+
+        Entry entry = new Entry(buf, mutable);
+        put(key, entry);
+        return entry;
+    }
+
+    private boolean isListed(String streamKey, String fileName) {
+        Set<String> listed = listedSegments.get(streamKey);
+        return listed != null && listed.contains(fileName);
+    }
+
+    private void put(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            usedBytes.addAndGet(-previous.size);
+            previous.release();
+        } else {
+            insertionOrder.add(key);
+            queued.incrementAndGet();
+        }
+        usedBytes.addAndGet(entry.size);
+        enforceBudget();
+    }
+
+    private void enforceBudget() {
+        while (usedBytes.get() > maxBytes) {
+            String oldest = insertionOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            queued.decrementAndGet();
+            remove(oldest, capacityEvictions);
+        }
+        // Removed keys leave stale queue slots behind; keep the queue from outgrowing the map.
+        if (queued.get() > 2 * entries.size() + 64) {
+            insertionOrder.removeIf(key -> !entries.containsKey(key));
+            queued.set(insertionOrder.size());
+        }
+    }
+
+    private void remove(String key, Counter reason) {
+        Entry removed = entries.remove(key);
+        if (removed == null) {
+            return;
+        }
+        usedBytes.addAndGet(-removed.size);
+        removed.release();
+        reason.increment();
+    }
+
+    private Mono<DataBuffer> readUncached(Path path) {
+        return Mono.fromCallable(() -> {
+            ByteBuf buf = readFile(path);
+            return buf == null ? null : (DataBuffer) bufferFactory.wrap(buf);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static ByteBuf readFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("HLS file too large to cache: " + path);
+            }
+            ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer((int) size);
+            try {
+                long position = 0;
+                while (position < size) {
+                    int read = buf.writeBytes(channel, position, (int) (size - position));
+                    if (read < 0) {
+                        break;
+                    }
+                    position += read;
+                }
+                return buf;
+            } catch (IOException | RuntimeException e) {
+                buf.release();
+                throw e;
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Playlists and fMP4 init segments are rewritten in place, so they are refreshed after a TTL
+     * instead of being admitted through the playlist.
+     */
+    private static boolean isMutable(String fileName) {
+        return fileName.endsWith(".m3u8") || fileName.endsWith(".mp4");
+    }
+
+    private static String key(String streamKey, String fileName) {
+        return streamKey + "/" + fileName;
+    }
+
+    /**
+     * Owns one reference to its buffer. Readers get retained duplicates, taken under the same lock that
+     * gives the entry's reference up, so a reader can never retain a buffer the pool has already recycled.
+     * The memory goes back to the pool once the cache and the last reader have released it.
+     */
+    private final class Entry {
+        private final ByteBuf buf;
+        private final int size;
+        private final boolean mutable;
+        private final long loadedAtNanos = System.nanoTime();
+        private boolean released;
+
+        private Entry(ByteBuf buf, boolean mutable) {
+            this.buf = buf;
+            this.size = buf.readableBytes();
+            this.mutable = mutable;
+        }
+
+        boolean isStale() {
+            return mutable && System.nanoTime() - loadedAtNanos > playlistTtlNanos;
+        }
+
+        /**
+         * @return a retained view for one reader, or null if the entry was evicted meanwhile
+         */
+        synchronized DataBuffer retainedBuffer() {
+            if (released) {
+                return null;
+            }
+            return bufferFactory.wrap(buf.retainedDuplicate());
+        }
+
+        synchronized void release() {
+            if (!released) {
+                released = true;
+                buf.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Watches the whole HLS output directory with a single {@link WatchService} (inotify on Linux)
+ * and publishes {@link SegmentEvent}s per stream.
+ *
+ * A segment is reported as ready when FFmpeg lists it in the playlist, not when the file appears,
+ * because FFmpeg writes segments in place. Consumers (cache, readiness, LL-HLS, recording) subscribe
+ * here instead of scanning directories themselves.
+ */
+@Service
+public class HlsSegmentWatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(HlsSegmentWatcher.class);
+
+    private final Path outputRoot;
+
+    private final Sinks.Many<SegmentEvent> allEvents = Sinks.many().multicast().directBestEffort();
+    private final ConcurrentHashMap<String, Sinks.Many<SegmentEvent>> streamEvents = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> readySegments = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<WatchKey, String> watchedStreams = new ConcurrentHashMap<>();
+
+    private WatchService watchService;
+    private Thread watcherThread;
+
+    public HlsSegmentWatcher(@Value("${webrtc.hls.output-dir:./tmp/hls}") String outputDir) {
+        this.outputRoot = Path.of(outputDir).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Events for every stream.
+     */
+    public Flux<SegmentEvent> events() {
+        return allEvents.asFlux();
+    }
+
+    /**
+     * Events for a single stream. The flux completes when the pipeline stops ({@link #forget}), so
+     * subscribe again after a restart; {@link #events()} spans restarts.
+     */
+    public Flux<SegmentEvent> events(String streamKey) {
+        return sinkFor(streamKey).asFlux();
+    }
+
+    /**
+     * Signals that a stream's pipeline was stopped and releases its per-stream sink.
+     */
+    public void forget(String streamKey) {
+        readySegments.keySet().removeIf(k -> k.startsWith(streamKey + "/"));
+        emit(new SegmentEvent(streamKey, SegmentEvent.Type.STREAM_STOPPED, "", 0, Duration.ZERO, -1,
+                Instant.now()));
+        Sinks.Many<SegmentEvent> sink = streamEvents.remove(streamKey);
+        if (sink != null) {
+            sink.tryEmitComplete();
+        }
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        Files.createDirectories(outputRoot);
+        watchService = FileSystems.getDefault().newWatchService();
+        outputRoot.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(outputRoot, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                watchStreamDir(dir);
+            }
+        }
+
+        watcherThread = new Thread(this::runLoop, "hls-segment-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+        log.info("👀 Watching HLS output directory {}", outputRoot);
+    }
+
+    @PreDestroy
+    void stop() {
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException ignored) {
+        }
+        allEvents.tryEmitComplete();
+        streamEvents.values().forEach(Sinks.Many::tryEmitComplete);
+    }
+
+    private void runLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+
+            try {
+                String streamKey = watchedStreams.get(key);
+                if (streamKey == null) {
+                    handleRootEvents(key);
+                } else {
+                    handleStreamEvents(streamKey, key);
+                }
+            } catch (Exception e) {
+                log.warn("HLS watcher failed to process events: {}", e.toString());
+            }
+
+            if (!key.reset()) {
+                String gone = watchedStreams.remove(key);
+                if (gone != null) {
+                    readySegments.keySet().removeIf(k -> k.startsWith(gone + "/"));
+                }
+            }
+        }
+    }
+
+    private void handleRootEvents(WatchKey key) throws IOException {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                continue;
+            }
+            Path dir = outputRoot.resolve((Path) event.context());
+            if (Files.isDirectory(dir)) {
+                watchStreamDir(dir);
+            }
+        }
+    }
+
+    private void handleStreamEvents(String streamKey, WatchKey key) throws IOException {
+        Path dir = outputRoot.resolve(streamKey);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Lost events: re-read playlists so readers catch up.
+                rescanPlaylists(streamKey, dir);
+                continue;
+            }
+
+            String name = event.context().toString();
+            if (name.endsWith(".m3u8")) {
+                if (event.kind() != StandardWatchEventKinds.ENTRY_DELETE) {
+                    onPlaylistWritten(streamKey, dir, name);
+                }
+            } else if (isSegment(name) && event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                emit(new SegmentEvent(streamKey, SegmentEvent.Type.SEGMENT_REMOVED, name, 0, Duration.ZERO, -1,
+                        Instant.now()));
+            }
+        }
+    }
+
+    private void watchStreamDir(Path dir) throws IOException {
+        WatchKey key = dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        String streamKey = dir.getFileName().toString();
+        watchedStreams.put(key, streamKey);
+        rescanPlaylists(streamKey, dir);
+    }
+
+    private void rescanPlaylists(String streamKey, Path dir) throws IOException {
+        try (DirectoryStream<Path> playlists = Files.newDirectoryStream(dir, "*.m3u8")) {
+            for (Path playlist : playlists) {
+                onPlaylistWritten(streamKey, dir, playlist.getFileName().toString());
+            }
+        }
+    }
+
+    private void onPlaylistWritten(String streamKey, Path dir, String playlistName) throws IOException {
+        String content;
+        try {
+            content = Files.readString(dir.resolve(playlistName), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+
+        Set<String> seen = readySegments.computeIfAbsent(streamKey + "/" + playlistName, k -> new HashSet<>());
+        Set<String> listed = new HashSet<>();
+        long mediaSequence = 0;
+        long index = 0;
+        Duration targetDuration = Duration.ZERO;
+        Duration pendingDuration = Duration.ZERO;
+
+        for (String raw : content.split("\n")) {
+            String line = raw.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("#EXT-X-MEDIA-SEQUENCE:")) {
+                mediaSequence = parseLong(line.substring("#EXT-X-MEDIA-SEQUENCE:".length()));
+            } else if (line.startsWith("#EXT-X-TARGETDURATION:")) {
+                targetDuration = parseSeconds(line.substring("#EXT-X-TARGETDURATION:".length()));
+            } else if (line.startsWith("#EXTINF:")) {
+                String value = line.substring("#EXTINF:".length());
+                int comma = value.indexOf(',');
+                pendingDuration = parseSeconds(comma >= 0 ? value.substring(0, comma) : value);
+            } else if (line.startsWith("#EXT-X-STREAM-INF:")) {
+                // Master playlist: its URIs are media playlists, not segments.
+                break;
+            } else if (!line.startsWith("#")) {
+                int slash = line.lastIndexOf('/');
+                String segment = slash >= 0 ? line.substring(slash + 1) : line;
+                long sequence = mediaSequence + index++;
+                listed.add(segment);
+                if (!seen.contains(segment)) {
+                    emit(new SegmentEvent(streamKey, SegmentEvent.Type.SEGMENT_READY, segment,
+                            sizeOrZero(dir.resolve(segment)), pendingDuration, sequence, Instant.now()));
+                }
+                pendingDuration = Duration.ZERO;
+            }
+        }
+
+        // Only remember what is still listed so the set stays bounded by the live window.
+        seen.retainAll(listed);
+        seen.addAll(listed);
+
+        emit(new SegmentEvent(streamKey, SegmentEvent.Type.PLAYLIST_UPDATED, playlistName, content.length(),
+                targetDuration, mediaSequence + index - 1, Instant.now()));
+    }
+
+    private synchronized void emit(SegmentEvent event) {
+        allEvents.tryEmitNext(event);
+        Sinks.Many<SegmentEvent> sink = streamEvents.get(event.streamKey());
+        if (sink != null) {
+            sink.tryEmitNext(event);
+        }
+    }
+
+    private Sinks.Many<SegmentEvent> sinkFor(String streamKey) {
+        return streamEvents.computeIfAbsent(streamKey, k -> Sinks.many().multicast().directBestEffort());
+    }
+
+    private static boolean isSegment(String name) {
+        return name.endsWith(".ts") || name.endsWith(".m4s");
+    }
+
+    private static long sizeOrZero(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long parseLong(String raw) {
+        try {
+            return Long.parseLong(raw.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Duration parseSeconds(String raw) {
+        try {
+            return Duration.ofNanos((long) (Double.parseDouble(raw.trim()) * 1_000_000_000L));
+        } catch (NumberFormatException e) {
+            return Duration.ZERO;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.ourshop.streaming.webrtc.hls;
+
+/**
+ * Result of {@link FfmpegHlsService#start}.
+ *
+ * @param hlsUrl    public master playlist URL, or {@code null} when the pipeline was not started
+ * @param admission scheduler decision for the stream
+ * @param ready     whether the first segment was already available when the result was produced
+ */
+public record HlsStartResult(String hlsUrl, HlsAdmission admission, boolean ready) {
+}
@@ -0,0 +1,329 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Node-wide admission control for FFmpeg encoders.
+ *
+ * Every HLS pipeline reserves its estimated CPU cost against a core budget before FFmpeg starts. When
+ * the full profile does not fit, the ABR ladder is downgraded (highest rungs dropped first); when not
+ * even the cheapest profile fits, the request waits in a bounded FIFO queue until another stream
+ * releases capacity, and is rejected when the queue is full or the wait times out.
+ *
+ * Cost estimates start from a pixel-rate model and are replaced by the measured average CPU of
+ * finished streams with the same profile (see {@link FfmpegCpuMeter}).
+ */
+@Service
+public class HlsTranscodeScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(HlsTranscodeScheduler.class);
+
+    /** Remuxing costs next to nothing; still counted so thousands of them cannot pile up unnoticed. */
+    private static final double PASSTHROUGH_CORES = 0.05;
+    /** Decode + rotate share of a ladder, relative to one 1080p encode. */
+    private static final double LADDER_DECODE_SHARE = 0.15;
+    private static final double CALIBRATION_WEIGHT = 0.3;
+
+    private final double coreBudget;
+    private final double coresPer1080p;
+    private final int maxQueue;
+    private final Duration queueTimeout;
+
+    // Guarded by this
+    private final Map<String, Reservation> reservations = new HashMap<>();
+    private final Deque<Waiter> queue = new ArrayDeque<>();
+    private long nextReservationId = 1;
+    private volatile double reservedCores;
+
+    private final ConcurrentHashMap<String, Double> measuredCost = new ConcurrentHashMap<>();
+
+    private final Map<HlsAdmission.Decision, Counter> decisions = new EnumMap<>(HlsAdmission.Decision.class);
+    private final Timer queueWait;
+
+    public HlsTranscodeScheduler(
+            @Value("${webrtc.hls.scheduler.core-budget:0}") double coreBudget,
+            @Value("${webrtc.hls.scheduler.cores-per-1080p:1.5}") double coresPer1080p,
+            @Value("${webrtc.hls.scheduler.max-queue:8}") int maxQueue,
+            @Value("${webrtc.hls.scheduler.queue-timeout-ms:10000}") long queueTimeoutMs,
+            MeterRegistry meterRegistry) {
+        // Default: leave 20% of the node for Netty, R2DBC and the JVM itself.
+        this.coreBudget = coreBudget > 0 ? coreBudget : Runtime.getRuntime().availableProcessors() * 0.8;
+        this.coresPer1080p = coresPer1080p > 0 ? coresPer1080p : 1.5;
+        this.maxQueue = Math.max(0, maxQueue);
+        this.queueTimeout = Duration.ofMillis(Math.max(0, queueTimeoutMs));
+
+        for (HlsAdmission.Decision d : HlsAdmission.Decision.values()) {
+            decisions.put(d, Counter.builder("hls.scheduler.decisions")
+                    .description("Transcoding admission decisions")
+                    .tag("decision", d.value())
+                    .register(meterRegistry));
+        }
+        this.queueWait = Timer.builder("hls.scheduler.queue_wait")
+                .description("Time HLS pipelines waited for encoder capacity")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("hls.scheduler.cores.budget", () -> this.coreBudget).register(meterRegistry);
+        Gauge.builder("hls.scheduler.cores.reserved", () -> reservedCores).register(meterRegistry);
+        Gauge.builder("hls.scheduler.active", this::activeCount).register(meterRegistry);
+        Gauge.builder("hls.scheduler.queued", this::queuedCount).register(meterRegistry);
+
+        log.info("⚖️ HLS transcode budget: {} cores (≈{} cores per 1080p encode)",
+                String.format("%.1f", this.coreBudget), this.coresPer1080p);
+    }
+
+    /**
+     * Reserves capacity for a stream, waiting in the queue if needed. Never errors: lack of capacity is
+     * reported as {@link HlsAdmission.Decision#REJECTED}.
+     *
+     * @param ladder full ABR ladder for this stream, or empty for single-rendition outputs
+     */
+    public Mono<HlsAdmission> admit(String streamKey, HlsOutputMode mode, HlsVideoMode videoMode,
+            List<HlsRendition> ladder) {
+        return Mono.defer(() -> {
+            Request request = new Request(streamKey, mode, videoMode, ladder, System.nanoTime());
+            Waiter waiter;
+            synchronized (this) {
+                // A restart of the same stream replaces its previous reservation; queued streams get
+                // the freed capacity first, as on release.
+                Reservation previous = reservations.remove(streamKey);
+                if (previous != null) {
+                    reservedCores -= previous.cores();
+                    drainQueue();
+                }
+
+                HlsAdmission admission = tryReserve(request, false);
+                if (admission == null && queue.size() >= maxQueue) {
+                    admission = HlsAdmission.rejected(Duration.ZERO);
+                }
+                if (admission != null) {
+                    record(streamKey, admission);
+                    return Mono.just(admission);
+                }
+
+                waiter = new Waiter(request);
+                queue.addLast(waiter);
+            }
+
+            log.info("⏳ Encoder budget exhausted, {} queued for HLS ({} waiting)", streamKey, queuedCount());
+            return waiter.sink.asMono()
+                    .timeout(queueTimeout, Mono.defer(() -> onQueueTimeout(waiter)))
+                    .doOnCancel(() -> abandon(waiter));
+        });
+    }
+
+    /**
+     * Releases a stream's reservation and hands the freed capacity to queued streams.
+     *
+     * @param measuredCores lifetime average CPU of the stream, or a negative value if unknown
+     */
+    public void release(String streamKey, long reservationId, double measuredCores) {
+        synchronized (this) {
+            Reservation reservation = reservations.get(streamKey);
+            if (reservation == null || reservation.id() != reservationId) {
+                return;
+            }
+            reservations.remove(streamKey);
+            reservedCores -= reservation.cores();
+            if (measuredCores > 0) {
+                measuredCost.merge(reservation.profile(), measuredCores,
+                        (old, now) -> old + CALIBRATION_WEIGHT * (now - old));
+            }
+            drainQueue();
+        }
+    }
+
+    /**
+     * Drops a stream that is still waiting in the queue (publisher left before it got capacity).
+     */
+    public void cancelQueued(String streamKey) {
+        List<Waiter> cancelled = new ArrayList<>();
+        synchronized (this) {
+            queue.removeIf(w -> {
+                if (w.request.streamKey().equals(streamKey)) {
+                    cancelled.add(w);
+                    return true;
+                }
+                return false;
+            });
+        }
+        for (Waiter w : cancelled) {
+            HlsAdmission rejected = HlsAdmission.rejected(w.request.waited());
+            record(streamKey, rejected);
+            w.sink.tryEmitValue(rejected);
+        }
+    }
+
+    private Mono<HlsAdmission> onQueueTimeout(Waiter waiter) {
+        synchronized (this) {
+            if (!queue.remove(waiter)) {
+                // Granted concurrently: the value is already in the sink.
+                return waiter.sink.asMono();
+            }
+        }
+        HlsAdmission rejected = HlsAdmission.rejected(waiter.request.waited());
+        log.warn("⛔ No encoder capacity for {} after {}ms, HLS rejected",
+                waiter.request.streamKey(), queueTimeout.toMillis());
+        record(waiter.request.streamKey(), rejected);
+        return Mono.just(rejected);
+    }
+
+    private void abandon(Waiter waiter) {
+        synchronized (this) {
+            if (queue.remove(waiter)) {
+                return;
+            }
+        }
+        HlsAdmission granted = waiter.granted;
+        if (granted != null && granted.admitted()) {
+            release(waiter.request.streamKey(), granted.reservationId(), -1);
+        }
+    }
+
+    // Caller holds the lock.
+    private void drainQueue() {
+        while (!queue.isEmpty()) {
+            Waiter head = queue.peekFirst();
+            HlsAdmission admission = tryReserve(head.request, true);
+            if (admission == null) {
+                // FIFO: later (possibly cheaper) requests do not overtake the head.
+                return;
+            }
+            queue.pollFirst();
+            head.granted = admission;
+            record(head.request.streamKey(), admission);
+            head.sink.tryEmitValue(admission);
+        }
+    }
+
+    // Caller holds the lock.
+    private HlsAdmission tryReserve(Request request, boolean fromQueue) {
+        List<List<HlsRendition>> profiles = profiles(request.ladder());
+        for (int i = 0; i < profiles.size(); i++) {
+            List<HlsRendition> renditions = profiles.get(i);
+            String profile = profileKey(request, renditions);
+            double cost = estimate(request, renditions, profile);
+
+            // A single stream always fits on an idle node, even if its estimate exceeds the budget.
+            if (reservedCores + cost <= coreBudget || reservations.isEmpty()) {
+                long id = nextReservationId++;
+                reservations.put(request.streamKey(), new Reservation(id, profile, cost));
+                reservedCores += cost;
+
+                HlsAdmission.Decision decision = fromQueue
+                        ? HlsAdmission.Decision.QUEUED
+                        : i == 0 ? HlsAdmission.Decision.ADMITTED : HlsAdmission.Decision.DOWNGRADED;
+                return new HlsAdmission(decision, renditions, cost, request.waited(), id);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Candidate profiles from best to cheapest: the full ladder, then without its top rung, and so on.
+     */
+    private static List<List<HlsRendition>> profiles(List<HlsRendition> ladder) {
+        if (ladder.isEmpty()) {
+            return List.of(List.of());
+        }
+        List<List<HlsRendition>> result = new ArrayList<>(ladder.size());
+        for (int drop = 0; drop < ladder.size(); drop++) {
+            result.add(List.copyOf(ladder.subList(drop, ladder.size())));
+        }
+        return result;
+    }
+
+    private static String profileKey(Request request, List<HlsRendition> renditions) {
+        if (request.videoMode() == HlsVideoMode.PASSTHROUGH) {
+            return "passthrough";
+        }
+        if (request.mode() == HlsOutputMode.LOW_LATENCY) {
+            return "ll";
+        }
+        if (renditions.isEmpty()) {
+            return "transcode";
+        }
+        return "abr:" + renditions.stream().map(HlsRendition::name).collect(Collectors.joining("+"));
+    }
+
+    private double estimate(Request request, List<HlsRendition> renditions, String profile) {
+        Double measured = measuredCost.get(profile);
+        if (measured != null) {
+            return measured;
+        }
+        if (request.videoMode() == HlsVideoMode.PASSTHROUGH) {
+            return PASSTHROUGH_CORES;
+        }
+        if (renditions.isEmpty()) {
+            // Source resolution is unknown; assume a 1080p publisher.
+            return coresPer1080p;
+        }
+        double cores = coresPer1080p * LADDER_DECODE_SHARE;
+        for (HlsRendition r : renditions) {
+            double scale = r.height() / 1080.0;
+            cores += coresPer1080p * scale * scale;
+        }
+        return cores;
+    }
+
+    private void record(String streamKey, HlsAdmission admission) {
+        decisions.get(admission.decision()).increment();
+        queueWait.record(admission.queueWait());
+        if (admission.decision() == HlsAdmission.Decision.DOWNGRADED) {
+            log.warn("⚖️ Encoder budget tight, {} downgraded to {} ({} cores)", streamKey,
+                    admission.renditions().stream().map(HlsRendition::name).toList(),
+                    String.format("%.2f", admission.estimatedCores()));
+        } else if (admission.decision() == HlsAdmission.Decision.REJECTED) {
+            log.warn("⛔ HLS rejected for {}: encoder budget of {} cores exhausted", streamKey,
+                    String.format("%.1f", coreBudget));
+        }
+    }
+
+    private synchronized int activeCount() {
+        return reservations.size();
+    }
+
+    private synchronized int queuedCount() {
+        return queue.size();
+    }
+
+    private record Request(String streamKey, HlsOutputMode mode, HlsVideoMode videoMode,
+            List<HlsRendition> ladder, long requestedAtNanos) {
+
+        Duration waited() {
+            return Duration.ofNanos(System.nanoTime() - requestedAtNanos);
+        }
+    }
+
+    private record Reservation(long id, String profile, double cores) {
+    }
+
+    private static final class Waiter {
+        private final Request request;
+        private final Sinks.One<HlsAdmission> sink = Sinks.one();
+        private volatile HlsAdmission granted;
+
+        Waiter(Request request) {
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.ourshop.streaming.webrtc.hls;
+
+/**
+ * How the video track of a stream is processed by the HLS pipeline.
+ */
+public enum HlsVideoMode {
+
+    /** Decode and re-encode with libx264 (needed for non-H.264 publishers and pixel rotation). */
+    TRANSCODE,
+
+    /** Remux the publisher's H.264 as-is; rotation is signalled via the display matrix. */
+    PASSTHROUGH
+}
@@ -0,0 +1,313 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Serves LL-HLS playlists for streams packaged in {@link HlsOutputMode#LOW_LATENCY}.
+ *
+ * FFmpeg's HLS muxer cannot emit EXT-X-PART, so it writes short fMP4 fragments ("parts") to an
+ * internal playlist and we build the public one: every {@code partsPerSegment} parts form a
+ * segment (served as the concatenation of its parts), the newest segments also list their
+ * parts, and a preload hint points at the next part.
+ *
+ * Blocking playlist reload ({@code _HLS_msn}/{@code _HLS_part}) and preload-hint requests park
+ * on the segment watcher until the requested part exists. A reload still parked after three
+ * target durations fails rather than answering with a playlist the client already has.
+ */
+@Service
+public class LowLatencyHlsService {
+
+    /** Number of trailing segments whose parts are listed. */
+    private static final int SEGMENTS_WITH_PARTS = 3;
+
+    private final FfmpegHlsService hls;
+    private final HlsSegmentCache cache;
+    private final double partSeconds;
+    private final int partsPerSegment;
+    private final Duration blockTimeout;
+
+    private final ConcurrentHashMap<String, LlStream> streams = new ConcurrentHashMap<>();
+
+    private final Timer blockingReloadWait;
+
+    public LowLatencyHlsService(
+            FfmpegHlsService hls,
+            HlsSegmentCache cache,
+            HlsSegmentWatcher watcher,
+            MeterRegistry meterRegistry) {
+        this.hls = hls;
+        this.cache = cache;
+        this.partSeconds = hls.llPartSeconds();
+        this.partsPerSegment = hls.llPartsPerSegment();
+        // RFC 8216bis: servers should answer a blocked reload within three target durations.
+        this.blockTimeout = Duration.ofMillis((long) (partSeconds * partsPerSegment * 3 * 1000));
+
+        this.blockingReloadWait = Timer.builder("hls.ll.blocking_wait")
+                .description("Time LL-HLS requests were parked waiting for a part")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        watcher.events().subscribe(this::onSegmentEvent);
+    }
+
+    public boolean isLowLatency(String streamKey) {
+        return streams.containsKey(streamKey);
+    }
+
+    /**
+     * Renders the LL-HLS media playlist, first waiting for the requested media sequence / part
+     * when a blocking reload was requested.
+     *
+     * @param msn  {@code _HLS_msn} or {@code null}
+     * @param part {@code _HLS_part} or {@code null}
+     * @return the playlist, or a {@link TimeoutException} when the requested part did not appear in
+     *         time (the packager stalled)
+     */
+    public Mono<String> playlist(String streamKey, Long msn, Integer part) {
+        LlStream stream = streams.get(streamKey);
+        if (stream == null) {
+            return Mono.empty();
+        }
+        if (msn == null) {
+            return Mono.fromSupplier(stream::render);
+        }
+        if (msn < 0 || (part != null && part < 0)) {
+            return Mono.error(new IllegalArgumentException("Invalid _HLS_msn/_HLS_part"));
+        }
+
+        long required = part == null
+                ? (msn + 1) * partsPerSegment - 1
+                : msn * partsPerSegment + part;
+        if (required > stream.lastSequence() + 2L * partsPerSegment) {
+            // More than two segments ahead of the live edge: the client is confused.
+            return Mono.error(new IllegalArgumentException("_HLS_msn is too far ahead of the live edge"));
+        }
+
+        return awaitPart(stream, required)
+                .then(Mono.fromSupplier(stream::render));
+    }
+
+    /**
+     * Serves a part, parking preload-hint requests until the part is written.
+     */
+    public Mono<DataBuffer> part(String streamKey, String fileName) {
+        LlStream stream = streams.get(streamKey);
+        long sequence = parseSequence(fileName, FfmpegHlsService.LL_PART_PREFIX);
+        if (stream == null || sequence < 0) {
+            return cache.get(streamKey, fileName);
+        }
+        if (sequence > stream.lastSequence() + partsPerSegment) {
+            return Mono.empty();
+        }
+        return awaitPart(stream, sequence)
+                .onErrorResume(e -> Mono.empty())
+                .then(cache.get(streamKey, fileName));
+    }
+
+    /**
+     * Serves a full segment as the concatenation of its parts; empty if any part is missing.
+     */
+    public Mono<List<DataBuffer>> segment(String streamKey, String fileName) {
+        LlStream stream = streams.get(streamKey);
+        long msn = parseSequence(fileName, "seg_");
+        if (stream == null || msn < 0) {
+            return Mono.empty();
+        }
+
+        List<String> partNames = stream.partNames(msn);
+        if (partNames.size() != partsPerSegment) {
+            return Mono.empty();
+        }
+        return Flux.fromIterable(partNames)
+                .concatMap(name -> cache.get(streamKey, name))
+                .collectList()
+                .flatMap(buffers -> {
+                    if (buffers.size() != partsPerSegment) {
+                        buffers.forEach(DataBufferUtils::release);
+                        return Mono.empty();
+                    }
+                    return Mono.just(buffers);
+                });
+    }
+
+    private Mono<Void> awaitPart(LlStream stream, long sequence) {
+        if (stream.lastSequence() >= sequence) {
+            return Mono.empty();
+        }
+        long startNanos = System.nanoTime();
+        return stream.latest.asFlux()
+                .filter(last -> last >= sequence)
+                .next()
+                .timeout(blockTimeout)
+                .doFinally(signal -> blockingReloadWait.record(Duration.ofNanos(System.nanoTime() - startNanos)))
+                .then();
+    }
+
+    private void onSegmentEvent(SegmentEvent event) {
+        String name = event.name();
+        switch (event.type()) {
+            case SEGMENT_READY -> {
+                if (name.startsWith(FfmpegHlsService.LL_PART_PREFIX)) {
+                    // The part is complete once listed; its first moof is a few hundred bytes.
+                    Path path = hls.resolveFile(event.streamKey(), name);
+                    boolean independent = path != null && Fmp4Fragments.startsWithSyncSample(path);
+                    streams.computeIfAbsent(event.streamKey(), k -> new LlStream())
+                            .add(event.sequence(), name, event.duration(), independent);
+                }
+            }
+            case SEGMENT_REMOVED -> {
+                LlStream stream = streams.get(event.streamKey());
+                if (stream != null && name.startsWith(FfmpegHlsService.LL_PART_PREFIX)) {
+                    stream.remove(parseSequence(name, FfmpegHlsService.LL_PART_PREFIX));
+                }
+            }
+            case PLAYLIST_UPDATED -> {
+                LlStream stream = streams.get(event.streamKey());
+                if (stream != null && FfmpegHlsService.LL_PARTS_PLAYLIST.equals(name)) {
+                    stream.latest.tryEmitNext(stream.lastSequence());
+                }
+            }
+            case STREAM_STOPPED -> {
+                LlStream stream = streams.remove(event.streamKey());
+                if (stream != null) {
+                    stream.latest.tryEmitComplete();
+                }
+            }
+        }
+    }
+
+    private static long parseSequence(String fileName, String prefix) {
+        if (fileName == null || !fileName.startsWith(prefix)) {
+            return -1;
+        }
+        int dot = fileName.indexOf('.', prefix.length());
+        try {
+            return Long.parseLong(fileName.substring(prefix.length(), dot < 0 ? fileName.length() : dot));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param independent the part starts with a keyframe (checked in the fragment, not assumed)
+     */
+    private record Part(String name, double seconds, boolean independent) {
+    }
+
+    private final class LlStream {
+        private final NavigableMap<Long, Part> parts = new TreeMap<>();
+        private final Sinks.Many<Long> latest = Sinks.many().replay().latest();
+
+        synchronized void add(long sequence, String name, Duration duration, boolean independent) {
+            if (!parts.isEmpty() && sequence < parts.lastKey() - (long) partsPerSegment * SEGMENTS_WITH_PARTS) {
+                // FFmpeg restarted and numbering began again: drop the old timeline.
+                parts.clear();
+            }
+            parts.put(sequence, new Part(name, duration.toNanos() / 1_000_000_000.0, independent));
+        }
+
+        synchronized void remove(long sequence) {
+            parts.remove(sequence);
+        }
+
+        synchronized long lastSequence() {
+            return parts.isEmpty() ? -1 : parts.lastKey();
+        }
+
+        synchronized List<String> partNames(long msn) {
+            long first = msn * partsPerSegment;
+            return parts.subMap(first, true, first + partsPerSegment - 1, true).values().stream()
+                    .map(Part::name)
+                    .toList();
+        }
+
+        synchronized String render() {
+            StringBuilder sb = new StringBuilder(1024);
+            sb.append("#EXTM3U\n");
+            sb.append("#EXT-X-VERSION:9\n");
+
+            if (parts.isEmpty()) {
+                appendHeader(sb, partSeconds * partsPerSegment, 0);
+                return sb.toString();
+            }
+
+            long firstSegment = Math.floorDiv(parts.firstKey() + partsPerSegment - 1, partsPerSegment);
+            long last = parts.lastKey();
+            long lastComplete = (last + 1) / partsPerSegment - 1;
+
+            double longest = partSeconds * partsPerSegment;
+            for (long msn = firstSegment; msn <= lastComplete; msn++) {
+                longest = Math.max(longest, segmentSeconds(msn));
+            }
+            appendHeader(sb, longest, firstSegment);
+
+            for (long msn = firstSegment; msn <= last / partsPerSegment; msn++) {
+                boolean complete = msn <= lastComplete;
+                if (!complete || msn > lastComplete - SEGMENTS_WITH_PARTS) {
+                    long from = msn * partsPerSegment;
+                    long to = Math.min(from + partsPerSegment - 1, last);
+                    for (long seq = from; seq <= to; seq++) {
+                        Part p = parts.get(seq);
+                        if (p == null) {
+                            continue;
+                        }
+                        sb.append("#EXT-X-PART:DURATION=").append(format(p.seconds()))
+                                .append(",URI=\"").append(p.name()).append('"');
+                        if (p.independent()) {
+                            sb.append(",INDEPENDENT=YES");
+                        }
+                        sb.append('\n');
+                    }
+                }
+                if (complete) {
+                    sb.append("#EXTINF:").append(format(segmentSeconds(msn))).append(",\n");
+                    sb.append(String.format(Locale.ROOT, "seg_%05d.m4s", msn)).append('\n');
+                }
+            }
+
+            sb.append("#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"")
+                    .append(String.format(Locale.ROOT, "%s%05d.m4s", FfmpegHlsService.LL_PART_PREFIX, last + 1))
+                    .append("\"\n");
+            return sb.toString();
+        }
+
+        private void appendHeader(StringBuilder sb, double targetSeconds, long mediaSequence) {
+            sb.append("#EXT-X-TARGETDURATION:").append((long) Math.ceil(targetSeconds)).append('\n');
+            sb.append("#EXT-X-PART-INF:PART-TARGET=").append(format(partSeconds)).append('\n');
+            sb.append("#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES,PART-HOLD-BACK=")
+                    .append(format(partSeconds * 3)).append('\n');
+            sb.append("#EXT-X-MEDIA-SEQUENCE:").append(mediaSequence).append('\n');
+            sb.append("#EXT-X-MAP:URI=\"").append(FfmpegHlsService.FMP4_INIT_SEGMENT).append("\"\n");
+        }
+
+        private double segmentSeconds(long msn) {
+            double total = 0;
+            for (Map.Entry<Long, Part> e : parts.subMap(msn * partsPerSegment, true,
+                    msn * partsPerSegment + partsPerSegment - 1, true).entrySet()) {
+                total += e.getValue().seconds();
+            }
+            return total;
+        }
+    }
+
+    private static String format(double seconds) {
+        return String.format(Locale.ROOT, "%.3f", seconds);
+    }
+}
@@ -3,6 +3,7 @@ package com.ourshop.streaming.webrtc.hls;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -102,6 +103,22 @@ final class SdpRtpForwardParser {
         return pt;
     }
 
+    /**
+     * The {@code a=fmtp} line of the section's first payload type mapped to {@code codec}, or {@code null}.
+     */
+    static String fmtp(Section section, String codec) {
+        String encoding = codec.toLowerCase(Locale.ROOT) + "/";
+        for (String pt : section.payloadTypes()) {
+            List<String> attributes = section.attributes().getOrDefault(pt, List.of());
+            boolean matches = attributes.stream().anyMatch(a -> a.startsWith("a=rtpmap:")
+                    && a.toLowerCase(Locale.ROOT).contains(" " + encoding));
+            if (matches) {
+                return attributes.stream().filter(a -> a.startsWith("a=fmtp:")).findFirst().orElse(null);
+            }
+        }
+        return null;
+    }
+
     record ParsedSdp(Section audio, Section video) {
     }
 
@@ -0,0 +1,37 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Something changed in a stream's HLS output directory.
+ *
+ * @param streamKey stream whose output directory changed
+ * @param type      what happened
+ * @param name      file name relative to the stream directory (segment or playlist)
+ * @param size      file size in bytes (0 for removals)
+ * @param duration  segment duration from {@code #EXTINF}, or the playlist target duration
+ * @param sequence  media sequence number of the segment, or of the newest segment for playlist updates
+ * @param timestamp when the change was observed
+ */
+public record SegmentEvent(
+        String streamKey,
+        Type type,
+        String name,
+        long size,
+        Duration duration,
+        long sequence,
+        Instant timestamp
+) {
+
+    public enum Type {
+        /** Segment is complete and listed in its playlist. */
+        SEGMENT_READY,
+        /** Segment was deleted from disk (rolled off the live window). */
+        SEGMENT_REMOVED,
+        /** Playlist was rewritten. */
+        PLAYLIST_UPDATED,
+        /** The stream's pipeline was stopped; no further events until it restarts. */
+        STREAM_STOPPED
+    }
+}
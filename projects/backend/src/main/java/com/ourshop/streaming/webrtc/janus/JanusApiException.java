@@ -0,0 +1,21 @@
+package com.ourshop.streaming.webrtc.janus;
+
+/**
+ * Janus answered with {@code "janus": "error"}. Janus itself is up; the request was refused.
+ */
+public class JanusApiException extends IllegalStateException {
+
+    private final long code;
+
+    public JanusApiException(long code, String reason) {
+        super(code > 0 ? "Janus error (" + code + "): " + reason : "Janus error: " + reason);
+        this.code = code;
+    }
+
+    /**
+     * @return Janus error code, or 0 if none was given
+     */
+    public long code() {
+        return code;
+    }
+}
@@ -0,0 +1,171 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Count-based circuit breaker for one Janus node.
+ *
+ * CLOSED: calls pass and the last {@code WINDOW} outcomes are kept; once {@code failureRatePercent} of
+ * them (at least {@code MIN_CALLS}) failed it opens. OPEN: calls are refused for {@code openSeconds}.
+ * HALF_OPEN: {@code HALF_OPEN_CALLS} trial calls pass; all succeeding closes it, any failure reopens.
+ *
+ * Only transport trouble (timeouts, connection errors, HTTP errors) counts as failure; a Janus error
+ * reply means Janus is alive and counts as success.
+ */
+final class JanusCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(JanusCircuitBreaker.class);
+
+    private static final int WINDOW = 20;
+    private static final int MIN_CALLS = 10;
+    private static final int HALF_OPEN_CALLS = 3;
+
+    enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    /** Admission of one call, stamped with the breaker state it was admitted under. */
+    record Permit(long generation, boolean trial) {
+    }
+
+    private final String node;
+    private final int failureRatePercent;
+    private final long openNanos;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean[] outcomes = new boolean[WINDOW];
+    private int next;
+    private int recorded;
+    private int failures;
+
+    private State state = State.CLOSED;
+    /** Bumped on every transition. */
+    private long generation;
+    private long openedAt;
+    private int trialsInFlight;
+    private int trialSuccesses;
+
+    JanusCircuitBreaker(String node, int failureRatePercent, long openSeconds, MeterRegistry meterRegistry) {
+        this.node = node;
+        this.failureRatePercent = Math.min(100, Math.max(1, failureRatePercent));
+        this.openNanos = TimeUnit.SECONDS.toNanos(Math.max(1, openSeconds));
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("janus.breaker.state", this, breaker -> breaker.state().ordinal())
+                .description("Janus circuit breaker state (0 closed, 1 half-open, 2 open)")
+                .tag("node", node)
+                .register(meterRegistry);
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    /**
+     * @return the permit for a call that may go out now, or null if it is refused; every permit must end
+     * in exactly one of {@link #onSuccess}, {@link #onFailure} or {@link #release}
+     */
+    synchronized Permit tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return null;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsInFlight >= HALF_OPEN_CALLS) {
+                return null;
+            }
+            trialsInFlight++;
+            return new Permit(generation, true);
+        }
+        return new Permit(generation, false);
+    }
+
+    /**
+     * Outcomes of calls admitted before the last transition are ignored: they say nothing about the
+     * state the breaker is in now, and were never counted as trials of it.
+     */
+    synchronized void onSuccess(Permit permit) {
+        if (permit.generation() != generation) {
+            return;
+        }
+        if (permit.trial()) {
+            trialsInFlight--;
+            if (++trialSuccesses >= HALF_OPEN_CALLS) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        record(false);
+    }
+
+    synchronized void onFailure(Permit permit) {
+        if (permit.generation() != generation) {
+            return;
+        }
+        if (permit.trial()) {
+            trialsInFlight--;
+            transition(State.OPEN);
+            return;
+        }
+        record(true);
+        if (recorded >= MIN_CALLS && failures * 100 >= failureRatePercent * recorded) {
+            transition(State.OPEN);
+        }
+    }
+
+    /**
+     * An admitted call ended without an outcome (cancelled, or refused by the bulkhead).
+     */
+    synchronized void release(Permit permit) {
+        if (permit.generation() == generation && permit.trial()) {
+            trialsInFlight--;
+        }
+    }
+
+    private void record(boolean failed) {
+        if (recorded == WINDOW) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = (next + 1) % WINDOW;
+    }
+
+    private void transition(State to) {
+        State from = state;
+        state = to;
+        generation++;
+        switch (to) {
+            case OPEN -> {
+                openedAt = System.nanoTime();
+                log.warn("Janus circuit for node '{}' OPEN ({} -> {}, {}/{} recent calls failed)", node, from, to,
+                        failures, recorded);
+            }
+            case HALF_OPEN -> {
+                trialsInFlight = 0;
+                trialSuccesses = 0;
+                log.info("Janus circuit for node '{}' HALF_OPEN, sending trial calls", node);
+            }
+            case CLOSED -> {
+                next = 0;
+                recorded = 0;
+                failures = 0;
+                log.info("Janus circuit for node '{}' CLOSED", node);
+            }
+        }
+        meterRegistry.counter("janus.breaker.transitions", "node", node, "from", from.name().toLowerCase(),
+                "to", to.name().toLowerCase()).increment();
+    }
+}
@@ -1,20 +1,33 @@
 package com.ourshop.streaming.webrtc.janus;
 
-import tools.jackson.databind.JsonNode;
 import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ArrayNode;
 import tools.jackson.databind.node.ObjectNode;
+import com.ourshop.streaming.webrtc.errors.JanusUnavailableException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.BodyInserters;
-import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
+import java.net.URI;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Minimal Janus HTTP API client.
@@ -24,35 +37,339 @@ import java.util.UUID;
  * 2) attach videoroom plugin
  * 3) send message + JSEP offer (joinandconfigure)
  * 4) poll events until an event with jsep answer arrives
+ *
+ * Requests go over the HTTP API, or over a few persistent WebSocket connections when
+ * {@code janus.websocket.url} is set; the API is the same either way.
+ *
+ * With {@code janus.nodes} set the client fronts several Janus instances. New sessions are placed on
+ * the least-loaded healthy node, or by consistent hash of a placement key (the stream id) when
+ * {@code janus.placement=hash}; every later call is routed to the node that owns the session id. Nodes
+ * are pinged periodically and the ones that stop answering are published on {@link #nodeFailures()}
+ * so owners of their sessions can fail over.
+ *
+ * Over HTTP every live session parks one long-poll ({@link JanusEventBus}), so a node's polls pool is
+ * sized from {@code janus.sessions.max-per-node} plus the ready pool unless set explicitly. Sessions
+ * beyond it wait for a connection and get their events late; use the WebSocket transport, which
+ * multiplexes every session's events over its few connections, when a node carries more.
  */
 @Service
 public class JanusClient {
 
     private static final Logger log = LoggerFactory.getLogger(JanusClient.class);
 
-    private final WebClient webClient;
+    static final String DEFAULT_NODE = "default";
+
     private final ObjectMapper mapper = new ObjectMapper();
+    /** Ceiling for operations without their own timeout (keepalive, detach, destroy, ...). */
     private final Duration timeout;
+    /** Ceilings of the per-node adaptive timeouts, by operation. */
+    private final Map<String, Duration> timeoutCeilings;
+    private final int breakerFailureRatePercent;
+    private final long breakerOpenSeconds;
+    private final int bulkheadMaxConcurrent;
+    private final int httpCommandConnections;
+    private final int httpPollConnections;
+    private final Duration httpMaxIdle;
+    private final Duration httpAcquireTimeout;
     private final String adminKey;
+    private final MeterRegistry meterRegistry;
+    private final List<JanusNode> nodes;
+    private final boolean hashPlacement;
+    private final int maxFailedProbes;
+    /** Owning node per Janus session id. */
+    private final ConcurrentHashMap<Long, JanusNode> sessionNodes = new ConcurrentHashMap<>();
+    /** Last successful exchange per session (System.nanoTime); any request resets Janus' session timer. */
+    private final ConcurrentHashMap<Long, Long> sessionActivity = new ConcurrentHashMap<>();
+    private final Sinks.Many<String> nodeFailures = Sinks.many().multicast().directBestEffort();
+    private final Disposable healthProbe;
 
     public JanusClient(
             @Value("${janus.url:http://localhost:8088}") String janusUrl,
             @Value("${janus.api.timeout-seconds:30}") int timeoutSeconds,
-            @Value("${janus.admin-key:}") String adminKey) {
-        this.webClient = WebClient.builder().baseUrl(normalizeJanusBaseUrl(janusUrl)).build();
+            @Value("${janus.admin-key:}") String adminKey,
+            @Value("${janus.websocket.url:}") String webSocketUrl,
+            @Value("${janus.websocket.connections:2}") int webSocketConnections,
+            @Value("${janus.nodes:}") String nodesSpec,
+            @Value("${janus.placement:least-loaded}") String placement,
+            @Value("${janus.health.interval-seconds:10}") long healthIntervalSeconds,
+            @Value("${janus.health.max-failures:3}") int maxFailedProbes,
+            @Value("${janus.timeouts.create-ms:5000}") long createTimeoutMs,
+            @Value("${janus.timeouts.attach-ms:5000}") long attachTimeoutMs,
+            @Value("${janus.timeouts.message-ms:10000}") long messageTimeoutMs,
+            @Value("${janus.timeouts.trickle-ms:3000}") long trickleTimeoutMs,
+            @Value("${janus.timeouts.rtp-forward-ms:10000}") long rtpForwardTimeoutMs,
+            @Value("${janus.breaker.failure-rate-percent:50}") int breakerFailureRatePercent,
+            @Value("${janus.breaker.open-seconds:10}") long breakerOpenSeconds,
+            @Value("${janus.bulkhead.max-concurrent:64}") int bulkheadMaxConcurrent,
+            @Value("${janus.http.commands.max-connections:64}") int httpCommandConnections,
+            @Value("${janus.http.polls.max-connections:0}") int httpPollConnections,
+            @Value("${janus.sessions.max-per-node:512}") int maxSessionsPerNode,
+            @Value("${janus.pool.size:0}") int readySessions,
+            @Value("${janus.http.max-idle-seconds:60}") long httpMaxIdleSeconds,
+            @Value("${janus.http.acquire-timeout-ms:2000}") long httpAcquireTimeoutMs,
+            MeterRegistry meterRegistry) {
         this.timeout = Duration.ofSeconds(Math.max(1, timeoutSeconds));
+        this.timeoutCeilings = Map.of(
+                "create", Duration.ofMillis(Math.max(100, createTimeoutMs)),
+                "attach", Duration.ofMillis(Math.max(100, attachTimeoutMs)),
+                "message", Duration.ofMillis(Math.max(100, messageTimeoutMs)),
+                "trickle", Duration.ofMillis(Math.max(100, trickleTimeoutMs)),
+                "rtp_forward", Duration.ofMillis(Math.max(100, rtpForwardTimeoutMs)));
+        this.breakerFailureRatePercent = breakerFailureRatePercent;
+        this.breakerOpenSeconds = breakerOpenSeconds;
+        this.bulkheadMaxConcurrent = bulkheadMaxConcurrent;
+        this.httpCommandConnections = httpCommandConnections;
+        // One long-poll per live session, including the ones kept ready for new publishers.
+        this.httpPollConnections = httpPollConnections > 0
+                ? httpPollConnections
+                : Math.max(1, maxSessionsPerNode) + Math.max(0, readySessions);
+        this.httpMaxIdle = Duration.ofSeconds(Math.max(5, httpMaxIdleSeconds));
+        this.httpAcquireTimeout = Duration.ofMillis(Math.max(100, httpAcquireTimeoutMs));
         this.adminKey = (adminKey != null && !adminKey.isBlank()) ? adminKey : null;
+        this.meterRegistry = meterRegistry;
+        this.hashPlacement = "hash".equalsIgnoreCase(placement == null ? "" : placement.trim());
+        this.maxFailedProbes = Math.max(1, maxFailedProbes);
+
+        List<JanusNode> configured = new ArrayList<>();
+        if (nodesSpec == null || nodesSpec.isBlank()) {
+            configured.add(node(DEFAULT_NODE, janusUrl, webSocketUrl, webSocketConnections));
+        } else {
+            for (String entry : nodesSpec.split(",")) {
+                if (entry.isBlank()) {
+                    continue;
+                }
+                int eq = entry.indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("janus.nodes entries must be name=url, got: " + entry.trim());
+                }
+                String name = entry.substring(0, eq).trim();
+                String url = entry.substring(eq + 1).trim();
+                boolean ws = url.startsWith("ws://") || url.startsWith("wss://");
+                configured.add(node(name, ws ? null : url, ws ? url : null, webSocketConnections));
+            }
+        }
+        this.nodes = List.copyOf(configured);
+
+        for (JanusNode node : nodes) {
+            Gauge.builder("janus.node.up", node, n -> n.isUp() ? 1 : 0)
+                    .description("Whether the Janus node answers health pings")
+                    .tag("node", node.name())
+                    .register(meterRegistry);
+            Gauge.builder("janus.node.sessions", node, JanusNode::sessions)
+                    .description("Janus sessions this instance owns on the node")
+                    .tag("node", node.name())
+                    .register(meterRegistry);
+            Gauge.builder("janus.bulkhead.in_flight", node, JanusNode::inFlight)
+                    .description("Janus calls in flight to the node")
+                    .tag("node", node.name())
+                    .register(meterRegistry);
+            JanusWebSocketTransport webSocket = node.webSocket();
+            if (webSocket != null) {
+                Gauge.builder("janus.websocket.connections", webSocket, JanusWebSocketTransport::openConnections)
+                        .description("Open WebSocket connections to Janus")
+                        .tag("node", node.name())
+                        .register(meterRegistry);
+                Gauge.builder("janus.websocket.pending", webSocket, JanusWebSocketTransport::pendingRequests)
+                        .description("Janus requests awaiting their first reply")
+                        .tag("node", node.name())
+                        .register(meterRegistry);
+            }
+            log.info("Janus node '{}': {}", node.name(), node.transport());
+        }
+        if (nodes.size() > 1) {
+            log.info("Janus cluster of {} nodes, placement={}", nodes.size(), hashPlacement ? "hash" : "least-loaded");
+        }
+
+        Duration healthInterval = Duration.ofSeconds(Math.max(1, healthIntervalSeconds));
+        this.healthProbe = Flux.interval(healthInterval, healthInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> Flux.fromIterable(nodes).flatMap(this::probe))
+                .subscribe();
     }
 
+    private JanusNode node(String name, String httpUrl, String webSocketUrl, int webSocketConnections) {
+        JanusHttpPool commands = null;
+        JanusHttpPool polls = null;
+        if (httpUrl != null) {
+            String baseUrl = normalizeJanusBaseUrl(httpUrl);
+            commands = new JanusHttpPool("janus-" + name + "-commands", baseUrl, httpCommandConnections, httpMaxIdle,
+                    httpAcquireTimeout, timeout);
+            // A long-poll legitimately waits up to its own timeout (max 60 s in Janus) for a reply.
+            polls = new JanusHttpPool("janus-" + name + "-polls", baseUrl, httpPollConnections, httpMaxIdle,
+                    httpAcquireTimeout, Duration.ofSeconds(65));
+            if (webSocketUrl == null || webSocketUrl.isBlank()) {
+                log.info("Janus transport for '{}': HTTP {} (events for up to {} sessions)", name, baseUrl,
+                        httpPollConnections);
+            }
+        }
+        JanusWebSocketTransport webSocket = webSocketUrl == null || webSocketUrl.isBlank()
+                ? null
+                : new JanusWebSocketTransport(URI.create(webSocketUrl.trim()), webSocketConnections, mapper);
+        if (webSocket != null) {
+            log.info("Janus transport for '{}': WebSocket {} ({} connections)", name, webSocketUrl,
+                    webSocketConnections);
+        }
+        JanusCircuitBreaker breaker = new JanusCircuitBreaker(name, breakerFailureRatePercent, breakerOpenSeconds,
+                meterRegistry);
+        JanusTimeouts timeouts = new JanusTimeouts(name, timeoutCeilings, timeout, meterRegistry);
+        return new JanusNode(name, commands, polls, webSocket, breaker, timeouts, bulkheadMaxConcurrent);
+    }
+
+    /**
+     * Creates a session on the least-loaded healthy node.
+     */
     public Mono<Long> createSession() {
+        return createSession(leastLoaded());
+    }
+
+    /**
+     * Creates a session on the node {@link #placeFor} picks for {@code placementKey}.
+     */
+    public Mono<Long> createSession(String placementKey) {
+        return createSession(place(placementKey));
+    }
+
+    /**
+     * Creates a session on a named node ({@link #nodeNames()}).
+     */
+    public Mono<Long> createSessionOn(String nodeName) {
+        return Mono.defer(() -> createSession(byName(nodeName)));
+    }
+
+    private Mono<Long> createSession(JanusNode node) {
         ObjectNode payload = mapper.createObjectNode();
         payload.put("janus", "create");
         payload.put("transaction", tx());
 
-        return post("/janus", payload)
-                .map(json -> json.path("data").path("id").asLong())
+        return send(node, null, null, payload)
+                .map(JanusMessage::dataId)
                 .flatMap(id -> id > 0 ? Mono.just(id)
-                        : Mono.error(new IllegalStateException("Invalid session id from Janus")));
+                        : Mono.error(new IllegalStateException("Invalid session id from Janus")))
+                .doOnNext(id -> {
+                    sessionNodes.put(id, node);
+                    node.sessionOpened();
+                    if (node.webSocket() == null && node.sessions() == httpPollConnections + 1) {
+                        log.warn("Janus node '{}' has more sessions than long-poll connections ({}); events "
+                                + "will be delayed. Raise janus.sessions.max-per-node or use the WebSocket "
+                                + "transport", node.name(), httpPollConnections);
+                    }
+                });
+    }
+
+    /**
+     * Name of the node a new session for {@code placementKey} should go to: the consistent-hash owner
+     * among healthy nodes with {@code janus.placement=hash}, the least-loaded healthy node otherwise.
+     */
+    public String placeFor(String placementKey) {
+        return place(placementKey).name();
+    }
+
+    /**
+     * @return the node owning the session, or {@code null} if this instance does not know it
+     */
+    public String nodeOf(long sessionId) {
+        JanusNode node = sessionNodes.get(sessionId);
+        return node != null ? node.name() : null;
+    }
+
+    /**
+     * Routes an existing session (e.g. one loaded from the database) to its node. Unknown node names
+     * are ignored and the session keeps the default route.
+     */
+    public void adopt(long sessionId, String nodeName) {
+        if (nodeName == null) {
+            return;
+        }
+        for (JanusNode node : nodes) {
+            if (node.name().equals(nodeName)) {
+                if (sessionNodes.putIfAbsent(sessionId, node) == null) {
+                    node.sessionOpened();
+                }
+                return;
+            }
+        }
+    }
+
+    public List<String> nodeNames() {
+        return nodes.stream().map(JanusNode::name).toList();
+    }
+
+    public boolean isUp(String nodeName) {
+        return nodes.stream().anyMatch(node -> node.name().equals(nodeName) && node.isUp());
+    }
+
+    /**
+     * Names of nodes as they stop answering health pings. Sessions they own should be considered lost.
+     */
+    public Flux<String> nodeFailures() {
+        return nodeFailures.asFlux();
+    }
+
+    private JanusNode place(String placementKey) {
+        if (!hashPlacement || placementKey == null || nodes.size() == 1) {
+            return leastLoaded();
+        }
+        // Rendezvous hashing: a key only moves when its node leaves the healthy set.
+        return candidates().stream()
+                .max(Comparator.comparingLong(node -> mix((node.name() + '/' + placementKey).hashCode())))
+                .orElseThrow();
+    }
+
+    private JanusNode leastLoaded() {
+        if (nodes.size() == 1) {
+            return nodes.get(0);
+        }
+        return candidates().stream().min(Comparator.comparingInt(JanusNode::sessions)).orElseThrow();
+    }
+
+    /** Healthy nodes, or every node when none is healthy (a request beats failing without trying). */
+    private List<JanusNode> candidates() {
+        List<JanusNode> up = nodes.stream().filter(JanusNode::isUp).toList();
+        return up.isEmpty() ? nodes : up;
+    }
+
+    private JanusNode byName(String nodeName) {
+        return nodes.stream()
+                .filter(node -> node.name().equals(nodeName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown Janus node: " + nodeName));
+    }
+
+    private JanusNode nodeFor(long sessionId) {
+        JanusNode node = sessionNodes.get(sessionId);
+        return node != null ? node : nodes.get(0);
+    }
+
+    private Mono<Void> probe(JanusNode node) {
+        ObjectNode ping = mapper.createObjectNode();
+        ping.put("janus", "ping");
+        ping.put("transaction", tx());
+
+        return send(node, null, null, ping)
+                .timeout(Duration.ofSeconds(5))
+                .doOnNext(reply -> {
+                    if (node.probeSucceeded()) {
+                        log.info("✅ Janus node '{}' is back", node.name());
+                    }
+                })
+                .onErrorResume(e -> {
+                    if (node.probeFailed(maxFailedProbes)) {
+                        log.warn("❌ Janus node '{}' is down after {} failed pings: {}", node.name(),
+                                maxFailedProbes, e.toString());
+                        nodeFailures.tryEmitNext(node.name());
+                    }
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
     }
 
     public Mono<Long> attachPlugin(long sessionId, String pluginName) {
@@ -61,8 +378,8 @@ public class JanusClient {
         payload.put("plugin", pluginName);
         payload.put("transaction", tx());
 
-        return post("/janus/" + sessionId, payload)
-                .map(json -> json.path("data").path("id").asLong())
+        return post(sessionId, null, payload)
+                .map(JanusMessage::dataId)
                 .flatMap(id -> id > 0 ? Mono.just(id)
                         : Mono.error(new IllegalStateException("Invalid handle id from Janus")));
     }
@@ -91,7 +408,24 @@ public class JanusClient {
         req.set("body", body);
         req.set("jsep", jsep);
 
-        return post("/janus/" + sessionId + "/" + handleId, req).then();
+        return post(sessionId, handleId, req).then();
+    }
+
+    /**
+     * Have Janus send the publisher on this handle a keyframe request (PLI), for forwarded streams
+     * whose consumer lost packets or needs a segment boundary.
+     */
+    public Mono<Void> requestKeyframe(long sessionId, long handleId) {
+        ObjectNode body = mapper.createObjectNode();
+        body.put("request", "configure");
+        body.put("keyframe", true);
+
+        ObjectNode req = mapper.createObjectNode();
+        req.put("janus", "message");
+        req.put("transaction", tx());
+        req.set("body", body);
+
+        return post(sessionId, handleId, req).then();
     }
 
     /**
@@ -99,7 +433,7 @@ public class JanusClient {
      *
      * Uses legacy audio_port/video_port fields for compatibility.
      */
-    public Mono<JsonNode> rtpForward(
+    public Mono<JanusMessage> rtpForward(
             long sessionId,
             long handleId,
             long roomId,
@@ -108,6 +442,25 @@ public class JanusClient {
             String host,
             Integer audioPort,
             Integer videoPort) {
+        return rtpForward(sessionId, handleId, roomId, publisherId, roomSecret, host, audioPort, videoPort,
+                null, null);
+    }
+
+    /**
+     * rtp_forward with explicit SSRCs, so many forwarders can share one receiving UDP port and be
+     * told apart by SSRC.
+     */
+    public Mono<JanusMessage> rtpForward(
+            long sessionId,
+            long handleId,
+            long roomId,
+            long publisherId,
+            String roomSecret,
+            String host,
+            Integer audioPort,
+            Integer videoPort,
+            Long audioSsrc,
+            Long videoSsrc) {
         if (publisherId <= 0) {
             return Mono.error(new IllegalArgumentException("publisherId must be > 0"));
         }
@@ -133,16 +486,22 @@ public class JanusClient {
         if (videoPort != null && videoPort > 0) {
             body.put("video_port", videoPort);
         }
+        if (audioSsrc != null) {
+            body.put("audio_ssrc", audioSsrc);
+        }
+        if (videoSsrc != null) {
+            body.put("video_ssrc", videoSsrc);
+        }
 
         ObjectNode req = mapper.createObjectNode();
         req.put("janus", "message");
         req.put("transaction", tx());
         req.set("body", body);
 
-        return post("/janus/" + sessionId + "/" + handleId, req);
+        return post(sessionId, handleId, req);
     }
 
-    public Mono<JsonNode> stopRtpForward(
+    public Mono<JanusMessage> stopRtpForward(
             long sessionId,
             long handleId,
             long roomId,
@@ -175,19 +534,27 @@ public class JanusClient {
         req.put("transaction", tx());
         req.set("body", body);
 
-        return post("/janus/" + sessionId + "/" + handleId, req);
+        return post(sessionId, handleId, req);
     }
 
     /**
      * Long-poll Janus for a single event for a given session.
      * Janus expects the timeout query parameter in seconds (commonly 1..60).
      */
-    public Mono<JsonNode> pollEventOnce(long sessionId, long timeoutMs) {
+    public Mono<JanusMessage> pollEventOnce(long sessionId, long timeoutMs) {
         long rid = System.currentTimeMillis();
         long safeTimeoutMs = Math.max(250, timeoutMs);
         long timeoutSeconds = Math.max(1, safeTimeoutMs / 1000);
 
-        return webClient.get()
+        JanusNode node = nodeFor(sessionId);
+        if (node.webSocket() != null) {
+            // Events are pushed over the socket; take the next one queued for this session.
+            return node.webSocket().nextEvent(sessionId, Duration.ofMillis(safeTimeoutMs))
+                    .map(this::failIfJanusError)
+                    .doOnNext(json -> touch(sessionId));
+        }
+
+        return node.pollClient().get()
                 .uri(uriBuilder -> uriBuilder
                         .path("/janus/" + sessionId)
                         .queryParam("rid", rid)
@@ -196,9 +563,43 @@ public class JanusClient {
                         .build())
                 .accept(MediaType.APPLICATION_JSON)
                 .retrieve()
-                .bodyToMono(JsonNode.class)
+                .bodyToMono(JanusMessage.class)
                 .map(this::failIfJanusError)
-                .timeout(Duration.ofMillis(safeTimeoutMs));
+                .timeout(Duration.ofMillis(safeTimeoutMs))
+                .doOnNext(json -> touch(sessionId));
+    }
+
+    /**
+     * Long-poll for up to {@code maxEvents} events of a session (Janus answers {@code maxev > 1} with an
+     * array). Emits a single keepalive when nothing happened within the timeout.
+     */
+    public Flux<JanusMessage> pollEvents(long sessionId, long timeoutMs, int maxEvents) {
+        long timeoutSeconds = Math.max(1, timeoutMs / 1000);
+
+        JanusNode node = nodeFor(sessionId);
+        if (node.webSocket() != null) {
+            // The socket itself is the session's transport, so this long wait does not count as activity.
+            return node.webSocket().nextEvent(sessionId, Duration.ofSeconds(timeoutSeconds))
+                    .map(this::failIfJanusError)
+                    .flux();
+        }
+
+        return node.pollClient().get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/janus/" + sessionId)
+                        .queryParam("rid", System.currentTimeMillis())
+                        .queryParam("maxev", Math.max(1, maxEvents))
+                        .queryParam("timeout", timeoutSeconds)
+                        .build())
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                // Decodes array elements one by one straight from the response buffers (a single object
+                // when Janus returns one), so a batch never becomes a tree.
+                .bodyToFlux(JanusMessage.class)
+                // Janus holds the request for up to timeoutSeconds; allow for the round trip on top.
+                .timeout(Duration.ofSeconds(timeoutSeconds + 5))
+                .doOnNext(json -> touch(sessionId))
+                .map(this::failIfJanusError);
     }
 
     public Mono<Void> sendTrickleCandidate(long sessionId, long handleId, String candidate, String sdpMid,
@@ -217,7 +618,38 @@ public class JanusClient {
         req.put("transaction", tx());
         req.set("candidate", cand);
 
-        return post("/janus/" + sessionId + "/" + handleId, req).then();
+        return post(sessionId, handleId, req).then();
+    }
+
+    /**
+     * Several candidates in one {@code trickle} request (Janus' {@code candidates} array), in order.
+     */
+    public Mono<Void> sendTrickleCandidates(long sessionId, long handleId, List<TrickleCandidate> candidates) {
+        if (candidates.isEmpty()) {
+            return Mono.empty();
+        }
+        if (candidates.size() == 1) {
+            TrickleCandidate only = candidates.get(0);
+            return sendTrickleCandidate(sessionId, handleId, only.candidate(), only.sdpMid(), only.sdpMLineIndex());
+        }
+        ArrayNode array = mapper.createArrayNode();
+        for (TrickleCandidate c : candidates) {
+            ObjectNode cand = array.addObject();
+            cand.put("candidate", c.candidate());
+            if (c.sdpMid() != null) {
+                cand.put("sdpMid", c.sdpMid());
+            }
+            if (c.sdpMLineIndex() != null) {
+                cand.put("sdpMLineIndex", c.sdpMLineIndex());
+            }
+        }
+
+        ObjectNode req = mapper.createObjectNode();
+        req.put("janus", "trickle");
+        req.put("transaction", tx());
+        req.set("candidates", array);
+
+        return post(sessionId, handleId, req).then();
     }
 
     public Mono<Void> sendTrickleCompleted(long sessionId, long handleId) {
@@ -229,7 +661,7 @@ public class JanusClient {
         req.put("transaction", tx());
         req.set("candidate", cand);
 
-        return post("/janus/" + sessionId + "/" + handleId, req).then();
+        return post(sessionId, handleId, req).then();
     }
 
     public Mono<Void> detachHandle(long sessionId, long handleId) {
@@ -237,7 +669,7 @@ public class JanusClient {
         req.put("janus", "detach");
         req.put("transaction", tx());
 
-        return post("/janus/" + sessionId + "/" + handleId, req).then();
+        return post(sessionId, handleId, req).then();
     }
 
     public Mono<Void> destroySession(long sessionId) {
@@ -245,7 +677,24 @@ public class JanusClient {
         req.put("janus", "destroy");
         req.put("transaction", tx());
 
-        return post("/janus/" + sessionId, req).then();
+        return post(sessionId, null, req)
+                .doFinally(signal -> forget(sessionId))
+                .then();
+    }
+
+    /**
+     * Drops everything kept about a session without telling Janus, for sessions whose node is gone.
+     */
+    public void forget(long sessionId) {
+        sessionActivity.remove(sessionId);
+        JanusNode node = sessionNodes.remove(sessionId);
+        if (node != null) {
+            node.sessionClosed();
+        }
+        JanusWebSocketTransport webSocket = (node != null ? node : nodes.get(0)).webSocket();
+        if (webSocket != null) {
+            webSocket.forget(sessionId);
+        }
     }
 
     /**
@@ -257,33 +706,139 @@ public class JanusClient {
         req.put("janus", "keepalive");
         req.put("transaction", tx());
 
-        return post("/janus/" + sessionId, req).then();
+        return post(sessionId, null, req).then();
     }
 
-    private Mono<JsonNode> post(String path, ObjectNode body) {
-        return webClient.post()
-                .uri(path)
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(BodyInserters.fromValue(body))
-                .retrieve()
-                .bodyToMono(JsonNode.class)
+    private Mono<JanusMessage> post(Long sessionId, Long handleId, ObjectNode body) {
+        return send(sessionId != null ? nodeFor(sessionId) : leastLoaded(), sessionId, handleId, body);
+    }
+
+    /**
+     * Sends through the node's circuit breaker and bulkhead, with the operation's adaptive timeout.
+     * Health pings bypass both so they keep reporting the node's real state.
+     */
+    private Mono<JanusMessage> send(JanusNode node, Long sessionId, Long handleId, ObjectNode body) {
+        String operation = operation(body);
+        if ("ping".equals(operation)) {
+            return exchange(node, sessionId, handleId, body, timeout);
+        }
+        return Mono.defer(() -> {
+            JanusCircuitBreaker breaker = node.breaker();
+            JanusTimeouts timeouts = node.timeouts();
+            JanusCircuitBreaker.Permit permit = breaker.tryAcquire();
+            if (permit == null) {
+                meterRegistry.counter("janus.rejected", "node", node.name(), "reason", "circuit_open").increment();
+                return Mono.error(new JanusUnavailableException(node.name(), "circuit open"));
+            }
+            if (!node.bulkhead().tryAcquire()) {
+                breaker.release(permit);
+                meterRegistry.counter("janus.rejected", "node", node.name(), "reason", "bulkhead_full").increment();
+                return Mono.error(new JanusUnavailableException(node.name(), "too many calls in flight"));
+            }
+            Duration limit = timeouts.timeout(operation);
+            long start = System.nanoTime();
+            return exchange(node, sessionId, handleId, body, limit)
+                    .doOnSuccess(reply -> {
+                        timeouts.record(operation, System.nanoTime() - start);
+                        breaker.onSuccess(permit);
+                    })
+                    .doOnError(e -> {
+                        if (e instanceof JanusApiException) {
+                            // Janus answered, it just said no.
+                            timeouts.record(operation, System.nanoTime() - start);
+                            breaker.onSuccess(permit);
+                            return;
+                        }
+                        if (e instanceof TimeoutException) {
+                            timeouts.record(operation, limit.toNanos());
+                        }
+                        breaker.onFailure(permit);
+                    })
+                    .doOnCancel(() -> breaker.release(permit))
+                    .doFinally(signal -> node.bulkhead().release());
+        });
+    }
+
+    /**
+     * Operation name for timeouts: the {@code janus} verb, with rtp_forward messages told apart.
+     */
+    private static String operation(ObjectNode body) {
+        String request = body.path("janus").asString();
+        if ("message".equals(request)) {
+            String pluginRequest = body.path("body").path("request").asString("");
+            if (pluginRequest.endsWith("rtp_forward")) {
+                return "rtp_forward";
+            }
+        }
+        return request;
+    }
+
+    private Mono<JanusMessage> exchange(JanusNode node, Long sessionId, Long handleId, ObjectNode body,
+            Duration limit) {
+        Timer.Sample sample = Timer.start();
+        Mono<JanusMessage> reply;
+        JanusWebSocketTransport webSocket = node.webSocket();
+        if (webSocket != null) {
+            // Over WebSocket the target goes in the body instead of the URL path.
+            if (sessionId != null) {
+                body.put("session_id", sessionId);
+            }
+            if (handleId != null) {
+                body.put("handle_id", handleId);
+            }
+            reply = webSocket.send(body, sessionId);
+        } else {
+            String path = "/janus" + (sessionId != null ? "/" + sessionId : "") + (handleId != null ? "/" + handleId : "");
+            reply = node.webClient().post()
+                    .uri(path)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(BodyInserters.fromValue(body))
+                    .retrieve()
+                    .bodyToMono(JanusMessage.class);
+        }
+        String request = body.path("janus").asString();
+        return reply
                 .map(this::failIfJanusError)
-                .timeout(timeout);
+                .timeout(limit)
+                .doOnNext(json -> touch(sessionId))
+                .doFinally(signal -> sample.stop(Timer.builder("janus.requests")
+                        .description("Janus API round trips (first reply) by transport")
+                        .tag("transport", node.transport())
+                        .tag("node", node.name())
+                        .tag("request", request)
+                        .register(meterRegistry)));
     }
 
-    private JsonNode failIfJanusError(JsonNode json) {
+    /**
+     * @return {@code websocket} or {@code http} (of the first node when several are configured)
+     */
+    public String transport() {
+        return nodes.get(0).transport();
+    }
+
+    /**
+     * @return {@link System#nanoTime()} of the last successful exchange with the session, or 0 if none
+     */
+    public long lastActivityNanos(long sessionId) {
+        return sessionActivity.getOrDefault(sessionId, 0L);
+    }
+
+    private void touch(Long sessionId) {
+        if (sessionId != null) {
+            sessionActivity.put(sessionId, System.nanoTime());
+        }
+    }
+
+    private JanusMessage failIfJanusError(JanusMessage json) {
         if (json == null) {
             throw new IllegalStateException("Empty response from Janus");
         }
 
-        String janus = json.path("janus").asText("");
-        if ("error".equalsIgnoreCase(janus)) {
-            String reason = json.path("error").path("reason").asText("Unknown Janus error");
-            long code = json.path("error").path("code").asLong(0);
-            if (code > 0) {
-                throw new IllegalStateException("Janus HTTP error (" + code + "): " + reason);
-            }
-            throw new IllegalStateException("Janus HTTP error: " + reason);
+        if (json.is("error")) {
+            JanusMessage.Error error = json.error();
+            String reason = error != null && error.reason() != null ? error.reason() : "Unknown Janus error";
+            long code = error != null && error.code() != null ? error.code() : 0;
+            throw new JanusApiException(code, reason);
         }
 
         if (log.isDebugEnabled()) {
@@ -293,6 +848,12 @@ public class JanusClient {
         return json;
     }
 
+    @PreDestroy
+    void closeTransport() {
+        healthProbe.dispose();
+        nodes.forEach(JanusNode::close);
+    }
+
     private static String tx() {
         return UUID.randomUUID().toString();
     }
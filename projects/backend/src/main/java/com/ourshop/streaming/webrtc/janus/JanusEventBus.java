@@ -0,0 +1,180 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Owns the one event loop per Janus session and fans its events out per handle.
+ *
+ * Consumers never poll Janus themselves: they subscribe to {@link #events} and get exactly the events
+ * addressed to their handle, so concurrent consumers no longer steal each other's events. Events that
+ * arrive while a handle has no subscriber are buffered, which lets a consumer pick up trickle candidates
+ * that arrived between two steps of a negotiation; {@code since} keeps older leftovers out.
+ *
+ * A loop runs from the first subscription until {@link #close} or until Janus no longer knows the session.
+ * Over HTTP each loop holds one connection of its node's polls pool for as long as it runs, so a node
+ * serves events to at most {@code janus.http.polls.max-connections} sessions at a time (see
+ * {@link JanusClient}); over WebSocket all loops share the node's sockets.
+ */
+@Service
+public class JanusEventBus {
+
+    private static final Logger log = LoggerFactory.getLogger(JanusEventBus.class);
+
+    /** Events buffered per handle while nobody is subscribed. */
+    private static final int HANDLE_BUFFER = 256;
+    /** Janus error code for an unknown session (it timed out or was destroyed). */
+    private static final int JANUS_ERROR_SESSION_NOT_FOUND = 458;
+
+    private final JanusClient janus;
+    private final long pollTimeoutMs;
+    private final int maxEventsPerPoll;
+    private final Duration errorBackoff;
+
+    private final ConcurrentHashMap<Long, SessionLoop> loops = new ConcurrentHashMap<>();
+    private final Counter dispatched;
+    private final Counter unrouted;
+
+    public JanusEventBus(
+            JanusClient janus,
+            @Value("${janus.events.poll-timeout-ms:30000}") long pollTimeoutMs,
+            @Value("${janus.events.max-per-poll:10}") int maxEventsPerPoll,
+            @Value("${janus.events.error-backoff-ms:1000}") long errorBackoffMs,
+            MeterRegistry meterRegistry) {
+        this.janus = janus;
+        this.pollTimeoutMs = Math.max(1_000, pollTimeoutMs);
+        this.maxEventsPerPoll = Math.max(1, maxEventsPerPoll);
+        this.errorBackoff = Duration.ofMillis(Math.max(100, errorBackoffMs));
+
+        this.dispatched = Counter.builder("janus.events.dispatched")
+                .description("Janus events routed to a handle")
+                .register(meterRegistry);
+        this.unrouted = Counter.builder("janus.events.unrouted")
+                .description("Janus events without a handle (keepalives excluded)")
+                .register(meterRegistry);
+        Gauge.builder("janus.events.loops", loops, ConcurrentHashMap::size)
+                .description("Janus sessions with a running event loop")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Events Janus sent to {@code handleId} since {@code since}, as they arrive. Never completes while
+     * the session lives; callers bound it with {@code next()}, {@code take(...)} or a timeout.
+     */
+    public Flux<JanusMessage> events(long sessionId, long handleId, Instant since) {
+        return loops.computeIfAbsent(sessionId, SessionLoop::new)
+                .start()
+                .handle(handleId)
+                .asFlux()
+                .filter(received -> !received.at().isBefore(since))
+                .map(Received::event);
+    }
+
+    /**
+     * Like {@link #events(long, long, Instant)} but only events whose {@code janus} type is {@code type}
+     * (e.g. {@code trickle}, {@code event}, {@code webrtcup}).
+     */
+    public Flux<JanusMessage> events(long sessionId, long handleId, String type, Instant since) {
+        return events(sessionId, handleId, since)
+                .filter(event -> event.is(type));
+    }
+
+    /**
+     * Stops the session's loop (call when the Janus session is destroyed).
+     */
+    public void close(long sessionId) {
+        SessionLoop loop = loops.remove(sessionId);
+        if (loop != null) {
+            loop.stop();
+        }
+    }
+
+    @PreDestroy
+    void closeAll() {
+        loops.keySet().forEach(this::close);
+    }
+
+    private record Received(JanusMessage event, Instant at) {
+    }
+
+    private final class SessionLoop {
+        private final long sessionId;
+        private final ConcurrentHashMap<Long, Sinks.Many<Received>> handles = new ConcurrentHashMap<>();
+        private Disposable loop;
+        private volatile boolean running = true;
+
+        SessionLoop(long sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        synchronized SessionLoop start() {
+            if (loop != null || !running) {
+                return this;
+            }
+            loop = Flux.defer(() -> janus.pollEvents(sessionId, pollTimeoutMs, maxEventsPerPoll))
+                    .onErrorResume(e -> {
+                        if (isSessionGone(e)) {
+                            return Flux.error(e);
+                        }
+                        log.debug("Janus event poll failed for session {}: {}", sessionId, e.toString());
+                        return Mono.delay(errorBackoff).thenMany(Flux.empty());
+                    })
+                    .repeat(() -> running)
+                    .subscribe(this::dispatch, e -> {
+                        log.info("Janus session {} is gone, stopping its event loop: {}", sessionId, e.getMessage());
+                        loops.remove(sessionId, this);
+                        stop();
+                    });
+            log.debug("Started Janus event loop for session {}", sessionId);
+            return this;
+        }
+
+        Sinks.Many<Received> handle(long handleId) {
+            return handles.computeIfAbsent(handleId,
+                    id -> Sinks.many().multicast().onBackpressureBuffer(HANDLE_BUFFER, false));
+        }
+
+        private void dispatch(JanusMessage event) {
+            long sender = event.senderOrZero();
+            if (sender <= 0) {
+                if (!event.is("keepalive")) {
+                    unrouted.increment();
+                }
+                return;
+            }
+            Sinks.EmitResult result = handle(sender).tryEmitNext(new Received(event, Instant.now()));
+            if (result.isSuccess()) {
+                dispatched.increment();
+            } else {
+                log.debug("Dropped Janus event for handle {} ({})", sender, result);
+            }
+        }
+
+        synchronized void stop() {
+            running = false;
+            if (loop != null) {
+                loop.dispose();
+            }
+            handles.values().forEach(Sinks.Many::tryEmitComplete);
+            handles.clear();
+        }
+
+        private boolean isSessionGone(Throwable e) {
+            return e instanceof JanusApiException api && api.code() == JANUS_ERROR_SESSION_NOT_FOUND;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import java.time.Instant;
+
+/**
+ * A Janus session with a videoroom handle attached to it, on Janus node {@code node}.
+ */
+public record JanusHandlePair(long sessionId, long handleId, String node, Instant createdAt) {
+}
@@ -0,0 +1,52 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * A WebClient on its own Reactor Netty connection pool, so one kind of Janus traffic cannot take the
+ * connections another kind needs. Pool metrics ({@code reactor.netty.connection.provider.*}, tagged
+ * with the pool name) go to the global Micrometer registry, which Spring Boot bridges to its own.
+ */
+final class JanusHttpPool {
+
+    private final ConnectionProvider provider;
+    private final WebClient webClient;
+
+    /**
+     * @param responseTimeout netty-level cap on waiting for a response; the caller's own timeout is
+     *                        normally shorter and wins
+     */
+    JanusHttpPool(String name, String baseUrl, int maxConnections, Duration maxIdle, Duration acquireTimeout,
+            Duration responseTimeout) {
+        int max = Math.max(1, maxConnections);
+        this.provider = ConnectionProvider.builder(name)
+                .maxConnections(max)
+                // Beyond this many waiters an acquire fails at once instead of queueing.
+                .pendingAcquireMaxCount(max * 2)
+                .pendingAcquireTimeout(acquireTimeout)
+                .maxIdleTime(maxIdle)
+                .evictInBackground(maxIdle.dividedBy(2))
+                .metrics(true)
+                .build();
+        HttpClient httpClient = HttpClient.create(provider)
+                .keepAlive(true)
+                .responseTimeout(responseTimeout);
+        this.webClient = WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    WebClient webClient() {
+        return webClient;
+    }
+
+    void dispose() {
+        provider.dispose();
+    }
+}
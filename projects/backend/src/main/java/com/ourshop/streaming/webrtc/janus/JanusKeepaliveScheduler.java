@@ -0,0 +1,197 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps every registered Janus session alive from one timing wheel instead of a timer per session.
+ *
+ * The keepalive interval is cut into {@code slots} ticks and each session is placed in the slot with
+ * the fewest sessions, so keepalives are spread evenly instead of bursting. When a slot comes round,
+ * sessions that exchanged anything with Janus in the last half interval are skipped (that traffic already
+ * reset Janus' session timer). A session that fails {@code max-failures} keepalives in a row is reaped:
+ * it leaves the wheel and is published on {@link #reaped()}.
+ */
+@Service
+public class JanusKeepaliveScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(JanusKeepaliveScheduler.class);
+
+    /** Keepalives in flight at once, so a slot never turns into a burst of connections. */
+    private static final int CONCURRENCY = 16;
+
+    private final JanusClient janus;
+    private final long intervalNanos;
+    private final long tickNanos;
+    private final int maxFailures;
+
+    private final List<Set<Long>> wheel;
+    private final ConcurrentHashMap<Long, Entry> sessions = new ConcurrentHashMap<>();
+    private final Sinks.Many<Long> reaped = Sinks.many().multicast().directBestEffort();
+    private final ScheduledExecutorService ticker;
+    private final long startNanos = System.nanoTime();
+    private long ticks;
+
+    private final Timer lag;
+    private final Counter sent;
+    private final Counter skipped;
+    private final Counter failed;
+    private final Counter reapedCount;
+
+    public JanusKeepaliveScheduler(
+            JanusClient janus,
+            @Value("${janus.keepalive.interval-seconds:30}") long intervalSeconds,
+            @Value("${janus.keepalive.slots:30}") int slots,
+            @Value("${janus.keepalive.max-failures:3}") int maxFailures,
+            MeterRegistry meterRegistry) {
+        this.janus = janus;
+        int slotCount = Math.max(1, slots);
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(Math.max(5, intervalSeconds));
+        this.tickNanos = intervalNanos / slotCount;
+        this.maxFailures = Math.max(1, maxFailures);
+        this.wheel = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            wheel.add(ConcurrentHashMap.newKeySet());
+        }
+
+        this.lag = Timer.builder("janus.keepalive.lag")
+                .description("How late the keepalive wheel ticked")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.sent = Counter.builder("janus.keepalive").tag("result", "sent").register(meterRegistry);
+        this.skipped = Counter.builder("janus.keepalive").tag("result", "skipped").register(meterRegistry);
+        this.failed = Counter.builder("janus.keepalive").tag("result", "failed").register(meterRegistry);
+        this.reapedCount = Counter.builder("janus.keepalive.reaped")
+                .description("Sessions dropped after consecutive keepalive failures")
+                .register(meterRegistry);
+        Gauge.builder("janus.keepalive.sessions", sessions, ConcurrentHashMap::size).register(meterRegistry);
+
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "janus-keepalive");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Starts keeping the session alive (no-op if it already is).
+     */
+    public void register(long sessionId) {
+        sessions.computeIfAbsent(sessionId, id -> {
+            int slot = leastLoadedSlot();
+            wheel.get(slot).add(id);
+            return new Entry(slot);
+        });
+    }
+
+    public void unregister(long sessionId) {
+        Entry entry = sessions.remove(sessionId);
+        if (entry != null) {
+            wheel.get(entry.slot).remove(sessionId);
+        }
+    }
+
+    public boolean isRegistered(long sessionId) {
+        return sessions.containsKey(sessionId);
+    }
+
+    /**
+     * Sessions given up on after consecutive keepalive failures.
+     */
+    public Flux<Long> reaped() {
+        return reaped.asFlux();
+    }
+
+    private int leastLoadedSlot() {
+        int best = 0;
+        for (int i = 1; i < wheel.size(); i++) {
+            if (wheel.get(i).size() < wheel.get(best).size()) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private void tick() {
+        long tick = ++ticks;
+        long due = startNanos + tick * tickNanos;
+        lag.record(Math.max(0, System.nanoTime() - due), TimeUnit.NANOSECONDS);
+
+        Set<Long> slot = wheel.get((int) (tick % wheel.size()));
+        if (slot.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        Flux.fromIterable(List.copyOf(slot))
+                .filter(sessionId -> {
+                    long last = janus.lastActivityNanos(sessionId);
+                    // Half an interval keeps the worst case well inside Janus' session timeout (2x interval).
+                    if (last != 0 && now - last < intervalNanos / 2) {
+                        skipped.increment();
+                        return false;
+                    }
+                    return true;
+                })
+                .flatMap(this::send, CONCURRENCY)
+                .subscribe();
+    }
+
+    private Mono<Void> send(long sessionId) {
+        return janus.keepalive(sessionId)
+                .doOnSuccess(v -> {
+                    sent.increment();
+                    Entry entry = sessions.get(sessionId);
+                    if (entry != null) {
+                        entry.failures.set(0);
+                    }
+                })
+                .onErrorResume(e -> {
+                    failed.increment();
+                    Entry entry = sessions.get(sessionId);
+                    if (entry != null && entry.failures.incrementAndGet() >= maxFailures) {
+                        unregister(sessionId);
+                        reapedCount.increment();
+                        log.warn("Reaping Janus session {} after {} failed keepalives: {}", sessionId, maxFailures,
+                                e.toString());
+                        reaped.tryEmitNext(sessionId);
+                    } else {
+                        log.debug("Keepalive failed for Janus session {}: {}", sessionId, e.toString());
+                    }
+                    return Mono.empty();
+                });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    private static final class Entry {
+        private final int slot;
+        private final AtomicInteger failures = new AtomicInteger();
+
+        Entry(int slot) {
+            this.slot = slot;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Any message Janus sends us, decoded straight into the fields we read: replies to our requests
+ * ({@code success}, {@code ack}, {@code error}) and pushed events ({@code event}, {@code trickle},
+ * {@code webrtcup}, {@code hangup}, {@code media}, ...). Everything else in the JSON is skipped while
+ * parsing, so no tree is built.
+ *
+ * Absent fields are {@code null}; the helpers below give the defaults callers want.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record JanusMessage(
+        String janus,
+        @JsonProperty("session_id") Long sessionId,
+        Long sender,
+        String transaction,
+        Data data,
+        PluginData plugindata,
+        Jsep jsep,
+        Candidate candidate,
+        Error error,
+        // hangup reason
+        String reason
+) {
+
+    /** Placeholder for "nothing happened before the timeout", as Janus' HTTP long-poll returns. */
+    static final JanusMessage KEEPALIVE = new JanusMessage("keepalive", null, null, null, null, null, null, null,
+            null, null);
+
+    /** {@code data} of a {@code success} reply to create/attach. */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Data(Long id) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record PluginData(String plugin, PluginResult data) {
+    }
+
+    /** The VideoRoom fields of {@code plugindata.data} we act on. */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record PluginResult(
+            String videoroom,
+            Long id,
+            String error,
+            @JsonProperty("error_code") Long errorCode
+    ) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Jsep(String type, String sdp) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Candidate(String candidate, String sdpMid, Integer sdpMLineIndex, Boolean completed) {
+
+        public boolean isCompleted() {
+            return Boolean.TRUE.equals(completed);
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Error(Long code, String reason) {
+    }
+
+    public boolean is(String type) {
+        return type.equalsIgnoreCase(janus);
+    }
+
+    /**
+     * @return handle the message is about, or 0 for session-level messages
+     */
+    public long senderOrZero() {
+        return sender != null ? sender : 0;
+    }
+
+    /**
+     * @return id from a create/attach reply, or 0
+     */
+    public long dataId() {
+        return data != null && data.id() != null ? data.id() : 0;
+    }
+
+    /**
+     * @return the SDP of the attached JSEP, or null
+     */
+    public String sdp() {
+        return jsep != null ? jsep.sdp() : null;
+    }
+
+    /**
+     * @return VideoRoom publisher id from a joined/configured event, or 0
+     */
+    public long pluginId() {
+        return plugindata != null && plugindata.data() != null && plugindata.data().id() != null
+                ? plugindata.data().id()
+                : 0;
+    }
+
+    /**
+     * @return VideoRoom error text, or null
+     */
+    public String pluginError() {
+        return plugindata != null && plugindata.data() != null ? plugindata.data().error() : null;
+    }
+
+    public long pluginErrorCode() {
+        return plugindata != null && plugindata.data() != null && plugindata.data().errorCode() != null
+                ? plugindata.data().errorCode()
+                : 0;
+    }
+}
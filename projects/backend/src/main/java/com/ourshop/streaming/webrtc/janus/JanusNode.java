@@ -0,0 +1,136 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One Janus instance of the cluster: its transport plus what placement needs to know about it.
+ *
+ * Over HTTP, commands and event long-polls use separate connection pools so parked long-polls can
+ * never starve commands. When a WebSocket is configured it carries both and wins over HTTP, like it
+ * does for a single node.
+ */
+final class JanusNode {
+
+    private final String name;
+    private final JanusHttpPool commands;
+    private final JanusHttpPool polls;
+    private final JanusWebSocketTransport webSocket;
+    private final JanusCircuitBreaker breaker;
+    /** Per node, so one slow node does not stretch (or a fast one shrink) the timeouts of the others. */
+    private final JanusTimeouts timeouts;
+    /** Caps calls in flight to the node; excess calls are refused rather than queued. */
+    private final Semaphore bulkhead;
+    private final int maxConcurrent;
+
+    /** Janus sessions this application currently has on the node. */
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final AtomicInteger failedProbes = new AtomicInteger();
+    private volatile boolean up = true;
+
+    JanusNode(String name, JanusHttpPool commands, JanusHttpPool polls, JanusWebSocketTransport webSocket,
+            JanusCircuitBreaker breaker, JanusTimeouts timeouts, int maxConcurrent) {
+        this.name = name;
+        this.commands = commands;
+        this.polls = polls;
+        this.webSocket = webSocket;
+        this.breaker = breaker;
+        this.timeouts = timeouts;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.bulkhead = new Semaphore(this.maxConcurrent);
+    }
+
+    String name() {
+        return name;
+    }
+
+    /**
+     * Client for short request/response calls.
+     */
+    WebClient webClient() {
+        return Objects.requireNonNull(commands, "Janus node has no HTTP URL").webClient();
+    }
+
+    /**
+     * Client for event long-polls.
+     */
+    WebClient pollClient() {
+        return Objects.requireNonNull(polls, "Janus node has no HTTP URL").webClient();
+    }
+
+    void close() {
+        if (webSocket != null) {
+            webSocket.close();
+        }
+        if (commands != null) {
+            commands.dispose();
+        }
+        if (polls != null) {
+            polls.dispose();
+        }
+    }
+
+    JanusWebSocketTransport webSocket() {
+        return webSocket;
+    }
+
+    JanusCircuitBreaker breaker() {
+        return breaker;
+    }
+
+    JanusTimeouts timeouts() {
+        return timeouts;
+    }
+
+    Semaphore bulkhead() {
+        return bulkhead;
+    }
+
+    int inFlight() {
+        return maxConcurrent - bulkhead.availablePermits();
+    }
+
+    String transport() {
+        return webSocket != null ? "websocket" : "http";
+    }
+
+    int sessions() {
+        return sessions.get();
+    }
+
+    void sessionOpened() {
+        sessions.incrementAndGet();
+    }
+
+    void sessionClosed() {
+        sessions.updateAndGet(n -> Math.max(0, n - 1));
+    }
+
+    boolean isUp() {
+        return up;
+    }
+
+    /**
+     * @return true if the node was down until now
+     */
+    boolean probeSucceeded() {
+        failedProbes.set(0);
+        boolean wasDown = !up;
+        up = true;
+        return wasDown;
+    }
+
+    /**
+     * @return true if this failure took the node down
+     */
+    boolean probeFailed(int maxFailures) {
+        if (failedProbes.incrementAndGet() < maxFailures || !up) {
+            return false;
+        }
+        up = false;
+        return true;
+    }
+}
@@ -0,0 +1,220 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps {@code janus.pool.size} Janus sessions with an attached videoroom handle ready, so a new
+ * publisher does not pay the create + attach round trips before its offer can be sent.
+ *
+ * Idle pairs are kept alive by {@link JanusKeepaliveScheduler}; a pair it reaps is discarded and
+ * replaced, as are pairs idle longer than {@code max-idle-seconds}. Borrowed pairs are replaced in the
+ * background and stay registered with the scheduler for their new owner. With size 0 (or an empty
+ * pool) {@link #borrow} creates a pair on demand, which is not kept alive until its owner registers
+ * it (on CONNECTED).
+ *
+ * With several Janus nodes the pool is spread across the healthy ones and a borrow only takes a pair
+ * from the node {@link JanusClient#placeFor} picks; pairs on a node that goes down are replaced on the
+ * others.
+ */
+@Service
+public class JanusSessionPool {
+
+    private static final Logger log = LoggerFactory.getLogger(JanusSessionPool.class);
+
+    static final String VIDEOROOM_PLUGIN = "janus.plugin.videoroom";
+
+    private final JanusClient janus;
+    private final JanusKeepaliveScheduler keepalives;
+    private final int size;
+    /** Idle pairs older than this are replaced even if still alive, so Janus-side state stays fresh. */
+    private final Duration maxIdle;
+
+    private final ConcurrentLinkedDeque<JanusHandlePair> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger creating = new AtomicInteger();
+
+    private final Timer borrowLatency;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter discarded;
+
+    private Disposable reapedListener;
+    private Disposable nodeFailureListener;
+
+    public JanusSessionPool(
+            JanusClient janus,
+            JanusKeepaliveScheduler keepalives,
+            @Value("${janus.pool.size:0}") int size,
+            @Value("${janus.pool.max-idle-seconds:600}") long maxIdleSeconds,
+            MeterRegistry meterRegistry) {
+        this.janus = janus;
+        this.keepalives = keepalives;
+        this.size = Math.max(0, size);
+        this.maxIdle = Duration.ofSeconds(Math.max(60, maxIdleSeconds));
+
+        this.borrowLatency = Timer.builder("janus.pool.borrow")
+                .description("Time to obtain a Janus session + videoroom handle")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.hits = Counter.builder("janus.pool.borrows").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("janus.pool.borrows").tag("result", "miss").register(meterRegistry);
+        this.discarded = Counter.builder("janus.pool.discarded")
+                .description("Idle pairs dropped because Janus no longer knew them or they aged out")
+                .register(meterRegistry);
+        Gauge.builder("janus.pool.idle", idle, ConcurrentLinkedDeque::size).register(meterRegistry);
+        Gauge.builder("janus.pool.target", () -> this.size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (size == 0) {
+            return;
+        }
+        reapedListener = keepalives.reaped()
+                .subscribe(sessionId -> idle.stream()
+                        .filter(pair -> pair.sessionId() == sessionId)
+                        .findFirst()
+                        .ifPresent(pair -> discard(pair, "keepalive failed").subscribe()));
+        nodeFailureListener = janus.nodeFailures()
+                .subscribe(node -> List.copyOf(idle).stream()
+                        .filter(pair -> pair.node().equals(node))
+                        .forEach(pair -> discard(pair, "node " + node + " down").subscribe()));
+        refill();
+        log.info("Janus warm pool enabled (size={})", size);
+    }
+
+    /**
+     * A ready session + handle on the node placement picks for {@code placementKey} (may be null), from
+     * the pool when one is idle there or freshly created otherwise. The caller owns the pair from here on
+     * (keepalive and destroy).
+     */
+    public Mono<JanusHandlePair> borrow(String placementKey) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start();
+            String node = janus.placeFor(placementKey);
+            Instant cutoff = Instant.now().minus(maxIdle);
+            JanusHandlePair pooled = null;
+            for (JanusHandlePair candidate : idle) {
+                if (candidate.createdAt().isBefore(cutoff)) {
+                    if (idle.remove(candidate)) {
+                        retire(candidate, "aged out");
+                    }
+                } else if (candidate.node().equals(node) && idle.remove(candidate)) {
+                    pooled = candidate;
+                    break;
+                }
+            }
+            Mono<JanusHandlePair> pair;
+            if (pooled != null) {
+                hits.increment();
+                pair = Mono.just(pooled);
+            } else {
+                if (size > 0) {
+                    misses.increment();
+                }
+                pair = create(node);
+            }
+            return pair
+                    .doOnSuccess(p -> sample.stop(borrowLatency))
+                    .doFinally(signal -> refill());
+        });
+    }
+
+    private Mono<JanusHandlePair> create(String node) {
+        return janus.createSessionOn(node)
+                .flatMap(sessionId -> janus.attachPlugin(sessionId, VIDEOROOM_PLUGIN)
+                        .map(handleId -> new JanusHandlePair(sessionId, handleId, node, Instant.now()))
+                        .onErrorResume(e -> janus.destroySession(sessionId)
+                                .onErrorResume(ignored -> Mono.empty())
+                                .then(Mono.error(e))));
+    }
+
+    /**
+     * Tops the pool up to its target in the background, each new pair on the healthy node with the
+     * fewest idle pairs.
+     */
+    private void refill() {
+        if (size == 0) {
+            return;
+        }
+        int missing = size - idle.size() - creating.get();
+        if (missing <= 0) {
+            return;
+        }
+        Map<String, Long> idleByNode = idle.stream()
+                .collect(Collectors.groupingBy(JanusHandlePair::node, Collectors.counting()));
+        for (int i = 0; i < missing; i++) {
+            String node = sparsestNode(idleByNode);
+            idleByNode.merge(node, 1L, Long::sum);
+            creating.incrementAndGet();
+            create(node)
+                    .doFinally(signal -> creating.decrementAndGet())
+                    .subscribe(pair -> {
+                                keepalives.register(pair.sessionId());
+                                idle.addLast(pair);
+                            },
+                            e -> log.warn("Failed to pre-create Janus session: {}", e.toString()));
+        }
+    }
+
+    private String sparsestNode(Map<String, Long> idleByNode) {
+        List<String> up = janus.nodeNames().stream().filter(janus::isUp).toList();
+        List<String> candidates = up.isEmpty() ? janus.nodeNames() : up;
+        return candidates.stream()
+                .min(Comparator.comparingLong(node -> idleByNode.getOrDefault(node, 0L)))
+                .orElseThrow();
+    }
+
+    private Mono<Void> discard(JanusHandlePair pair, String reason) {
+        if (!idle.remove(pair)) {
+            // Borrowed in the meantime; it belongs to its new owner now.
+            return Mono.empty();
+        }
+        Mono<Void> retired = retire(pair, reason);
+        refill();
+        return retired;
+    }
+
+    private Mono<Void> retire(JanusHandlePair pair, String reason) {
+        discarded.increment();
+        keepalives.unregister(pair.sessionId());
+        log.info("Discarding pooled Janus session {} ({})", pair.sessionId(), reason);
+        Mono<Void> destroy = janus.destroySession(pair.sessionId()).onErrorResume(e -> Mono.empty()).cache();
+        destroy.subscribe();
+        return destroy;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (reapedListener != null) {
+            reapedListener.dispose();
+        }
+        if (nodeFailureListener != null) {
+            nodeFailureListener.dispose();
+        }
+        JanusHandlePair pair;
+        while ((pair = idle.pollFirst()) != null) {
+            keepalives.unregister(pair.sessionId());
+            janus.destroySession(pair.sessionId()).onErrorResume(e -> Mono.empty()).subscribe();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive per-operation timeouts for Janus calls to one node.
+ *
+ * Each operation tracks a moving average of its reply latency; its timeout is {@code MULTIPLIER} times
+ * that average, at least {@code FLOOR} and at most the operation's configured ceiling. A timed-out call
+ * feeds the timeout it hit back in, so a Janus that got slower for real pushes the timeout up towards
+ * the ceiling instead of failing forever.
+ */
+final class JanusTimeouts {
+
+    private static final long FLOOR_NANOS = TimeUnit.MILLISECONDS.toNanos(1_000);
+    private static final int MULTIPLIER = 4;
+    /** Weight of the newest sample in the moving average. */
+    private static final double ALPHA = 0.2;
+
+    private final Map<String, Long> ceilings;
+    private final long defaultCeilingNanos;
+    private final ConcurrentHashMap<String, Double> averages = new ConcurrentHashMap<>();
+
+    JanusTimeouts(String node, Map<String, Duration> ceilings, Duration defaultCeiling, MeterRegistry meterRegistry) {
+        ConcurrentHashMap<String, Long> nanos = new ConcurrentHashMap<>();
+        ceilings.forEach((operation, ceiling) -> nanos.put(operation, ceiling.toNanos()));
+        this.ceilings = nanos;
+        this.defaultCeilingNanos = defaultCeiling.toNanos();
+        for (String operation : ceilings.keySet()) {
+            Gauge.builder("janus.timeout.effective", this, t -> t.timeout(operation).toMillis())
+                    .description("Current adaptive timeout per Janus operation")
+                    .baseUnit("milliseconds")
+                    .tag("node", node)
+                    .tag("operation", operation)
+                    .register(meterRegistry);
+        }
+    }
+
+    Duration timeout(String operation) {
+        long ceiling = ceilings.getOrDefault(operation, defaultCeilingNanos);
+        Double average = averages.get(operation);
+        if (average == null) {
+            return Duration.ofNanos(ceiling);
+        }
+        long adaptive = (long) (average * MULTIPLIER);
+        return Duration.ofNanos(Math.min(ceiling, Math.max(Math.min(FLOOR_NANOS, ceiling), adaptive)));
+    }
+
+    void record(String operation, long latencyNanos) {
+        averages.merge(operation, (double) latencyNanos, (avg, sample) -> avg + ALPHA * (sample - avg));
+    }
+}
@@ -0,0 +1,220 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces trickle candidates per Janus handle into one {@code trickle} request.
+ *
+ * Candidates arriving within {@code batch-window-ms} of the first buffered one go out together, at most
+ * {@code max-batch} per request. A handle has at most one trickle request in flight and batches are
+ * taken in arrival order, so Janus sees candidates in the order the client sent them. {@code completed}
+ * flushes whatever is buffered and is sent right after it.
+ *
+ * The Mono of each candidate completes when the request carrying it got Janus' reply (or fails with it).
+ */
+@Service
+public class JanusTrickleBatcher {
+
+    private final JanusClient janus;
+    private final long windowMs;
+    private final int maxBatch;
+
+    private final ConcurrentHashMap<HandleKey, Buffer> buffers = new ConcurrentHashMap<>();
+    private final DistributionSummary batchSize;
+    private final Counter candidates;
+
+    public JanusTrickleBatcher(
+            JanusClient janus,
+            @Value("${janus.trickle.batch-window-ms:20}") long windowMs,
+            @Value("${janus.trickle.max-batch:16}") int maxBatch,
+            MeterRegistry meterRegistry) {
+        this.janus = janus;
+        this.windowMs = Math.max(0, windowMs);
+        this.maxBatch = Math.max(1, maxBatch);
+
+        this.batchSize = DistributionSummary.builder("janus.trickle.batch")
+                .description("Candidates per trickle request sent to Janus")
+                .register(meterRegistry);
+        this.candidates = Counter.builder("janus.trickle.candidates")
+                .description("Client ICE candidates forwarded to Janus")
+                .register(meterRegistry);
+    }
+
+    public Mono<Void> candidate(long sessionId, long handleId, TrickleCandidate candidate) {
+        return enqueue(sessionId, handleId, candidate);
+    }
+
+    public Mono<Void> completed(long sessionId, long handleId) {
+        return enqueue(sessionId, handleId, null);
+    }
+
+    /**
+     * Enqueues on subscription, so subscribing in order keeps candidates in order. Disposing the
+     * subscription before the candidate was sent drops it from the buffer.
+     */
+    private Mono<Void> enqueue(long sessionId, long handleId, TrickleCandidate candidate) {
+        return Mono.create(sink -> {
+            HandleKey key = new HandleKey(sessionId, handleId);
+            Pending pending = new Pending(candidate, sink);
+            sink.onCancel(pending::cancel);
+            while (true) {
+                Buffer buffer = buffers.computeIfAbsent(key, Buffer::new);
+                if (buffer.add(pending)) {
+                    return;
+                }
+                // Lost a race with the buffer retiring itself; take the fresh one.
+                buffers.remove(key, buffer);
+            }
+        });
+    }
+
+    private record HandleKey(long sessionId, long handleId) {
+    }
+
+    /** {@code candidate == null} marks end-of-candidates. */
+    private static final class Pending {
+        private final TrickleCandidate candidate;
+        private final MonoSink<Void> sink;
+        private volatile boolean cancelled;
+
+        Pending(TrickleCandidate candidate, MonoSink<Void> sink) {
+            this.candidate = candidate;
+            this.sink = sink;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /** A batch taken off the buffer under its lock, to be sent once the lock is released. */
+    private record Flight(List<Pending> batch, boolean completed) {
+    }
+
+    private final class Buffer {
+        private final HandleKey key;
+        private final List<Pending> pending = new ArrayList<>();
+        private boolean inFlight;
+        private boolean retired;
+        private Disposable timer;
+
+        Buffer(HandleKey key) {
+            this.key = key;
+        }
+
+        boolean add(Pending item) {
+            Flight flight;
+            synchronized (this) {
+                if (retired) {
+                    return false;
+                }
+                pending.add(item);
+                if (item.candidate != null) {
+                    candidates.increment();
+                }
+                flight = inFlight ? null : scheduleOrTake();
+            }
+            send(flight);
+            return true;
+        }
+
+        /** Caller holds the lock and nothing is in flight. */
+        private Flight scheduleOrTake() {
+            boolean due = pending.size() >= maxBatch || windowMs == 0
+                    || pending.stream().anyMatch(p -> p.candidate == null);
+            if (due) {
+                return takeBatch();
+            }
+            if (timer == null) {
+                timer = Schedulers.parallel().schedule(this::onWindowElapsed, windowMs, TimeUnit.MILLISECONDS);
+            }
+            return null;
+        }
+
+        private void onWindowElapsed() {
+            Flight flight;
+            synchronized (this) {
+                timer = null;
+                flight = inFlight || retired ? null : takeBatch();
+            }
+            send(flight);
+        }
+
+        /**
+         * Caller holds the lock and nothing is in flight. Drops cancelled entries and retires the buffer
+         * (returning null) when nothing is left to send.
+         */
+        private Flight takeBatch() {
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+            pending.removeIf(p -> p.cancelled);
+            if (pending.isEmpty()) {
+                retired = true;
+                buffers.remove(key, this);
+                return null;
+            }
+            List<Pending> batch = new ArrayList<>();
+            boolean completed = pending.get(0).candidate == null;
+            if (completed) {
+                batch.add(pending.remove(0));
+            } else {
+                while (!pending.isEmpty() && batch.size() < maxBatch && pending.get(0).candidate != null) {
+                    batch.add(pending.remove(0));
+                }
+            }
+            inFlight = true;
+            return new Flight(batch, completed);
+        }
+
+        /** Called without the lock, so a request that completes synchronously cannot re-enter it. */
+        private void send(Flight flight) {
+            if (flight == null) {
+                return;
+            }
+            Mono<Void> request;
+            if (flight.completed()) {
+                request = janus.sendTrickleCompleted(key.sessionId(), key.handleId());
+            } else {
+                List<TrickleCandidate> payload = flight.batch().stream().map(p -> p.candidate).toList();
+                batchSize.record(payload.size());
+                request = janus.sendTrickleCandidates(key.sessionId(), key.handleId(), payload);
+            }
+            request.subscribe(
+                    null,
+                    e -> done(flight.batch(), e),
+                    () -> done(flight.batch(), null));
+        }
+
+        private void done(List<Pending> batch, Throwable error) {
+            for (Pending p : batch) {
+                if (error != null) {
+                    p.sink.error(error);
+                } else {
+                    p.sink.success();
+                }
+            }
+            Flight next;
+            synchronized (this) {
+                inFlight = false;
+                // Whatever is buffered already waited out the previous request; no need for another window.
+                next = takeBatch();
+            }
+            send(next);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Janus API over a few persistent WebSocket connections ({@code janus-protocol}).
+ *
+ * Replies are matched to requests by {@code transaction}; the first reply (success, error or ack)
+ * completes the request. Everything else Janus pushes for a session (events, webrtcup, trickle, ...)
+ * is queued per session and handed out by {@link #nextEvent}, which mirrors one HTTP long-poll.
+ *
+ * Janus ties a session to the connection that created it, so a session's requests always use that
+ * connection.
+ */
+final class JanusWebSocketTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(JanusWebSocketTransport.class);
+
+    private static final String SUBPROTOCOL = "janus-protocol";
+    /** Events kept per session when nobody is polling; the oldest are dropped beyond this. */
+    private static final int MAX_BUFFERED_EVENTS = 256;
+
+    private final ReactorNettyWebSocketClient client = new ReactorNettyWebSocketClient();
+    private final URI uri;
+    private final ObjectMapper mapper;
+    private final Link[] links;
+    private final AtomicInteger nextLink = new AtomicInteger();
+
+    private final ConcurrentHashMap<Long, Link> sessionLinks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, EventQueue> sessionEvents = new ConcurrentHashMap<>();
+
+    JanusWebSocketTransport(URI uri, int connections, ObjectMapper mapper) {
+        this.uri = uri;
+        this.mapper = mapper;
+        this.links = new Link[Math.max(1, connections)];
+        for (int i = 0; i < links.length; i++) {
+            links[i] = new Link(i);
+        }
+    }
+
+    /**
+     * Sends a request and emits Janus' first reply to it. {@code body} must carry a transaction and,
+     * for session-level requests, {@code session_id}.
+     */
+    Mono<JanusMessage> send(ObjectNode body, Long sessionId) {
+        String transaction = body.path("transaction").asString();
+        Link link = sessionId == null
+                ? links[Math.floorMod(nextLink.getAndIncrement(), links.length)]
+                : sessionLinks.getOrDefault(sessionId, links[Math.floorMod(sessionId, links.length)]);
+
+        return link.connected()
+                .then(Mono.<JanusMessage>create(sink -> {
+                    link.pending.put(transaction, sink);
+                    sink.onDispose(() -> link.pending.remove(transaction));
+                    if (!link.send(body.toString())) {
+                        sink.error(new IllegalStateException("Janus WebSocket is not connected"));
+                    }
+                }))
+                .doOnNext(reply -> {
+                    if ("create".equals(body.path("janus").asString()) && reply.is("success")) {
+                        long created = reply.dataId();
+                        if (created > 0) {
+                            sessionLinks.put(created, link);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Next event pushed for the session, or a {@code keepalive} placeholder if none arrives within
+     * {@code timeout} (what the HTTP long-poll returns).
+     */
+    Mono<JanusMessage> nextEvent(long sessionId, Duration timeout) {
+        return sessionEvents.computeIfAbsent(sessionId, id -> new EventQueue()).next(timeout);
+    }
+
+    void forget(long sessionId) {
+        sessionLinks.remove(sessionId);
+        sessionEvents.remove(sessionId);
+    }
+
+    int openConnections() {
+        int open = 0;
+        for (Link link : links) {
+            if (link.isOpen()) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    int pendingRequests() {
+        int pending = 0;
+        for (Link link : links) {
+            pending += link.pending.size();
+        }
+        return pending;
+    }
+
+    void close() {
+        for (Link link : links) {
+            link.close();
+        }
+    }
+
+    private void onMessage(Link link, String text) {
+        JanusMessage json;
+        try {
+            json = mapper.readValue(text, JanusMessage.class);
+        } catch (RuntimeException e) {
+            log.warn("Unparseable Janus WebSocket message: {}", e.toString());
+            return;
+        }
+        String transaction = json.transaction();
+        if (transaction != null) {
+            MonoSink<JanusMessage> waiting = link.pending.remove(transaction);
+            if (waiting != null) {
+                waiting.success(json);
+                return;
+            }
+        }
+        long sessionId = json.sessionId() != null ? json.sessionId() : 0;
+        if (sessionId > 0) {
+            sessionEvents.computeIfAbsent(sessionId, id -> new EventQueue()).offer(json);
+        }
+    }
+
+    /**
+     * One WebSocket connection, (re)opened on demand.
+     */
+    private final class Link {
+        private final int index;
+        private final ConcurrentHashMap<String, MonoSink<JanusMessage>> pending = new ConcurrentHashMap<>();
+
+        private Sinks.Many<String> outbound;
+        private Mono<Void> opening;
+        private Disposable connection;
+        private volatile boolean open;
+
+        Link(int index) {
+            this.index = index;
+        }
+
+        boolean isOpen() {
+            return open;
+        }
+
+        synchronized Mono<Void> connected() {
+            if (opening != null) {
+                return opening;
+            }
+            Sinks.Many<String> out = Sinks.many().unicast().onBackpressureBuffer();
+            Sinks.One<Void> ready = Sinks.one();
+            outbound = out;
+            opening = ready.asMono();
+
+            connection = client.execute(uri, new HttpHeaders(), new WebSocketHandler() {
+                        @Override
+                        public List<String> getSubProtocols() {
+                            return List.of(SUBPROTOCOL);
+                        }
+
+                        @Override
+                        public Mono<Void> handle(WebSocketSession session) {
+                            open = true;
+                            ready.tryEmitEmpty();
+                            log.info("🔌 Janus WebSocket #{} connected to {}", index, uri);
+                            Mono<Void> in = session.receive()
+                                    .map(WebSocketMessage::getPayloadAsText)
+                                    .doOnNext(text -> onMessage(Link.this, text))
+                                    .then();
+                            Mono<Void> send = session.send(out.asFlux().map(session::textMessage));
+                            return Mono.firstWithSignal(in, send);
+                        }
+                    })
+                    .doFinally(signal -> disconnected(out))
+                    .subscribe(v -> {
+                    }, e -> {
+                        ready.tryEmitError(e);
+                        log.warn("Janus WebSocket #{} failed: {}", index, e.toString());
+                    });
+            return opening;
+        }
+
+        boolean send(String text) {
+            Sinks.Many<String> out;
+            synchronized (this) {
+                out = outbound;
+            }
+            return out != null && out.tryEmitNext(text).isSuccess();
+        }
+
+        private void disconnected(Sinks.Many<String> out) {
+            synchronized (this) {
+                if (outbound != out) {
+                    return;
+                }
+                outbound = null;
+                opening = null;
+                connection = null;
+                open = false;
+            }
+            IllegalStateException closed = new IllegalStateException("Janus WebSocket closed");
+            pending.values().forEach(sink -> sink.error(closed));
+            pending.clear();
+            // Janus destroys sessions whose transport went away; drop them so callers see timeouts
+            // and fall back to their normal session-recovery paths.
+            sessionLinks.entrySet().removeIf(e -> e.getValue() == this);
+            log.info("🔌 Janus WebSocket #{} disconnected", index);
+        }
+
+        synchronized void close() {
+            if (connection != null) {
+                connection.dispose();
+            }
+        }
+    }
+
+    /**
+     * Buffered events for one session plus the pollers currently waiting for one.
+     */
+    private final class EventQueue {
+        private final Deque<JanusMessage> buffered = new ArrayDeque<>();
+        private final Deque<MonoSink<JanusMessage>> waiters = new ArrayDeque<>();
+
+        void offer(JanusMessage event) {
+            MonoSink<JanusMessage> waiter;
+            synchronized (this) {
+                waiter = waiters.poll();
+                if (waiter == null) {
+                    if (buffered.size() >= MAX_BUFFERED_EVENTS) {
+                        buffered.poll();
+                    }
+                    buffered.add(event);
+                    return;
+                }
+            }
+            waiter.success(event);
+        }
+
+        Mono<JanusMessage> next(Duration timeout) {
+            return Mono.create(sink -> {
+                synchronized (this) {
+                    JanusMessage event = buffered.poll();
+                    if (event != null) {
+                        sink.success(event);
+                        return;
+                    }
+                    waiters.add(sink);
+                }
+                Disposable timer = Schedulers.parallel().schedule(() -> {
+                    if (removeWaiter(sink)) {
+                        sink.success(keepalive());
+                    }
+                }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+                sink.onDispose(() -> {
+                    timer.dispose();
+                    removeWaiter(sink);
+                });
+            });
+        }
+
+        private synchronized boolean removeWaiter(MonoSink<JanusMessage> sink) {
+            return waiters.remove(sink);
+        }
+
+        private JanusMessage keepalive() {
+            return JanusMessage.KEEPALIVE;
+        }
+    }
+}
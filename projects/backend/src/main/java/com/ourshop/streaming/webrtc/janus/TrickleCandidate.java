@@ -0,0 +1,7 @@
+package com.ourshop.streaming.webrtc.janus;
+
+/**
+ * One ICE candidate as trickled to Janus.
+ */
+public record TrickleCandidate(String candidate, String sdpMid, Integer sdpMLineIndex) {
+}
@@ -15,6 +15,7 @@ public record StreamSession(
         Long janusHandleId,
         Long janusRoomId,
         Long janusPublisherId,
+        String janusNode,
         String lastError
 ) {
 }
@@ -9,6 +9,12 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @Repository
@@ -22,6 +28,18 @@ public class R2dbcStreamSessionRepository implements StreamSessionRepository {
 
     @Override
     public Mono<StreamSession> save(StreamSession session) {
+        return saveAll(List.of(session)).thenReturn(session);
+    }
+
+    /**
+     * Upserts all sessions with one multi-row statement.
+     */
+    public Mono<Void> saveAll(List<StreamSession> sessions) {
+        if (sessions.isEmpty()) {
+            return Mono.empty();
+        }
+        String rows = String.join(", ",
+                Collections.nCopies(sessions.size(), "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"));
         String sql = """
                 INSERT INTO stream_session (
                     id,
@@ -35,9 +53,10 @@ public class R2dbcStreamSessionRepository implements StreamSessionRepository {
                     janus_handle_id,
                     janus_room_id,
                     janus_publisher_id,
+                    janus_node,
                     last_error
                 )
-                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                VALUES %s
                 ON DUPLICATE KEY UPDATE
                     stream_id = VALUES(stream_id),
                     role = VALUES(role),
@@ -49,32 +68,112 @@ public class R2dbcStreamSessionRepository implements StreamSessionRepository {
                     janus_handle_id = VALUES(janus_handle_id),
                     janus_room_id = VALUES(janus_room_id),
                     janus_publisher_id = VALUES(janus_publisher_id),
+                    janus_node = VALUES(janus_node),
                     last_error = VALUES(last_error)
-                """;
+                """.formatted(rows);
+
+        DatabaseClient.GenericExecuteSpec spec = db.sql(sql);
+        int base = 0;
+        for (StreamSession session : sessions) {
+            spec = spec
+                    .bind(base, session.id().toString())
+                    .bind(base + 1, session.streamId().toString())
+                    .bind(base + 2, session.role().name())
+                    .bind(base + 3, session.status().name())
+                    .bind(base + 4, session.createdAt());
+
+            spec = bindNullable(spec, base + 5, session.connectedAt(), Instant.class);
+            spec = bindNullable(spec, base + 6, session.closedAt(), Instant.class);
+            spec = bindNullable(spec, base + 7, session.janusSessionId(), Long.class);
+            spec = bindNullable(spec, base + 8, session.janusHandleId(), Long.class);
+            spec = bindNullable(spec, base + 9, session.janusRoomId(), Long.class);
+            spec = bindNullable(spec, base + 10, session.janusPublisherId(), Long.class);
+            spec = bindNullable(spec, base + 11, session.janusNode(), String.class);
+            spec = bindNullable(spec, base + 12, session.lastError(), String.class);
+            base += 13;
+        }
+
+        return spec.fetch().rowsUpdated().then();
+    }
+
+    @Override
+    public Mono<Boolean> transition(StreamSession next, Set<StreamSessionStatus> from) {
+        return transition(List.of(next.id()), next, from).map(rows -> rows > 0);
+    }
+
+    /**
+     * Applies {@link #transition} to several sessions at once, one UPDATE per distinct target state.
+     *
+     * @return number of sessions that were in one of {@code from} and got updated
+     */
+    public Mono<Long> transitionAll(List<StreamSession> next, Set<StreamSessionStatus> from) {
+        Map<StateColumns, List<StreamSession>> byState = new LinkedHashMap<>();
+        for (StreamSession session : next) {
+            byState.computeIfAbsent(StateColumns.of(session), k -> new ArrayList<>()).add(session);
+        }
+        return Flux.fromIterable(byState.values())
+                .concatMap(group -> transition(group.stream().map(StreamSession::id).toList(), group.get(0), from))
+                .reduce(0L, Long::sum);
+    }
+
+    /**
+     * Sets the state columns of {@code next} on every session in {@code ids} that is in one of {@code from}.
+     */
+    private Mono<Long> transition(List<UUID> ids, StreamSession next, Set<StreamSessionStatus> from) {
+        if (from.isEmpty() || ids.isEmpty()) {
+            return Mono.just(0L);
+        }
+        // rowsUpdated counts matched rows (r2dbc-mysql always negotiates CLIENT_FOUND_ROWS), so a
+        // transition to identical values still reports as applied.
+        String sql = """
+                UPDATE stream_session
+                SET status = ?,
+                    connected_at = ?,
+                    closed_at = ?,
+                    janus_room_id = ?,
+                    janus_publisher_id = ?,
+                    last_error = ?
+                WHERE id IN (%s)
+                  AND status IN (%s)
+                """.formatted(
+                String.join(", ", Collections.nCopies(ids.size(), "?")),
+                String.join(", ", Collections.nCopies(from.size(), "?")));
 
         DatabaseClient.GenericExecuteSpec spec = db.sql(sql)
-                .bind(0, session.id().toString())
-                .bind(1, session.streamId().toString())
-                .bind(2, session.role().name())
-                .bind(3, session.status().name())
-                .bind(4, session.createdAt());
-
-        spec = bindNullable(spec, 5, session.connectedAt(), Instant.class);
-        spec = bindNullable(spec, 6, session.closedAt(), Instant.class);
-        spec = bindNullable(spec, 7, session.janusSessionId(), Long.class);
-        spec = bindNullable(spec, 8, session.janusHandleId(), Long.class);
-        spec = bindNullable(spec, 9, session.janusRoomId(), Long.class);
-        spec = bindNullable(spec, 10, session.janusPublisherId(), Long.class);
-        spec = bindNullable(spec, 11, session.lastError(), String.class);
-
-        return spec.fetch().rowsUpdated().thenReturn(session);
+                .bind(0, next.status().name());
+
+        spec = bindNullable(spec, 1, next.connectedAt(), Instant.class);
+        spec = bindNullable(spec, 2, next.closedAt(), Instant.class);
+        spec = bindNullable(spec, 3, next.janusRoomId(), Long.class);
+        spec = bindNullable(spec, 4, next.janusPublisherId(), Long.class);
+        spec = bindNullable(spec, 5, next.lastError(), String.class);
+
+        int idx = 6;
+        for (UUID id : ids) {
+            spec = spec.bind(idx++, id.toString());
+        }
+        for (StreamSessionStatus status : from) {
+            spec = spec.bind(idx++, status.name());
+        }
+
+        return spec.fetch().rowsUpdated();
+    }
+
+    /** The columns a transition writes; sessions agreeing on all of them can share one UPDATE. */
+    private record StateColumns(StreamSessionStatus status, Instant connectedAt, Instant closedAt,
+            Long janusRoomId, Long janusPublisherId, String lastError) {
+
+        static StateColumns of(StreamSession session) {
+            return new StateColumns(session.status(), session.connectedAt(), session.closedAt(),
+                    session.janusRoomId(), session.janusPublisherId(), session.lastError());
+        }
     }
 
     @Override
     public Mono<StreamSession> findById(UUID id) {
         String sql = """
                 SELECT id, stream_id, role, status, created_at, connected_at, closed_at,
-                       janus_session_id, janus_handle_id, janus_room_id, janus_publisher_id, last_error
+                       janus_session_id, janus_handle_id, janus_room_id, janus_publisher_id, janus_node, last_error
                 FROM stream_session
                 WHERE id = ?
                 LIMIT 1
@@ -94,6 +193,7 @@ public class R2dbcStreamSessionRepository implements StreamSessionRepository {
                         row.get("janus_handle_id", Long.class),
                         row.get("janus_room_id", Long.class),
                         row.get("janus_publisher_id", Long.class),
+                        row.get("janus_node", String.class),
                         row.get("last_error", String.class)
                 ))
                 .one();
@@ -103,7 +203,7 @@ public class R2dbcStreamSessionRepository implements StreamSessionRepository {
     public Flux<StreamSession> findByStreamId(UUID streamId) {
         String sql = """
                 SELECT id, stream_id, role, status, created_at, connected_at, closed_at,
-                       janus_session_id, janus_handle_id, janus_room_id, janus_publisher_id, last_error
+                       janus_session_id, janus_handle_id, janus_room_id, janus_publisher_id, janus_node, last_error
                 FROM stream_session
                 WHERE stream_id = ?
                 ORDER BY created_at DESC
@@ -123,6 +223,7 @@ public class R2dbcStreamSessionRepository implements StreamSessionRepository {
                         row.get("janus_handle_id", Long.class),
                         row.get("janus_room_id", Long.class),
                         row.get("janus_publisher_id", Long.class),
+                        row.get("janus_node", String.class),
                         row.get("last_error", String.class)
                 ))
                 .all();
@@ -132,7 +233,7 @@ public class R2dbcStreamSessionRepository implements StreamSessionRepository {
     public Mono<StreamSession> findActivePublisherByStreamId(UUID streamId) {
         String sql = """
                 SELECT id, stream_id, role, status, created_at, connected_at, closed_at,
-                       janus_session_id, janus_handle_id, janus_room_id, janus_publisher_id, last_error
+                       janus_session_id, janus_handle_id, janus_room_id, janus_publisher_id, janus_node, last_error
                 FROM stream_session
                 WHERE stream_id = ?
                   AND role = ?
@@ -159,11 +260,45 @@ public class R2dbcStreamSessionRepository implements StreamSessionRepository {
                         row.get("janus_handle_id", Long.class),
                         row.get("janus_room_id", Long.class),
                         row.get("janus_publisher_id", Long.class),
+                        row.get("janus_node", String.class),
                         row.get("last_error", String.class)
                 ))
                 .one();
     }
 
+    @Override
+    public Flux<StreamSession> findActiveByJanusNode(String janusNode) {
+        String sql = """
+                SELECT id, stream_id, role, status, created_at, connected_at, closed_at,
+                       janus_session_id, janus_handle_id, janus_room_id, janus_publisher_id, janus_node, last_error
+                FROM stream_session
+                WHERE janus_node = ?
+                  AND status IN (?, ?, ?)
+                """;
+
+        return db.sql(sql)
+                .bind(0, janusNode)
+                .bind(1, StreamSessionStatus.CREATED.name())
+                .bind(2, StreamSessionStatus.NEGOTIATING.name())
+                .bind(3, StreamSessionStatus.CONNECTED.name())
+                .map((row, meta) -> mapRow(
+                        row.get("id", String.class),
+                        row.get("stream_id", String.class),
+                        row.get("role", String.class),
+                        row.get("status", String.class),
+                        row.get("created_at", Instant.class),
+                        row.get("connected_at", Instant.class),
+                        row.get("closed_at", Instant.class),
+                        row.get("janus_session_id", Long.class),
+                        row.get("janus_handle_id", Long.class),
+                        row.get("janus_room_id", Long.class),
+                        row.get("janus_publisher_id", Long.class),
+                        row.get("janus_node", String.class),
+                        row.get("last_error", String.class)
+                ))
+                .all();
+    }
+
     private static StreamSession mapRow(
             String id,
             String streamId,
@@ -176,6 +311,7 @@ public class R2dbcStreamSessionRepository implements StreamSessionRepository {
             Long janusHandleId,
             Long janusRoomId,
             Long janusPublisherId,
+            String janusNode,
             String lastError
     ) {
         return new StreamSession(
@@ -190,6 +326,7 @@ public class R2dbcStreamSessionRepository implements StreamSessionRepository {
                 janusHandleId,
                 janusRoomId,
                 janusPublisherId,
+                janusNode,
                 lastError
         );
     }
@@ -1,18 +1,33 @@
 package com.ourshop.streaming.webrtc.repo;
 
 import com.ourshop.streaming.webrtc.model.StreamSession;
+import com.ourshop.streaming.webrtc.model.StreamSessionStatus;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Set;
 import java.util.UUID;
 
 public interface StreamSessionRepository {
 
     Mono<StreamSession> save(StreamSession session);
 
+    /**
+     * Writes the state of {@code next} (status, connected/closed timestamps, room, publisher id, last error)
+     * in one conditional UPDATE that only applies while the stored session is in one of {@code from}.
+     *
+     * @return true if it applied; false if the session had meanwhile moved elsewhere (or does not exist)
+     */
+    Mono<Boolean> transition(StreamSession next, Set<StreamSessionStatus> from);
+
     Mono<StreamSession> findById(UUID id);
 
     Flux<StreamSession> findByStreamId(UUID streamId);
 
     Mono<StreamSession> findActivePublisherByStreamId(UUID streamId);
+
+    /**
+     * Sessions not yet closed or failed whose Janus session lives on {@code janusNode}.
+     */
+    Flux<StreamSession> findActiveByJanusNode(String janusNode);
 }
@@ -0,0 +1,362 @@
+package com.ourshop.streaming.webrtc.repo;
+
+import com.ourshop.streaming.webrtc.model.StreamSession;
+import com.ourshop.streaming.webrtc.model.StreamSessionStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * Optional write-behind in front of {@link R2dbcStreamSessionRepository}.
+ *
+ * Intermediate states (CREATED, NEGOTIATING) are kept in memory, coalesced per session and written every
+ * {@code flush-interval-ms} in multi-row statements, so an offer does not wait for them. A change to a
+ * terminal state (CONNECTED, CLOSED, FAILED) first writes whatever is buffered for that session and is then
+ * written before the call returns, as without write-behind. Reads first write the buffered sessions they
+ * could return, so this instance always reads its own writes.
+ *
+ * The price: buffered states are lost if the process dies before they are flushed, and when a buffered
+ * transition turns out not to apply (the session moved on in the database meanwhile), the caller only
+ * learns it at the session's next terminal transition. Off unless {@code webrtc.sessions.write-behind.enabled}.
+ */
+@Primary
+@Repository
+public class WriteBehindStreamSessionRepository implements StreamSessionRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindStreamSessionRepository.class);
+
+    private final R2dbcStreamSessionRepository delegate;
+    private final boolean enabled;
+    private final int maxBatch;
+
+    /** Buffered writes per session, oldest first. Guarded by {@code this}, like {@link #writing}. */
+    private final LinkedHashMap<UUID, Pending> pending = new LinkedHashMap<>();
+    /** Sessions whose buffered write is being executed; the next write of a session waits for it. */
+    private final Map<UUID, InFlight> writing = new HashMap<>();
+    private long batches;
+
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    private final DistributionSummary batchSize;
+    private final Timer lag;
+    private final Counter conflicts;
+    private final Counter failed;
+
+    public WriteBehindStreamSessionRepository(
+            R2dbcStreamSessionRepository delegate,
+            @Value("${webrtc.sessions.write-behind.enabled:false}") boolean enabled,
+            @Value("${webrtc.sessions.write-behind.flush-interval-ms:50}") long flushIntervalMs,
+            @Value("${webrtc.sessions.write-behind.max-batch:200}") int maxBatch,
+            MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.enabled = enabled;
+        this.maxBatch = Math.max(1, maxBatch);
+
+        this.batchSize = DistributionSummary.builder("webrtc.sessions.write_behind.batch")
+                .description("Buffered session writes flushed together")
+                .register(meterRegistry);
+        this.lag = Timer.builder("webrtc.sessions.write_behind.lag")
+                .description("Time from buffering a session state to having it in the database")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.conflicts = Counter.builder("webrtc.sessions.write_behind.conflicts")
+                .description("Buffered transitions that no longer applied when flushed")
+                .register(meterRegistry);
+        this.failed = Counter.builder("webrtc.sessions.write_behind.failed")
+                .description("Flushes that failed and were put back for the next one")
+                .register(meterRegistry);
+        Gauge.builder("webrtc.sessions.write_behind.pending", this, WriteBehindStreamSessionRepository::pendingCount)
+                .register(meterRegistry);
+
+        if (enabled) {
+            long interval = Math.max(5, flushIntervalMs);
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "session-write-behind");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleAtFixedRate(this::flushTick, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    @Override
+    public Mono<StreamSession> save(StreamSession session) {
+        if (!enabled || isTerminal(session.status())) {
+            return drain(session.id()).then(delegate.save(session));
+        }
+        return Mono.fromSupplier(() -> {
+            synchronized (this) {
+                Pending previous = pending.get(session.id());
+                // A full-row upsert supersedes whatever was buffered before it.
+                pending.put(session.id(), new Pending(session, null,
+                        previous != null ? previous.enqueuedAt() : System.nanoTime()));
+            }
+            return session;
+        });
+    }
+
+    @Override
+    public Mono<Boolean> transition(StreamSession next, Set<StreamSessionStatus> from) {
+        if (!enabled || isTerminal(next.status())) {
+            return drain(next.id()).then(delegate.transition(next, from));
+        }
+        return Mono.fromSupplier(() -> {
+            synchronized (this) {
+                Pending previous = pending.get(next.id());
+                if (previous == null) {
+                    // Nothing known locally; the condition is checked when the flush runs.
+                    pending.put(next.id(), new Pending(next, Set.copyOf(from), System.nanoTime()));
+                    return true;
+                }
+                // The buffered write decides the state this one starts from.
+                if (!from.contains(previous.row().status())) {
+                    return false;
+                }
+                pending.put(next.id(), new Pending(withState(previous.row(), next), previous.from(),
+                        previous.enqueuedAt()));
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public Mono<StreamSession> findById(UUID id) {
+        return drain(id).then(delegate.findById(id));
+    }
+
+    @Override
+    public Flux<StreamSession> findByStreamId(UUID streamId) {
+        return drainWhere(row -> row.streamId().equals(streamId))
+                .thenMany(delegate.findByStreamId(streamId));
+    }
+
+    @Override
+    public Mono<StreamSession> findActivePublisherByStreamId(UUID streamId) {
+        return drainWhere(row -> row.streamId().equals(streamId))
+                .then(delegate.findActivePublisherByStreamId(streamId));
+    }
+
+    @Override
+    public Flux<StreamSession> findActiveByJanusNode(String janusNode) {
+        return drainWhere(row -> janusNode.equals(row.janusNode()))
+                .thenMany(delegate.findActiveByJanusNode(janusNode));
+    }
+
+    /**
+     * Completes once everything buffered for the session is in the database (or fails with the error that
+     * prevented it; the write stays buffered then).
+     */
+    private Mono<Void> drain(UUID id) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            InFlight inFlight;
+            Mono<Void> write = null;
+            synchronized (this) {
+                inFlight = writing.get(id);
+                if (inFlight == null) {
+                    Pending taken = pending.remove(id);
+                    write = taken == null ? null : startWrite(List.of(taken));
+                }
+            }
+            if (inFlight != null) {
+                // Whatever was buffered after it is only looked at once it is done.
+                return inFlight.done().onErrorResume(e -> Mono.empty()).then(drain(id));
+            }
+            return write != null ? write : Mono.empty();
+        });
+    }
+
+    private Mono<Void> drainWhere(Predicate<StreamSession> matches) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            List<UUID> ids = new ArrayList<>();
+            synchronized (this) {
+                pending.forEach((id, p) -> {
+                    if (matches.test(p.row())) {
+                        ids.add(id);
+                    }
+                });
+                writing.forEach((id, w) -> {
+                    if (matches.test(w.row()) && !ids.contains(id)) {
+                        ids.add(id);
+                    }
+                });
+            }
+            return Flux.fromIterable(ids).concatMap(this::drain).then();
+        });
+    }
+
+    private void flushTick() {
+        if (!flushing.compareAndSet(false, true)) {
+            return;
+        }
+        Mono<Void> write;
+        synchronized (this) {
+            List<Pending> batch = new ArrayList<>();
+            Iterator<Map.Entry<UUID, Pending>> it = pending.entrySet().iterator();
+            while (it.hasNext() && batch.size() < maxBatch) {
+                Map.Entry<UUID, Pending> entry = it.next();
+                // Its previous write is still running; next tick.
+                if (!writing.containsKey(entry.getKey())) {
+                    batch.add(entry.getValue());
+                    it.remove();
+                }
+            }
+            write = batch.isEmpty() ? Mono.empty() : startWrite(batch);
+        }
+        write.doFinally(signal -> flushing.set(false))
+                .subscribe(null, e -> log.warn("Session write-behind flush failed: {}", e.toString()));
+    }
+
+    /**
+     * Caller holds the lock. Registers the batch as in flight; it runs once subscribed.
+     */
+    private Mono<Void> startWrite(List<Pending> batch) {
+        long batchId = ++batches;
+        Runnable finished = () -> {
+            synchronized (this) {
+                writing.values().removeIf(w -> w.batchId() == batchId);
+            }
+        };
+        Mono<Void> done = Mono.defer(() -> execute(batch))
+                .doOnError(e -> {
+                    failed.increment();
+                    synchronized (this) {
+                        // Put back unless something newer was buffered meanwhile.
+                        for (Pending p : batch) {
+                            pending.putIfAbsent(p.row().id(), p);
+                        }
+                    }
+                })
+                // Before waiters see the outcome: a drain that waited on this write must not find it again.
+                .doOnTerminate(finished)
+                .doOnCancel(finished)
+                .cache();
+        for (Pending p : batch) {
+            writing.put(p.row().id(), new InFlight(p.row(), batchId, done));
+        }
+        return done;
+    }
+
+    private Mono<Void> execute(List<Pending> batch) {
+        List<StreamSession> upserts = new ArrayList<>();
+        Map<Set<StreamSessionStatus>, List<StreamSession>> conditional = new LinkedHashMap<>();
+        for (Pending p : batch) {
+            if (p.from() == null) {
+                upserts.add(p.row());
+            } else {
+                conditional.computeIfAbsent(p.from(), k -> new ArrayList<>()).add(p.row());
+            }
+        }
+        batchSize.record(batch.size());
+
+        return delegate.saveAll(upserts)
+                .thenMany(Flux.fromIterable(conditional.entrySet())
+                        .concatMap(group -> delegate.transitionAll(group.getValue(), group.getKey())
+                                .doOnNext(applied -> {
+                                    long missed = group.getValue().size() - applied;
+                                    if (missed > 0) {
+                                        conflicts.increment(missed);
+                                    }
+                                })))
+                .then(Mono.fromRunnable(() -> {
+                    long now = System.nanoTime();
+                    for (Pending p : batch) {
+                        lag.record(now - p.enqueuedAt(), TimeUnit.NANOSECONDS);
+                    }
+                }));
+    }
+
+    synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdownNow();
+        List<UUID> ids;
+        synchronized (this) {
+            ids = new ArrayList<>(pending.keySet());
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        log.info("Flushing {} buffered session writes before shutdown", ids.size());
+        try {
+            Flux.fromIterable(ids).concatMap(this::drain).then().block(Duration.ofSeconds(10));
+        } catch (RuntimeException e) {
+            log.warn("Could not flush buffered session writes: {}", e.toString());
+        }
+    }
+
+    private static boolean isTerminal(StreamSessionStatus status) {
+        return switch (status) {
+            case CREATED, NEGOTIATING -> false;
+            case CONNECTED, CLOSED, FAILED -> true;
+        };
+    }
+
+    /**
+     * {@code row} with the columns a transition writes taken from {@code next}.
+     */
+    private static StreamSession withState(StreamSession row, StreamSession next) {
+        return new StreamSession(
+                row.id(),
+                row.streamId(),
+                row.role(),
+                next.status(),
+                row.createdAt(),
+                next.connectedAt(),
+                next.closedAt(),
+                row.janusSessionId(),
+                row.janusHandleId(),
+                next.janusRoomId(),
+                next.janusPublisherId(),
+                row.janusNode(),
+                next.lastError());
+    }
+
+    /**
+     * @param from null for a full-row upsert, otherwise the states the session must be in for it to apply
+     */
+    private record Pending(StreamSession row, Set<StreamSessionStatus> from, long enqueuedAt) {
+    }
+
+    private record InFlight(StreamSession row, long batchId, Mono<Void> done) {
+    }
+}
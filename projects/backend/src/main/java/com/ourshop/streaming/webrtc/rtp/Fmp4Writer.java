@@ -0,0 +1,331 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes CMAF-style fragmented MP4 (ISO/IEC 14496-12): an init segment with an H.264 track and an
+ * optional Opus track, and media segments made of one {@code moof} + {@code mdat} pair.
+ *
+ * Only what HLS players need is emitted; sample tables in {@code moov} are empty and every sample
+ * carries explicit duration, size and flags in {@code trun}.
+ */
+final class Fmp4Writer {
+
+    static final int VIDEO_TRACK_ID = 1;
+    static final int AUDIO_TRACK_ID = 2;
+    static final int VIDEO_TIMESCALE = 90_000;
+    static final int AUDIO_TIMESCALE = 48_000;
+
+    private static final int SAMPLE_FLAGS_SYNC = 0x02000000;
+    private static final int SAMPLE_FLAGS_NON_SYNC = 0x01010000;
+
+    // 16.16 / 2.30 fixed-point display matrices (a, b, u, c, d, v, x, y, w)
+    private static final int ONE = 0x00010000;
+    private static final int MINUS_ONE = 0xFFFF0000;
+    private static final int W_ONE = 0x40000000;
+
+    private Fmp4Writer() {
+    }
+
+    /**
+     * A sample ready to be written.
+     *
+     * @param data     sample bytes (AVCC length-prefixed NAL units for video)
+     * @param duration duration in the track timescale
+     * @param sync     random access point
+     */
+    record Sample(byte[] data, int duration, boolean sync) {
+    }
+
+    /**
+     * @param opus             the Opus track's parameters, or {@code null} for video only
+     * @param rotateToPortrait write the front-camera correction used by the transcoding path
+     *                         ({@code transpose=1,vflip}) as the track's display matrix
+     */
+    static byte[] initSegment(byte[] sps, byte[] pps, H264Sps info, OpusConfig opus, boolean rotateToPortrait) {
+        boolean withAudio = opus != null;
+        Box moov = new Box("moov")
+                .child(mvhd(withAudio ? 3 : 2))
+                .child(videoTrak(sps, pps, info, rotateToPortrait));
+        if (withAudio) {
+            moov.child(audioTrak(opus));
+        }
+        Box mvex = new Box("mvex").child(trex(VIDEO_TRACK_ID));
+        if (withAudio) {
+            mvex.child(trex(AUDIO_TRACK_ID));
+        }
+        moov.child(mvex);
+
+        Box ftyp = new Box("ftyp").fourcc("iso6").u32(0)
+                .fourcc("iso6").fourcc("cmfc").fourcc("mp41");
+        return concat(ftyp.bytes(), moov.bytes());
+    }
+
+    /**
+     * One fragment holding both tracks; video samples come first in {@code mdat}.
+     */
+    static byte[] mediaSegment(int sequenceNumber, long videoDecodeTime, List<Sample> video,
+            long audioDecodeTime, List<Sample> audio) {
+        int videoBytes = payloadSize(video);
+        int audioBytes = payloadSize(audio);
+
+        // trun data offsets depend on the moof size, which does not depend on their values.
+        int moofSize = moof(sequenceNumber, videoDecodeTime, video, audioDecodeTime, audio, 0, 0).length;
+        byte[] moof = moof(sequenceNumber, videoDecodeTime, video, audioDecodeTime, audio,
+                moofSize + 8, moofSize + 8 + videoBytes);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(moof.length + 8 + videoBytes + audioBytes);
+        out.writeBytes(moof);
+        writeU32(out, 8L + videoBytes + audioBytes);
+        out.writeBytes("mdat".getBytes(StandardCharsets.US_ASCII));
+        for (Sample s : video) {
+            out.writeBytes(s.data());
+        }
+        for (Sample s : audio) {
+            out.writeBytes(s.data());
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] moof(int sequenceNumber, long videoDecodeTime, List<Sample> video,
+            long audioDecodeTime, List<Sample> audio, int videoDataOffset, int audioDataOffset) {
+        Box moof = new Box("moof").child(Box.full("mfhd", 0, 0).u32(sequenceNumber));
+        if (!video.isEmpty()) {
+            moof.child(traf(VIDEO_TRACK_ID, videoDecodeTime, video, videoDataOffset));
+        }
+        if (!audio.isEmpty()) {
+            moof.child(traf(AUDIO_TRACK_ID, audioDecodeTime, audio, audioDataOffset));
+        }
+        return moof.bytes();
+    }
+
+    private static Box traf(int trackId, long decodeTime, List<Sample> samples, int dataOffset) {
+        // default-base-is-moof: data offsets are relative to the start of moof
+        Box tfhd = Box.full("tfhd", 0, 0x020000).u32(trackId);
+        Box tfdt = Box.full("tfdt", 1, 0).u64(decodeTime);
+        // data-offset, sample-duration, sample-size and sample-flags present
+        Box trun = Box.full("trun", 0, 0x000701).u32(samples.size()).u32(dataOffset);
+        for (Sample s : samples) {
+            trun.u32(s.duration()).u32(s.data().length).u32(s.sync() ? SAMPLE_FLAGS_SYNC : SAMPLE_FLAGS_NON_SYNC);
+        }
+        return new Box("traf").child(tfhd).child(tfdt).child(trun);
+    }
+
+    private static Box mvhd(int nextTrackId) {
+        Box mvhd = Box.full("mvhd", 0, 0)
+                .u32(0).u32(0)      // creation / modification time
+                .u32(1000).u32(0)   // timescale, duration (fragmented: unknown)
+                .u32(ONE)           // rate 1.0
+                .u16(0x0100).u16(0) // volume 1.0, reserved
+                .u32(0).u32(0);     // reserved
+        matrix(mvhd, false, 0, 0);
+        for (int i = 0; i < 6; i++) {
+            mvhd.u32(0); // pre_defined
+        }
+        return mvhd.u32(nextTrackId);
+    }
+
+    private static Box videoTrak(byte[] sps, byte[] pps, H264Sps info, boolean rotateToPortrait) {
+        Box tkhd = tkhd(VIDEO_TRACK_ID, false);
+        matrix(tkhd, rotateToPortrait, info.width(), info.height());
+        tkhd.u32((long) info.width() << 16).u32((long) info.height() << 16);
+
+        Box avcC = new Box("avcC")
+                .u8(1).u8(info.profileIdc()).u8(info.constraintFlags()).u8(info.levelIdc())
+                .u8(0xFF)  // 4-byte NAL lengths
+                .u8(0xE1)  // one SPS
+                .u16(sps.length).bytes(sps)
+                .u8(1)     // one PPS
+                .u16(pps.length).bytes(pps);
+        if (H264Sps.hasChromaInfo(info.profileIdc())) {
+            avcC.u8(0xFC | info.chromaFormatIdc())
+                    .u8(0xF8 | (info.bitDepthLuma() - 8))
+                    .u8(0xF8 | (info.bitDepthChroma() - 8))
+                    .u8(0); // no SPS extensions
+        }
+
+        Box avc1 = new Box("avc1")
+                .zeros(6).u16(1)               // reserved, data_reference_index
+                .u16(0).u16(0).zeros(12)       // pre_defined, reserved, pre_defined
+                .u16(info.width()).u16(info.height())
+                .u32(0x00480000).u32(0x00480000) // 72 dpi
+                .u32(0).u16(1)                 // reserved, frame_count
+                .zeros(32)                     // compressorname
+                .u16(0x0018).u16(0xFFFF)       // depth, pre_defined
+                .child(avcC);
+
+        Box minf = new Box("minf")
+                .child(Box.full("vmhd", 0, 1).u16(0).u16(0).u16(0).u16(0))
+                .child(dinf())
+                .child(stbl(avc1));
+        return new Box("trak").child(tkhd).child(mdia(VIDEO_TIMESCALE, "vide", "VideoHandler", minf));
+    }
+
+    private static Box audioTrak(OpusConfig config) {
+        Box tkhd = tkhd(AUDIO_TRACK_ID, true);
+        matrix(tkhd, false, 0, 0);
+        tkhd.u32(0).u32(0);
+
+        Box dOps = new Box("dOps")
+                .u8(0)                 // version
+                .u8(config.channels()) // output channel count
+                .u16(config.preSkip()) // pre-skip
+                .u32(AUDIO_TIMESCALE)  // input sample rate
+                .u16(0)                // output gain
+                .u8(0);                // channel mapping family (mono/stereo)
+        Box opus = new Box("Opus")
+                .zeros(6).u16(1)       // reserved, data_reference_index
+                .zeros(8)              // reserved
+                .u16(config.channels()).u16(16) // channel count, sample size
+                .u16(0).u16(0)         // pre_defined, reserved
+                .u32((long) AUDIO_TIMESCALE << 16)
+                .child(dOps);
+
+        Box minf = new Box("minf")
+                .child(Box.full("smhd", 0, 0).u16(0).u16(0))
+                .child(dinf())
+                .child(stbl(opus));
+        return new Box("trak").child(tkhd).child(mdia(AUDIO_TIMESCALE, "soun", "SoundHandler", minf));
+    }
+
+    private static Box tkhd(int trackId, boolean audio) {
+        return Box.full("tkhd", 0, 0x000003) // enabled, in movie
+                .u32(0).u32(0)              // creation / modification time
+                .u32(trackId).u32(0)        // track_ID, reserved
+                .u32(0)                     // duration
+                .u32(0).u32(0)              // reserved
+                .u16(0).u16(0)              // layer, alternate_group
+                .u16(audio ? 0x0100 : 0).u16(0);
+    }
+
+    /**
+     * Identity, or the mapping of {@code transpose=1,vflip}: (x, y) -> (h - y, w - x).
+     */
+    private static void matrix(Box box, boolean rotateToPortrait, int width, int height) {
+        if (!rotateToPortrait) {
+            box.u32(ONE).u32(0).u32(0)
+                    .u32(0).u32(ONE).u32(0)
+                    .u32(0).u32(0).u32(W_ONE);
+            return;
+        }
+        box.u32(0).u32(MINUS_ONE & 0xFFFFFFFFL).u32(0)
+                .u32(MINUS_ONE & 0xFFFFFFFFL).u32(0).u32(0)
+                .u32((long) height << 16).u32((long) width << 16).u32(W_ONE);
+    }
+
+    private static Box mdia(int timescale, String handler, String handlerName, Box minf) {
+        Box mdhd = Box.full("mdhd", 0, 0)
+                .u32(0).u32(0)
+                .u32(timescale).u32(0)
+                .u16(0x55C4)  // language "und"
+                .u16(0);
+        Box hdlr = Box.full("hdlr", 0, 0)
+                .u32(0).fourcc(handler).zeros(12)
+                .bytes((handlerName + "\0").getBytes(StandardCharsets.US_ASCII));
+        return new Box("mdia").child(mdhd).child(hdlr).child(minf);
+    }
+
+    private static Box dinf() {
+        return new Box("dinf").child(Box.full("dref", 0, 0).u32(1).child(Box.full("url ", 0, 1)));
+    }
+
+    private static Box stbl(Box sampleEntry) {
+        return new Box("stbl")
+                .child(Box.full("stsd", 0, 0).u32(1).child(sampleEntry))
+                .child(Box.full("stts", 0, 0).u32(0))
+                .child(Box.full("stsc", 0, 0).u32(0))
+                .child(Box.full("stsz", 0, 0).u32(0).u32(0))
+                .child(Box.full("stco", 0, 0).u32(0));
+    }
+
+    private static Box trex(int trackId) {
+        return Box.full("trex", 0, 0).u32(trackId).u32(1).u32(0).u32(0).u32(0);
+    }
+
+    private static int payloadSize(List<Sample> samples) {
+        int total = 0;
+        for (Sample s : samples) {
+            total += s.data().length;
+        }
+        return total;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static void writeU32(ByteArrayOutputStream out, long value) {
+        out.write((int) (value >>> 24));
+        out.write((int) (value >>> 16));
+        out.write((int) (value >>> 8));
+        out.write((int) value);
+    }
+
+    /**
+     * ISO BMFF box under construction; the size header is added by {@link #bytes()}.
+     */
+    private static final class Box {
+        private final String type;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+
+        Box(String type) {
+            this.type = type;
+        }
+
+        static Box full(String type, int version, int flags) {
+            return new Box(type).u8(version).u8(flags >>> 16).u8(flags >>> 8).u8(flags);
+        }
+
+        Box u8(int value) {
+            body.write(value & 0xFF);
+            return this;
+        }
+
+        Box u16(int value) {
+            return u8(value >>> 8).u8(value);
+        }
+
+        Box u32(long value) {
+            writeU32(body, value);
+            return this;
+        }
+
+        Box u64(long value) {
+            return u32(value >>> 32).u32(value & 0xFFFFFFFFL);
+        }
+
+        Box fourcc(String code) {
+            body.writeBytes(code.getBytes(StandardCharsets.US_ASCII));
+            return this;
+        }
+
+        Box zeros(int count) {
+            for (int i = 0; i < count; i++) {
+                body.write(0);
+            }
+            return this;
+        }
+
+        Box bytes(byte[] data) {
+            body.writeBytes(data);
+            return this;
+        }
+
+        Box child(Box box) {
+            return bytes(box.bytes());
+        }
+
+        byte[] bytes() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.size() + 8);
+            writeU32(out, 8L + body.size());
+            out.writeBytes(type.getBytes(StandardCharsets.US_ASCII));
+            out.writeBytes(body.toByteArray());
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reassembles H.264 access units from RTP (RFC 6184): single NAL units, STAP-A and FU-A, which is
+ * what browsers send in packetization-mode 1.
+ *
+ * After packet loss the damaged access unit is dropped and everything up to the next IDR is skipped,
+ * since the decoder could not reconstruct those frames anyway; the sink is asked to get one sent.
+ */
+final class H264Depacketizer {
+
+    static final int NAL_IDR = 5;
+    static final int NAL_SPS = 7;
+    static final int NAL_PPS = 8;
+
+    private static final int STAP_A = 24;
+    private static final int FU_A = 28;
+
+    interface Sink {
+        void onAccessUnit(long timestamp, List<byte[]> nalUnits, boolean keyframe);
+
+        /** Frames are being dropped until the next IDR. Called per dropped frame; callers rate-limit. */
+        void onKeyframeNeeded();
+    }
+
+    private final Sink sink;
+    private final RtpTimeline timeline = new RtpTimeline();
+
+    private final List<byte[]> nalUnits = new ArrayList<>();
+    private ByteArrayOutputStream fragment;
+    private long currentTimestamp = Long.MIN_VALUE;
+    private boolean damaged;
+    private boolean awaitingKeyframe = true;
+
+    H264Depacketizer(Sink sink) {
+        this.sink = sink;
+    }
+
+    void push(RtpPacket packet) {
+        boolean gap = timeline.gapBefore(packet.sequence());
+        long timestamp = timeline.extend(packet.timestamp());
+
+        // A gap may have cost the end of the frame in progress or the start of this one: distrust both.
+        if (gap) {
+            damaged = true;
+        }
+        if (timestamp != currentTimestamp) {
+            // Marker of the previous frame was lost: close it out before starting the next one.
+            flush();
+            currentTimestamp = timestamp;
+            damaged = gap;
+        }
+        if (gap) {
+            fragment = null;
+        }
+
+        depacketize(packet);
+
+        if (packet.marker()) {
+            flush();
+        }
+    }
+
+    private void depacketize(RtpPacket packet) {
+        int length = packet.payloadLength();
+        int type = packet.payloadByte(0) & 0x1F;
+
+        if (type >= 1 && type <= 23) {
+            nalUnits.add(copy(packet, 0, length));
+        } else if (type == STAP_A) {
+            int pos = 1;
+            while (pos + 2 <= length) {
+                int size = ((packet.payloadByte(pos) & 0xFF) << 8) | (packet.payloadByte(pos + 1) & 0xFF);
+                pos += 2;
+                if (size == 0 || pos + size > length) {
+                    damaged = true;
+                    return;
+                }
+                nalUnits.add(copy(packet, pos, size));
+                pos += size;
+            }
+        } else if (type == FU_A && length > 2) {
+            int indicator = packet.payloadByte(0) & 0xFF;
+            int header = packet.payloadByte(1) & 0xFF;
+            boolean start = (header & 0x80) != 0;
+            boolean end = (header & 0x40) != 0;
+
+            if (start) {
+                fragment = new ByteArrayOutputStream(Math.max(1024, length * 8));
+                fragment.write((indicator & 0xE0) | (header & 0x1F));
+            } else if (fragment == null) {
+                // Middle of a fragment whose start we never saw.
+                damaged = true;
+                return;
+            }
+            fragment.write(packet.buffer(), packet.payloadOffset() + 2, length - 2);
+            if (end) {
+                nalUnits.add(fragment.toByteArray());
+                fragment = null;
+            }
+        }
+        // FU-B, STAP-B and MTAPs are not used by WebRTC endpoints.
+    }
+
+    private void flush() {
+        if (nalUnits.isEmpty() && fragment == null) {
+            // Everything of this frame was lost (or discarded as a partial fragment).
+            if (damaged) {
+                awaitingKeyframe = true;
+                sink.onKeyframeNeeded();
+            }
+            damaged = false;
+            return;
+        }
+
+        boolean complete = !damaged && fragment == null && !nalUnits.isEmpty();
+        boolean keyframe = false;
+        for (byte[] nal : nalUnits) {
+            if ((nal[0] & 0x1F) == NAL_IDR) {
+                keyframe = true;
+                break;
+            }
+        }
+
+        if (!complete) {
+            awaitingKeyframe = true;
+            sink.onKeyframeNeeded();
+        } else if (keyframe || !awaitingKeyframe) {
+            awaitingKeyframe = false;
+            sink.onAccessUnit(currentTimestamp, List.copyOf(nalUnits), keyframe);
+        } else {
+            sink.onKeyframeNeeded();
+        }
+
+        nalUnits.clear();
+        fragment = null;
+        damaged = false;
+    }
+
+    private static byte[] copy(RtpPacket packet, int from, int length) {
+        int start = packet.payloadOffset() + from;
+        return Arrays.copyOfRange(packet.buffer(), start, start + length);
+    }
+}
@@ -0,0 +1,179 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * The few sequence parameter set fields the fMP4 sample entry needs (ITU-T H.264 7.3.2.1.1).
+ */
+record H264Sps(
+        int profileIdc,
+        int constraintFlags,
+        int levelIdc,
+        int chromaFormatIdc,
+        int bitDepthLuma,
+        int bitDepthChroma,
+        int width,
+        int height
+) {
+
+    /**
+     * @param sps SPS NAL unit including its one-byte header
+     * @throws IllegalArgumentException if the SPS is truncated or malformed
+     */
+    static H264Sps parse(byte[] sps) {
+        try {
+            BitReader r = new BitReader(unescape(sps));
+            r.skip(8); // NAL header
+            int profileIdc = r.bits(8);
+            int constraintFlags = r.bits(8);
+            int levelIdc = r.bits(8);
+            r.ue(); // seq_parameter_set_id
+
+            int chromaFormatIdc = 1;
+            int bitDepthLuma = 8;
+            int bitDepthChroma = 8;
+            boolean separateColourPlane = false;
+            if (hasChromaInfo(profileIdc)) {
+                chromaFormatIdc = r.ue();
+                if (chromaFormatIdc == 3) {
+                    separateColourPlane = r.bit();
+                }
+                bitDepthLuma = r.ue() + 8;
+                bitDepthChroma = r.ue() + 8;
+                r.skip(1); // qpprime_y_zero_transform_bypass_flag
+                if (r.bit()) {
+                    int lists = chromaFormatIdc == 3 ? 12 : 8;
+                    for (int i = 0; i < lists; i++) {
+                        if (r.bit()) {
+                            skipScalingList(r, i < 6 ? 16 : 64);
+                        }
+                    }
+                }
+            }
+
+            r.ue(); // log2_max_frame_num_minus4
+            int pocType = r.ue();
+            if (pocType == 0) {
+                r.ue(); // log2_max_pic_order_cnt_lsb_minus4
+            } else if (pocType == 1) {
+                r.skip(1); // delta_pic_order_always_zero_flag
+                r.se(); // offset_for_non_ref_pic
+                r.se(); // offset_for_top_to_bottom_field
+                int cycle = r.ue();
+                for (int i = 0; i < cycle; i++) {
+                    r.se();
+                }
+            }
+            r.ue(); // max_num_ref_frames
+            r.skip(1); // gaps_in_frame_num_value_allowed_flag
+
+            int widthInMbs = r.ue() + 1;
+            int heightInMapUnits = r.ue() + 1;
+            boolean frameMbsOnly = r.bit();
+            if (!frameMbsOnly) {
+                r.skip(1); // mb_adaptive_frame_field_flag
+            }
+            r.skip(1); // direct_8x8_inference_flag
+
+            int width = widthInMbs * 16;
+            int height = (frameMbsOnly ? 1 : 2) * heightInMapUnits * 16;
+            if (r.bit()) {
+                int left = r.ue();
+                int right = r.ue();
+                int top = r.ue();
+                int bottom = r.ue();
+                int chromaArrayType = separateColourPlane ? 0 : chromaFormatIdc;
+                int cropUnitX = chromaArrayType == 0 ? 1 : (chromaArrayType == 3 ? 1 : 2);
+                int cropUnitY = (chromaArrayType == 0 ? 1 : (chromaArrayType == 1 ? 2 : 1))
+                        * (frameMbsOnly ? 1 : 2);
+                width -= (left + right) * cropUnitX;
+                height -= (top + bottom) * cropUnitY;
+            }
+
+            return new H264Sps(profileIdc, constraintFlags, levelIdc, chromaFormatIdc,
+                    bitDepthLuma, bitDepthChroma, width, height);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated H.264 SPS", e);
+        }
+    }
+
+    /** High profiles carry chroma format and bit depth in the SPS and in avcC. */
+    static boolean hasChromaInfo(int profileIdc) {
+        return switch (profileIdc) {
+            case 100, 110, 122, 244, 44, 83, 86, 118, 128, 138, 139, 134, 135 -> true;
+            default -> false;
+        };
+    }
+
+    /** RFC 6381 codec string, e.g. {@code avc1.42e01f}. */
+    String codecString() {
+        return String.format("avc1.%02x%02x%02x", profileIdc, constraintFlags, levelIdc);
+    }
+
+    private static void skipScalingList(BitReader r, int size) {
+        int last = 8;
+        int next = 8;
+        for (int j = 0; j < size && next != 0; j++) {
+            next = (last + r.se() + 256) % 256;
+            last = next == 0 ? last : next;
+        }
+    }
+
+    /** Removes emulation prevention bytes (00 00 03 -> 00 00). */
+    private static byte[] unescape(byte[] nal) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(nal.length);
+        int zeros = 0;
+        for (byte b : nal) {
+            if (zeros >= 2 && b == 3) {
+                zeros = 0;
+                continue;
+            }
+            out.write(b);
+            zeros = b == 0 ? zeros + 1 : 0;
+        }
+        return out.toByteArray();
+    }
+
+    private static final class BitReader {
+        private final byte[] data;
+        private int position;
+
+        BitReader(byte[] data) {
+            this.data = data;
+        }
+
+        boolean bit() {
+            int value = (data[position >>> 3] >>> (7 - (position & 7))) & 1;
+            position++;
+            return value == 1;
+        }
+
+        int bits(int n) {
+            int value = 0;
+            for (int i = 0; i < n; i++) {
+                value = (value << 1) | (bit() ? 1 : 0);
+            }
+            return value;
+        }
+
+        void skip(int n) {
+            position += n;
+        }
+
+        int ue() {
+            int leadingZeros = 0;
+            while (!bit()) {
+                leadingZeros++;
+                if (leadingZeros > 31) {
+                    throw new IllegalArgumentException("Invalid exp-Golomb code in SPS");
+                }
+            }
+            return (1 << leadingZeros) - 1 + bits(leadingZeros);
+        }
+
+        int se() {
+            int k = ue();
+            return (k & 1) == 1 ? (k + 1) / 2 : -(k / 2);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Cuts depacketized H.264 access units and Opus packets into fMP4 segments on keyframes and maintains
+ * a sliding-window {@code index.m3u8} next to them, the same layout FFmpeg produces for passthrough
+ * streams ({@code init.mp4}, {@code seg_%05d.m4s}), so the segment watcher, cache and readiness work
+ * unchanged.
+ *
+ * Segments are cut on IDRs only while they arrive in time. Once a segment outgrows its target the
+ * publisher is asked for a keyframe, and at {@code maxSegmentSeconds} or {@code maxSegmentBytes} the
+ * segment is cut without one, so a publisher that never sends a keyframe cannot grow the heap. The
+ * playlist drops {@code EXT-X-INDEPENDENT-SEGMENTS} while such a segment is listed.
+ *
+ * Not thread-safe: one ingest thread owns each packager.
+ */
+final class HlsFmp4Packager implements H264Depacketizer.Sink {
+
+    private static final Logger log = LoggerFactory.getLogger(HlsFmp4Packager.class);
+
+    /** Segments kept on disk after rolling off the playlist, for players still downloading them. */
+    private static final int DELETE_THRESHOLD = 2;
+    /** At most one keyframe request per second; the publisher needs a round trip to answer anyway. */
+    private static final long KEYFRAME_REQUEST_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final String streamKey;
+    private final Path outDir;
+    private final long targetSegmentTicks;
+    private final long maxSegmentTicks;
+    private final long maxSegmentBytes;
+    private final int listSize;
+    private final OpusConfig opus;
+    private final boolean rotateToPortrait;
+    private final Runnable keyframeRequester;
+    private long lastKeyframeRequestNanos;
+
+    // Parameter sets of the current init segment, and the latest ones seen in-band.
+    private byte[] sps;
+    private byte[] pps;
+    private byte[] initSps;
+    private byte[] initPps;
+    private String initName;
+    private int initCount;
+
+    private final List<PendingSample> video = new ArrayList<>();
+    private final List<PendingSample> audio = new ArrayList<>();
+    private long pendingBytes;
+    private final RtpTimeline audioTimeline = new RtpTimeline();
+
+    private long videoOrigin = Long.MIN_VALUE;
+    private long videoStartNanos;
+    private long audioOrigin = Long.MIN_VALUE;
+
+    private int sequence;
+    private boolean discontinuity;
+    private final Deque<PlaylistEntry> playlist = new ArrayDeque<>();
+    private final Deque<String> removable = new ArrayDeque<>();
+
+    /**
+     * @param opus              the Opus track's parameters, or {@code null} for video only
+     * @param keyframeRequester asks the publisher for a keyframe (rate-limited here)
+     */
+    HlsFmp4Packager(String streamKey, Path outDir, double segmentSeconds, double maxSegmentSeconds,
+            long maxSegmentBytes, int listSize, OpusConfig opus, boolean rotateToPortrait,
+            Runnable keyframeRequester) {
+        this.streamKey = streamKey;
+        this.outDir = outDir;
+        this.targetSegmentTicks = (long) (segmentSeconds * Fmp4Writer.VIDEO_TIMESCALE);
+        this.maxSegmentTicks = Math.max(targetSegmentTicks,
+                (long) (maxSegmentSeconds * Fmp4Writer.VIDEO_TIMESCALE));
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.listSize = Math.max(3, listSize);
+        this.opus = opus;
+        this.rotateToPortrait = rotateToPortrait;
+        this.keyframeRequester = keyframeRequester;
+        this.lastKeyframeRequestNanos = System.nanoTime() - KEYFRAME_REQUEST_INTERVAL_NANOS;
+    }
+
+    @Override
+    public void onKeyframeNeeded() {
+        long now = System.nanoTime();
+        if (now - lastKeyframeRequestNanos < KEYFRAME_REQUEST_INTERVAL_NANOS) {
+            return;
+        }
+        lastKeyframeRequestNanos = now;
+        log.debug("[{}] Requesting a keyframe from the publisher", streamKey);
+        keyframeRequester.run();
+    }
+
+    @Override
+    public void onAccessUnit(long timestamp, List<byte[]> nalUnits, boolean keyframe) {
+        ByteArrayOutputStream sample = new ByteArrayOutputStream();
+        for (byte[] nal : nalUnits) {
+            int type = nal[0] & 0x1F;
+            if (type == H264Depacketizer.NAL_SPS) {
+                sps = nal;
+            } else if (type == H264Depacketizer.NAL_PPS) {
+                pps = nal;
+            } else if (type != 9) { // access unit delimiters are dropped, parameter sets live in avcC
+                writeLength(sample, nal.length);
+                sample.writeBytes(nal);
+            }
+        }
+        if (sample.size() == 0) {
+            return;
+        }
+
+        if (keyframe) {
+            if (sps == null || pps == null) {
+                log.debug("[{}] IDR without SPS/PPS, waiting for the next one", streamKey);
+                return;
+            }
+            boolean parametersChanged = initSps != null
+                    && (!Arrays.equals(sps, initSps) || !Arrays.equals(pps, initPps));
+            if (initName == null || parametersChanged) {
+                flushSegment(timestamp);
+                if (!writeInit()) {
+                    return;
+                }
+                if (parametersChanged) {
+                    discontinuity = true;
+                }
+            } else if (!video.isEmpty() && timestamp - video.get(0).timestamp() >= targetSegmentTicks) {
+                flushSegment(timestamp);
+            }
+        } else if (initName == null) {
+            return;
+        } else if (!video.isEmpty()) {
+            long buffered = timestamp - video.get(0).timestamp();
+            if (buffered >= targetSegmentTicks) {
+                onKeyframeNeeded();
+            }
+            if (buffered >= maxSegmentTicks || pendingBytes + sample.size() > maxSegmentBytes) {
+                log.debug("[{}] No keyframe within segment limits, cutting segment without one", streamKey);
+                flushSegment(timestamp);
+            }
+        }
+
+        if (videoOrigin == Long.MIN_VALUE) {
+            videoOrigin = timestamp;
+            videoStartNanos = System.nanoTime();
+        }
+        video.add(new PendingSample(timestamp, sample.toByteArray(), keyframe));
+        pendingBytes += sample.size();
+    }
+
+    void onAudio(RtpPacket packet) {
+        if (opus == null) {
+            return;
+        }
+        audioTimeline.gapBefore(packet.sequence());
+        long timestamp = audioTimeline.extend(packet.timestamp());
+        if (videoOrigin == Long.MIN_VALUE) {
+            // Nothing to align with until video starts.
+            return;
+        }
+        if (audioOrigin == Long.MIN_VALUE) {
+            // RTP clocks of audio and video are unrelated; align on arrival time of the first packets.
+            long sinceVideoStart = (System.nanoTime() - videoStartNanos) * Fmp4Writer.AUDIO_TIMESCALE / 1_000_000_000L;
+            audioOrigin = timestamp - sinceVideoStart;
+        }
+        if (!audio.isEmpty() && timestamp <= audio.get(audio.size() - 1).timestamp()) {
+            return; // duplicate or late packet
+        }
+        byte[] data = Arrays.copyOfRange(packet.buffer(), packet.payloadOffset(),
+                packet.payloadOffset() + packet.payloadLength());
+        audio.add(new PendingSample(timestamp, data, true));
+    }
+
+    /**
+     * Writes the samples before {@code nextTimestamp} as one segment.
+     */
+    private void flushSegment(long nextTimestamp) {
+        if (video.isEmpty()) {
+            return;
+        }
+
+        List<Fmp4Writer.Sample> videoSamples = new ArrayList<>(video.size());
+        for (int i = 0; i < video.size(); i++) {
+            PendingSample s = video.get(i);
+            long next = i + 1 < video.size() ? video.get(i + 1).timestamp() : nextTimestamp;
+            videoSamples.add(new Fmp4Writer.Sample(s.data(), (int) Math.max(1, next - s.timestamp()), s.sync()));
+        }
+        long videoDecodeTime = video.get(0).timestamp() - videoOrigin;
+        long durationTicks = nextTimestamp - video.get(0).timestamp();
+
+        // The last audio packet stays behind: its duration is only known once the next one arrives.
+        List<Fmp4Writer.Sample> audioSamples = new ArrayList<>();
+        long audioDecodeTime = 0;
+        if (audio.size() > 1) {
+            audioDecodeTime = Math.max(0, audio.get(0).timestamp() - audioOrigin);
+            for (int i = 0; i < audio.size() - 1; i++) {
+                PendingSample s = audio.get(i);
+                audioSamples.add(new Fmp4Writer.Sample(s.data(),
+                        (int) (audio.get(i + 1).timestamp() - s.timestamp()), true));
+            }
+            PendingSample last = audio.get(audio.size() - 1);
+            audio.clear();
+            audio.add(last);
+        }
+
+        String name = String.format(Locale.ROOT, "seg_%05d.m4s", sequence);
+        try {
+            writeAtomically(name, Fmp4Writer.mediaSegment(sequence + 1, videoDecodeTime, videoSamples,
+                    audioDecodeTime, audioSamples));
+            playlist.addLast(new PlaylistEntry(name, durationTicks / (double) Fmp4Writer.VIDEO_TIMESCALE,
+                    initName, discontinuity, video.get(0).sync()));
+            discontinuity = false;
+            sequence++;
+            while (playlist.size() > listSize) {
+                removable.addLast(playlist.removeFirst().name());
+            }
+            writePlaylist();
+            while (removable.size() > DELETE_THRESHOLD) {
+                Files.deleteIfExists(outDir.resolve(removable.removeFirst()));
+            }
+        } catch (IOException e) {
+            log.warn("[{}] Failed to write HLS segment {}: {}", streamKey, name, e.toString());
+        }
+        video.clear();
+        pendingBytes = 0;
+    }
+
+    private boolean writeInit() {
+        H264Sps info;
+        try {
+            info = H264Sps.parse(sps);
+        } catch (IllegalArgumentException e) {
+            log.warn("[{}] Unparseable SPS, skipping keyframe: {}", streamKey, e.getMessage());
+            return false;
+        }
+
+        String name = initCount == 0 ? "init.mp4" : "init_" + initCount + ".mp4";
+        try {
+            writeAtomically(name, Fmp4Writer.initSegment(sps, pps, info, opus, rotateToPortrait));
+        } catch (IOException e) {
+            log.warn("[{}] Failed to write init segment: {}", streamKey, e.toString());
+            return false;
+        }
+        initSps = sps;
+        initPps = pps;
+        initName = name;
+        initCount++;
+        log.info("[{}] fMP4 init written: {}x{} {} (audio={})", streamKey, info.width(), info.height(),
+                info.codecString(), opus == null ? "none" : opus.channels() + "ch");
+        return true;
+    }
+
+    private void writePlaylist() throws IOException {
+        double longest = 0;
+        boolean independent = true;
+        for (PlaylistEntry e : playlist) {
+            longest = Math.max(longest, e.seconds());
+            independent &= e.independent();
+        }
+
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("#EXTM3U\n");
+        sb.append("#EXT-X-VERSION:7\n");
+        sb.append("#EXT-X-TARGETDURATION:").append((long) Math.ceil(longest)).append('\n');
+        sb.append("#EXT-X-MEDIA-SEQUENCE:").append(sequence - playlist.size()).append('\n');
+        if (independent) {
+            sb.append("#EXT-X-INDEPENDENT-SEGMENTS\n");
+        }
+
+        String currentInit = null;
+        for (PlaylistEntry e : playlist) {
+            if (e.discontinuity() && currentInit != null) {
+                sb.append("#EXT-X-DISCONTINUITY\n");
+            }
+            if (!e.init().equals(currentInit)) {
+                sb.append("#EXT-X-MAP:URI=\"").append(e.init()).append("\"\n");
+                currentInit = e.init();
+            }
+            sb.append("#EXTINF:").append(String.format(Locale.ROOT, "%.3f", e.seconds())).append(",\n");
+            sb.append(e.name()).append('\n');
+        }
+        writeAtomically("index.m3u8", sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Write-then-rename, so watchers and readers never see a partial file. */
+    private void writeAtomically(String name, byte[] content) throws IOException {
+        Path tmp = outDir.resolve(name + ".tmp");
+        Files.write(tmp, content);
+        Files.move(tmp, outDir.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeLength(ByteArrayOutputStream out, int length) {
+        out.write(length >>> 24);
+        out.write(length >>> 16);
+        out.write(length >>> 8);
+        out.write(length);
+    }
+
+    private record PendingSample(long timestamp, byte[] data, boolean sync) {
+    }
+
+    private record PlaylistEntry(String name, double seconds, String init, boolean discontinuity,
+            boolean independent) {
+    }
+}
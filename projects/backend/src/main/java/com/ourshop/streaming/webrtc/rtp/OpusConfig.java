@@ -0,0 +1,33 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import java.util.Locale;
+
+/**
+ * Opus stream parameters written to the fMP4 {@code dOps} box.
+ *
+ * @param channels output channel count (1 or 2)
+ * @param preSkip  samples at 48 kHz the decoder drops at the start of the track
+ */
+public record OpusConfig(int channels, int preSkip) {
+
+    /**
+     * From the publisher's {@code a=fmtp} line for Opus. The rtpmap always says {@code opus/48000/2}
+     * (RFC 7587), so stereo is only assumed when {@code stereo=1} or {@code sprop-stereo=1} is signalled.
+     *
+     * RTP carries no OpusHead and the capture joins a running encoder, so there is no priming delay to
+     * trim: pre-skip is 0.
+     */
+    public static OpusConfig fromFmtp(String fmtp) {
+        String line = fmtp == null ? "" : fmtp.trim().toLowerCase(Locale.ROOT);
+        // a=fmtp:111 minptime=10;useinbandfec=1;stereo=1
+        String params = line.startsWith("a=fmtp:") ? line.substring(Math.max(0, line.indexOf(' '))) : line;
+        boolean stereo = false;
+        for (String param : params.split(";")) {
+            String p = param.trim();
+            if (p.equals("stereo=1") || p.equals("sprop-stereo=1")) {
+                stereo = true;
+            }
+        }
+        return new OpusConfig(stereo ? 2 : 1, 0);
+    }
+}
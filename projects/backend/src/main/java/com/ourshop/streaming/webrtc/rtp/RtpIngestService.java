@@ -0,0 +1,232 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-JVM replacement for FFmpeg on passthrough streams (H.264 video, Opus or no audio): receives the
+ * Janus {@code rtp_forward} UDP streams, depacketizes them and writes fMP4 HLS directly.
+ *
+ * Streams registered on the shared {@link RtpReceiver} are fed from it; otherwise the session binds
+ * the forwarded ports itself.
+ *
+ * Streams that need transcoding keep using FFmpeg.
+ */
+@Service
+public class RtpIngestService {
+
+    private static final Logger log = LoggerFactory.getLogger(RtpIngestService.class);
+
+    /** Larger than any RTP packet Janus forwards (MTU-sized). */
+    private static final int MAX_DATAGRAM = 2048;
+
+    private final boolean enabled;
+    private final String bindHost;
+    private final Path outputRoot;
+    private final double segmentSeconds;
+    private final double maxSegmentSeconds;
+    private final long maxSegmentBytes;
+    private final int listSize;
+    private final int receiveBufferBytes;
+    private final RtpReceiver receiver;
+
+    private final ConcurrentHashMap<String, IngestSession> sessions = new ConcurrentHashMap<>();
+
+    public RtpIngestService(
+            @Value("${webrtc.rtp.ingest.enabled:false}") boolean enabled,
+            @Value("${webrtc.rtp.ingest.bind-host:0.0.0.0}") String bindHost,
+            @Value("${webrtc.hls.output-dir:./tmp/hls}") String outputDir,
+            @Value("${webrtc.rtp.ingest.segment-seconds:2}") double segmentSeconds,
+            @Value("${webrtc.rtp.ingest.max-segment-seconds:6}") double maxSegmentSeconds,
+            @Value("${webrtc.rtp.ingest.max-segment-bytes:16777216}") long maxSegmentBytes,
+            @Value("${webrtc.rtp.ingest.list-size:6}") int listSize,
+            @Value("${webrtc.rtp.ingest.receive-buffer-bytes:1048576}") int receiveBufferBytes,
+            RtpReceiver receiver) {
+        this.enabled = enabled;
+        this.bindHost = bindHost;
+        this.outputRoot = Path.of(outputDir).toAbsolutePath().normalize();
+        this.segmentSeconds = Math.max(1, segmentSeconds);
+        this.maxSegmentSeconds = Math.max(this.segmentSeconds, maxSegmentSeconds);
+        this.maxSegmentBytes = Math.max(1 << 20, maxSegmentBytes);
+        this.listSize = listSize;
+        this.receiveBufferBytes = receiveBufferBytes;
+        this.receiver = receiver;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts receiving on the given ports and packaging into the stream's HLS directory.
+     *
+     * @param opus              the Opus track expected on {@code audioPort}, or {@code null} for none
+     * @param keyframeRequester asks the publisher for a keyframe, after loss or when a segment runs long
+     */
+    public void start(String streamKey, int audioPort, int videoPort, OpusConfig opus, Runnable keyframeRequester)
+            throws IOException {
+        stop(streamKey);
+        boolean withAudio = opus != null;
+
+        Path outDir = outputRoot.resolve(streamKey).normalize();
+        Files.createDirectories(outDir);
+
+        HlsFmp4Packager packager = new HlsFmp4Packager(streamKey, outDir, segmentSeconds, maxSegmentSeconds,
+                maxSegmentBytes, listSize, opus, true, keyframeRequester);
+        IngestSession session = new IngestSession(streamKey, packager);
+        if (receiver.attach(streamKey, session::onDatagram)) {
+            session.attached = true;
+            sessions.put(streamKey, session);
+            log.info("📥 RTP ingest started for {} (shared receiver)", streamKey);
+            return;
+        }
+        try {
+            session.open(videoPort, withAudio ? audioPort : -1);
+        } catch (IOException e) {
+            session.close();
+            throw e;
+        }
+        sessions.put(streamKey, session);
+        session.thread.start();
+        log.info("📥 RTP ingest started for {} (video={}, audio={})", streamKey, videoPort,
+                withAudio ? audioPort : "none");
+    }
+
+    /**
+     * @return whether an ingest session was running for the stream
+     */
+    public boolean stop(String streamKey) {
+        IngestSession session = sessions.remove(streamKey);
+        if (session == null) {
+            return false;
+        }
+        session.close();
+        log.info("📥 RTP ingest stopped for {} ({} packets)", streamKey, session.packets);
+        return true;
+    }
+
+    @PreDestroy
+    void stopAll() {
+        sessions.keySet().forEach(this::stop);
+    }
+
+    private final class IngestSession {
+        private final String streamKey;
+        private final HlsFmp4Packager packager;
+        private final H264Depacketizer depacketizer;
+        private final Thread thread;
+
+        private Selector selector;
+        private DatagramChannel videoChannel;
+        private DatagramChannel audioChannel;
+        private volatile boolean running = true;
+        private boolean attached;
+        private long packets;
+
+        IngestSession(String streamKey, HlsFmp4Packager packager) {
+            this.streamKey = streamKey;
+            this.packager = packager;
+            this.depacketizer = new H264Depacketizer(packager);
+            this.thread = new Thread(this::run, "rtp-ingest-" + streamKey);
+            this.thread.setDaemon(true);
+        }
+
+        void open(int videoPort, int audioPort) throws IOException {
+            selector = Selector.open();
+            videoChannel = bind(videoPort);
+            videoChannel.register(selector, SelectionKey.OP_READ, Boolean.TRUE);
+            if (audioPort > 0) {
+                audioChannel = bind(audioPort);
+                audioChannel.register(selector, SelectionKey.OP_READ, Boolean.FALSE);
+            }
+        }
+
+        private DatagramChannel bind(int port) throws IOException {
+            DatagramChannel channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferBytes);
+            channel.bind(new InetSocketAddress(bindHost, port));
+            channel.configureBlocking(false);
+            return channel;
+        }
+
+        private void run() {
+            ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM);
+            while (running) {
+                try {
+                    selector.select(500);
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        boolean video = (Boolean) key.attachment();
+                        DatagramChannel channel = (DatagramChannel) key.channel();
+                        // Drain everything queued on the socket before selecting again.
+                        while (channel.receive(buffer.clear()) != null) {
+                            onDatagram(buffer.array(), buffer.position(), video);
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                } catch (IOException e) {
+                    if (running) {
+                        log.warn("[{}] RTP ingest receive failed: {}", streamKey, e.toString());
+                    }
+                } catch (RuntimeException e) {
+                    // A malformed packet must not take the stream down.
+                    if (running) {
+                        log.warn("[{}] RTP ingest dropped a packet: {}", streamKey, e.toString());
+                    }
+                }
+            }
+        }
+
+        void onDatagram(byte[] buffer, int length, boolean video) {
+            RtpPacket packet = RtpPacket.parse(buffer, length);
+            if (packet == null) {
+                return;
+            }
+            packets++;
+            if (video) {
+                depacketizer.push(packet);
+            } else {
+                packager.onAudio(packet);
+            }
+        }
+
+        void close() {
+            running = false;
+            if (attached) {
+                receiver.detach(streamKey);
+                return;
+            }
+            closeQuietly(videoChannel);
+            closeQuietly(audioChannel);
+            if (selector != null) {
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        private static void closeQuietly(DatagramChannel channel) {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+/**
+ * Minimal RTP header view (RFC 3550) over a received datagram. The payload is not copied.
+ */
+record RtpPacket(
+        int payloadType,
+        boolean marker,
+        int sequence,
+        long timestamp,
+        long ssrc,
+        byte[] buffer,
+        int payloadOffset,
+        int payloadLength
+) {
+
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * @return the parsed packet, or {@code null} for RTCP, non-RTP or truncated datagrams
+     */
+    static RtpPacket parse(byte[] buf, int length) {
+        if (length < HEADER_SIZE || (buf[0] & 0xC0) != 0x80) {
+            return null;
+        }
+        int secondByte = buf[1] & 0xFF;
+        if (secondByte >= 200 && secondByte <= 206) {
+            // RTCP multiplexed on the same port (SR/RR/SDES/BYE/APP/RTPFB/PSFB)
+            return null;
+        }
+
+        int offset = HEADER_SIZE + 4 * (buf[0] & 0x0F);
+        if ((buf[0] & 0x10) != 0) {
+            if (offset + 4 > length) {
+                return null;
+            }
+            int extensionWords = ((buf[offset + 2] & 0xFF) << 8) | (buf[offset + 3] & 0xFF);
+            offset += 4 + 4 * extensionWords;
+        }
+        int end = length;
+        if ((buf[0] & 0x20) != 0) {
+            end -= buf[length - 1] & 0xFF;
+        }
+        if (offset >= end) {
+            return null;
+        }
+
+        return new RtpPacket(
+                secondByte & 0x7F,
+                (secondByte & 0x80) != 0,
+                ((buf[2] & 0xFF) << 8) | (buf[3] & 0xFF),
+                readUint32(buf, 4),
+                readUint32(buf, 8),
+                buf,
+                offset,
+                end - offset);
+    }
+
+    byte payloadByte(int index) {
+        return buffer[payloadOffset + index];
+    }
+
+    private static long readUint32(byte[] buf, int offset) {
+        return ((long) (buf[offset] & 0xFF) << 24)
+                | ((buf[offset + 1] & 0xFF) << 16)
+                | ((buf[offset + 2] & 0xFF) << 8)
+                | (buf[offset + 3] & 0xFF);
+    }
+}
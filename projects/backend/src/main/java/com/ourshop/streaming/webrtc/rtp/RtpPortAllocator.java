@@ -0,0 +1,197 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out the local UDP ports FFmpeg / the in-JVM ingest listen on, from a configured range.
+ *
+ * Each lease is a slot of four ports (audio RTP/RTCP, video RTP/RTCP). Slots are tracked here, so
+ * concurrent offers can never be given the same ports; ports another process already holds are
+ * skipped. A lease lives until {@link #release} (session close / pipeline stop) or until the FFmpeg
+ * process bound to it has been dead for {@code reclaim-after-ms} without being replaced.
+ */
+@Service
+public class RtpPortAllocator {
+
+    private static final Logger log = LoggerFactory.getLogger(RtpPortAllocator.class);
+
+    /** audio RTP, audio RTCP, video RTP, video RTCP */
+    private static final int PORTS_PER_SLOT = 4;
+
+    private final int minPort;
+    private final int slots;
+    private final Duration reclaimAfter;
+
+    private final BitSet used;
+    private final Map<String, Entry> leases = new HashMap<>();
+    private int cursor;
+
+    private final Counter exhausted;
+    private final Counter reclaimed;
+    private final Disposable reaper;
+
+    public RtpPortAllocator(
+            @Value("${webrtc.rtp.ports.min:40000}") int minPort,
+            @Value("${webrtc.rtp.ports.max:49999}") int maxPort,
+            @Value("${webrtc.rtp.ports.reclaim-after-ms:30000}") long reclaimAfterMs,
+            MeterRegistry meterRegistry) {
+        // Slots start on a multiple of four so audio and video RTP stay on even ports.
+        this.minPort = (Math.max(1024, minPort) + PORTS_PER_SLOT - 1) / PORTS_PER_SLOT * PORTS_PER_SLOT;
+        this.slots = Math.max(1, (Math.min(65535, maxPort) - this.minPort + 1) / PORTS_PER_SLOT);
+        this.reclaimAfter = Duration.ofMillis(Math.max(1000, reclaimAfterMs));
+        this.used = new BitSet(slots);
+
+        this.exhausted = Counter.builder("rtp.ports.exhausted")
+                .description("Leases refused because every port slot was taken")
+                .register(meterRegistry);
+        this.reclaimed = Counter.builder("rtp.ports.reclaimed")
+                .description("Leases reclaimed after their FFmpeg process died")
+                .register(meterRegistry);
+        Gauge.builder("rtp.ports.capacity", () -> slots)
+                .description("Port slots (one per stream) in the configured range")
+                .register(meterRegistry);
+        Gauge.builder("rtp.ports.leased", this, RtpPortAllocator::leased)
+                .register(meterRegistry);
+        Gauge.builder("rtp.ports.utilization", this, a -> (double) a.leased() / slots)
+                .register(meterRegistry);
+
+        this.reaper = Flux.interval(this.reclaimAfter)
+                .subscribe(tick -> reclaimDead(), e -> log.warn("RTP port reaper stopped: {}", e.toString()));
+    }
+
+    /**
+     * Leases a slot to {@code streamKey}, releasing whatever it held before.
+     *
+     * @throws IllegalStateException when no slot is free
+     */
+    public synchronized RtpPortLease lease(String streamKey) {
+        release(streamKey);
+        for (int i = 0; i < slots; i++) {
+            int slot = (cursor + i) % slots;
+            if (used.get(slot)) {
+                continue;
+            }
+            int base = minPort + slot * PORTS_PER_SLOT;
+            if (!isFree(base)) {
+                // Held by something outside this allocator; try the next slot.
+                continue;
+            }
+            used.set(slot);
+            // Move on so a just-released slot is not handed straight back out.
+            cursor = slot + 1;
+            RtpPortLease lease = new RtpPortLease(streamKey, base, base + 2, Instant.now());
+            leases.put(streamKey, new Entry(slot, lease));
+            return lease;
+        }
+        exhausted.increment();
+        throw new IllegalStateException("No free RTP port slot in " + minPort + "-"
+                + (minPort + slots * PORTS_PER_SLOT - 1));
+    }
+
+    /**
+     * @return whether the stream held a lease
+     */
+    public synchronized boolean release(String streamKey) {
+        Entry entry = leases.remove(streamKey);
+        if (entry == null) {
+            return false;
+        }
+        used.clear(entry.slot);
+        return true;
+    }
+
+    /**
+     * Releases the stream's lease only if it is still the one starting at {@code audioPort}, so a
+     * pipeline shutting down cannot free ports its replacement already leased.
+     */
+    public synchronized boolean release(String streamKey, int audioPort) {
+        Entry entry = leases.get(streamKey);
+        if (entry == null || entry.lease.audioPort() != audioPort) {
+            return false;
+        }
+        return release(streamKey);
+    }
+
+    /**
+     * Records the process listening on the stream's ports; the lease is reclaimed if it dies and is
+     * not replaced.
+     */
+    public synchronized void bindProcess(String streamKey, ProcessHandle process) {
+        Entry entry = leases.get(streamKey);
+        if (entry != null) {
+            entry.owner = process;
+            entry.deadSince = null;
+        }
+    }
+
+    public synchronized int leased() {
+        return leases.size();
+    }
+
+    synchronized void reclaimDead() {
+        Instant now = Instant.now();
+        leases.values().removeIf(entry -> {
+            if (entry.owner == null || entry.owner.isAlive()) {
+                return false;
+            }
+            if (entry.deadSince == null) {
+                entry.deadSince = now;
+                return false;
+            }
+            if (Duration.between(entry.deadSince, now).compareTo(reclaimAfter) < 0) {
+                return false;
+            }
+            used.clear(entry.slot);
+            reclaimed.increment();
+            log.info("♻️ Reclaimed RTP ports {}/{} of {} (FFmpeg pid {} exited)", entry.lease.audioPort(),
+                    entry.lease.videoPort(), entry.lease.streamKey(), entry.owner.pid());
+            return true;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        reaper.dispose();
+    }
+
+    private static boolean isFree(int base) {
+        for (int port = base; port < base + PORTS_PER_SLOT; port++) {
+            try (DatagramSocket socket = new DatagramSocket(new InetSocketAddress(port))) {
+                // bound and closed again: nobody else holds it right now
+            } catch (SocketException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Entry {
+        private final int slot;
+        private final RtpPortLease lease;
+        private ProcessHandle owner;
+        private Instant deadSince;
+
+        Entry(int slot, RtpPortLease lease) {
+            this.slot = slot;
+            this.lease = lease;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import java.time.Instant;
+
+/**
+ * Local UDP ports reserved for one stream's RTP (audio on {@code audioPort}, video on {@code videoPort};
+ * the odd port after each is left for RTCP).
+ */
+public record RtpPortLease(String streamKey, int audioPort, int videoPort, Instant leasedAt) {
+}
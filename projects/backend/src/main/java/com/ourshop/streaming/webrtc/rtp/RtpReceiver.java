@@ -0,0 +1,380 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One receiver for every Janus {@code rtp_forward}: a fixed set of UDP ports on a single selector
+ * thread, with streams told apart by the SSRC we ask Janus to stamp on each forwarder.
+ *
+ * Each packet updates the stream's {@link RtpStreamStats} and is queued on the stream's
+ * {@link RtpRingBuffer}; a small consumer pool drains the rings into whoever is attached (the in-JVM
+ * packager, or a loopback relay to the stream's FFmpeg). Socket count no longer grows with streams.
+ * Rings are allocated on the first {@link #attach}, so registered streams nobody consumes only
+ * cost their stats.
+ */
+@Service
+public class RtpReceiver {
+
+    private static final Logger log = LoggerFactory.getLogger(RtpReceiver.class);
+
+    private static final int MAX_DATAGRAM = 2048;
+    /**
+     * Ring slot size: an Ethernet MTU. Janus forwards at most its own MTU (1200 bytes of payload by
+     * default); anything larger is dropped and counted as such.
+     */
+    private static final int SLOT_SIZE = 1500;
+    private static final int VIDEO_CLOCK_RATE = 90_000;
+    /** Opus; the only audio codec the publishers negotiate. */
+    private static final int AUDIO_CLOCK_RATE = 48_000;
+
+    /** Ports and SSRCs Janus must forward one stream to. */
+    public record Registration(int audioPort, int videoPort, long audioSsrc, long videoSsrc) {
+    }
+
+    private final boolean enabled;
+    private final String bindHost;
+    private final int portBase;
+    private final int portCount;
+    private final int ringSize;
+    private final int receiveBufferBytes;
+    private final int consumerThreads;
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Source> sources = new ConcurrentHashMap<>();
+    private final AtomicInteger nextPort = new AtomicInteger();
+    private final Counter unknownSsrc;
+
+    private Selector selector;
+    private final List<DatagramChannel> channels = new ArrayList<>();
+    private DatagramChannel relayChannel;
+    private Scheduler consumers;
+    private Thread thread;
+    private volatile boolean running;
+
+    public RtpReceiver(
+            @Value("${webrtc.rtp.receiver.enabled:false}") boolean enabled,
+            @Value("${webrtc.rtp.receiver.bind-host:0.0.0.0}") String bindHost,
+            @Value("${webrtc.rtp.receiver.port-base:20000}") int portBase,
+            @Value("${webrtc.rtp.receiver.port-count:4}") int portCount,
+            @Value("${webrtc.rtp.receiver.ring-size:256}") int ringSize,
+            @Value("${webrtc.rtp.receiver.receive-buffer-bytes:8388608}") int receiveBufferBytes,
+            @Value("${webrtc.rtp.receiver.consumer-threads:0}") int consumerThreads,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.bindHost = bindHost;
+        this.portBase = portBase;
+        this.portCount = Math.max(1, portCount);
+        this.ringSize = Math.max(64, ringSize);
+        this.receiveBufferBytes = receiveBufferBytes;
+        this.consumerThreads = consumerThreads > 0
+                ? consumerThreads
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.meterRegistry = meterRegistry;
+
+        this.unknownSsrc = Counter.builder("rtp.receiver.unknown_ssrc")
+                .description("Datagrams whose SSRC belongs to no registered stream")
+                .register(meterRegistry);
+        Gauge.builder("rtp.receiver.streams", routes, ConcurrentHashMap::size)
+                .description("Streams registered on the shared RTP receiver")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        selector = Selector.open();
+        for (int i = 0; i < portCount; i++) {
+            DatagramChannel channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferBytes);
+            channel.bind(new InetSocketAddress(bindHost, portBase + i));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+            channels.add(channel);
+        }
+        relayChannel = DatagramChannel.open();
+        consumers = Schedulers.newParallel("rtp-consumer", consumerThreads, true);
+
+        running = true;
+        thread = new Thread(this::run, "rtp-receiver");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("📡 RTP receiver listening on {}:{}-{} ({} consumer threads)",
+                bindHost, portBase, portBase + portCount - 1, consumerThreads);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isRegistered(String streamKey) {
+        return routes.containsKey(streamKey);
+    }
+
+    /**
+     * Reserves SSRCs for a stream; pass the result to Janus {@code rtp_forward}. Re-registering a
+     * stream replaces its previous registration.
+     */
+    public Registration register(String streamKey) {
+        if (!enabled) {
+            throw new IllegalStateException("RTP receiver is disabled");
+        }
+        unregister(streamKey);
+
+        int port = portBase + Math.floorMod(nextPort.getAndIncrement(), portCount);
+        Route route = new Route(streamKey);
+        long audioSsrc = reserveSsrc(route, false);
+        long videoSsrc = reserveSsrc(route, true);
+        route.registration = new Registration(port, port, audioSsrc, videoSsrc);
+        route.meters.addAll(registerMeters(streamKey, "audio", route.audio));
+        route.meters.addAll(registerMeters(streamKey, "video", route.video));
+        routes.put(streamKey, route);
+        return route.registration;
+    }
+
+    public void unregister(String streamKey) {
+        Route route = routes.remove(streamKey);
+        if (route == null) {
+            return;
+        }
+        route.handler = null;
+        sources.remove(route.registration.audioSsrc());
+        sources.remove(route.registration.videoSsrc());
+        route.meters.forEach(meterRegistry::remove);
+        log.info("📡 RTP receiver released {} (video: {} pkts, {} lost, {} reordered, {} dropped, jitter {} ms; "
+                        + "audio: {} pkts, {} lost, jitter {} ms)",
+                streamKey, route.video.received(), route.video.lost(), route.video.reordered(),
+                route.video.dropped(), String.format(Locale.ROOT, "%.1f", route.video.jitterMillis()),
+                route.audio.received(), route.audio.lost(), String.format(Locale.ROOT, "%.1f", route.audio.jitterMillis()));
+    }
+
+    /**
+     * Forwards the stream's packets to a local FFmpeg listening on {@code audioPort}/{@code videoPort}.
+     *
+     * @return false if the stream is not registered (Janus forwards to FFmpeg directly)
+     */
+    public boolean relay(String streamKey, int audioPort, int videoPort) {
+        InetSocketAddress audio = new InetSocketAddress(InetAddress.getLoopbackAddress(), audioPort);
+        InetSocketAddress video = new InetSocketAddress(InetAddress.getLoopbackAddress(), videoPort);
+        ByteBuffer out = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+        return attach(streamKey, (buffer, length, isVideo) -> {
+            try {
+                relayChannel.send(out.clear().put(buffer, 0, length).flip(), isVideo ? video : audio);
+            } catch (IOException e) {
+                log.debug("[{}] RTP relay send failed: {}", streamKey, e.toString());
+            }
+        });
+    }
+
+    /**
+     * Routes the stream's packets to {@code handler}, replacing any previous one. The handler runs on a
+     * consumer thread, never concurrently with itself.
+     */
+    boolean attach(String streamKey, RtpRingBuffer.Consumer handler) {
+        Route route = routes.get(streamKey);
+        if (route == null) {
+            return false;
+        }
+        // Only streams something consumes pay for a ring.
+        synchronized (route) {
+            if (route.ring == null) {
+                route.ring = new RtpRingBuffer(ringSize, SLOT_SIZE);
+            }
+        }
+        route.handler = handler;
+        return true;
+    }
+
+    void detach(String streamKey) {
+        Route route = routes.get(streamKey);
+        if (route != null) {
+            route.handler = null;
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        running = false;
+        routes.keySet().forEach(this::unregister);
+        for (DatagramChannel channel : channels) {
+            closeQuietly(channel);
+        }
+        closeQuietly(relayChannel);
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (consumers != null) {
+            consumers.dispose();
+        }
+    }
+
+    private long reserveSsrc(Route route, boolean video) {
+        Source source = new Source(route, video);
+        while (true) {
+            long ssrc = ThreadLocalRandom.current().nextLong(1, 0x1_0000_0000L);
+            if (sources.putIfAbsent(ssrc, source) == null) {
+                return ssrc;
+            }
+        }
+    }
+
+    private List<Meter> registerMeters(String streamKey, String media, RtpStreamStats stats) {
+        Tags tags = Tags.of("stream", streamKey, "media", media);
+        return List.of(
+                FunctionCounter.builder("rtp.receiver.packets", stats, RtpStreamStats::received)
+                        .tags(tags).register(meterRegistry),
+                FunctionCounter.builder("rtp.receiver.bytes", stats, RtpStreamStats::bytes)
+                        .tags(tags).baseUnit("bytes").register(meterRegistry),
+                Gauge.builder("rtp.receiver.lost", stats, RtpStreamStats::lost)
+                        .description("Packets expected from the sequence numbers but never received")
+                        .tags(tags).register(meterRegistry),
+                FunctionCounter.builder("rtp.receiver.reordered", stats, RtpStreamStats::reordered)
+                        .tags(tags).register(meterRegistry),
+                FunctionCounter.builder("rtp.receiver.dropped", stats, RtpStreamStats::dropped)
+                        .description("Packets dropped because the stream's consumer fell behind")
+                        .tags(tags).register(meterRegistry),
+                Gauge.builder("rtp.receiver.jitter", stats, RtpStreamStats::jitterMillis)
+                        .description("RFC 3550 interarrival jitter")
+                        .tags(tags).baseUnit("milliseconds").register(meterRegistry));
+    }
+
+    private void run() {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM);
+        while (running) {
+            try {
+                selector.select(500);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    DatagramChannel channel = (DatagramChannel) key.channel();
+                    while (channel.receive(buffer.clear()) != null) {
+                        onDatagram(buffer.array(), buffer.position(), System.nanoTime());
+                    }
+                }
+                selector.selectedKeys().clear();
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("RTP receiver failed: {}", e.toString());
+                }
+            } catch (RuntimeException e) {
+                if (running) {
+                    log.warn("RTP receiver dropped a packet: {}", e.toString());
+                }
+            }
+        }
+    }
+
+    private void onDatagram(byte[] buf, int length, long arrivalNanos) {
+        if (length < 12 || (buf[0] & 0xC0) != 0x80) {
+            return;
+        }
+        int secondByte = buf[1] & 0xFF;
+        if (secondByte >= 200 && secondByte <= 206) {
+            // RTCP from Janus; nothing to do with it here
+            return;
+        }
+        Source source = sources.get(readUint32(buf, 8));
+        if (source == null) {
+            unknownSsrc.increment();
+            return;
+        }
+        RtpStreamStats stats = source.video ? source.route.video : source.route.audio;
+        stats.onPacket(((buf[2] & 0xFF) << 8) | (buf[3] & 0xFF), readUint32(buf, 4), arrivalNanos, length);
+
+        Route route = source.route;
+        RtpRingBuffer ring = route.ring;
+        if (route.handler == null || ring == null) {
+            return;
+        }
+        if (!ring.offer(buf, length, source.video)) {
+            stats.onDropped();
+        }
+        if (route.scheduled.compareAndSet(false, true)) {
+            consumers.schedule(() -> drain(route));
+        }
+    }
+
+    private static void drain(Route route) {
+        // Only scheduled after an offer, so the ring exists.
+        RtpRingBuffer ring = route.ring;
+        do {
+            try {
+                RtpRingBuffer.Consumer handler = route.handler;
+                ring.drain(handler != null ? handler : (buffer, length, video) -> {
+                });
+            } catch (RuntimeException e) {
+                log.debug("[{}] RTP consumer failed: {}", route.streamKey, e.toString());
+            } finally {
+                route.scheduled.set(false);
+            }
+        } while (!ring.isEmpty() && route.scheduled.compareAndSet(false, true));
+    }
+
+    private static long readUint32(byte[] buf, int offset) {
+        return ((long) (buf[offset] & 0xFF) << 24)
+                | ((buf[offset + 1] & 0xFF) << 16)
+                | ((buf[offset + 2] & 0xFF) << 8)
+                | (buf[offset + 3] & 0xFF);
+    }
+
+    private static void closeQuietly(DatagramChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private final class Route {
+        private final String streamKey;
+        /** Allocated on the first {@link #attach}; written before {@link #handler}. */
+        private volatile RtpRingBuffer ring;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final RtpStreamStats audio = new RtpStreamStats(AUDIO_CLOCK_RATE);
+        private final RtpStreamStats video = new RtpStreamStats(VIDEO_CLOCK_RATE);
+        private final List<Meter> meters = new ArrayList<>();
+        private Registration registration;
+        private volatile RtpRingBuffer.Consumer handler;
+
+        Route(String streamKey) {
+            this.streamKey = streamKey;
+        }
+    }
+
+    private record Source(Route route, boolean video) {
+    }
+}
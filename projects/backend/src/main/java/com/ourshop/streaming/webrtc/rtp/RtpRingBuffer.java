@@ -0,0 +1,69 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-producer/single-consumer ring of preallocated datagram slots between the receiver thread
+ * and a stream's consumer. Nothing is allocated per packet.
+ */
+final class RtpRingBuffer {
+
+    /** Consumer callback; {@code buffer} is reused once it returns. */
+    interface Consumer {
+        void accept(byte[] buffer, int length, boolean video);
+    }
+
+    private final byte[][] slots;
+    private final int[] lengths;
+    private final boolean[] video;
+    private final int mask;
+
+    /** Next slot the consumer reads. */
+    private final AtomicLong head = new AtomicLong();
+    /** Next slot the producer writes. */
+    private final AtomicLong tail = new AtomicLong();
+
+    RtpRingBuffer(int capacity, int slotSize) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new byte[size][slotSize];
+        this.lengths = new int[size];
+        this.video = new boolean[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return false when the ring is full or the datagram does not fit a slot, and it was dropped
+     */
+    boolean offer(byte[] src, int length, boolean isVideo) {
+        long t = tail.get();
+        if (t - head.get() >= slots.length || length > slots[0].length) {
+            return false;
+        }
+        int i = (int) (t & mask);
+        System.arraycopy(src, 0, slots[i], 0, length);
+        lengths[i] = length;
+        video[i] = isVideo;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Hands every queued datagram to {@code consumer}.
+     */
+    void drain(Consumer consumer) {
+        long h = head.get();
+        long t = tail.get();
+        while (h < t) {
+            int i = (int) (h & mask);
+            try {
+                consumer.accept(slots[i], lengths[i], video[i]);
+            } finally {
+                head.lazySet(++h);
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+}
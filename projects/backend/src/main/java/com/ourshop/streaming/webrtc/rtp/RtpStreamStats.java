@@ -0,0 +1,101 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+/**
+ * Receive-side statistics for one SSRC, computed as in RFC 3550 appendix A.1 (sequence/loss) and
+ * A.8 (interarrival jitter).
+ *
+ * Written only by the receiver thread; gauges read the volatile fields without locking.
+ */
+final class RtpStreamStats {
+
+    private final int clockRate;
+
+    private volatile long received;
+    private volatile long bytes;
+    private volatile long reordered;
+    private volatile long dropped;
+    /** Interarrival jitter in RTP timestamp units. */
+    private volatile double jitter;
+
+    private boolean initialized;
+    private int baseSeq;
+    private int maxSeq;
+    private long cycles;
+    private long originNanos;
+    private double lastTransit;
+
+    RtpStreamStats(int clockRate) {
+        this.clockRate = clockRate;
+    }
+
+    void onPacket(int sequence, long timestamp, long arrivalNanos, int length) {
+        received++;
+        bytes += length;
+
+        if (!initialized) {
+            originNanos = arrivalNanos;
+        }
+        // Arrival in RTP clock units; only differences of transit matter, so the origin is arbitrary.
+        double transit = (arrivalNanos - originNanos) * (clockRate / 1e9) - timestamp;
+        if (!initialized) {
+            initialized = true;
+            baseSeq = sequence;
+            maxSeq = sequence;
+            lastTransit = transit;
+            return;
+        }
+
+        int delta = (sequence - maxSeq) & 0xFFFF;
+        if (delta == 0) {
+            return;
+        }
+        if (delta < 0x8000) {
+            if (sequence < maxSeq) {
+                cycles += 0x10000;
+            }
+            maxSeq = sequence;
+        } else {
+            reordered++;
+        }
+
+        double d = Math.abs(transit - lastTransit);
+        if (d > 0x80000000L) {
+            // 32-bit RTP timestamp wrapped between the two packets
+            d = Math.abs(d - 0x100000000L);
+        }
+        lastTransit = transit;
+        jitter += (d - jitter) / 16.0;
+    }
+
+    void onDropped() {
+        dropped++;
+    }
+
+    long received() {
+        return received;
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    long reordered() {
+        return reordered;
+    }
+
+    long dropped() {
+        return dropped;
+    }
+
+    long lost() {
+        if (!initialized) {
+            return 0;
+        }
+        long expected = cycles + maxSeq - baseSeq + 1;
+        return Math.max(0, expected - received);
+    }
+
+    double jitterMillis() {
+        return jitter * 1000.0 / clockRate;
+    }
+}
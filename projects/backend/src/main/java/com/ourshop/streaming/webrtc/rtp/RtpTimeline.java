@@ -0,0 +1,33 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+/**
+ * Extends 32-bit RTP timestamps to a monotonic 64-bit timeline and tracks sequence gaps.
+ */
+final class RtpTimeline {
+
+    private long lastExtended = Long.MIN_VALUE;
+    private int lastSequence = -1;
+
+    /**
+     * @return the timestamp on a 64-bit timeline (wraparound removed)
+     */
+    long extend(long timestamp32) {
+        if (lastExtended == Long.MIN_VALUE) {
+            lastExtended = timestamp32;
+            return timestamp32;
+        }
+        // Signed 32-bit distance from the previous timestamp handles both wraparound and reordering.
+        int delta = (int) (timestamp32 - (lastExtended & 0xFFFFFFFFL));
+        lastExtended += delta;
+        return lastExtended;
+    }
+
+    /**
+     * @return {@code true} if packets were lost (or reordered) before this one
+     */
+    boolean gapBefore(int sequence) {
+        boolean gap = lastSequence >= 0 && sequence != ((lastSequence + 1) & 0xFFFF);
+        lastSequence = sequence;
+        return gap;
+    }
+}
@@ -0,0 +1,115 @@
+package com.ourshop.streaming.webrtc.service;
+
+import com.ourshop.streaming.webrtc.dto.WebRtcEventResponse;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-stream fan-out of signaling events to the clients listening on {@code /webrtc/events}.
+ *
+ * Events of the current negotiation are kept, so a client that opens the stream after posting its
+ * offer still receives the candidates Janus sent in between; a new negotiation starts a fresh history.
+ */
+@Service
+public class WebRtcEventHub {
+
+    /** Events kept per stream for late subscribers. */
+    private static final int HISTORY = 64;
+
+    private final ConcurrentHashMap<UUID, Channel> channels = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    public WebRtcEventHub(MeterRegistry meterRegistry) {
+        Gauge.builder("webrtc.events.subscribers", subscribers, AtomicInteger::get)
+                .description("Clients listening for server-side signaling events")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The stream's events: the current negotiation's so far, then live ones. Never completes.
+     */
+    public Flux<WebRtcEventResponse> subscribe(UUID streamId) {
+        return Flux.create(sink -> {
+            Channel channel = channels.computeIfAbsent(streamId, id -> new Channel());
+            channel.add(sink);
+            subscribers.incrementAndGet();
+            sink.onDispose(() -> {
+                subscribers.decrementAndGet();
+                channel.remove(sink);
+                channels.computeIfPresent(streamId, (id, c) -> c.isIdle() ? null : c);
+            });
+        }, FluxSink.OverflowStrategy.BUFFER);
+    }
+
+    /**
+     * Starts a new negotiation for the stream: drops the previous one's history, then publishes.
+     */
+    public void restart(UUID streamId, WebRtcEventResponse event) {
+        channels.computeIfAbsent(streamId, id -> new Channel()).publish(event, true);
+    }
+
+    public void publish(UUID streamId, WebRtcEventResponse event) {
+        channels.computeIfAbsent(streamId, id -> new Channel()).publish(event, false);
+    }
+
+    /**
+     * Forgets the stream's history once nobody listens (the publisher closed).
+     */
+    public void clear(UUID streamId) {
+        channels.computeIfPresent(streamId, (id, c) -> c.clearHistory() ? null : c);
+    }
+
+    /** Streams with history or listeners. */
+    int channels() {
+        return channels.size();
+    }
+
+    private static final class Channel {
+        private final Deque<WebRtcEventResponse> history = new ArrayDeque<>();
+        private final List<FluxSink<WebRtcEventResponse>> listeners = new ArrayList<>();
+
+        /** Replays history and registers under one lock, so no event is missed or doubled. */
+        synchronized void add(FluxSink<WebRtcEventResponse> sink) {
+            history.forEach(sink::next);
+            listeners.add(sink);
+        }
+
+        synchronized void remove(FluxSink<WebRtcEventResponse> sink) {
+            listeners.remove(sink);
+        }
+
+        synchronized boolean isIdle() {
+            return listeners.isEmpty() && history.isEmpty();
+        }
+
+        synchronized void publish(WebRtcEventResponse event, boolean restart) {
+            if (restart) {
+                history.clear();
+            }
+            if (history.size() >= HISTORY) {
+                history.poll();
+            }
+            history.add(event);
+            listeners.forEach(sink -> sink.next(event));
+        }
+
+        /**
+         * @return true if the channel has no listeners left and can be dropped
+         */
+        synchronized boolean clearHistory() {
+            history.clear();
+            return listeners.isEmpty();
+        }
+    }
+}
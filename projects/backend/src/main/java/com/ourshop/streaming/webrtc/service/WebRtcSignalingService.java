@@ -1,28 +1,40 @@
 package com.ourshop.streaming.webrtc.service;
 
-import tools.jackson.databind.JsonNode;
 import com.ourshop.streaming.streams.application.StreamMetaService;
 import com.ourshop.streaming.streams.domain.StreamStatus;
 import com.ourshop.streaming.webrtc.dto.IceCandidateRequest;
 import com.ourshop.streaming.webrtc.dto.SdpAnswerResponse;
 import com.ourshop.streaming.webrtc.dto.SdpOfferRequest;
+import com.ourshop.streaming.webrtc.dto.WebRtcEventResponse;
 import com.ourshop.streaming.webrtc.errors.UnsupportedWebRtcRoleException;
 import com.ourshop.streaming.webrtc.hls.FfmpegHlsService;
+import com.ourshop.streaming.webrtc.hls.HlsOutputMode;
+import com.ourshop.streaming.webrtc.hls.HlsStartResult;
 import com.ourshop.streaming.webrtc.janus.JanusClient;
+import com.ourshop.streaming.webrtc.janus.JanusEventBus;
+import com.ourshop.streaming.webrtc.janus.JanusKeepaliveScheduler;
+import com.ourshop.streaming.webrtc.janus.JanusMessage;
+import com.ourshop.streaming.webrtc.janus.JanusSessionPool;
+import com.ourshop.streaming.webrtc.janus.JanusTrickleBatcher;
+import com.ourshop.streaming.webrtc.janus.TrickleCandidate;
 import com.ourshop.streaming.webrtc.model.StreamSession;
 import com.ourshop.streaming.webrtc.model.StreamSessionRole;
 import com.ourshop.streaming.webrtc.model.StreamSessionStatus;
 import com.ourshop.streaming.webrtc.repo.StreamSessionRepository;
+import com.ourshop.streaming.webrtc.rtp.RtpPortAllocator;
+import com.ourshop.streaming.webrtc.rtp.RtpPortLease;
+import com.ourshop.streaming.webrtc.rtp.RtpReceiver;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.net.DatagramSocket;
-import java.net.InetAddress;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -30,9 +42,11 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -42,15 +56,24 @@ public class WebRtcSignalingService {
 
     private static final Logger log = LoggerFactory.getLogger(WebRtcSignalingService.class);
 
-    private static final String VIDEOROOM_PLUGIN = "janus.plugin.videoroom";
+    /** Live session states: a session in one of them can be renegotiated, closed or failed. */
+    private static final Set<StreamSessionStatus> ACTIVE = EnumSet.of(
+            StreamSessionStatus.CREATED, StreamSessionStatus.NEGOTIATING, StreamSessionStatus.CONNECTED);
 
-    private record AnswerAndCandidates(JsonNode answerEvent, List<IceCandidateRequest> remoteCandidates) {
+    private record AnswerAndCandidates(JanusMessage answerEvent, List<IceCandidateRequest> remoteCandidates) {
     }
 
     private final StreamMetaService streamService;
     private final StreamSessionRepository sessionRepository;
     private final JanusClient janus;
+    private final JanusEventBus janusEvents;
+    private final JanusSessionPool janusPool;
+    private final JanusKeepaliveScheduler janusKeepalives;
+    private final JanusTrickleBatcher janusTrickle;
     private final FfmpegHlsService hls;
+    private final RtpReceiver rtpReceiver;
+    private final RtpPortAllocator portAllocator;
+    private final Timer offerToAnswer;
 
     private final long roomId;
     private final String roomSecret;
@@ -58,28 +81,65 @@ public class WebRtcSignalingService {
     private final String rtpForwardHost;
 
     private final Duration janusRemoteCandidatesDrain;
+    private final Duration candidateWindow;
+    private final WebRtcEventHub events;
 
     private final ConcurrentHashMap<UUID, CopyOnWriteArrayList<IceCandidateRequest>> queuedIce = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<UUID, String> streamToStreamKey = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<Long, Disposable> janusKeepalives = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, Disposable> candidateForwarders = new ConcurrentHashMap<>();
+    /**
+     * Live sessions this instance drives (created here, or adopted by an offer or close served here).
+     * Failover only touches these: another instance's health probe is not ours to overrule.
+     */
+    private final Set<UUID> ownedSessions = ConcurrentHashMap.newKeySet();
 
     public WebRtcSignalingService(
             StreamMetaService streamService,
             StreamSessionRepository sessionRepository,
             JanusClient janus,
+            JanusEventBus janusEvents,
+            JanusSessionPool janusPool,
+            JanusKeepaliveScheduler janusKeepalives,
+            JanusTrickleBatcher janusTrickle,
             FfmpegHlsService hls,
+            RtpReceiver rtpReceiver,
+            RtpPortAllocator portAllocator,
+            WebRtcEventHub events,
+            MeterRegistry meterRegistry,
             @Value("${janus.videoroom.room-id:1234}") long roomId,
             @Value("${janus.videoroom.secret:}") String roomSecret,
-            @Value("${webrtc.remote-candidates.drain-ms:${WEBRTC_REMOTE_CANDIDATES_DRAIN_MS:6000}}") long janusRemoteCandidatesDrainMs) {
+            @Value("${webrtc.remote-candidates.drain-ms:${WEBRTC_REMOTE_CANDIDATES_DRAIN_MS:6000}}") long janusRemoteCandidatesDrainMs,
+            @Value("${webrtc.events.candidate-window-ms:30000}") long candidateWindowMs) {
         this.streamService = streamService;
         this.sessionRepository = sessionRepository;
         this.janus = janus;
+        this.janusEvents = janusEvents;
+        this.janusPool = janusPool;
+        this.janusKeepalives = janusKeepalives;
+        this.janusTrickle = janusTrickle;
+        // Janus forgets a session it stopped hearing from; stop routing its events too.
+        janusKeepalives.reaped().subscribe(janusEvents::close);
+        janus.nodeFailures()
+                .concatMap(node -> failOverFrom(node).onErrorResume(e -> {
+                    log.warn("Janus failover for node '{}' incomplete: {}", node, e.toString());
+                    return Mono.empty();
+                }))
+                .subscribe();
         this.hls = hls;
+        this.rtpReceiver = rtpReceiver;
+        this.portAllocator = portAllocator;
+        this.offerToAnswer = Timer.builder("janus.offer_to_answer")
+                .description("Time from sending the publisher offer to Janus until its SDP answer arrives")
+                .tag("transport", janus.transport())
+                .publishPercentileHistogram()
+                .register(meterRegistry);
         this.roomId = roomId;
         this.roomSecret = roomSecret;
 
         this.rtpForwardHost = resolveRtpForwardHost();
         this.janusRemoteCandidatesDrain = Duration.ofMillis(Math.max(0, janusRemoteCandidatesDrainMs));
+        this.candidateWindow = Duration.ofMillis(Math.max(1_000, candidateWindowMs));
+        this.events = events;
     }
 
     public Mono<SdpAnswerResponse> handleOffer(UUID streamId, SdpOfferRequest request) {
@@ -96,6 +156,8 @@ public class WebRtcSignalingService {
         String streamKey = request != null && request.streamKey() != null && !request.streamKey().isBlank()
                 ? request.streamKey().trim()
                 : streamId.toString();
+        HlsOutputMode hlsMode = request == null ? null : HlsOutputMode.parse(request.hlsMode(), null);
+        boolean trickleToClient = request != null && Boolean.TRUE.equals(request.trickle());
 
         return streamService.get(streamId)
                 .flatMap(stream -> {
@@ -129,18 +191,28 @@ public class WebRtcSignalingService {
                                         session.janusHandleId(),
                                         session.janusRoomId(),
                                         session.janusPublisherId(),
+                                        session.janusNode(),
                                         null);
 
                                 long janusSessionId = session.janusSessionId();
                                 long handleId = session.janusHandleId();
-
-                                return sessionRepository.save(negotiating)
+                                Timer.Sample answerLatency = Timer.start();
+                                Instant offerSentAt = Instant.now();
+                                stopCandidateForwarding(streamId);
+                                events.restart(streamId, WebRtcEventResponse.state(negotiating));
+
+                                return sessionRepository.transition(negotiating, ACTIVE)
+                                        .flatMap(applied -> applied ? Mono.<Void>empty()
+                                                : Mono.error(new IllegalStateException(
+                                                        "Publisher session is no longer active")))
                                         .then(janus.publishToRoom(janusSessionId, handleId, roomId, roomSecret,
                                                 normalizedOffer))
-                                        .then(waitForSdpAnswerWithCandidates(janusSessionId, handleId, 30_000L))
+                                        .then(waitForSdpAnswerWithCandidates(janusSessionId, handleId, 30_000L,
+                                                offerSentAt))
+                                        .doOnNext(answered -> answerLatency.stop(offerToAnswer))
                                         .flatMap(answerAndCandidates -> {
-                                            JsonNode event = answerAndCandidates.answerEvent();
-                                            String answer = event.path("jsep").path("sdp").asText(null);
+                                            JanusMessage event = answerAndCandidates.answerEvent();
+                                            String answer = event.sdp();
                                             if (answer == null || answer.isBlank()) {
                                                 return Mono.error(
                                                         new IllegalStateException("Janus event has no SDP answer"));
@@ -155,8 +227,13 @@ public class WebRtcSignalingService {
                                                             ? new ArrayList<>()
                                                             : new ArrayList<>(answerAndCandidates.remoteCandidates());
 
-                                            return drainRemoteCandidatesBestEffort(janusSessionId, handleId,
-                                                    janusRemoteCandidatesDrain)
+                                            // Clients on /webrtc/events get later candidates pushed instead of
+                                            // waiting here for them to be baked into the answer.
+                                            Mono<List<IceCandidateRequest>> drained = trickleToClient
+                                                    ? Mono.just(List.of())
+                                                    : drainRemoteCandidatesBestEffort(janusSessionId, handleId,
+                                                            janusRemoteCandidatesDrain, offerSentAt);
+                                            return drained
                                                     .defaultIfEmpty(List.of())
                                                     .map(post -> {
                                                         List<IceCandidateRequest> combined = new ArrayList<>(
@@ -186,8 +263,7 @@ public class WebRtcSignalingService {
                                                     })
                                                     .flatMap(answerWithCandidates -> {
 
-                                                        long publisherId = event.path("plugindata").path("data")
-                                                                .path("id").asLong(0);
+                                                        long publisherId = event.pluginId();
                                                         if (publisherId > 0) {
                                                             log.info(
                                                                     "Janus publisherId resolved (streamId={}, publisherId={})",
@@ -206,16 +282,32 @@ public class WebRtcSignalingService {
                                                                 handleId,
                                                                 roomId,
                                                                 publisherId > 0 ? publisherId : null,
+                                                                session.janusNode(),
                                                                 null);
-                                                        // Start keepalive scheduler for this Janus session
-                                                        startKeepalive(janusSessionId);
-                                                        return sessionRepository.save(connected)
+                                                        // A close that landed during negotiation wins; the
+                                                        // closer already tore the Janus session down.
+                                                        return sessionRepository.transition(connected,
+                                                                        Set.of(StreamSessionStatus.NEGOTIATING))
+                                                                .flatMap(applied -> applied ? Mono.<Void>empty()
+                                                                        : Mono.error(new IllegalStateException(
+                                                                                "Publisher session was closed during negotiation")))
+                                                                .then(Mono.fromRunnable(() -> {
+                                                                    // Start keepalive scheduler for this Janus session
+                                                                    startKeepalive(janusSessionId);
+                                                                    if (trickleToClient) {
+                                                                        forwardRemoteCandidates(streamId, session.id(),
+                                                                                janusSessionId, handleId, offerSentAt);
+                                                                    }
+                                                                    events.publish(streamId,
+                                                                            WebRtcEventResponse.state(connected));
+                                                                }))
                                                                 .then(flushQueuedIceIfAny(streamId, connected))
                                                                 .then(ensureStreamLive(streamId))
                                                                 .then(Mono.defer(() -> startHlsBestEffort(streamId,
-                                                                        connected, streamKey, normalizedOffer)))
-                                                                .map(hlsUrl -> SdpAnswerResponse.answer(
-                                                                        answerWithCandidates, hlsUrl, streamKey));
+                                                                        connected, streamKey, normalizedOffer, answer,
+                                                                        hlsMode)))
+                                                                .map(hlsStart -> SdpAnswerResponse.answer(
+                                                                        answerWithCandidates, streamKey, hlsStart));
                                                     });
                                         })
                                         .onErrorResume(e -> {
@@ -235,8 +327,24 @@ public class WebRtcSignalingService {
                                                     session.janusHandleId(),
                                                     session.janusRoomId(),
                                                     session.janusPublisherId(),
+                                                    session.janusNode(),
                                                     truncateError(e));
-                                            return sessionRepository.save(failed).then(Mono.error(e));
+                                            stopCandidateForwarding(streamId);
+                                            // Only the transition winner tears down; a close that got there
+                                            // first already released the Janus session.
+                                            return sessionRepository.transition(failed,
+                                                            Set.of(StreamSessionStatus.NEGOTIATING))
+                                                    .doOnNext(applied -> ownedSessions.remove(session.id()))
+                                                    .flatMap(applied -> applied ? Mono.defer(() -> {
+                                                        events.publish(streamId, WebRtcEventResponse.state(failed));
+                                                        stopKeepalive(janusSessionId);
+                                                        return janus.detachHandle(janusSessionId, handleId)
+                                                                .onErrorResume(ex -> Mono.empty())
+                                                                .then(janus.destroySession(janusSessionId)
+                                                                        .onErrorResume(ex -> Mono.empty()))
+                                                                .doFinally(signal -> janusEvents.close(janusSessionId));
+                                                    }) : Mono.<Void>empty())
+                                                    .then(Mono.error(e));
                                         });
                             });
                 });
@@ -292,7 +400,7 @@ public class WebRtcSignalingService {
 
     public Mono<Void> addIceCandidate(UUID streamId, IceCandidateRequest ice) {
         logIncomingIceCandidateSummary(streamId, ice);
-        return sessionRepository.findActivePublisherByStreamId(streamId)
+        return findActivePublisher(streamId)
                 .flatMap(session -> {
                     if (session.janusSessionId() == null || session.janusHandleId() == null) {
                         queueIce(streamId, ice);
@@ -305,19 +413,7 @@ public class WebRtcSignalingService {
                         queueIce(streamId, ice);
                     }
 
-                    Mono<Void> send;
-                    if (Boolean.TRUE.equals(ice.completed())) {
-                        send = janus.sendTrickleCompleted(session.janusSessionId(), session.janusHandleId());
-                    } else {
-                        send = janus.sendTrickleCandidate(
-                                session.janusSessionId(),
-                                session.janusHandleId(),
-                                ice.candidate(),
-                                ice.sdpMid(),
-                                ice.sdpMLineIndex());
-                    }
-
-                    return send.onErrorResume(e -> {
+                    return trickle(session, ice).onErrorResume(e -> {
                         log.warn("Failed to forward ICE to Janus (streamId={}, janusSessionId={}, handleId={}): {}",
                                 streamId, session.janusSessionId(), session.janusHandleId(), e.toString());
                         return Mono.error(e);
@@ -361,7 +457,7 @@ public class WebRtcSignalingService {
     }
 
     public Mono<Void> closePublisher(UUID streamId) {
-        return sessionRepository.findActivePublisherByStreamId(streamId)
+        return findActivePublisher(streamId)
                 .flatMap(session -> closeSessionInternal(streamId, session).then())
                 .switchIfEmpty(Mono.empty());
     }
@@ -380,6 +476,7 @@ public class WebRtcSignalingService {
                     session.janusHandleId(),
                     session.janusRoomId(),
                     session.janusPublisherId(),
+                    session.janusNode(),
                     null);
 
             Mono<Void> janusCleanup = Mono.empty();
@@ -391,6 +488,10 @@ public class WebRtcSignalingService {
             } else if (session.janusSessionId() != null) {
                 janusCleanup = janus.destroySession(session.janusSessionId()).onErrorResume(e -> Mono.empty());
             }
+            if (session.janusSessionId() != null) {
+                long janusSessionId = session.janusSessionId();
+                janusCleanup = janusCleanup.doFinally(signal -> janusEvents.close(janusSessionId));
+            }
 
             Mono<Void> endStreamIfPublisher = session.role() == StreamSessionRole.PUBLISHER
                     ? ensureStreamEndedBestEffort(streamId)
@@ -401,15 +502,25 @@ public class WebRtcSignalingService {
                 if (streamKey == null || streamKey.isBlank()) {
                     return Mono.empty();
                 }
-                return hls.stop(streamKey).onErrorResume(e -> Mono.empty());
+                return hls.stop(streamKey)
+                        .onErrorResume(e -> Mono.empty())
+                        .doFinally(signal -> portAllocator.release(streamKey));
             });
 
-            queuedIce.remove(streamId);
-
-            return sessionRepository.save(closed)
+            Mono<Void> teardown = Mono.fromRunnable(() -> {
+                        queuedIce.remove(streamId);
+                        stopCandidateForwarding(streamId);
+                        events.publish(streamId, WebRtcEventResponse.state(closed));
+                        events.clear(streamId);
+                    })
                     .then(stopHlsIfAny)
                     .then(janusCleanup)
-                    .then(endStreamIfPublisher)
+                    .then(endStreamIfPublisher);
+
+            // Only the close that wins the transition tears down; a concurrent one finds nothing left to do.
+            return sessionRepository.transition(closed, ACTIVE)
+                    .doOnNext(applied -> ownedSessions.remove(session.id()))
+                    .flatMap(applied -> applied ? teardown : Mono.<Void>empty())
                     .thenReturn(closed);
         });
     }
@@ -418,38 +529,34 @@ public class WebRtcSignalingService {
         Instant now = Instant.now();
         UUID sessionId = UUID.randomUUID();
 
-        return janus.createSession()
-                .flatMap(janusSessionId -> janus.attachPlugin(janusSessionId, VIDEOROOM_PLUGIN)
-                        .map(handleId -> new StreamSession(
-                                sessionId,
-                                streamId,
-                                role,
-                                StreamSessionStatus.CREATED,
-                                now,
-                                null,
-                                null,
-                                janusSessionId,
-                                handleId,
-                                roomId,
-                                null,
-                                null)))
-                .flatMap(sessionRepository::save);
+        return janusPool.borrow(streamId.toString())
+                .map(pair -> new StreamSession(
+                        sessionId,
+                        streamId,
+                        role,
+                        StreamSessionStatus.CREATED,
+                        now,
+                        null,
+                        null,
+                        pair.sessionId(),
+                        pair.handleId(),
+                        roomId,
+                        null,
+                        pair.node(),
+                        null))
+                .flatMap(sessionRepository::save)
+                .doOnNext(saved -> ownedSessions.add(saved.id()));
     }
 
     private Mono<AnswerAndCandidates> waitForSdpAnswerWithCandidates(long janusSessionId, long handleId,
-            long timeoutMs) {
+            long timeoutMs, Instant since) {
         long safeTotal = Math.max(1_000L, timeoutMs);
-        long pollMs = 1_500L;
 
         CopyOnWriteArrayList<IceCandidateRequest> remote = new CopyOnWriteArrayList<>();
 
-        return Flux.interval(Duration.ZERO, Duration.ofMillis(250))
-                .concatMap(tick -> janus.pollEventOnce(janusSessionId, pollMs)
-                        .onErrorResume(e -> Mono.empty()))
-                .filter(event -> event != null)
-                .filter(event -> event.path("sender").asLong(-1) == handleId)
+        return janusEvents.events(janusSessionId, handleId, since)
                 .doOnNext(event -> {
-                    if ("trickle".equalsIgnoreCase(event.path("janus").asText(""))) {
+                    if (event.is("trickle")) {
                         IceCandidateRequest c = toIceCandidateRequestOrNull(event);
                         if (c != null) {
                             remote.add(c);
@@ -458,21 +565,21 @@ public class WebRtcSignalingService {
                 })
                 .flatMap(event -> {
                     // Fail fast on common VideoRoom errors like "No such room" or "Unauthorized".
-                    String pluginError = event.path("plugindata").path("data").path("error").asText(null);
+                    String pluginError = event.pluginError();
                     if (pluginError != null && !pluginError.isBlank()) {
-                        long code = event.path("plugindata").path("data").path("error_code").asLong(0);
+                        long code = event.pluginErrorCode();
                         String msg = code > 0
                                 ? "Janus VideoRoom error (" + code + "): " + pluginError
                                 : "Janus VideoRoom error: " + pluginError;
                         return Mono.error(new IllegalStateException(msg));
                     }
 
-                    String rootError = event.path("error").path("reason").asText(null);
+                    String rootError = event.error() != null ? event.error().reason() : null;
                     if (rootError != null && !rootError.isBlank()) {
                         return Mono.error(new IllegalStateException("Janus error: " + rootError));
                     }
 
-                    if (event.has("jsep")) {
+                    if (event.jsep() != null) {
                         return Mono.just(event);
                     }
                     return Mono.empty();
@@ -515,20 +622,16 @@ public class WebRtcSignalingService {
      * inject them into the SDP answer as "a=candidate" lines.
      */
     private Mono<List<IceCandidateRequest>> drainRemoteCandidatesBestEffort(long janusSessionId, long handleId,
-            Duration maxDuration) {
+            Duration maxDuration, Instant since) {
         Duration safe = maxDuration == null ? Duration.ofSeconds(2) : maxDuration;
-        Duration pollTimeout = Duration.ofSeconds(1);
-        int maxPolls = 25;
 
-        return Flux.range(0, maxPolls)
-                .concatMap(i -> janus.pollEventOnce(janusSessionId, pollTimeout.toMillis())
-                        .onErrorResume(e -> Mono.empty()))
+        // Trickles that arrived with or before the answer are replayed from the handle's buffer.
+        return janusEvents.events(janusSessionId, handleId, "trickle", since)
                 .take(safe)
-                .filter(event -> event != null)
-                .filter(event -> event.path("sender").asLong(-1) == handleId)
-                .filter(event -> "trickle".equalsIgnoreCase(event.path("janus").asText("")))
                 .map(this::toIceCandidateRequestOrNull)
                 .filter(c -> c != null)
+                // Janus signals the end of its candidates; no need to wait out the drain window.
+                .takeUntil(c -> Boolean.TRUE.equals(c.completed()))
                 .distinct(
                         c -> (c.candidate() == null ? "" : c.candidate()) + "|" + (c.sdpMid() == null ? "" : c.sdpMid())
                                 + "|" + (c.sdpMLineIndex() == null ? "" : c.sdpMLineIndex()))
@@ -541,22 +644,52 @@ public class WebRtcSignalingService {
                 });
     }
 
-    private IceCandidateRequest toIceCandidateRequestOrNull(JsonNode event) {
-        if (event == null) {
-            return null;
+    /**
+     * Pushes the Janus candidates of a negotiated handle to the stream's event listeners until Janus
+     * reports completion, the window closes or the session goes away.
+     */
+    private void forwardRemoteCandidates(UUID streamId, UUID sessionId, long janusSessionId, long handleId,
+            Instant since) {
+        // Registered before subscribing, so a forwarder that ends right away cannot remove its successor.
+        Disposable.Swap slot = Disposables.swap();
+        Disposable previous = candidateForwarders.put(streamId, slot);
+        if (previous != null) {
+            previous.dispose();
         }
+        slot.update(janusEvents.events(janusSessionId, handleId, "trickle", since)
+                .take(candidateWindow)
+                .map(this::toIceCandidateRequestOrNull)
+                .filter(c -> c != null)
+                .takeUntil(c -> Boolean.TRUE.equals(c.completed()))
+                .doFinally(signal -> candidateForwarders.remove(streamId, slot))
+                .subscribe(c -> events.publish(streamId, WebRtcEventResponse.candidate(sessionId, c)),
+                        e -> log.debug("Candidate forwarding ended (streamId={}): {}", streamId, e.toString())));
+    }
 
-        JsonNode cand = event.path("candidate");
-        if (cand == null || cand.isMissingNode() || cand.isNull()) {
+    private void stopCandidateForwarding(UUID streamId) {
+        Disposable forwarder = candidateForwarders.remove(streamId);
+        if (forwarder != null) {
+            forwarder.dispose();
+        }
+    }
+
+    /**
+     * Signaling events for the stream's publisher (see {@link WebRtcEventHub}).
+     */
+    public Flux<WebRtcEventResponse> events(UUID streamId) {
+        return events.subscribe(streamId);
+    }
+
+    private IceCandidateRequest toIceCandidateRequestOrNull(JanusMessage event) {
+        if (event == null || event.candidate() == null) {
             return null;
         }
 
-        boolean completed = cand.path("completed").asBoolean(false);
-        String candidate = cand.path("candidate").asText(null);
-        String sdpMid = cand.path("sdpMid").asText(null);
-        Integer sdpMLineIndex = cand.has("sdpMLineIndex") && cand.path("sdpMLineIndex").canConvertToInt()
-                ? cand.path("sdpMLineIndex").asInt()
-                : null;
+        JanusMessage.Candidate cand = event.candidate();
+        boolean completed = cand.isCompleted();
+        String candidate = cand.candidate();
+        String sdpMid = cand.sdpMid();
+        Integer sdpMLineIndex = cand.sdpMLineIndex();
 
         if (!completed && (candidate == null || candidate.isBlank())) {
             return null;
@@ -870,67 +1003,130 @@ public class WebRtcSignalingService {
         log.info("Flushing {} queued ICE messages to Janus (streamId={}, janusSessionId={}, handleId={})",
                 list.size(), streamId, session.janusSessionId(), session.janusHandleId());
 
+        // Subscribed in list order, so the batcher keeps the client's candidate order.
         return Flux.fromIterable(list)
-                .flatMap(c -> {
-                    if (Boolean.TRUE.equals(c.completed())) {
-                        return janus.sendTrickleCompleted(session.janusSessionId(), session.janusHandleId());
+                .flatMap(c -> trickle(session, c))
+                .doOnError(
+                        e -> log.warn("Failed to flush queued ICE to Janus (streamId={}): {}", streamId, e.toString()))
+                .then();
+    }
+
+    private Mono<Void> trickle(StreamSession session, IceCandidateRequest ice) {
+        if (Boolean.TRUE.equals(ice.completed())) {
+            return janusTrickle.completed(session.janusSessionId(), session.janusHandleId());
+        }
+        return janusTrickle.candidate(session.janusSessionId(), session.janusHandleId(),
+                new TrickleCandidate(ice.candidate(), ice.sdpMid(), ice.sdpMLineIndex()));
+    }
+
+    /**
+     * Active publisher session, with its Janus session routed to the node that owns it (sessions may
+     * have been created by another instance or before a restart).
+     */
+    private Mono<StreamSession> findActivePublisher(UUID streamId) {
+        return sessionRepository.findActivePublisherByStreamId(streamId)
+                .doOnNext(session -> {
+                    ownedSessions.add(session.id());
+                    if (session.janusSessionId() != null) {
+                        janus.adopt(session.janusSessionId(), session.janusNode());
                     }
-                    return janus.sendTrickleCandidate(
+                });
+    }
+
+    /**
+     * Marks every live session this instance owns on a dead Janus node FAILED and tears down its local
+     * state, so the publisher's next offer gets a fresh session on a healthy node. The stream itself
+     * stays LIVE. Sessions owned elsewhere are left to their owner's probe (or to the next offer that
+     * adopts them, which fails against the dead node on its own).
+     */
+    private Mono<Void> failOverFrom(String node) {
+        return sessionRepository.findActiveByJanusNode(node)
+                .filter(session -> ownedSessions.contains(session.id()))
+                .concatMap(session -> {
+                    log.warn("Janus node '{}' is down, failing session {} (streamId={})", node, session.id(),
+                            session.streamId());
+                    StreamSession failed = new StreamSession(
+                            session.id(),
+                            session.streamId(),
+                            session.role(),
+                            StreamSessionStatus.FAILED,
+                            session.createdAt(),
+                            session.connectedAt(),
+                            Instant.now(),
                             session.janusSessionId(),
                             session.janusHandleId(),
-                            c.candidate(),
-                            c.sdpMid(),
-                            c.sdpMLineIndex());
+                            session.janusRoomId(),
+                            session.janusPublisherId(),
+                            session.janusNode(),
+                            "Janus node " + node + " went down");
+                    return sessionRepository.transition(failed, ACTIVE)
+                            .doOnNext(applied -> ownedSessions.remove(session.id()))
+                            .flatMap(applied -> applied ? Mono.defer(() -> {
+                                if (session.janusSessionId() != null) {
+                                    stopKeepalive(session.janusSessionId());
+                                    janusEvents.close(session.janusSessionId());
+                                    janus.forget(session.janusSessionId());
+                                }
+                                queuedIce.remove(session.streamId());
+                                stopCandidateForwarding(session.streamId());
+                                events.publish(session.streamId(), WebRtcEventResponse.state(failed));
+                                String streamKey = streamToStreamKey.remove(session.streamId());
+                                return streamKey == null ? Mono.<Void>empty()
+                                        : hls.stop(streamKey)
+                                                .onErrorResume(e -> Mono.empty())
+                                                .doFinally(signal -> portAllocator.release(streamKey));
+                            }) : Mono.<Void>empty());
                 })
-                .doOnError(
-                        e -> log.warn("Failed to flush queued ICE to Janus (streamId={}): {}", streamId, e.toString()))
                 .then();
     }
 
     private Mono<StreamSession> getOrCreateActivePublisherSession(UUID streamId) {
-        return sessionRepository.findActivePublisherByStreamId(streamId)
+        return findActivePublisher(streamId)
                 .switchIfEmpty(createJanusBackedSession(streamId, StreamSessionRole.PUBLISHER));
     }
 
+    /**
+     * One conditional UPDATE; a stream that is already LIVE (or ENDED) is left alone.
+     */
     private Mono<Void> ensureStreamLive(UUID streamId) {
-        return streamService.get(streamId)
-                .flatMap(meta -> {
-                    if (meta.status() == StreamStatus.CREATED) {
-                        return streamService.start(streamId).then();
-                    }
-                    return Mono.empty();
-                })
+        return streamService.startIfCreated(streamId)
+                .then()
                 .onErrorResume(e -> Mono.empty());
     }
 
     private Mono<Void> ensureStreamEndedBestEffort(UUID streamId) {
-        return streamService.get(streamId)
-                .flatMap(meta -> {
-                    if (meta.status() == StreamStatus.LIVE) {
-                        return streamService.end(streamId).then();
-                    }
-                    return Mono.empty();
-                })
+        return streamService.endIfLive(streamId)
+                .then()
                 .onErrorResume(e -> Mono.empty());
     }
 
-    private Mono<String> startHlsBestEffort(UUID streamId, StreamSession connected, String streamKey,
-            String normalizedOffer) {
+    private Mono<HlsStartResult> startHlsBestEffort(UUID streamId, StreamSession connected, String streamKey,
+            String normalizedOffer, String answerSdp, HlsOutputMode hlsMode) {
         streamToStreamKey.put(streamId, streamKey);
 
         if (connected.janusSessionId() == null || connected.janusHandleId() == null
                 || connected.janusPublisherId() == null) {
             log.warn("Cannot start HLS: missing Janus IDs (streamId={}, sessionId={}, handleId={}, publisherId={})",
                     streamId, connected.janusSessionId(), connected.janusHandleId(), connected.janusPublisherId());
-            return Mono.just(hls.buildPublicHlsUrl(streamKey));
+            return Mono.just(new HlsStartResult(hls.buildPublicHlsUrl(streamKey), null, false));
         }
 
-        int basePort = findFreeRtpPortSlot();
-        int audioPort = basePort;
-        int videoPort = basePort + 2;
+        RtpPortLease lease;
+        try {
+            lease = portAllocator.lease(streamKey);
+        } catch (IllegalStateException e) {
+            log.warn("Cannot start HLS (streamId={}): {}", streamId, e.getMessage());
+            return Mono.just(new HlsStartResult(hls.buildPublicHlsUrl(streamKey), null, false));
+        }
+        int audioPort = lease.audioPort();
+        int videoPort = lease.videoPort();
 
-        log.info("Starting HLS pipeline (streamId={}, streamKey={}, audioPort={}, videoPort={})",
-                streamId, streamKey, audioPort, videoPort);
+        // With the shared receiver, Janus forwards to its ports tagged with our SSRCs and the receiver
+        // relays to FFmpeg on the local ports; otherwise Janus forwards to FFmpeg directly.
+        RtpReceiver.Registration shared = rtpReceiver.isEnabled() ? rtpReceiver.register(streamKey) : null;
+
+        log.info("Starting HLS pipeline (streamId={}, streamKey={}, audioPort={}, videoPort={}, sharedReceiver={})",
+                streamId, streamKey, audioPort, videoPort, shared != null);
 
         return janus.rtpForward(
                 connected.janusSessionId(),
@@ -939,60 +1135,44 @@ public class WebRtcSignalingService {
                 connected.janusPublisherId(),
                 roomSecret,
                 rtpForwardHost,
-                audioPort,
-                videoPort)
+                shared != null ? shared.audioPort() : audioPort,
+                shared != null ? shared.videoPort() : videoPort,
+                shared != null ? shared.audioSsrc() : null,
+                shared != null ? shared.videoSsrc() : null)
                 .doOnSuccess(
                         response -> log.info("rtp_forward succeeded (streamId={}, response={})", streamId, response))
                 .doOnError(e -> log.error("rtp_forward FAILED (streamId={}): {}", streamId, e.toString()))
                 .onErrorResume(e -> Mono.empty())
-                .then(hls.start(streamKey, audioPort, videoPort, normalizedOffer))
-                .doOnSuccess(url -> log.info("FFmpeg HLS started successfully (streamId={}, url={})", streamId, url))
-                .doOnError(e -> log.error("FFmpeg HLS FAILED to start (streamId={}): {}", streamId, e.toString()))
-                .onErrorResume(e -> Mono.just(hls.buildPublicHlsUrl(streamKey)));
-    }
-
-    private static int findFreeRtpPortSlot() {
-        // Allocate a base port and keep a gap (audio=base, video=base+2).
-        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"))) {
-            int port = socket.getLocalPort();
-            if ((port % 2) != 0) {
-                port++;
-            }
-            return port;
-        } catch (Exception e) {
-            return 40000;
-        }
+                .then(hls.start(streamKey, audioPort, videoPort, normalizedOffer, answerSdp, hlsMode,
+                        () -> janus.requestKeyframe(connected.janusSessionId(), connected.janusHandleId())
+                                .subscribe(null, e -> log.debug("Keyframe request failed (streamId={}): {}",
+                                        streamId, e.toString()))))
+                .doOnSuccess(result -> {
+                    log.info("FFmpeg HLS start (streamId={}, url={}, admission={}, ready={})",
+                            streamId, result.hlsUrl(), result.admission().decision(), result.ready());
+                    if (!result.admission().admitted()) {
+                        portAllocator.release(streamKey, audioPort);
+                    }
+                })
+                .doOnError(e -> {
+                    log.error("FFmpeg HLS FAILED to start (streamId={}): {}", streamId, e.toString());
+                    portAllocator.release(streamKey, audioPort);
+                })
+                .onErrorResume(e -> Mono.just(new HlsStartResult(hls.buildPublicHlsUrl(streamKey), null, false)));
     }
 
     /**
-     * Start periodic keepalive for a Janus session to prevent timeout (default is
-     * 60s).
-     * Sends keepalive every 30 seconds.
+     * Keep a Janus session from timing out (default is 60s) via the shared keepalive wheel.
      */
     private void startKeepalive(long janusSessionId) {
-        // Cancel any existing keepalive for this session
-        stopKeepalive(janusSessionId);
-
-        Disposable keepalive = Flux.interval(Duration.ofSeconds(30))
-                .flatMap(tick -> janus.keepalive(janusSessionId)
-                        .doOnSuccess(v -> log.debug("Keepalive sent for Janus session {}", janusSessionId))
-                        .doOnError(e -> log.warn("Keepalive failed for Janus session {}: {}", janusSessionId,
-                                e.toString()))
-                        .onErrorResume(e -> Mono.empty()))
-                .subscribe();
-
-        janusKeepalives.put(janusSessionId, keepalive);
-        log.info("Started keepalive scheduler for Janus session {}", janusSessionId);
+        janusKeepalives.register(janusSessionId);
+        log.info("Registered Janus session {} for keepalives", janusSessionId);
     }
 
-    /**
-     * Stop keepalive scheduler for a Janus session.
-     */
     private void stopKeepalive(long janusSessionId) {
-        Disposable keepalive = janusKeepalives.remove(janusSessionId);
-        if (keepalive != null && !keepalive.isDisposed()) {
-            keepalive.dispose();
-            log.info("Stopped keepalive scheduler for Janus session {}", janusSessionId);
+        if (janusKeepalives.isRegistered(janusSessionId)) {
+            janusKeepalives.unregister(janusSessionId);
+            log.info("Stopped keepalives for Janus session {}", janusSessionId);
         }
     }
 
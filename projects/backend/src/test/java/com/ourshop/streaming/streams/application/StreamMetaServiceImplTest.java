@@ -0,0 +1,87 @@
+package com.ourshop.streaming.streams.application;
+
+import com.ourshop.streaming.streams.domain.StreamMeta;
+import com.ourshop.streaming.streams.domain.StreamStatus;
+import com.ourshop.streaming.streams.domain.exceptions.InvalidStreamStateException;
+import com.ourshop.streaming.streams.domain.exceptions.StreamNotFoundException;
+import com.ourshop.streaming.streams.infrastructure.persistence.StreamMetaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StreamMetaServiceImplTest {
+
+    private static final UUID ID = UUID.fromString("00000000-0000-0000-0000-0000000000aa");
+
+    private final StreamMetaRepository repository = mock(StreamMetaRepository.class);
+    private final StreamMetaServiceImpl service = new StreamMetaServiceImpl(repository);
+    /** The row's status; the repository compares and sets it atomically, like the conditional UPDATE. */
+    private final AtomicReference<StreamStatus> status = new AtomicReference<>(StreamStatus.CREATED);
+
+    @BeforeEach
+    void setUp() {
+        when(repository.transition(eq(ID), any(), any(), any())).thenAnswer(inv -> Mono.fromCallable(
+                () -> status.compareAndSet(inv.getArgument(1), inv.getArgument(2))));
+        when(repository.findById(ID)).thenAnswer(inv -> Mono.fromCallable(() -> new StreamMeta(ID, "key", "t", null,
+                status.get(), Instant.EPOCH, null, null)));
+        when(repository.findById(UUID.fromString("00000000-0000-0000-0000-0000000000bb"))).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void startReturnsTheRowInItsNewState() {
+        assertThat(service.start(ID).block().status()).isEqualTo(StreamStatus.LIVE);
+        assertThat(service.end(ID).block().status()).isEqualTo(StreamStatus.ENDED);
+    }
+
+    @Test
+    void aTransitionFromTheWrongStateIsAConflictNamingTheCurrentOne() {
+        assertThatThrownBy(() -> service.end(ID).block())
+                .isInstanceOf(InvalidStreamStateException.class)
+                .hasMessageContaining("current=CREATED")
+                .hasMessageContaining("expected=LIVE");
+        assertThat(status.get()).isEqualTo(StreamStatus.CREATED);
+    }
+
+    @Test
+    void aMissingStreamIsNotFoundRatherThanAConflict() {
+        UUID missing = UUID.fromString("00000000-0000-0000-0000-0000000000bb");
+        when(repository.transition(eq(missing), any(), any(), any())).thenReturn(Mono.just(false));
+
+        assertThatThrownBy(() -> service.start(missing).block()).isInstanceOf(StreamNotFoundException.class);
+    }
+
+    @Test
+    void ofConcurrentStartsExactlyOneWins() {
+        List<String> outcomes = Flux.range(0, 16)
+                .flatMap(i -> service.start(ID)
+                        .subscribeOn(Schedulers.parallel())
+                        .map(meta -> "started")
+                        .onErrorResume(InvalidStreamStateException.class, e -> Mono.just("conflict")))
+                .collectList()
+                .block();
+
+        assertThat(outcomes).hasSize(16).containsOnlyOnce("started");
+    }
+
+    @Test
+    void bestEffortTransitionsOnlyReportWhetherTheyApplied() {
+        assertThat(service.endIfLive(ID).block()).isFalse();
+        assertThat(service.startIfCreated(ID).block()).isTrue();
+        assertThat(service.startIfCreated(ID).block()).isFalse();
+        assertThat(service.endIfLive(ID).block()).isTrue();
+    }
+}
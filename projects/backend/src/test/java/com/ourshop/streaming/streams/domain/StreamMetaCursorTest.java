@@ -0,0 +1,61 @@
+package com.ourshop.streaming.streams.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StreamMetaCursorTest {
+
+    @Test
+    void roundTripsTheExactPosition() {
+        StreamMetaCursor cursor = new StreamMetaCursor(Instant.parse("2026-03-01T12:00:00.123456Z"),
+                UUID.fromString("0f8e4c1a-2b3d-4e5f-8a9b-0c1d2e3f4a5b"));
+
+        assertThat(StreamMetaCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void rowsSharingATimestampGetDistinctCursors() {
+        Instant createdAt = Instant.parse("2026-03-01T12:00:00.000001Z");
+        StreamMetaCursor first = StreamMetaCursor.after(meta(createdAt, "00000000-0000-0000-0000-000000000002"));
+        StreamMetaCursor second = StreamMetaCursor.after(meta(createdAt, "00000000-0000-0000-0000-000000000001"));
+
+        assertThat(first.encode()).isNotEqualTo(second.encode());
+        assertThat(StreamMetaCursor.decode(second.encode()).createdAt()).isEqualTo(createdAt);
+        assertThat(StreamMetaCursor.decode(second.encode()).id()).isEqualTo(second.id());
+    }
+
+    @Test
+    void encodingIsUrlSafe() {
+        String encoded = new StreamMetaCursor(Instant.parse("2026-03-01T12:00:00Z"), UUID.randomUUID()).encode();
+
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void rejectsCursorsItDidNotProduce() {
+        assertThatThrownBy(() -> StreamMetaCursor.decode("not a cursor!"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> StreamMetaCursor.decode(encodeRaw("2026-03-01T12:00:00Z")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> StreamMetaCursor.decode(encodeRaw("yesterday|" + UUID.randomUUID())))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> StreamMetaCursor.decode(encodeRaw("2026-03-01T12:00:00Z|42")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static String encodeRaw(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static StreamMeta meta(Instant createdAt, String id) {
+        return new StreamMeta(UUID.fromString(id), "key-" + id, "title", null, StreamStatus.CREATED, createdAt,
+                null, null);
+    }
+}
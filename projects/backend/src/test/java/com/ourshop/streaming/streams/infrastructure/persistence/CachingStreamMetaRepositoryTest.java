@@ -0,0 +1,144 @@
+package com.ourshop.streaming.streams.infrastructure.persistence;
+
+import com.ourshop.streaming.streams.domain.StreamMeta;
+import com.ourshop.streaming.streams.domain.StreamStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CachingStreamMetaRepositoryTest {
+
+    private static final UUID ID = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final StreamMeta CREATED = meta(ID, "key-1", StreamStatus.CREATED);
+    private static final StreamMeta LIVE = meta(ID, "key-1", StreamStatus.LIVE);
+
+    private final R2dbcStreamMetaRepository delegate = mock(R2dbcStreamMetaRepository.class);
+
+    @Test
+    void repeatedLookupsAreServedFromMemory() {
+        when(delegate.findById(ID)).thenReturn(Mono.just(CREATED));
+        CachingStreamMetaRepository cache = cache(10_000, 100);
+
+        assertThat(cache.findById(ID).block()).isEqualTo(CREATED);
+        assertThat(cache.findById(ID).block()).isEqualTo(CREATED);
+        assertThat(cache.findByStreamKey("key-1").block()).isEqualTo(CREATED);
+        verify(delegate, times(1)).findById(ID);
+    }
+
+    @Test
+    void concurrentMissesShareOneQuery() {
+        Sinks.One<StreamMeta> row = Sinks.one();
+        when(delegate.findById(ID)).thenReturn(row.asMono());
+        CachingStreamMetaRepository cache = cache(10_000, 100);
+
+        List<StreamMeta> seen = new ArrayList<>();
+        cache.findById(ID).subscribe(seen::add);
+        cache.findById(ID).subscribe(seen::add);
+        row.tryEmitValue(CREATED);
+
+        assertThat(seen).containsExactly(CREATED, CREATED);
+        verify(delegate, times(1)).findById(ID);
+    }
+
+    @Test
+    void loadThatRacedWithAWriteIsNotStored() {
+        Sinks.One<StreamMeta> oldRow = Sinks.one();
+        when(delegate.findById(ID)).thenReturn(oldRow.asMono(), Mono.just(LIVE));
+        when(delegate.save(any())).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+        CachingStreamMetaRepository cache = cache(10_000, 100);
+
+        cache.findById(ID).subscribe();
+        cache.save(LIVE).block();
+        oldRow.tryEmitValue(CREATED);
+
+        assertThat(cache.findById(ID).block()).isEqualTo(LIVE);
+        verify(delegate, times(2)).findById(ID);
+    }
+
+    @Test
+    void missAfterAWriteDoesNotJoinALoadStartedBeforeIt() {
+        Sinks.One<StreamMeta> oldRow = Sinks.one();
+        when(delegate.findByStreamKey("key-1")).thenReturn(oldRow.asMono(), Mono.just(LIVE));
+        when(delegate.transition(ID, StreamStatus.CREATED, StreamStatus.LIVE, Instant.EPOCH))
+                .thenReturn(Mono.just(true));
+        CachingStreamMetaRepository cache = cache(10_000, 100);
+
+        List<StreamMeta> before = new ArrayList<>();
+        cache.findByStreamKey("key-1").subscribe(before::add);
+        cache.transition(ID, StreamStatus.CREATED, StreamStatus.LIVE, Instant.EPOCH).block();
+        List<StreamMeta> after = new ArrayList<>();
+        cache.findByStreamKey("key-1").subscribe(after::add);
+        oldRow.tryEmitValue(CREATED);
+
+        assertThat(before).containsExactly(CREATED);
+        assertThat(after).containsExactly(LIVE);
+        // The newer load is the one left in the cache, not the stale one that finished last.
+        assertThat(cache.findByStreamKey("key-1").block()).isEqualTo(LIVE);
+        verify(delegate, times(2)).findByStreamKey("key-1");
+    }
+
+    @Test
+    void writesDropBothLookups() {
+        when(delegate.findById(ID)).thenReturn(Mono.just(CREATED), Mono.just(LIVE));
+        when(delegate.findByStreamKey("key-1")).thenReturn(Mono.just(LIVE));
+        when(delegate.transition(ID, StreamStatus.CREATED, StreamStatus.LIVE, Instant.EPOCH))
+                .thenReturn(Mono.just(true));
+        CachingStreamMetaRepository cache = cache(10_000, 100);
+
+        cache.findById(ID).block();
+        cache.transition(ID, StreamStatus.CREATED, StreamStatus.LIVE, Instant.EPOCH).block();
+
+        assertThat(cache.findByStreamKey("key-1").block()).isEqualTo(LIVE);
+        assertThat(cache.findById(ID).block()).isEqualTo(LIVE);
+    }
+
+    @Test
+    void oldestEntriesAreEvictedOverCapacity() {
+        UUID second = UUID.fromString("00000000-0000-0000-0000-000000000002");
+        UUID third = UUID.fromString("00000000-0000-0000-0000-000000000003");
+        when(delegate.findById(ID)).thenReturn(Mono.just(CREATED));
+        when(delegate.findById(second)).thenReturn(Mono.just(meta(second, "key-2", StreamStatus.CREATED)));
+        when(delegate.findById(third)).thenReturn(Mono.just(meta(third, "key-3", StreamStatus.CREATED)));
+        CachingStreamMetaRepository cache = cache(10_000, 2);
+
+        cache.findById(ID).block();
+        cache.findById(second).block();
+        cache.findById(third).block();
+        cache.findById(third).block();
+        cache.findById(ID).block();
+
+        verify(delegate, times(2)).findById(ID);
+        verify(delegate, times(1)).findById(third);
+    }
+
+    @Test
+    void expiredEntriesAreReloaded() {
+        when(delegate.findById(ID)).thenReturn(Mono.just(CREATED), Mono.just(LIVE));
+        CachingStreamMetaRepository cache = cache(0, 100);
+
+        cache.findById(ID).block();
+
+        assertThat(cache.findById(ID).block()).isEqualTo(LIVE);
+    }
+
+    private CachingStreamMetaRepository cache(long ttlMs, int maxEntries) {
+        return new CachingStreamMetaRepository(delegate, new SimpleMeterRegistry(), ttlMs, maxEntries);
+    }
+
+    private static StreamMeta meta(UUID id, String streamKey, StreamStatus status) {
+        return new StreamMeta(id, streamKey, "title", null, status, Instant.EPOCH, null, null);
+    }
+}
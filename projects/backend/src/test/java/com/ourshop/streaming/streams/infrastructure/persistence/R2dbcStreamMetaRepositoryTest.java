@@ -0,0 +1,174 @@
+package com.ourshop.streaming.streams.infrastructure.persistence;
+
+import com.ourshop.streaming.streams.domain.StreamMetaCursor;
+import com.ourshop.streaming.streams.domain.StreamStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.FetchSpec;
+import org.springframework.r2dbc.core.RowsFetchSpec;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class R2dbcStreamMetaRepositoryTest {
+
+    private final List<Statement> statements = new ArrayList<>();
+    /** What the next UPDATE reports. */
+    private long rowsUpdated = 1;
+    private final R2dbcStreamMetaRepository repository = new R2dbcStreamMetaRepository(recordingClient());
+
+    @Test
+    void wholeWordQueriesUseTheIndexAsWordPrefixes() {
+        assertThat(R2dbcStreamMetaRepository.toBooleanQuery("Live cook!")).isEqualTo("+live* +cook*");
+        assertThat(R2dbcStreamMetaRepository.toBooleanQuery("  stream ")).isEqualTo("+stream*");
+    }
+
+    @Test
+    void shortWordsAndStopwordsKeepTheSubstringSearch() {
+        assertThat(R2dbcStreamMetaRepository.toBooleanQuery("tv")).isNull();
+        assertThat(R2dbcStreamMetaRepository.toBooleanQuery("tv cooking")).isNull();
+        assertThat(R2dbcStreamMetaRepository.toBooleanQuery("cooking with friends")).isNull();
+        assertThat(R2dbcStreamMetaRepository.toBooleanQuery("!!")).isNull();
+    }
+
+    @Test
+    void fullTextCountAndPageFilterTheSameRows() {
+        for (List<String> fields : List.of(List.<String>of(), List.of("title"), List.of("description", "streamKey"))) {
+            Statement count = count("live cook", fields);
+            assertThat(count.sql()).contains("MATCH(");
+            assertSameFilter(count, page("live cook", fields, false));
+            assertSameFilter(count, page("live cook", fields, true));
+            assertSameFilter(count, after("live cook", fields));
+        }
+    }
+
+    @Test
+    void likeFallbackCountAndPageFilterTheSameRows() {
+        for (String search : List.of("tv", "tv cooking", "the show")) {
+            for (List<String> fields : List.of(List.<String>of(), List.of("title", "key"))) {
+                Statement count = count(search, fields);
+                assertThat(count.sql()).contains("LIKE ?").doesNotContain("MATCH(");
+                assertThat(count.args()).contains("%" + search + "%");
+                assertSameFilter(count, page(search, fields, false));
+                assertSameFilter(count, page(search, fields, true));
+                assertSameFilter(count, after(search, fields));
+            }
+        }
+    }
+
+    @Test
+    void cursorResumesStrictlyAfterItsCreatedAtAndId() {
+        StreamMetaCursor cursor = new StreamMetaCursor(Instant.parse("2026-03-01T12:00:00.000001Z"),
+                UUID.fromString("00000000-0000-0000-0000-000000000007"));
+
+        repository.searchAfter(null, List.of(), cursor, 21).collectList().block();
+        Statement unfiltered = statements.get(statements.size() - 1);
+        assertThat(unfiltered.sql()).endsWith(
+                " WHERE created_at <= ? AND (created_at < ? OR id < ?) ORDER BY created_at DESC, id DESC LIMIT ?");
+        assertThat(unfiltered.args()).containsExactly(cursor.createdAt(), cursor.createdAt(),
+                cursor.id().toString(), 21);
+
+        repository.searchAfter("tv", List.of(), cursor, 21).collectList().block();
+        Statement filtered = statements.get(statements.size() - 1);
+        assertThat(filtered.sql()).contains(
+                ") AND created_at <= ? AND (created_at < ? OR id < ?) ORDER BY created_at DESC, id DESC LIMIT ?");
+        assertThat(filtered.args()).containsExactly("%tv%", "%tv%", cursor.createdAt(), cursor.createdAt(),
+                cursor.id().toString(), 21);
+    }
+
+    @Test
+    void transitionsCheckTheCurrentStatusInTheUpdate() {
+        UUID id = UUID.fromString("00000000-0000-0000-0000-000000000007");
+        Instant at = Instant.parse("2026-03-01T12:00:00Z");
+
+        assertThat(repository.transition(id, StreamStatus.CREATED, StreamStatus.LIVE, at).block()).isTrue();
+        Statement start = statements.get(statements.size() - 1);
+        assertThat(start.sql()).isEqualTo(
+                "UPDATE stream_meta SET status = ?, started_at = ?, ended_at = NULL WHERE id = ? AND status = ?");
+        assertThat(start.args()).containsExactly("LIVE", at, id.toString(), "CREATED");
+
+        rowsUpdated = 0;
+        assertThat(repository.transition(id, StreamStatus.LIVE, StreamStatus.ENDED, at).block()).isFalse();
+        Statement end = statements.get(statements.size() - 1);
+        assertThat(end.sql()).isEqualTo("UPDATE stream_meta SET status = ?, ended_at = ? WHERE id = ? AND status = ?");
+        assertThat(end.args()).containsExactly("ENDED", at, id.toString(), "LIVE");
+    }
+
+    @Test
+    void offsetPagesUseTheSameOrderAsCursors() {
+        Statement page = page(null, List.of(), 2, 20);
+
+        assertThat(page.sql()).endsWith(" ORDER BY created_at DESC, id DESC LIMIT ? OFFSET ?");
+        assertThat(page.args()).containsExactly(20, 40L);
+    }
+
+    private static void assertSameFilter(Statement count, Statement rows) {
+        String countWhere = count.sql().substring(count.sql().indexOf(" FROM stream_meta"));
+        String rowsFrom = rows.sql().substring(rows.sql().indexOf(" FROM stream_meta"));
+        assertThat(rowsFrom).startsWith(countWhere);
+        assertThat(rows.args()).startsWith(count.args().toArray());
+    }
+
+    private Statement count(String search, List<String> fields) {
+        repository.countSearch(search, fields).block();
+        return statements.get(statements.size() - 1);
+    }
+
+    private Statement page(String search, List<String> fields, boolean byRelevance) {
+        repository.searchPage(search, fields, 2, 20, byRelevance).collectList().block();
+        return statements.get(statements.size() - 1);
+    }
+
+    private Statement page(String search, List<String> fields, int page, int size) {
+        repository.searchPage(search, fields, page, size, false).collectList().block();
+        return statements.get(statements.size() - 1);
+    }
+
+    private Statement after(String search, List<String> fields) {
+        repository.searchAfter(search, fields, null, 21).collectList().block();
+        return statements.get(statements.size() - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private DatabaseClient recordingClient() {
+        DatabaseClient db = mock(DatabaseClient.class);
+        when(db.sql(anyString())).thenAnswer(inv -> {
+            Statement statement = new Statement(inv.getArgument(0), new ArrayList<>());
+            statements.add(statement);
+            RowsFetchSpec<Object> rows = mock(RowsFetchSpec.class);
+            when(rows.all()).thenReturn(Flux.empty());
+            when(rows.one()).thenReturn(Mono.empty());
+            FetchSpec<Map<String, Object>> fetch = mock(FetchSpec.class);
+            when(fetch.rowsUpdated()).thenAnswer(ignored -> Mono.just(rowsUpdated));
+            return mock(DatabaseClient.GenericExecuteSpec.class, spec -> {
+                String method = spec.getMethod().getName();
+                if (method.equals("bind")) {
+                    statement.args().add(spec.getArgument(1));
+                    return spec.getMock();
+                }
+                if (method.equals("bindNull")) {
+                    statement.args().add(null);
+                    return spec.getMock();
+                }
+                if (method.equals("fetch")) {
+                    return fetch;
+                }
+                return method.equals("map") ? rows : null;
+            });
+        });
+        return db;
+    }
+
+    private record Statement(String sql, List<Object> args) {
+    }
+}
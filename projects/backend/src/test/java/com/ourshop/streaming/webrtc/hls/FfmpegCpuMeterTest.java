@@ -0,0 +1,77 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FfmpegCpuMeterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final FfmpegCpuMeter meter = new FfmpegCpuMeter(registry, 0);
+
+    @AfterEach
+    void tearDown() {
+        meter.close();
+    }
+
+    @Test
+    void cpuOfExitedProcessesSurvivesARestart() throws Exception {
+        Process first = busyProcess();
+        meter.track("s", "session-1", first, HlsVideoMode.PASSTHROUGH);
+        Thread.sleep(600);
+        meter.sampleAll();
+        stop(first);
+
+        Process second = busyProcess();
+        meter.track("s", "session-1", second, HlsVideoMode.PASSTHROUGH);
+        Thread.sleep(600);
+        meter.sampleAll();
+        assertThat(registry.get("hls.ffmpeg.cpu.cores").gauge().value()).isGreaterThan(0.3);
+        stop(second);
+
+        // Both processes are gone: the OS reports nothing for them any more.
+        assertThat(first.toHandle().info().totalCpuDuration()).isEmpty();
+        assertThat(meter.untrack("s", "session-1")).isGreaterThan(0.3);
+        assertThat(registry.find("hls.ffmpeg.cpu.cores").gauge()).isNull();
+    }
+
+    @Test
+    void checkpointReadsAProcessRightBeforeItIsDestroyed() throws Exception {
+        Process process = busyProcess();
+        meter.track("s", "session-1", process, HlsVideoMode.PASSTHROUGH);
+        Thread.sleep(600);
+
+        meter.checkpoint("s");
+        stop(process);
+
+        assertThat(meter.untrack("s", "session-1")).isGreaterThan(0.3);
+    }
+
+    @Test
+    void untrackOfAnOlderSessionLeavesTheNewOneAlone() throws Exception {
+        Process process = busyProcess();
+        try {
+            meter.track("s", "session-1", process, HlsVideoMode.PASSTHROUGH);
+            meter.track("s", "session-2", process, HlsVideoMode.PASSTHROUGH);
+
+            assertThat(meter.untrack("s", "session-1")).isEqualTo(-1);
+            assertThat(registry.find("hls.ffmpeg.cpu.cores").gauge()).isNotNull();
+        } finally {
+            stop(process);
+        }
+    }
+
+    private static Process busyProcess() throws IOException {
+        return new ProcessBuilder("sh", "-c", "while :; do :; done").start();
+    }
+
+    private static void stop(Process process) throws InterruptedException {
+        process.destroyForcibly();
+        assertThat(process.waitFor(5, TimeUnit.SECONDS)).isTrue();
+    }
+}
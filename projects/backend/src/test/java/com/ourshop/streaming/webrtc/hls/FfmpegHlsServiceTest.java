@@ -0,0 +1,122 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import com.ourshop.streaming.webrtc.rtp.RtpIngestService;
+import com.ourshop.streaming.webrtc.rtp.RtpPortAllocator;
+import com.ourshop.streaming.webrtc.rtp.RtpReceiver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Readiness is exercised on the in-JVM ingest path, which needs no FFmpeg process but signals readiness
+ * the same way.
+ */
+class FfmpegHlsServiceTest {
+
+    private static final String STREAM = "stream-1";
+    private static final Duration WAIT = Duration.ofSeconds(2);
+    private static final String ANSWER = String.join("\r\n",
+            "v=0",
+            "o=- 1 1 IN IP4 127.0.0.1",
+            "s=-",
+            "t=0 0",
+            "m=audio 9 UDP/TLS/RTP/SAVPF 111",
+            "a=rtpmap:111 opus/48000/2",
+            "m=video 9 UDP/TLS/RTP/SAVPF 96",
+            "a=rtpmap:96 H264/90000",
+            "");
+
+    @TempDir
+    Path outputDir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Sinks.Many<SegmentEvent> events = Sinks.many().replay().all();
+    private FfmpegHlsService service;
+
+    @BeforeEach
+    void setUp() {
+        HlsSegmentWatcher watcher = mock(HlsSegmentWatcher.class);
+        when(watcher.events(STREAM)).thenReturn(events.asFlux());
+        HlsTranscodeScheduler scheduler = mock(HlsTranscodeScheduler.class);
+        when(scheduler.admit(anyString(), any(), any(), anyList())).thenReturn(Mono.just(new HlsAdmission(
+                HlsAdmission.Decision.ADMITTED, List.of(), 0.1, Duration.ZERO, 1)));
+        RtpIngestService ingest = mock(RtpIngestService.class);
+        when(ingest.isEnabled()).thenReturn(true);
+        service = new FfmpegHlsService(outputDir.toString(), "", "standard", 500, 4, true, "", 0, watcher,
+                scheduler, ingest, mock(RtpReceiver.class), mock(RtpPortAllocator.class), registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void becomesReadyWhenTheFirstSegmentIsListedAndRecordsTheWait() throws Exception {
+        HlsStartResult result = start();
+        assertThat(result.hlsUrl()).endsWith("/" + STREAM + "/master.m3u8");
+        assertThat(result.ready()).isFalse();
+
+        CompletableFuture<Boolean> ready = service.awaitReady(STREAM, WAIT).toFuture();
+        emit(SegmentEvent.Type.PLAYLIST_UPDATED, "index.m3u8");
+        assertThat(ready).isNotDone();
+        emit(SegmentEvent.Type.SEGMENT_READY, "seg_00000.m4s");
+
+        assertThat(ready.get(WAIT.toMillis(), TimeUnit.MILLISECONDS)).isTrue();
+        assertThat(registry.get("hls.time_to_first_segment")
+                .tag("mode", "standard")
+                .tag("video", "passthrough")
+                .timer()
+                .count()).isEqualTo(1);
+    }
+
+    @Test
+    void startReportsAStreamThatIsAlreadyPlayable() {
+        emit(SegmentEvent.Type.SEGMENT_READY, "seg_00000.m4s");
+
+        assertThat(start().ready()).isTrue();
+    }
+
+    @Test
+    void isNotReadyWhenNoSegmentArrivesInTime() {
+        start();
+
+        assertThat(service.awaitReady(STREAM, Duration.ofMillis(100)).block(WAIT)).isFalse();
+    }
+
+    @Test
+    void isNotReadyOnceStoppedOrNeverStarted() {
+        assertThat(service.awaitReady(STREAM, WAIT).block(WAIT)).isFalse();
+
+        start();
+        service.stop(STREAM).block(WAIT);
+
+        assertThat(service.awaitReady(STREAM, WAIT).block(WAIT)).isFalse();
+    }
+
+    private HlsStartResult start() {
+        return service.start(STREAM, 5000, 5002, ANSWER, ANSWER, null, null).block(WAIT);
+    }
+
+    private void emit(SegmentEvent.Type type, String name) {
+        events.tryEmitNext(new SegmentEvent(STREAM, type, name, 100, Duration.ofSeconds(2), 0, Instant.now()));
+    }
+}
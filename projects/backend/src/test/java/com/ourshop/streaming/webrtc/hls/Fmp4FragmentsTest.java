@@ -0,0 +1,109 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Fmp4FragmentsTest {
+
+    private static final int SYNC = 0x0200_0000;       // depends_on = 2 (I-frame)
+    private static final int NON_SYNC = 0x0101_0000;   // depends_on = 1, is_non_sync_sample
+
+    @Test
+    void firstSampleFlagsInTrunDecide() {
+        assertThat(startsWithSync(fragment(traf(tfhd(0x20, NON_SYNC), trunWithFirstFlags(SYNC))))).isTrue();
+        assertThat(startsWithSync(fragment(traf(tfhd(0x20, SYNC), trunWithFirstFlags(NON_SYNC))))).isFalse();
+    }
+
+    @Test
+    void fallsBackToPerSampleThenDefaultFlags() {
+        assertThat(startsWithSync(fragment(traf(tfhd(0, 0), trunWithSampleFlags(SYNC, NON_SYNC))))).isTrue();
+        assertThat(startsWithSync(fragment(traf(tfhd(0, 0), trunWithSampleFlags(NON_SYNC, SYNC))))).isFalse();
+        assertThat(startsWithSync(fragment(traf(tfhd(0x20, SYNC), trunPlain())))).isTrue();
+        assertThat(startsWithSync(fragment(traf(tfhd(0x20, NON_SYNC), trunPlain())))).isFalse();
+    }
+
+    @Test
+    void flagsOnlyInInitSegmentAreNotAssumedSync() {
+        assertThat(startsWithSync(fragment(traf(tfhd(0, 0), trunPlain())))).isFalse();
+    }
+
+    @Test
+    void everyTrackMustStartWithSyncSample() {
+        byte[] audio = traf(tfhd(0x20, SYNC), trunPlain());
+        byte[] videoKey = traf(tfhd(0x20, NON_SYNC), trunWithFirstFlags(SYNC));
+        byte[] videoDelta = traf(tfhd(0x20, NON_SYNC), trunPlain());
+
+        assertThat(startsWithSync(fragment(audio, videoKey))).isTrue();
+        assertThat(startsWithSync(fragment(audio, videoDelta))).isFalse();
+    }
+
+    @Test
+    void skipsLeadingBoxesAndRejectsGarbage() {
+        byte[] styp = box("styp", "msdh".getBytes(StandardCharsets.US_ASCII));
+        byte[] moof = fragment(traf(tfhd(0x20, SYNC), trunPlain()));
+        assertThat(startsWithSync(concat(styp, moof))).isTrue();
+
+        assertThat(startsWithSync(new byte[] {0, 0, 0, 4, 'm', 'o', 'o', 'f'})).isFalse();
+        assertThat(startsWithSync(new byte[0])).isFalse();
+    }
+
+    private static boolean startsWithSync(byte[] bytes) {
+        return Fmp4Fragments.startsWithSyncSample(ByteBuffer.wrap(bytes));
+    }
+
+    private static byte[] fragment(byte[]... trafs) {
+        byte[] mfhd = box("mfhd", ints(0, 1));
+        return box("moof", concat(mfhd, concat(trafs)));
+    }
+
+    private static byte[] traf(byte[] tfhd, byte[] trun) {
+        return box("traf", concat(tfhd, trun));
+    }
+
+    private static byte[] tfhd(int flags, int defaultSampleFlags) {
+        return (flags & 0x20) != 0
+                ? box("tfhd", ints(flags, 1, defaultSampleFlags))
+                : box("tfhd", ints(flags, 1));
+    }
+
+    private static byte[] trunWithFirstFlags(int firstFlags) {
+        // data_offset + first_sample_flags, two samples with sizes
+        return box("trun", ints(0x001 | 0x004 | 0x200, 2, 100, firstFlags, 1000, 200));
+    }
+
+    private static byte[] trunWithSampleFlags(int first, int second) {
+        // per-sample duration + size + flags
+        return box("trun", ints(0x100 | 0x200 | 0x400, 2, 3000, 1000, first, 3000, 200, second));
+    }
+
+    private static byte[] trunPlain() {
+        return box("trun", ints(0x200, 1, 1000));
+    }
+
+    private static byte[] box(String type, byte[] body) {
+        ByteBuffer buf = ByteBuffer.allocate(8 + body.length);
+        buf.putInt(8 + body.length).put(type.getBytes(StandardCharsets.US_ASCII)).put(body);
+        return buf.array();
+    }
+
+    private static byte[] ints(int... values) {
+        ByteBuffer buf = ByteBuffer.allocate(values.length * 4);
+        for (int v : values) {
+            buf.putInt(v);
+        }
+        return buf.array();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] p : parts) {
+            out.writeBytes(p);
+        }
+        return out.toByteArray();
+    }
+}
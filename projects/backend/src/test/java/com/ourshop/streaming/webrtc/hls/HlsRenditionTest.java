@@ -0,0 +1,40 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HlsRenditionTest {
+
+    private static final List<HlsRendition> LADDER = HlsRendition.parseLadder("360p:800k,1080p:5000k,720p:2800k");
+
+    @Test
+    void parsesHighestRungFirst() {
+        assertThat(LADDER).extracting(HlsRendition::name).containsExactly("1080p", "720p", "360p");
+    }
+
+    @Test
+    void dropsRungsTallerThanTheSource() {
+        assertThat(HlsRendition.fitToSource(LADDER, 1920)).isEqualTo(LADDER);
+        assertThat(HlsRendition.fitToSource(LADDER, 720)).extracting(HlsRendition::name)
+                .containsExactly("720p", "360p");
+        assertThat(HlsRendition.fitToSource(LADDER, 540)).extracting(HlsRendition::name)
+                .containsExactly("360p");
+    }
+
+    @Test
+    void sourceBelowTheLadderKeepsOneRungAtSourceHeight() {
+        assertThat(HlsRendition.fitToSource(LADDER, 241))
+                .containsExactly(new HlsRendition("240p", 240, 800));
+        assertThat(HlsRendition.fitToSource(List.of(), 720)).isEmpty();
+    }
+
+    @Test
+    void widthFollowsSourceAspectAndStaysEven() {
+        HlsRendition r720 = new HlsRendition("720p", 720, 2800);
+        assertThat(r720.width(1920, 1080)).isEqualTo(1280);
+        assertThat(r720.width(1080, 1920)).isEqualTo(404);
+    }
+}
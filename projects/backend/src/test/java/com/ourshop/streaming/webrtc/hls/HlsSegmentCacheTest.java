@@ -0,0 +1,155 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HlsSegmentCacheTest {
+
+    @TempDir
+    Path root;
+
+    private final Sinks.Many<SegmentEvent> events = Sinks.many().multicast().directBestEffort();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private HlsSegmentCache cache;
+
+    @BeforeEach
+    void setUp() {
+        FfmpegHlsService hls = mock(FfmpegHlsService.class);
+        when(hls.resolveFile(anyString(), anyString()))
+                .thenAnswer(inv -> root.resolve(inv.<String>getArgument(0)).resolve(inv.<String>getArgument(1)));
+        HlsSegmentWatcher watcher = mock(HlsSegmentWatcher.class);
+        when(watcher.events()).thenReturn(events.asFlux());
+        cache = new HlsSegmentCache(hls, watcher, registry, 64L << 20, 50);
+    }
+
+    @Test
+    void readersShareTheCachedBufferAndEachHoldsOneReference() throws IOException {
+        write("s", "seg0.m4s", "segment-0");
+        emit("s", SegmentEvent.Type.SEGMENT_READY, "seg0.m4s");
+
+        DataBuffer first = cache.get("s", "seg0.m4s").block();
+        DataBuffer second = cache.get("s", "seg0.m4s").block();
+        ByteBuf shared = nativeBuffer(first).unwrap();
+
+        assertThat(nativeBuffer(second).unwrap()).isSameAs(shared);
+        assertThat(shared.refCnt()).isEqualTo(3); // the cache plus two readers
+        DataBufferUtils.release(first);
+        DataBufferUtils.release(second);
+        assertThat(shared.refCnt()).isEqualTo(1);
+
+        cache.evictStream("s");
+        assertThat(shared.refCnt()).isZero();
+        assertThat(entries()).isZero();
+    }
+
+    @Test
+    void readerKeepsItsBufferWhenTheSegmentRollsOff() throws IOException {
+        write("s", "seg0.m4s", "segment-0");
+        emit("s", SegmentEvent.Type.SEGMENT_READY, "seg0.m4s");
+        DataBuffer reader = cache.get("s", "seg0.m4s").block();
+        ByteBuf buf = nativeBuffer(reader).unwrap();
+
+        emit("s", SegmentEvent.Type.SEGMENT_REMOVED, "seg0.m4s");
+
+        assertThat(buf.refCnt()).isEqualTo(1);
+        assertThat(reader.toString(StandardCharsets.US_ASCII)).isEqualTo("segment-0");
+        DataBufferUtils.release(reader);
+        assertThat(buf.refCnt()).isZero();
+    }
+
+    @Test
+    void refreshedPlaylistReleasesTheEntryItReplaced() throws Exception {
+        write("s", "index.m3u8", "v1");
+        DataBuffer old = cache.get("s", "index.m3u8").block();
+        ByteBuf oldBuf = nativeBuffer(old).unwrap();
+        assertThat(oldBuf.refCnt()).isEqualTo(2);
+
+        Thread.sleep(100); // past the playlist TTL
+        write("s", "index.m3u8", "v2");
+        DataBuffer fresh = cache.get("s", "index.m3u8").block();
+
+        assertThat(fresh.toString(StandardCharsets.US_ASCII)).isEqualTo("v2");
+        assertThat(oldBuf.refCnt()).isEqualTo(1); // only the reader still holds the old one
+        DataBufferUtils.release(old);
+        assertThat(oldBuf.refCnt()).isZero();
+
+        ByteBuf freshBuf = nativeBuffer(fresh).unwrap();
+        DataBufferUtils.release(fresh);
+        assertThat(freshBuf.refCnt()).isEqualTo(1);
+        cache.evictStream("s");
+        assertThat(freshBuf.refCnt()).isZero();
+    }
+
+    @Test
+    void unlistedSegmentIsServedWithoutCaching() throws IOException {
+        write("s", "seg1.m4s", "partial");
+
+        DataBuffer buffer = cache.get("s", "seg1.m4s").block();
+        ByteBuf buf = nativeBuffer(buffer);
+
+        assertThat(buf.refCnt()).isEqualTo(1);
+        assertThat(entries()).isZero();
+        DataBufferUtils.release(buffer);
+        assertThat(buf.refCnt()).isZero();
+    }
+
+    @Test
+    void onlyStreamsTheWatcherKnowsArePreloaded() throws Exception {
+        // A request for a key no pipeline ever wrote to must not make it hot.
+        write("random", "seg0.m4s", "x");
+        DataBufferUtils.release(cache.get("random", "seg0.m4s").block());
+        emit("random", SegmentEvent.Type.SEGMENT_READY, "seg0.m4s");
+
+        write("s", "seg0.m4s", "segment-0");
+        write("s", "seg1.m4s", "segment-1");
+        emit("s", SegmentEvent.Type.SEGMENT_READY, "seg0.m4s");
+        DataBufferUtils.release(cache.get("s", "seg0.m4s").block());
+        emit("s", SegmentEvent.Type.SEGMENT_READY, "seg1.m4s");
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (entries() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertThat(entries()).isEqualTo(2); // s/seg0 and the preloaded s/seg1, nothing for "random"
+        cache.evictStream("s");
+        cache.evictStream("random");
+    }
+
+    private void write(String streamKey, String name, String content) throws IOException {
+        Path dir = Files.createDirectories(root.resolve(streamKey));
+        Files.writeString(dir.resolve(name), content, StandardCharsets.US_ASCII);
+    }
+
+    private void emit(String streamKey, SegmentEvent.Type type, String name) {
+        events.tryEmitNext(new SegmentEvent(streamKey, type, name, 0, Duration.ofSeconds(2), 0, Instant.now()));
+    }
+
+    private double entries() {
+        return registry.get("hls.cache.entries").gauge().value();
+    }
+
+    /** Readers get retained duplicates; {@code unwrap()} on one is the buffer the cache entry owns. */
+    private static ByteBuf nativeBuffer(DataBuffer buffer) {
+        return ((NettyDataBuffer) buffer).getNativeBuffer();
+    }
+}
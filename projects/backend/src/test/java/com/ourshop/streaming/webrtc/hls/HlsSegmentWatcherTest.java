@@ -0,0 +1,158 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HlsSegmentWatcherTest {
+
+    private static final Duration WAIT = Duration.ofSeconds(10);
+
+    @TempDir
+    Path root;
+
+    private final List<SegmentEvent> events = new CopyOnWriteArrayList<>();
+    private HlsSegmentWatcher watcher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        watcher = new HlsSegmentWatcher(root.toString());
+        watcher.events().subscribe(events::add);
+        watcher.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        watcher.stop();
+    }
+
+    @Test
+    void aSegmentIsReadyOnceListedNotWhenItsFileAppears() throws Exception {
+        Path dir = Files.createDirectories(root.resolve("s"));
+        Files.writeString(dir.resolve("seg_7.ts"), "0123456789");
+        Thread.sleep(200);
+        assertThat(events).noneMatch(e -> e.type() == SegmentEvent.Type.SEGMENT_READY);
+
+        writePlaylist(dir, "index.m3u8", 7, "seg_7.ts");
+
+        SegmentEvent ready = await(e -> e.type() == SegmentEvent.Type.SEGMENT_READY);
+        assertThat(ready.streamKey()).isEqualTo("s");
+        assertThat(ready.name()).isEqualTo("seg_7.ts");
+        assertThat(ready.sequence()).isEqualTo(7);
+        assertThat(ready.size()).isEqualTo(10);
+        assertThat(ready.duration()).isEqualTo(Duration.ofSeconds(2));
+        SegmentEvent updated = await(e -> e.type() == SegmentEvent.Type.PLAYLIST_UPDATED);
+        assertThat(updated.name()).isEqualTo("index.m3u8");
+        assertThat(updated.sequence()).isEqualTo(7);
+    }
+
+    @Test
+    void aRewrittenPlaylistOnlyReportsNewlyListedSegments() throws Exception {
+        Path dir = Files.createDirectories(root.resolve("s"));
+        writePlaylist(dir, "index.m3u8", 0, "seg_0.ts", "seg_1.ts");
+        await(e -> e.name().equals("seg_1.ts"));
+
+        // seg_0 rolled off the live window, seg_2 is new.
+        writePlaylist(dir, "index.m3u8", 1, "seg_1.ts", "seg_2.ts");
+        await(e -> e.name().equals("seg_2.ts"));
+        Thread.sleep(200);
+
+        assertThat(events).filteredOn(e -> e.type() == SegmentEvent.Type.SEGMENT_READY)
+                .extracting(SegmentEvent::name)
+                .containsExactly("seg_0.ts", "seg_1.ts", "seg_2.ts");
+        assertThat(events).filteredOn(e -> e.name().equals("seg_2.ts")).singleElement()
+                .extracting(SegmentEvent::sequence).isEqualTo(2L);
+    }
+
+    @Test
+    void deletingASegmentReportsItRemoved() throws Exception {
+        Path dir = Files.createDirectories(root.resolve("s"));
+        Files.writeString(dir.resolve("seg_0.m4s"), "x");
+        writePlaylist(dir, "index.m3u8", 0, "seg_0.m4s");
+        await(e -> e.type() == SegmentEvent.Type.SEGMENT_READY);
+
+        Files.delete(dir.resolve("seg_0.m4s"));
+
+        SegmentEvent removed = await(e -> e.type() == SegmentEvent.Type.SEGMENT_REMOVED);
+        assertThat(removed.name()).isEqualTo("seg_0.m4s");
+    }
+
+    @Test
+    void masterPlaylistEntriesAreNotSegments() throws Exception {
+        Path dir = Files.createDirectories(root.resolve("s"));
+        write(dir, "master.m3u8", """
+                #EXTM3U
+                #EXT-X-STREAM-INF:BANDWIDTH=2000000,RESOLUTION=1280x720
+                720p.m3u8
+                #EXT-X-STREAM-INF:BANDWIDTH=800000,RESOLUTION=640x360
+                360p.m3u8
+                """);
+
+        await(e -> e.type() == SegmentEvent.Type.PLAYLIST_UPDATED && e.name().equals("master.m3u8"));
+        assertThat(events).noneMatch(e -> e.type() == SegmentEvent.Type.SEGMENT_READY);
+    }
+
+    @Test
+    void forgetCompletesTheStreamsFluxAndStartsOverOnRestart() throws Exception {
+        Path dir = Files.createDirectories(root.resolve("s"));
+        AtomicBoolean completed = new AtomicBoolean();
+        watcher.events("s").subscribe(e -> {
+        }, e -> {
+        }, () -> completed.set(true));
+        writePlaylist(dir, "index.m3u8", 0, "seg_0.ts");
+        await(e -> e.type() == SegmentEvent.Type.SEGMENT_READY);
+
+        watcher.forget("s");
+        assertThat(completed).isTrue();
+        assertThat(events).anyMatch(e -> e.type() == SegmentEvent.Type.STREAM_STOPPED);
+
+        // FFmpeg restarted and numbering began again: seg_0 is a new segment.
+        events.clear();
+        writePlaylist(dir, "index.m3u8", 0, "seg_0.ts");
+        assertThat(await(e -> e.type() == SegmentEvent.Type.SEGMENT_READY).name()).isEqualTo("seg_0.ts");
+    }
+
+    private static void writePlaylist(Path dir, String name, long mediaSequence, String... segments)
+            throws IOException {
+        StringBuilder sb = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n#EXT-X-TARGETDURATION:2\n")
+                .append("#EXT-X-MEDIA-SEQUENCE:").append(mediaSequence).append('\n');
+        for (String segment : segments) {
+            sb.append("#EXTINF:2.000000,\n").append(segment).append('\n');
+        }
+        write(dir, name, sb.toString());
+    }
+
+    /** Replaces the file in one step, as FFmpeg does with {@code hls_flags temp_file}. */
+    private static void write(Path dir, String name, String content) throws IOException {
+        Path tmp = dir.resolve(name + ".tmp");
+        Files.writeString(tmp, content, StandardCharsets.UTF_8);
+        Files.move(tmp, dir.resolve(name), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private SegmentEvent await(Predicate<SegmentEvent> match) throws InterruptedException {
+        long deadline = System.nanoTime() + WAIT.toNanos();
+        while (System.nanoTime() < deadline) {
+            for (SegmentEvent event : events) {
+                if (match.test(event)) {
+                    return event;
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("No matching event in " + events);
+    }
+}
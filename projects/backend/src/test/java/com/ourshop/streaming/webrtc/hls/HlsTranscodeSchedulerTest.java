@@ -0,0 +1,98 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HlsTranscodeSchedulerTest {
+
+    private static final List<HlsRendition> LADDER = HlsRendition.parseLadder("1080p:5000k,720p:2800k,360p:800k");
+    private static final Duration WAIT = Duration.ofSeconds(2);
+
+    @Test
+    void admitsFullLadderWhenItFits() {
+        HlsTranscodeScheduler scheduler = scheduler(10, 8);
+
+        HlsAdmission admission = admit(scheduler, "a", LADDER).block(WAIT);
+
+        assertThat(admission.decision()).isEqualTo(HlsAdmission.Decision.ADMITTED);
+        assertThat(admission.renditions()).isEqualTo(LADDER);
+    }
+
+    @Test
+    void dropsTopRungsWhenBudgetIsTight() {
+        HlsTranscodeScheduler scheduler = scheduler(3, 8);
+        admit(scheduler, "a", List.of()).block(WAIT); // 1.5 cores
+
+        HlsAdmission admission = admit(scheduler, "b", LADDER).block(WAIT);
+
+        assertThat(admission.decision()).isEqualTo(HlsAdmission.Decision.DOWNGRADED);
+        assertThat(admission.renditions()).extracting(HlsRendition::name).containsExactly("720p", "360p");
+    }
+
+    @Test
+    void queuedStreamIsGrantedOnRelease() {
+        HlsTranscodeScheduler scheduler = scheduler(2, 8);
+        HlsAdmission first = admit(scheduler, "a", List.of()).block(WAIT);
+        CompletableFuture<HlsAdmission> second = admit(scheduler, "b", List.of()).toFuture();
+        assertThat(second).isNotDone();
+
+        scheduler.release("a", first.reservationId(), -1);
+
+        assertThat(second.join().decision()).isEqualTo(HlsAdmission.Decision.QUEUED);
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() {
+        HlsTranscodeScheduler scheduler = scheduler(2, 0);
+        admit(scheduler, "a", List.of()).block(WAIT);
+
+        HlsAdmission admission = admit(scheduler, "b", List.of()).block(WAIT);
+
+        assertThat(admission.admitted()).isFalse();
+        assertThat(admission.decision()).isEqualTo(HlsAdmission.Decision.REJECTED);
+    }
+
+    @Test
+    void restartHandsFreedCapacityToTheQueueFirst() {
+        HlsTranscodeScheduler scheduler = scheduler(2, 8);
+        admit(scheduler, "a", List.of()).block(WAIT);
+        CompletableFuture<HlsAdmission> queued = admit(scheduler, "b", List.of()).toFuture();
+
+        // "a" restarts as a cheap remux: its old 1.5 cores go to "b", which waited first.
+        HlsAdmission restarted = scheduler.admit("a", HlsOutputMode.STANDARD, HlsVideoMode.PASSTHROUGH, List.of())
+                .block(WAIT);
+
+        assertThat(queued.join().decision()).isEqualTo(HlsAdmission.Decision.QUEUED);
+        assertThat(restarted.decision()).isEqualTo(HlsAdmission.Decision.ADMITTED);
+    }
+
+    @Test
+    void releaseWithStaleReservationIdIsIgnored() {
+        HlsTranscodeScheduler scheduler = scheduler(2, 8);
+        HlsAdmission old = admit(scheduler, "a", List.of()).block(WAIT);
+        admit(scheduler, "a", List.of()).block(WAIT);
+        CompletableFuture<HlsAdmission> queued = admit(scheduler, "b", List.of()).toFuture();
+
+        scheduler.release("a", old.reservationId(), -1);
+
+        assertThat(queued).isNotDone();
+        scheduler.cancelQueued("b");
+        assertThat(queued.join().decision()).isEqualTo(HlsAdmission.Decision.REJECTED);
+    }
+
+    private static HlsTranscodeScheduler scheduler(double cores, int maxQueue) {
+        return new HlsTranscodeScheduler(cores, 1.5, maxQueue, 10_000, new SimpleMeterRegistry());
+    }
+
+    private static Mono<HlsAdmission> admit(HlsTranscodeScheduler scheduler, String key,
+            List<HlsRendition> ladder) {
+        return scheduler.admit(key, HlsOutputMode.STANDARD, HlsVideoMode.TRANSCODE, ladder);
+    }
+}
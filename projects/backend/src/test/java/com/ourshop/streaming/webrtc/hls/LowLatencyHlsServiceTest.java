@@ -0,0 +1,130 @@
+package com.ourshop.streaming.webrtc.hls;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LowLatencyHlsServiceTest {
+
+    /** 50 ms parts, 4 per segment: blocked reloads give up after 3 x 200 ms. */
+    private static final double PART_SECONDS = 0.05;
+    private static final int PARTS_PER_SEGMENT = 4;
+
+    private final Sinks.Many<SegmentEvent> events = Sinks.many().multicast().directBestEffort();
+    private LowLatencyHlsService service;
+
+    @BeforeEach
+    void setUp() {
+        FfmpegHlsService hls = mock(FfmpegHlsService.class);
+        when(hls.llPartSeconds()).thenReturn(PART_SECONDS);
+        when(hls.llPartsPerSegment()).thenReturn(PARTS_PER_SEGMENT);
+        HlsSegmentWatcher watcher = mock(HlsSegmentWatcher.class);
+        when(watcher.events()).thenReturn(events.asFlux());
+        service = new LowLatencyHlsService(hls, mock(HlsSegmentCache.class), watcher, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void rendersCompleteSegmentsPartsAndAPreloadHint() {
+        writeParts(0, 5);
+
+        String playlist = service.playlist("s", null, null).block();
+
+        assertThat(playlist)
+                .contains("#EXT-X-MEDIA-SEQUENCE:0")
+                .contains("#EXTINF:0.200,\nseg_00000.m4s")
+                .contains("URI=\"part_00005.m4s\"")
+                .contains("#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"part_00006.m4s\"");
+    }
+
+    @Test
+    void aPartRequestWaitsForThatPartOfTheSegment() {
+        writeParts(0, 8);
+        AtomicReference<String> answer = new AtomicReference<>();
+        // msn 2, part 1 is overall part 2 * 4 + 1 = 9
+        Disposable request = service.playlist("s", 2L, 1).subscribe(answer::set);
+
+        assertThat(answer.get()).isNull();
+        writeParts(9, 9);
+        assertThat(answer.get()).contains("part_00009.m4s");
+        request.dispose();
+    }
+
+    @Test
+    void aSegmentRequestWaitsForItsLastPart() {
+        writeParts(0, 8);
+        AtomicReference<String> answer = new AtomicReference<>();
+        // msn 2 without a part needs all of segment 2: parts 8..11
+        Disposable request = service.playlist("s", 2L, null).subscribe(answer::set);
+
+        writeParts(9, 10);
+        assertThat(answer.get()).isNull();
+        writeParts(11, 11);
+        assertThat(answer.get()).contains("seg_00002.m4s");
+        request.dispose();
+    }
+
+    @Test
+    void answersAtOnceWhenThePartAlreadyExists() {
+        writeParts(0, 8);
+
+        assertThat(service.playlist("s", 1L, null).block(Duration.ofMillis(100))).contains("seg_00001.m4s");
+        assertThat(service.playlist("s", 2L, 0).block(Duration.ofMillis(100))).contains("part_00008.m4s");
+    }
+
+    @Test
+    void rejectsRequestsMoreThanTwoSegmentsAheadOfTheLiveEdge() {
+        writeParts(0, 3);
+        // Live edge is part 3; anything up to 3 + 2 * 4 = 11 may park.
+        Disposable parked = service.playlist("s", 2L, null).subscribe();
+        Disposable alsoParked = service.playlist("s", 2L, 3).subscribe();
+
+        assertThatThrownBy(() -> service.playlist("s", 3L, 0).block())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.playlist("s", -1L, null).block())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.playlist("s", 1L, -1).block())
+                .isInstanceOf(IllegalArgumentException.class);
+        parked.dispose();
+        alsoParked.dispose();
+    }
+
+    @Test
+    void aStalledPackagerFailsTheReloadInsteadOfServingAStalePlaylist() {
+        writeParts(0, 3);
+        long start = System.nanoTime();
+
+        assertThatThrownBy(() -> service.playlist("s", 1L, 0).block(Duration.ofSeconds(5)))
+                .hasCauseInstanceOf(TimeoutException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(600));
+    }
+
+    @Test
+    void unknownStreamsAreEmpty() {
+        assertThat(service.isLowLatency("other")).isFalse();
+        assertThat(service.playlist("other", 0L, null).blockOptional()).isEmpty();
+    }
+
+    private void writeParts(long from, long to) {
+        for (long seq = from; seq <= to; seq++) {
+            emit(SegmentEvent.Type.SEGMENT_READY, String.format(Locale.ROOT, "part_%05d.m4s", seq), seq);
+        }
+        emit(SegmentEvent.Type.PLAYLIST_UPDATED, FfmpegHlsService.LL_PARTS_PLAYLIST, to);
+    }
+
+    private void emit(SegmentEvent.Type type, String name, long sequence) {
+        events.tryEmitNext(new SegmentEvent("s", type, name, 100, Duration.ofMillis(50), sequence, Instant.now()));
+    }
+}
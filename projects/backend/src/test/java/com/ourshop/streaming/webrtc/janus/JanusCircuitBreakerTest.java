@@ -0,0 +1,128 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import com.ourshop.streaming.webrtc.janus.JanusCircuitBreaker.Permit;
+import com.ourshop.streaming.webrtc.janus.JanusCircuitBreaker.State;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JanusCircuitBreakerTest {
+
+    private final JanusCircuitBreaker breaker = new JanusCircuitBreaker("n1", 50, 1, new SimpleMeterRegistry());
+
+    @Test
+    void opensOnceEnoughRecentCallsFailed() {
+        for (int i = 0; i < 9; i++) {
+            breaker.onFailure(breaker.tryAcquire());
+        }
+        // Fewer than the minimum number of calls never opens it.
+        assertThat(breaker.state()).isEqualTo(State.CLOSED);
+
+        breaker.onFailure(breaker.tryAcquire());
+        assertThat(breaker.state()).isEqualTo(State.OPEN);
+        assertThat(breaker.tryAcquire()).isNull();
+    }
+
+    @Test
+    void staysClosedBelowTheFailureRate() {
+        for (int i = 0; i < 20; i++) {
+            Permit permit = breaker.tryAcquire();
+            if (i % 3 == 0) {
+                breaker.onFailure(permit);
+            } else {
+                breaker.onSuccess(permit);
+            }
+        }
+        assertThat(breaker.state()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    void halfOpenAdmitsALimitedNumberOfTrialsAndClosesWhenTheyAllSucceed() throws InterruptedException {
+        open();
+        Thread.sleep(1_100);
+
+        List<Permit> trials = acquireAll();
+        assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+        assertThat(trials).hasSize(3).allMatch(Permit::trial);
+
+        trials.forEach(breaker::onSuccess);
+        assertThat(breaker.state()).isEqualTo(State.CLOSED);
+        assertThat(breaker.tryAcquire().trial()).isFalse();
+    }
+
+    @Test
+    void failedTrialReopens() throws InterruptedException {
+        open();
+        Thread.sleep(1_100);
+
+        List<Permit> trials = acquireAll();
+        breaker.onSuccess(trials.get(0));
+        breaker.onFailure(trials.get(1));
+        assertThat(breaker.state()).isEqualTo(State.OPEN);
+
+        // The remaining trial belongs to the half-open period that just ended.
+        breaker.onSuccess(trials.get(2));
+        assertThat(breaker.state()).isEqualTo(State.OPEN);
+        assertThat(breaker.tryAcquire()).isNull();
+    }
+
+    @Test
+    void callsAdmittedBeforeOpeningDoNotCountAsTrials() throws InterruptedException {
+        List<Permit> stragglers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            stragglers.add(breaker.tryAcquire());
+        }
+        open();
+        Thread.sleep(1_100);
+
+        List<Permit> trials = acquireAll();
+        assertThat(trials).hasSize(3);
+
+        // Late outcomes of calls admitted while closed neither free trial slots nor decide the trial.
+        breaker.onSuccess(stragglers.get(0));
+        breaker.onFailure(stragglers.get(1));
+        breaker.release(stragglers.get(2));
+        assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isNull();
+
+        breaker.onSuccess(trials.get(0));
+        breaker.onSuccess(trials.get(1));
+        breaker.onSuccess(stragglers.get(3));
+        assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+        breaker.onSuccess(trials.get(2));
+        assertThat(breaker.state()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    void releasedTrialFreesItsSlot() throws InterruptedException {
+        open();
+        Thread.sleep(1_100);
+
+        List<Permit> trials = acquireAll();
+        breaker.release(trials.get(0));
+
+        Permit replacement = breaker.tryAcquire();
+        assertThat(replacement).isNotNull();
+        assertThat(replacement.trial()).isTrue();
+        assertThat(breaker.tryAcquire()).isNull();
+    }
+
+    private void open() {
+        while (breaker.state() != State.OPEN) {
+            breaker.onFailure(breaker.tryAcquire());
+        }
+    }
+
+    private List<Permit> acquireAll() {
+        List<Permit> permits = new ArrayList<>();
+        Permit permit;
+        while ((permit = breaker.tryAcquire()) != null) {
+            permits.add(permit);
+        }
+        return permits;
+    }
+}
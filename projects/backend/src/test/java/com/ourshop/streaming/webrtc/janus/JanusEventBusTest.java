@@ -0,0 +1,112 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JanusEventBusTest {
+
+    private static final long SESSION = 1L;
+    private static final Duration WAIT = Duration.ofSeconds(2);
+
+    /** What the next long-polls return: a message, or an error to fail the poll with. */
+    private final BlockingQueue<Object> polls = new LinkedBlockingQueue<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private JanusEventBus bus;
+
+    @BeforeEach
+    void setUp() {
+        JanusClient janus = mock(JanusClient.class);
+        // Each poll waits briefly for something to return, like Janus holding the request.
+        when(janus.pollEvents(eq(SESSION), anyLong(), anyInt())).thenAnswer(inv -> Mono.fromCallable(
+                        () -> polls.poll(20, TimeUnit.MILLISECONDS))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(next -> next instanceof Throwable e ? Flux.<JanusMessage>error(e)
+                        : Flux.just((JanusMessage) next)));
+        bus = new JanusEventBus(janus, 1_000, 10, 100, registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bus.closeAll();
+    }
+
+    @Test
+    void routesEventsToTheirHandleAndBuffersThemUntilSomeoneSubscribes() {
+        Instant start = Instant.now();
+        polls.add(event(20, "trickle"));
+        polls.add(event(10, "event"));
+
+        JanusMessage forTen = bus.events(SESSION, 10, start).blockFirst(WAIT);
+        JanusMessage forTwenty = bus.events(SESSION, 20, start).blockFirst(WAIT);
+
+        assertThat(forTen.janus()).isEqualTo("event");
+        assertThat(forTwenty.janus()).isEqualTo("trickle");
+        assertThat(registry.get("janus.events.loops").gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    void sinceKeepsOlderLeftoversOut() throws InterruptedException {
+        polls.add(event(10, "trickle"));
+        bus.events(SESSION, 20, Instant.now()).subscribe(); // starts the loop
+        waitUntilPolled();
+        Instant later = Instant.now();
+        polls.add(event(10, "webrtcup"));
+
+        assertThat(bus.events(SESSION, 10, later).blockFirst(WAIT).janus()).isEqualTo("webrtcup");
+    }
+
+    @Test
+    void keepsPollingAfterATransientFailure() {
+        polls.add(new IllegalStateException("connection reset"));
+        polls.add(event(10, "event"));
+
+        assertThat(bus.events(SESSION, 10, Instant.EPOCH).blockFirst(WAIT)).isNotNull();
+    }
+
+    @Test
+    void endsTheLoopWhenJanusNoLongerKnowsTheSession() throws Exception {
+        // Subscribe first: once the loop has stopped, a late subscriber would start a new one.
+        CompletableFuture<List<JanusMessage>> collected = bus.events(SESSION, 10, Instant.EPOCH)
+                .collectList()
+                .toFuture();
+        polls.add(event(10, "event"));
+        polls.add(new JanusApiException(458, "No such session"));
+
+        List<JanusMessage> events = collected.get(WAIT.toMillis(), TimeUnit.MILLISECONDS);
+
+        assertThat(events).extracting(JanusMessage::janus).containsExactly("event");
+        assertThat(registry.get("janus.events.loops").gauge().value()).isZero();
+    }
+
+    private void waitUntilPolled() throws InterruptedException {
+        long deadline = System.nanoTime() + WAIT.toNanos();
+        while (!polls.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(20);
+    }
+
+    private static JanusMessage event(long sender, String type) {
+        return new JanusMessage(type, SESSION, sender, null, null, null, null, null, null, null);
+    }
+}
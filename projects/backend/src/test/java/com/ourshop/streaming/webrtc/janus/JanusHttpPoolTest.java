@@ -0,0 +1,111 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JanusHttpPoolTest {
+
+    private static final Duration WAIT = Duration.ofSeconds(5);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    /** Client ports the server saw, one per connection. */
+    private final Set<Integer> connections = ConcurrentHashMap.newKeySet();
+    private final List<JanusHttpPool> pools = new CopyOnWriteArrayList<>();
+    private DisposableServer server;
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(registry);
+        // /poll is held like a Janus long-poll with nothing to report; /info answers at once.
+        server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes
+                        .get("/poll", (req, res) -> Mono.never())
+                        .get("/info", (req, res) -> {
+                            connections.add(req.remoteAddress().getPort());
+                            return res.sendString(Mono.just("{\"janus\":\"server_info\"}"));
+                        }))
+                .bindNow();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pools.forEach(JanusHttpPool::dispose);
+        server.disposeNow();
+        Metrics.removeRegistry(registry);
+    }
+
+    @Test
+    void parkedPollsDoNotStarveCommands() {
+        JanusHttpPool polls = pool("test-polls", 1);
+        JanusHttpPool commands = pool("test-commands", 1);
+        get(polls, "/poll").subscribe();
+
+        assertThatThrownBy(() -> get(polls, "/poll").block(WAIT))
+                .hasMessageContaining("Pool#acquire");
+        assertThat(get(commands, "/info").block(WAIT)).contains("server_info");
+    }
+
+    @Test
+    void keepsConnectionsAliveAndPublishesPoolMetricsUnderItsName() {
+        JanusHttpPool commands = pool("test-reuse", 4);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(get(commands, "/info").block(WAIT)).contains("server_info");
+            // The connection goes back to the pool just after the body is read.
+            waitUntil(() -> gauge("idle", "test-reuse") == 1.0);
+        }
+
+        assertThat(connections).hasSize(1);
+        assertThat(gauge("active", "test-reuse")).isZero();
+        assertThat(gauge("pending", "test-reuse")).isZero();
+    }
+
+    private double gauge(String kind, String pool) {
+        Gauge gauge = registry.find("reactor.netty.connection.provider." + kind + ".connections")
+                .tag("name", pool)
+                .gauge();
+        return gauge == null ? -1 : gauge.value();
+    }
+
+    private JanusHttpPool pool(String name, int maxConnections) {
+        JanusHttpPool pool = new JanusHttpPool(name, "http://localhost:" + server.port(), maxConnections,
+                Duration.ofSeconds(30), Duration.ofMillis(200), Duration.ofSeconds(30));
+        pools.add(pool);
+        return pool;
+    }
+
+    private static Mono<String> get(JanusHttpPool pool, String path) {
+        return pool.webClient().get().uri(path).retrieve().bodyToMono(String.class);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + WAIT.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The wheel turns once every 5 s in 50 slots, so the slot after the first comes round 100 ms after start
+ * while slot 0 does not for 5 s. Each test parks a filler session in slot 0 and watches slot 1.
+ */
+class JanusKeepaliveSchedulerTest {
+
+    private static final long FILLER = 10L;
+    private static final long SESSION = 20L;
+    private static final Duration WAIT = Duration.ofSeconds(2);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private JanusClient janus;
+    private JanusKeepaliveScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        janus = mock(JanusClient.class);
+        when(janus.keepalive(anyLong())).thenReturn(Mono.empty());
+        scheduler = new JanusKeepaliveScheduler(janus, 5, 50, 1, registry);
+        scheduler.register(FILLER);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void sendsKeepalivesOnlyWhenTheSessionsSlotComesRound() {
+        scheduler.register(SESSION);
+
+        waitUntil(() -> count("sent") == 1.0);
+        verify(janus).keepalive(SESSION);
+        verify(janus, never()).keepalive(FILLER);
+        assertThat(registry.get("janus.keepalive.sessions").gauge().value()).isEqualTo(2.0);
+    }
+
+    @Test
+    void registeringTwiceKeepsOneEntry() {
+        scheduler.register(SESSION);
+        scheduler.register(SESSION);
+
+        assertThat(registry.get("janus.keepalive.sessions").gauge().value()).isEqualTo(2.0);
+    }
+
+    @Test
+    void skipsSessionsWithRecentTraffic() {
+        when(janus.lastActivityNanos(SESSION)).thenAnswer(inv -> System.nanoTime());
+        scheduler.register(SESSION);
+
+        waitUntil(() -> count("skipped") == 1.0);
+        verify(janus, never()).keepalive(SESSION);
+    }
+
+    @Test
+    void reapsASessionAfterMaxFailures() {
+        when(janus.keepalive(SESSION)).thenReturn(Mono.error(new IllegalStateException("no such session")));
+        AtomicReference<Long> reaped = new AtomicReference<>();
+        scheduler.reaped().subscribe(reaped::set);
+        scheduler.register(SESSION);
+
+        waitUntil(() -> reaped.get() != null);
+        assertThat(reaped.get()).isEqualTo(SESSION);
+        assertThat(scheduler.isRegistered(SESSION)).isFalse();
+        assertThat(scheduler.isRegistered(FILLER)).isTrue();
+        assertThat(registry.get("janus.keepalive.reaped").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void unregisteredSessionsGetNoKeepalive() throws InterruptedException {
+        scheduler.register(SESSION);
+        scheduler.unregister(SESSION);
+
+        Thread.sleep(300);
+        verify(janus, never()).keepalive(SESSION);
+        assertThat(scheduler.isRegistered(SESSION)).isFalse();
+    }
+
+    private double count(String result) {
+        return registry.get("janus.keepalive").tag("result", result).counter().count();
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + WAIT.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import tools.jackson.databind.ObjectMapper;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JanusMessageTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void decodesTheIdOfACreateReply() {
+        JanusMessage reply = decode("""
+                {
+                   "janus": "success",
+                   "transaction": "Bx7XqLmG2sPf",
+                   "data": {
+                      "id": 8412563970126437
+                   }
+                }""");
+
+        assertThat(reply.is("success")).isTrue();
+        assertThat(reply.transaction()).isEqualTo("Bx7XqLmG2sPf");
+        assertThat(reply.dataId()).isEqualTo(8412563970126437L);
+        assertThat(reply.senderOrZero()).isZero();
+    }
+
+    @Test
+    void decodesAVideoRoomErrorEvent() {
+        JanusMessage event = decode("""
+                {
+                   "janus": "event",
+                   "session_id": 8412563970126437,
+                   "transaction": "k3PzR9w1yTqe",
+                   "sender": 2904981171395116,
+                   "plugindata": {
+                      "plugin": "janus.plugin.videoroom",
+                      "data": {
+                         "videoroom": "event",
+                         "error_code": 426,
+                         "error": "No such room (1234)"
+                      }
+                   }
+                }""");
+
+        assertThat(event.sessionId()).isEqualTo(8412563970126437L);
+        assertThat(event.senderOrZero()).isEqualTo(2904981171395116L);
+        assertThat(event.pluginErrorCode()).isEqualTo(426);
+        assertThat(event.pluginError()).isEqualTo("No such room (1234)");
+        assertThat(event.pluginId()).isZero();
+        assertThat(event.sdp()).isNull();
+    }
+
+    @Test
+    void decodesAJoinedEventWithItsAnswer() {
+        JanusMessage event = decode("""
+                {
+                   "janus": "event",
+                   "session_id": 8412563970126437,
+                   "sender": 2904981171395116,
+                   "plugindata": {
+                      "plugin": "janus.plugin.videoroom",
+                      "data": {
+                         "videoroom": "joined",
+                         "room": 1234,
+                         "description": "Demo Room",
+                         "id": 5120399781745591,
+                         "private_id": 3214536677,
+                         "publishers": []
+                      }
+                   },
+                   "jsep": {
+                      "type": "answer",
+                      "sdp": "v=0\\r\\no=- 1 1 IN IP4 127.0.0.1\\r\\n"
+                   }
+                }""");
+
+        assertThat(event.pluginId()).isEqualTo(5120399781745591L);
+        assertThat(event.pluginError()).isNull();
+        assertThat(event.pluginErrorCode()).isZero();
+        assertThat(event.sdp()).startsWith("v=0\r\n");
+    }
+
+    @Test
+    void decodesTrickleCandidatesAndTheEndOfCandidates() {
+        JanusMessage candidate = decode("""
+                {
+                   "janus": "trickle",
+                   "session_id": 8412563970126437,
+                   "sender": 2904981171395116,
+                   "candidate": {
+                      "sdpMid": "0",
+                      "sdpMLineIndex": 0,
+                      "candidate": "candidate:1 1 udp 2015363327 203.0.113.7 20013 typ host"
+                   }
+                }""");
+        JanusMessage completed = decode("""
+                {
+                   "janus": "trickle",
+                   "session_id": 8412563970126437,
+                   "sender": 2904981171395116,
+                   "candidate": {
+                      "completed": true
+                   }
+                }""");
+
+        assertThat(candidate.candidate().candidate()).contains("typ host");
+        assertThat(candidate.candidate().sdpMLineIndex()).isZero();
+        assertThat(candidate.candidate().isCompleted()).isFalse();
+        assertThat(completed.candidate().isCompleted()).isTrue();
+        assertThat(completed.candidate().candidate()).isNull();
+    }
+
+    @Test
+    void decodesAnErrorReply() {
+        JanusMessage reply = decode("""
+                {
+                   "janus": "error",
+                   "session_id": 1,
+                   "transaction": "Zq2",
+                   "error": {
+                      "code": 458,
+                      "reason": "No such session 1"
+                   }
+                }""");
+
+        assertThat(reply.error().code()).isEqualTo(458);
+        assertThat(reply.error().reason()).isEqualTo("No such session 1");
+    }
+
+    @Test
+    void decodesALongPollBatchElementByElement() {
+        String maxev = """
+                [
+                   {
+                      "janus": "webrtcup",
+                      "session_id": 8412563970126437,
+                      "sender": 2904981171395116
+                   },
+                   {
+                      "janus": "media",
+                      "session_id": 8412563970126437,
+                      "sender": 2904981171395116,
+                      "type": "video",
+                      "receiving": true
+                   },
+                   {
+                      "janus": "hangup",
+                      "session_id": 8412563970126437,
+                      "sender": 2904981171395116,
+                      "reason": "DTLS alert"
+                   }
+                ]""";
+
+        List<JanusMessage> events = poll(maxev).collectList().block(Duration.ofSeconds(5));
+
+        assertThat(events).extracting(JanusMessage::janus).containsExactly("webrtcup", "media", "hangup");
+        assertThat(events).allMatch(event -> event.senderOrZero() == 2904981171395116L);
+        assertThat(events.get(2).reason()).isEqualTo("DTLS alert");
+    }
+
+    @Test
+    void aSingleKeepaliveIsABatchOfOne() {
+        List<JanusMessage> events = poll("{\"janus\": \"keepalive\"}").collectList().block(Duration.ofSeconds(5));
+
+        assertThat(events).singleElement().satisfies(event -> assertThat(event.is("keepalive")).isTrue());
+    }
+
+    private JanusMessage decode(String json) {
+        return mapper.readValue(json, JanusMessage.class);
+    }
+
+    /** A long-poll answered with {@code body}, decoded the way {@link JanusClient#pollEvents} does. */
+    private static Flux<JanusMessage> poll(String body) {
+        ClientResponse response = ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(body)
+                .build();
+        return WebClient.builder()
+                .exchangeFunction(request -> Mono.just(response))
+                .build()
+                .get()
+                .uri("http://janus/janus/8412563970126437?maxev=10")
+                .retrieve()
+                .bodyToFlux(JanusMessage.class);
+    }
+}
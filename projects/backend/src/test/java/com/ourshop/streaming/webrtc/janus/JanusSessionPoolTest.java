@@ -0,0 +1,150 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JanusSessionPoolTest {
+
+    private static final Duration WAIT = Duration.ofSeconds(2);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Sinks.Many<Long> reaped = Sinks.many().multicast().directBestEffort();
+    private final Sinks.Many<String> nodeFailures = Sinks.many().multicast().directBestEffort();
+    private final AtomicLong nextSessionId = new AtomicLong(1);
+    private JanusClient janus;
+    private JanusKeepaliveScheduler keepalives;
+
+    @BeforeEach
+    void setUp() {
+        janus = mock(JanusClient.class);
+        keepalives = mock(JanusKeepaliveScheduler.class);
+        when(janus.nodeNames()).thenReturn(List.of("a", "b"));
+        when(janus.isUp(anyString())).thenReturn(true);
+        when(janus.placeFor(any())).thenReturn("a");
+        when(janus.nodeFailures()).thenReturn(nodeFailures.asFlux());
+        when(janus.createSessionOn(anyString())).thenAnswer(inv -> Mono.fromSupplier(nextSessionId::getAndIncrement));
+        when(janus.attachPlugin(anyLong(), eq(JanusSessionPool.VIDEOROOM_PLUGIN)))
+                .thenAnswer(inv -> Mono.just(1_000 + (long) inv.getArgument(0)));
+        when(janus.destroySession(anyLong())).thenReturn(Mono.empty());
+        when(keepalives.reaped()).thenReturn(reaped.asFlux());
+    }
+
+    @Test
+    void fillsTheTargetAcrossNodesAndHandsOutAPairFromThePlacedNode() {
+        JanusSessionPool pool = new JanusSessionPool(janus, keepalives, 4, 600, registry);
+        pool.start();
+        assertThat(idle()).isEqualTo(4);
+        verify(janus, times(2)).createSessionOn("a");
+        verify(janus, times(2)).createSessionOn("b");
+
+        JanusHandlePair pair = pool.borrow("room-1").block(WAIT);
+
+        assertThat(pair.node()).isEqualTo("a");
+        assertThat(pair.handleId()).isEqualTo(1_000 + pair.sessionId());
+        assertThat(registry.get("janus.pool.borrows").tag("result", "hit").counter().count()).isEqualTo(1.0);
+        // The borrowed pair is replaced in the background and stays registered for its new owner.
+        assertThat(idle()).isEqualTo(4);
+        verify(keepalives, never()).unregister(pair.sessionId());
+    }
+
+    @Test
+    void createsOnDemandWithoutKeepingThePairAliveWhenThePoolIsOff() {
+        JanusSessionPool pool = new JanusSessionPool(janus, keepalives, 0, 600, registry);
+        pool.start();
+
+        JanusHandlePair pair = pool.borrow(null).block(WAIT);
+
+        assertThat(pair.node()).isEqualTo("a");
+        assertThat(idle()).isZero();
+        assertThat(registry.get("janus.pool.borrows").tag("result", "miss").counter().count()).isZero();
+        verify(keepalives, never()).register(anyLong());
+    }
+
+    @Test
+    void destroysTheSessionWhenAttachingTheHandleFails() {
+        when(janus.attachPlugin(anyLong(), anyString())).thenReturn(Mono.error(new IllegalStateException("no plugin")));
+        JanusSessionPool pool = new JanusSessionPool(janus, keepalives, 0, 600, registry);
+
+        assertThatThrownBy(() -> pool.borrow(null).block(WAIT)).hasMessageContaining("no plugin");
+        verify(janus).destroySession(1L);
+    }
+
+    @Test
+    void replacesAReapedIdlePair() {
+        JanusSessionPool pool = new JanusSessionPool(janus, keepalives, 2, 600, registry);
+        pool.start();
+
+        reaped.tryEmitNext(1L);
+
+        waitUntil(() -> registry.get("janus.pool.discarded").counter().count() == 1.0);
+        verify(keepalives).unregister(1L);
+        verify(janus).destroySession(1L);
+        waitUntil(() -> idle() == 2);
+    }
+
+    @Test
+    void dropsThePairsOfANodeThatWentDown() {
+        when(janus.isUp("b")).thenReturn(true, true, false);
+        JanusSessionPool pool = new JanusSessionPool(janus, keepalives, 2, 600, registry);
+        pool.start();
+        verify(janus).createSessionOn("b");
+
+        nodeFailures.tryEmitNext("b");
+
+        waitUntil(() -> registry.get("janus.pool.discarded").counter().count() == 1.0);
+        waitUntil(() -> idle() == 2);
+        // The replacement goes to the node that is still up.
+        verify(janus, times(2)).createSessionOn("a");
+    }
+
+    @Test
+    void shutdownDestroysIdlePairs() {
+        JanusSessionPool pool = new JanusSessionPool(janus, keepalives, 2, 600, registry);
+        pool.start();
+
+        pool.shutdown();
+
+        assertThat(idle()).isZero();
+        verify(janus).destroySession(1L);
+        verify(janus).destroySession(2L);
+        verify(keepalives).unregister(1L);
+        verify(keepalives).unregister(2L);
+    }
+
+    private double idle() {
+        return registry.get("janus.pool.idle").gauge().value();
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + WAIT.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JanusTrickleBatcherTest {
+
+    private final List<List<String>> sent = new CopyOnWriteArrayList<>();
+    private final List<Sinks.Empty<Void>> replies = new ArrayList<>();
+    private JanusClient janus;
+
+    @BeforeEach
+    void setUp() {
+        janus = mock(JanusClient.class);
+        when(janus.sendTrickleCandidates(anyLong(), anyLong(), anyList())).thenAnswer(inv -> {
+            List<TrickleCandidate> batch = inv.getArgument(2);
+            return reply(batch.stream().map(TrickleCandidate::candidate).toList());
+        });
+        when(janus.sendTrickleCompleted(anyLong(), anyLong())).thenAnswer(inv -> reply(List.of("completed")));
+    }
+
+    @Test
+    void candidatesReachJanusInArrivalOrderOneRequestAtATime() {
+        JanusTrickleBatcher batcher = batcher(0, 2);
+
+        batcher.candidate(1, 2, candidate("c1")).subscribe();
+        batcher.candidate(1, 2, candidate("c2")).subscribe();
+        batcher.candidate(1, 2, candidate("c3")).subscribe();
+        batcher.candidate(1, 2, candidate("c4")).subscribe();
+        batcher.completed(1, 2).subscribe();
+        assertThat(sent).containsExactly(List.of("c1"));
+
+        replies.get(0).tryEmitEmpty();
+        assertThat(sent).containsExactly(List.of("c1"), List.of("c2", "c3"));
+
+        replies.get(1).tryEmitEmpty();
+        replies.get(2).tryEmitEmpty();
+        assertThat(sent).containsExactly(List.of("c1"), List.of("c2", "c3"), List.of("c4"), List.of("completed"));
+    }
+
+    @Test
+    void candidatesWithinTheWindowShareARequest() throws InterruptedException {
+        JanusTrickleBatcher batcher = batcher(1_000, 16);
+
+        batcher.candidate(1, 2, candidate("c1")).subscribe();
+        batcher.candidate(1, 2, candidate("c2")).subscribe();
+        batcher.candidate(1, 2, candidate("c3")).subscribe();
+        assertThat(sent).isEmpty();
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (sent.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(sent).containsExactly(List.of("c1", "c2", "c3"));
+    }
+
+    @Test
+    void candidateDisposedBeforeItWasSentIsDropped() {
+        JanusTrickleBatcher batcher = batcher(0, 16);
+
+        batcher.candidate(1, 2, candidate("c1")).subscribe();
+        Disposable c2 = batcher.candidate(1, 2, candidate("c2")).subscribe();
+        batcher.candidate(1, 2, candidate("c3")).subscribe();
+        c2.dispose();
+
+        replies.get(0).tryEmitEmpty();
+        assertThat(sent).containsExactly(List.of("c1"), List.of("c3"));
+    }
+
+    @Test
+    void eachCandidateCompletesWithTheReplyToItsRequest() {
+        JanusTrickleBatcher batcher = batcher(0, 16);
+        List<String> outcomes = new ArrayList<>();
+
+        batcher.candidate(1, 2, candidate("c1")).subscribe(null, e -> outcomes.add("c1 failed"),
+                () -> outcomes.add("c1 ok"));
+        batcher.candidate(1, 2, candidate("c2")).subscribe(null, e -> outcomes.add("c2 failed"),
+                () -> outcomes.add("c2 ok"));
+
+        replies.get(0).tryEmitEmpty();
+        replies.get(1).tryEmitError(new IllegalStateException("no such handle"));
+        assertThat(outcomes).containsExactly("c1 ok", "c2 failed");
+    }
+
+    @Test
+    void requestThatRepliesSynchronouslyDoesNotStall() {
+        doAnswer(inv -> {
+            List<TrickleCandidate> batch = inv.getArgument(2);
+            sent.add(batch.stream().map(TrickleCandidate::candidate).toList());
+            return Mono.empty();
+        }).when(janus).sendTrickleCandidates(anyLong(), anyLong(), anyList());
+        JanusTrickleBatcher batcher = batcher(0, 16);
+
+        for (int i = 1; i <= 3; i++) {
+            batcher.candidate(1, 2, candidate("c" + i)).block();
+        }
+        assertThat(sent).containsExactly(List.of("c1"), List.of("c2"), List.of("c3"));
+    }
+
+    private Mono<Void> reply(List<String> batch) {
+        sent.add(batch);
+        Sinks.Empty<Void> reply = Sinks.empty();
+        replies.add(reply);
+        return reply.asMono();
+    }
+
+    private JanusTrickleBatcher batcher(long windowMs, int maxBatch) {
+        return new JanusTrickleBatcher(janus, windowMs, maxBatch, new SimpleMeterRegistry());
+    }
+
+    private static TrickleCandidate candidate(String name) {
+        return new TrickleCandidate(name, "0", 0);
+    }
+}
@@ -0,0 +1,148 @@
+package com.ourshop.streaming.webrtc.janus;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.WebsocketServerSpec;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JanusWebSocketTransportTest {
+
+    private static final Duration WAIT = Duration.ofSeconds(5);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    /** How the fake Janus answers each request; the sink goes to the client, completing it hangs up. */
+    private volatile BiConsumer<JsonNode, Sinks.Many<String>> janus;
+    private DisposableServer server;
+    private JanusWebSocketTransport transport;
+
+    @BeforeEach
+    void setUp() {
+        server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.ws("/", (in, out) -> {
+                    Sinks.Many<String> toClient = Sinks.many().unicast().onBackpressureBuffer();
+                    Mono<Void> receive = in.receive().asString()
+                            .doOnNext(text -> janus.accept(mapper.readTree(text), toClient))
+                            .then();
+                    return Mono.firstWithSignal(receive, out.sendString(toClient.asFlux()).then());
+                }, WebsocketServerSpec.builder().protocols("janus-protocol").build()))
+                .bindNow();
+        transport = new JanusWebSocketTransport(URI.create("ws://localhost:" + server.port() + "/"), 1, mapper);
+    }
+
+    @AfterEach
+    void tearDown() {
+        transport.close();
+        server.disposeNow();
+    }
+
+    @Test
+    void matchesRepliesToRequestsByTransaction() {
+        Map<String, JsonNode> held = new ConcurrentHashMap<>();
+        janus = (request, toClient) -> {
+            held.put(request.path("transaction").asString(), request);
+            if (held.size() == 2) {
+                // Answer in the opposite order.
+                toClient.tryEmitNext(success("b", 22));
+                toClient.tryEmitNext(success("a", 11));
+            }
+        };
+
+        Mono<JanusMessage> a = transport.send(request("create", "a", null), null);
+        Mono<JanusMessage> b = transport.send(request("create", "b", null), null);
+        List<JanusMessage> replies = Mono.zip(a, b, List::of).block(WAIT);
+
+        assertThat(replies).extracting(JanusMessage::transaction).containsExactly("a", "b");
+        assertThat(replies).extracting(JanusMessage::dataId).containsExactly(11L, 22L);
+    }
+
+    @Test
+    void anAckCompletesTheRequestAndTheEventGoesToTheSessionQueue() {
+        janus = (request, toClient) -> {
+            String tx = request.path("transaction").asString();
+            toClient.tryEmitNext("{\"janus\":\"ack\",\"session_id\":7,\"transaction\":\"" + tx + "\"}");
+            toClient.tryEmitNext("{\"janus\":\"event\",\"session_id\":7,\"sender\":8,\"transaction\":\"" + tx
+                    + "\",\"plugindata\":{\"plugin\":\"janus.plugin.videoroom\",\"data\":{\"videoroom\":\"event\"}},"
+                    + "\"jsep\":{\"type\":\"answer\",\"sdp\":\"v=0\"}}");
+        };
+
+        JanusMessage ack = transport.send(request("message", "m1", 7L), 7L).block(WAIT);
+        JanusMessage event = transport.nextEvent(7, WAIT).block(WAIT);
+
+        assertThat(ack.is("ack")).isTrue();
+        assertThat(event.is("event")).isTrue();
+        assertThat(event.senderOrZero()).isEqualTo(8);
+        assertThat(event.sdp()).isEqualTo("v=0");
+    }
+
+    @Test
+    void nextEventReturnsAKeepaliveWhenNothingArrives() {
+        janus = (request, toClient) -> {
+        };
+
+        assertThat(transport.nextEvent(7, Duration.ofMillis(50)).block(WAIT).is("keepalive")).isTrue();
+    }
+
+    @Test
+    void aDroppedConnectionFailsEveryPendingRequest() {
+        AtomicReference<Sinks.Many<String>> connection = new AtomicReference<>();
+        janus = (request, toClient) -> connection.set(toClient);
+
+        Mono<JanusMessage> first = transport.send(request("message", "p1", 7L), 7L).cache();
+        Mono<JanusMessage> second = transport.send(request("message", "p2", 7L), 7L).cache();
+        first.subscribe(reply -> {
+        }, e -> {
+        });
+        second.subscribe(reply -> {
+        }, e -> {
+        });
+        waitUntil(() -> transport.pendingRequests() == 2 && connection.get() != null);
+        connection.get().tryEmitComplete();
+
+        assertThatThrownBy(() -> first.block(WAIT)).hasMessageContaining("Janus WebSocket closed");
+        assertThatThrownBy(() -> second.block(WAIT)).hasMessageContaining("Janus WebSocket closed");
+        // The sinks are disposed (and unregistered) just after their subscribers saw the error.
+        waitUntil(() -> transport.pendingRequests() == 0);
+    }
+
+    private ObjectNode request(String verb, String transaction, Long sessionId) {
+        ObjectNode body = mapper.createObjectNode();
+        body.put("janus", verb);
+        body.put("transaction", transaction);
+        if (sessionId != null) {
+            body.put("session_id", sessionId);
+        }
+        return body;
+    }
+
+    private static String success(String transaction, long id) {
+        return "{\"janus\":\"success\",\"transaction\":\"" + transaction + "\",\"data\":{\"id\":" + id + "}}";
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + WAIT.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.onSpinWait();
+        }
+    }
+}
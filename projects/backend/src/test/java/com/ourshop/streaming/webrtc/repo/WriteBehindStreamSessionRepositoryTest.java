@@ -0,0 +1,214 @@
+package com.ourshop.streaming.webrtc.repo;
+
+import com.ourshop.streaming.webrtc.model.StreamSession;
+import com.ourshop.streaming.webrtc.model.StreamSessionRole;
+import com.ourshop.streaming.webrtc.model.StreamSessionStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class WriteBehindStreamSessionRepositoryTest {
+
+    private static final UUID STREAM = UUID.fromString("00000000-0000-0000-0000-0000000000aa");
+    private static final Set<StreamSessionStatus> ACTIVE = EnumSet.of(StreamSessionStatus.CREATED,
+            StreamSessionStatus.NEGOTIATING, StreamSessionStatus.CONNECTED);
+
+    private final R2dbcStreamSessionRepository delegate = mock(R2dbcStreamSessionRepository.class);
+    /** Database writes in the order they were executed (subscribed), not merely assembled. */
+    private final List<String> executed = new CopyOnWriteArrayList<>();
+    /** When set, the next saveAll does not complete until it is emitted. */
+    private volatile Sinks.Empty<Void> blockNextSaveAll;
+
+    @BeforeEach
+    void setUp() {
+        when(delegate.saveAll(anyList())).thenAnswer(inv -> Mono.defer(() -> {
+            List<StreamSession> rows = inv.getArgument(0);
+            executed.add("saveAll " + rows.stream().map(StreamSession::status).toList());
+            Sinks.Empty<Void> gate = blockNextSaveAll;
+            blockNextSaveAll = null;
+            return gate != null ? gate.asMono() : Mono.<Void>empty();
+        }));
+        when(delegate.transitionAll(anyList(), anySet())).thenAnswer(inv ->
+                Mono.just((long) inv.<List<?>>getArgument(0).size()));
+        when(delegate.transition(any(), anySet())).thenAnswer(inv -> Mono.fromCallable(() -> {
+            executed.add("transition " + inv.<StreamSession>getArgument(0).status());
+            return true;
+        }));
+        when(delegate.save(any())).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+        when(delegate.findById(any())).thenReturn(Mono.empty());
+        when(delegate.findByStreamId(any())).thenReturn(Flux.empty());
+    }
+
+    @Test
+    void intermediateStatesOfASessionCoalesceIntoOneWrite() {
+        WriteBehindStreamSessionRepository repo = writeBehind();
+        StreamSession created = session(UUID.randomUUID(), StreamSessionStatus.CREATED);
+        StreamSession negotiating = with(created, StreamSessionStatus.NEGOTIATING);
+
+        repo.save(created).block();
+        assertThat(repo.transition(negotiating, Set.of(StreamSessionStatus.CREATED)).block()).isTrue();
+        verifyNoInteractions(delegate);
+        assertThat(repo.pendingCount()).isEqualTo(1);
+
+        repo.findById(created.id()).block();
+        verify(delegate, times(1)).saveAll(List.of(negotiating));
+        verify(delegate, never()).transitionAll(anyList(), anySet());
+        assertThat(repo.pendingCount()).isZero();
+    }
+
+    @Test
+    void transitionIsCheckedAgainstTheBufferedState() {
+        WriteBehindStreamSessionRepository repo = writeBehind();
+        StreamSession created = session(UUID.randomUUID(), StreamSessionStatus.CREATED);
+
+        repo.save(created).block();
+
+        assertThat(repo.transition(with(created, StreamSessionStatus.NEGOTIATING),
+                Set.of(StreamSessionStatus.CONNECTED)).block()).isFalse();
+        repo.findById(created.id()).block();
+        verify(delegate).saveAll(List.of(created));
+    }
+
+    @Test
+    void transitionWithNothingBufferedIsCheckedByTheDatabase() {
+        WriteBehindStreamSessionRepository repo = writeBehind();
+        StreamSession negotiating = session(UUID.randomUUID(), StreamSessionStatus.NEGOTIATING);
+
+        assertThat(repo.transition(negotiating, ACTIVE).block()).isTrue();
+        repo.findById(negotiating.id()).block();
+
+        verify(delegate).transitionAll(List.of(negotiating), ACTIVE);
+    }
+
+    @Test
+    void terminalTransitionWritesTheBufferedStateFirst() {
+        WriteBehindStreamSessionRepository repo = writeBehind();
+        StreamSession created = session(UUID.randomUUID(), StreamSessionStatus.CREATED);
+        StreamSession connected = with(created, StreamSessionStatus.CONNECTED);
+
+        repo.save(created).block();
+        assertThat(repo.transition(connected, Set.of(StreamSessionStatus.CREATED)).block()).isTrue();
+
+        assertThat(executed).containsExactly("saveAll [CREATED]", "transition CONNECTED");
+    }
+
+    @Test
+    void nextWriteOfASessionWaitsForTheOneInFlight() {
+        Sinks.Empty<Void> firstWrite = Sinks.empty();
+        WriteBehindStreamSessionRepository repo = writeBehind();
+        StreamSession created = session(UUID.randomUUID(), StreamSessionStatus.CREATED);
+        StreamSession negotiating = with(created, StreamSessionStatus.NEGOTIATING);
+        StreamSession closed = with(created, StreamSessionStatus.CLOSED);
+
+        repo.save(created).block();
+        blockNextSaveAll = firstWrite;
+        repo.findById(created.id()).subscribe();
+        repo.save(negotiating).block();
+        Boolean[] applied = new Boolean[1];
+        repo.transition(closed, ACTIVE).subscribe(result -> applied[0] = result);
+
+        assertThat(executed).containsExactly("saveAll [CREATED]");
+
+        firstWrite.tryEmitEmpty();
+
+        assertThat(executed).containsExactly("saveAll [CREATED]", "saveAll [NEGOTIATING]", "transition CLOSED");
+        assertThat(applied[0]).isTrue();
+    }
+
+    @Test
+    void failedWriteStaysBufferedForTheNextDrain() {
+        when(delegate.saveAll(anyList())).thenReturn(Mono.error(new IllegalStateException("db down")),
+                Mono.empty());
+        WriteBehindStreamSessionRepository repo = writeBehind();
+        StreamSession created = session(UUID.randomUUID(), StreamSessionStatus.CREATED);
+
+        repo.save(created).block();
+        assertThatThrownBy(() -> repo.findById(created.id()).block()).hasMessageContaining("db down");
+        assertThat(repo.pendingCount()).isEqualTo(1);
+
+        repo.findById(created.id()).block();
+        verify(delegate, times(2)).saveAll(List.of(created));
+        assertThat(repo.pendingCount()).isZero();
+    }
+
+    @Test
+    void readsOnlyDrainTheSessionsTheyCouldReturn() {
+        WriteBehindStreamSessionRepository repo = writeBehind();
+        StreamSession mine = session(UUID.randomUUID(), StreamSessionStatus.CREATED);
+        StreamSession other = new StreamSession(UUID.randomUUID(), UUID.randomUUID(), StreamSessionRole.PUBLISHER,
+                StreamSessionStatus.CREATED, Instant.EPOCH, null, null, 1L, 2L, 3L, null, "n1", null);
+
+        repo.save(mine).block();
+        repo.save(other).block();
+        repo.findByStreamId(STREAM).collectList().block();
+
+        verify(delegate).saveAll(List.of(mine));
+        verify(delegate, never()).saveAll(List.of(other));
+        assertThat(repo.pendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shutdownFlushesEverythingBuffered() {
+        WriteBehindStreamSessionRepository repo = writeBehind();
+        StreamSession first = session(UUID.randomUUID(), StreamSessionStatus.CREATED);
+        StreamSession second = session(UUID.randomUUID(), StreamSessionStatus.NEGOTIATING);
+
+        repo.save(first).block();
+        repo.save(second).block();
+        repo.shutdown();
+
+        verify(delegate).saveAll(List.of(first));
+        verify(delegate).saveAll(List.of(second));
+        assertThat(repo.pendingCount()).isZero();
+    }
+
+    @Test
+    void disabledWritesGoStraightThrough() {
+        WriteBehindStreamSessionRepository repo = new WriteBehindStreamSessionRepository(delegate, false, 50, 200,
+                new SimpleMeterRegistry());
+        StreamSession created = session(UUID.randomUUID(), StreamSessionStatus.CREATED);
+
+        repo.save(created).block();
+
+        verify(delegate).save(created);
+        verify(delegate, never()).saveAll(anyList());
+    }
+
+    /** The periodic flush is pushed far out so only drains write, and the tests stay deterministic. */
+    private WriteBehindStreamSessionRepository writeBehind() {
+        return new WriteBehindStreamSessionRepository(delegate, true, 3_600_000, 200, new SimpleMeterRegistry());
+    }
+
+    private static StreamSession session(UUID id, StreamSessionStatus status) {
+        return new StreamSession(id, STREAM, StreamSessionRole.PUBLISHER, status, Instant.EPOCH, null, null, 1L, 2L,
+                3L, null, "n1", null);
+    }
+
+    private static StreamSession with(StreamSession session, StreamSessionStatus status) {
+        return new StreamSession(session.id(), session.streamId(), session.role(), status, session.createdAt(),
+                session.connectedAt(), session.closedAt(), session.janusSessionId(), session.janusHandleId(),
+                session.janusRoomId(), session.janusPublisherId(), session.janusNode(), session.lastError());
+    }
+}
@@ -0,0 +1,134 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Fmp4WriterTest {
+
+    private static final byte[] SPS = {0x67, 0x42, (byte) 0xC0, 0x1F};
+    private static final byte[] PPS = {0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+    private static final H264Sps INFO = new H264Sps(66, 0xC0, 31, 1, 8, 8, 1280, 720);
+
+    @Test
+    void initSegmentHasVideoAndOpusTracks() {
+        byte[] init = Fmp4Writer.initSegment(SPS, PPS, INFO, new OpusConfig(1, 0), false);
+
+        assertThat(types(ByteBuffer.wrap(init))).containsExactly("ftyp", "moov");
+        ByteBuffer moov = child(ByteBuffer.wrap(init), "moov");
+        assertThat(types(moov)).containsExactly("mvhd", "trak", "trak", "mvex");
+        assertThat(types(child(moov, "mvex"))).containsExactly("trex", "trex");
+
+        ByteBuffer dOps = find(init, "dOps");
+        assertThat(dOps.get(1)).isEqualTo((byte) 1);            // output channel count
+        assertThat(dOps.getShort(2)).isZero();                  // pre-skip
+        assertThat(dOps.getInt(4)).isEqualTo(Fmp4Writer.AUDIO_TIMESCALE);
+
+        ByteBuffer avcC = find(init, "avcC");
+        assertThat(avcC.get(1)).isEqualTo((byte) 66);
+        assertThat(avcC.get(3)).isEqualTo((byte) 31);
+        assertThat(avcC.getShort(6)).isEqualTo((short) SPS.length);
+    }
+
+    @Test
+    void stereoOpusIsDeclaredInBothBoxes() {
+        byte[] init = Fmp4Writer.initSegment(SPS, PPS, INFO, new OpusConfig(2, 120), false);
+
+        ByteBuffer dOps = find(init, "dOps");
+        assertThat(dOps.get(1)).isEqualTo((byte) 2);
+        assertThat(dOps.getShort(2)).isEqualTo((short) 120);
+        ByteBuffer opus = find(init, "Opus");
+        assertThat(opus.getShort(16)).isEqualTo((short) 2);     // sample entry channel count
+    }
+
+    @Test
+    void videoOnlyInitHasOneTrack() {
+        byte[] init = Fmp4Writer.initSegment(SPS, PPS, INFO, null, true);
+
+        ByteBuffer moov = child(ByteBuffer.wrap(init), "moov");
+        assertThat(types(moov)).containsExactly("mvhd", "trak", "mvex");
+        assertThat(find(init, "dOps")).isNull();
+    }
+
+    @Test
+    void mediaSegmentDataOffsetsPointIntoMdat() {
+        byte[] key = {0, 0, 0, 3, 0x65, 1, 2};
+        byte[] delta = {0, 0, 0, 2, 0x41, 9};
+        byte[] opus = {(byte) 0xFC, 7, 7};
+        List<Fmp4Writer.Sample> video = List.of(
+                new Fmp4Writer.Sample(key, 3000, true), new Fmp4Writer.Sample(delta, 3000, false));
+        List<Fmp4Writer.Sample> audio = List.of(new Fmp4Writer.Sample(opus, 960, true));
+
+        byte[] segment = Fmp4Writer.mediaSegment(7, 90_000, video, 48_000, audio);
+
+        assertThat(types(ByteBuffer.wrap(segment))).containsExactly("moof", "mdat");
+        ByteBuffer moof = child(ByteBuffer.wrap(segment), "moof");
+        assertThat(types(moof)).containsExactly("mfhd", "traf", "traf");
+        assertThat(child(moof, "mfhd").getInt(4)).isEqualTo(7);
+
+        List<ByteBuffer> trafs = children(moof, "traf");
+        ByteBuffer videoTrun = child(trafs.get(0), "trun");
+        ByteBuffer audioTrun = child(trafs.get(1), "trun");
+        assertThat(child(trafs.get(0), "tfdt").getLong(4)).isEqualTo(90_000);
+        assertThat(videoTrun.getInt(4)).isEqualTo(2);           // sample count
+        assertThat(videoTrun.getInt(20) & 0x00010000).isZero(); // first sample is sync
+        assertThat(videoTrun.getInt(32) & 0x00010000).isNotZero();
+
+        int videoOffset = videoTrun.getInt(8);
+        int audioOffset = audioTrun.getInt(8);
+        assertThat(Arrays.copyOfRange(segment, videoOffset, videoOffset + key.length)).isEqualTo(key);
+        assertThat(Arrays.copyOfRange(segment, audioOffset, audioOffset + opus.length)).isEqualTo(opus);
+        assertThat(segment.length).isEqualTo(audioOffset + opus.length);
+    }
+
+    /** Body of the first direct child box of the given type. */
+    private static ByteBuffer child(ByteBuffer parent, String type) {
+        List<ByteBuffer> found = children(parent, type);
+        assertThat(found).as(type).isNotEmpty();
+        return found.get(0);
+    }
+
+    private static List<ByteBuffer> children(ByteBuffer parent, String type) {
+        List<ByteBuffer> result = new ArrayList<>();
+        for (int pos = 0; pos + 8 <= parent.limit(); ) {
+            int size = parent.getInt(pos);
+            if (type(parent, pos).equals(type)) {
+                result.add(parent.slice(pos + 8, size - 8));
+            }
+            pos += size;
+        }
+        return result;
+    }
+
+    private static List<String> types(ByteBuffer parent) {
+        List<String> result = new ArrayList<>();
+        for (int pos = 0; pos + 8 <= parent.limit(); pos += parent.getInt(pos)) {
+            result.add(type(parent, pos));
+        }
+        return result;
+    }
+
+    /** Body of the first box of the given type anywhere in the file (sample entries are not walked). */
+    private static ByteBuffer find(byte[] file, String type) {
+        byte[] fourcc = type.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 4; i + 4 <= file.length; i++) {
+            if (Arrays.equals(file, i, i + 4, fourcc, 0, 4)) {
+                int size = ByteBuffer.wrap(file).getInt(i - 4);
+                return ByteBuffer.wrap(file).slice(i + 4, size - 8);
+            }
+        }
+        return null;
+    }
+
+    private static String type(ByteBuffer buf, int pos) {
+        byte[] type = new byte[4];
+        buf.get(pos + 4, type);
+        return new String(type, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,132 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class H264DepacketizerTest {
+
+    private static final byte[] SPS = {0x67, 0x42, (byte) 0xC0, 0x1F};
+    private static final byte[] PPS = {0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+    private static final byte[] IDR = {0x65, (byte) 0x88, (byte) 0x84, 0x00, 0x33, 0x44, 0x55};
+    private static final byte[] P_FRAME = {0x41, (byte) 0x9A, 0x02, 0x03};
+
+    private final RecordingSink sink = new RecordingSink();
+    private final H264Depacketizer depacketizer = new H264Depacketizer(sink);
+    private int sequence = 1000;
+
+    @Test
+    void stapAUnpacksEveryNalUnit() {
+        push(3000, true, stapA(SPS, PPS, IDR));
+
+        assertThat(sink.units).hasSize(1);
+        AccessUnit au = sink.units.get(0);
+        assertThat(au.keyframe()).isTrue();
+        assertThat(au.timestamp()).isEqualTo(3000);
+        assertThat(au.nalUnits()).containsExactly(SPS, PPS, IDR);
+    }
+
+    @Test
+    void fuAFragmentsAreReassembled() {
+        byte[][] fragments = fuA(IDR, 3);
+        push(3000, false, fragments[0]);
+        push(3000, false, fragments[1]);
+        assertThat(sink.units).isEmpty();
+        push(3000, true, fragments[2]);
+
+        assertThat(sink.units).hasSize(1);
+        assertThat(sink.units.get(0).nalUnits()).containsExactly(IDR);
+        assertThat(sink.units.get(0).keyframe()).isTrue();
+    }
+
+    @Test
+    void deltaFramesBeforeTheFirstIdrAreDropped() {
+        push(0, true, P_FRAME);
+        push(3000, true, stapA(SPS, PPS, IDR));
+        push(6000, true, P_FRAME);
+
+        assertThat(sink.units).extracting(AccessUnit::keyframe).containsExactly(true, false);
+        assertThat(sink.keyframeRequests).isPositive();
+    }
+
+    @Test
+    void lossSkipsToTheNextIdr() {
+        push(3000, true, stapA(SPS, PPS, IDR));
+        int before = sink.keyframeRequests;
+
+        byte[][] fragments = fuA(P_FRAME, 3);
+        push(6000, false, fragments[0]);
+        sequence++; // middle fragment lost
+        push(6000, true, fragments[2]);
+        push(9000, true, P_FRAME);        // intact, but references the damaged frame
+        push(12000, true, stapA(SPS, PPS, IDR));
+        push(15000, true, P_FRAME);
+
+        assertThat(sink.units).extracting(AccessUnit::timestamp).containsExactly(3000L, 12000L, 15000L);
+        assertThat(sink.keyframeRequests - before).isEqualTo(2);
+    }
+
+    @Test
+    void lostMarkerClosesTheFrameOnTimestampChange() {
+        push(3000, false, IDR);   // marker packet never arrives, but nothing is missing in sequence
+        push(6000, true, P_FRAME);
+
+        assertThat(sink.units).extracting(AccessUnit::timestamp).containsExactly(3000L, 6000L);
+    }
+
+    private void push(long timestamp, boolean marker, byte[] payload) {
+        ByteBuffer buf = ByteBuffer.allocate(12 + payload.length);
+        buf.put((byte) 0x80).put((byte) ((marker ? 0x80 : 0) | 96)).putShort((short) sequence++)
+                .putInt((int) timestamp).putInt(0x1234).put(payload);
+        depacketizer.push(RtpPacket.parse(buf.array(), buf.capacity()));
+    }
+
+    private static byte[] stapA(byte[]... nals) {
+        int size = 1;
+        for (byte[] nal : nals) {
+            size += 2 + nal.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size).put((byte) 24);
+        for (byte[] nal : nals) {
+            buf.putShort((short) nal.length).put(nal);
+        }
+        return buf.array();
+    }
+
+    private static byte[][] fuA(byte[] nal, int count) {
+        int indicator = (nal[0] & 0xE0) | 28;
+        int type = nal[0] & 0x1F;
+        int body = nal.length - 1;
+        byte[][] fragments = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            int from = 1 + body * i / count;
+            int to = 1 + body * (i + 1) / count;
+            int header = type | (i == 0 ? 0x80 : 0) | (i == count - 1 ? 0x40 : 0);
+            fragments[i] = ByteBuffer.allocate(2 + to - from)
+                    .put((byte) indicator).put((byte) header).put(nal, from, to - from).array();
+        }
+        return fragments;
+    }
+
+    private record AccessUnit(long timestamp, List<byte[]> nalUnits, boolean keyframe) {
+    }
+
+    private static final class RecordingSink implements H264Depacketizer.Sink {
+        private final List<AccessUnit> units = new ArrayList<>();
+        private int keyframeRequests;
+
+        @Override
+        public void onAccessUnit(long timestamp, List<byte[]> nalUnits, boolean keyframe) {
+            units.add(new AccessUnit(timestamp, nalUnits, keyframe));
+        }
+
+        @Override
+        public void onKeyframeNeeded() {
+            keyframeRequests++;
+        }
+    }
+}
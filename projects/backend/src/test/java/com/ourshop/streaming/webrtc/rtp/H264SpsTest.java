@@ -0,0 +1,148 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class H264SpsTest {
+
+    @Test
+    void constrainedBaseline720p() {
+        H264Sps sps = H264Sps.parse(baselineSps(80, 45, 0));
+
+        assertThat(sps.profileIdc()).isEqualTo(66);
+        assertThat(sps.levelIdc()).isEqualTo(31);
+        assertThat(sps.width()).isEqualTo(1280);
+        assertThat(sps.height()).isEqualTo(720);
+        assertThat(sps.chromaFormatIdc()).isEqualTo(1);
+        assertThat(sps.codecString()).isEqualTo("avc1.42c01f");
+    }
+
+    @Test
+    void high1080pWithCroppingAndChromaInfo() {
+        BitWriter w = header(100, 0x00, 40);
+        w.ue(1).ue(0).ue(0).bit(0).bit(0); // chroma 4:2:0, 8-bit, no bypass, no scaling matrix
+        w.ue(0).ue(0).ue(4);               // frame_num bits, poc type 0, poc lsb bits
+        w.ue(1).bit(0);                    // max_num_ref_frames, gaps
+        w.ue(119).ue(67);                  // 120 x 68 macroblocks: 1920 x 1088
+        w.bit(1).bit(1);                   // frame_mbs_only, direct_8x8
+        w.bit(1).ue(0).ue(0).ue(0).ue(4);  // crop 8 luma rows at the bottom
+        w.bit(0).trailing();
+
+        H264Sps sps = H264Sps.parse(escape(w.bytes()));
+
+        assertThat(sps.width()).isEqualTo(1920);
+        assertThat(sps.height()).isEqualTo(1080);
+        assertThat(sps.bitDepthLuma()).isEqualTo(8);
+        assertThat(sps.bitDepthChroma()).isEqualTo(8);
+        assertThat(H264Sps.hasChromaInfo(sps.profileIdc())).isTrue();
+    }
+
+    @Test
+    void emulationPreventionBytesAreRemoved() {
+        // Synthetic all-zero profile, constraint and level bytes: 00 00 00 must be escaped to 00 00 03 00.
+        BitWriter w = new BitWriter().bits(0x67, 8).bits(0, 8).bits(0, 8).bits(0, 8).ue(0);
+        baselineTail(w, 40, 30, 0);
+        byte[] escaped = escape(w.bytes());
+        assertThat(escaped.length).isGreaterThan(w.bytes().length);
+
+        H264Sps sps = H264Sps.parse(escaped);
+
+        assertThat(sps.profileIdc()).isZero();
+        assertThat(sps.levelIdc()).isZero();
+        assertThat(sps.width()).isEqualTo(640);
+        assertThat(sps.height()).isEqualTo(480);
+    }
+
+    @Test
+    void truncatedSpsIsRejected() {
+        byte[] sps = baselineSps(80, 45, 0);
+        byte[] truncated = Arrays.copyOf(sps, 5);
+
+        assertThatThrownBy(() -> H264Sps.parse(truncated)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static byte[] baselineSps(int widthMbs, int heightMbs, int cropBottom) {
+        BitWriter w = header(66, 0xC0, 31);
+        baselineTail(w, widthMbs, heightMbs, cropBottom);
+        return escape(w.bytes());
+    }
+
+    private static BitWriter header(int profile, int constraints, int level) {
+        return new BitWriter().bits(0x67, 8).bits(profile, 8).bits(constraints, 8).bits(level, 8).ue(0);
+    }
+
+    private static void baselineTail(BitWriter w, int widthMbs, int heightMbs, int cropBottom) {
+        w.ue(0).ue(2);                          // frame_num bits, poc type 2
+        w.ue(1).bit(0);                         // max_num_ref_frames, gaps
+        w.ue(widthMbs - 1).ue(heightMbs - 1);
+        w.bit(1).bit(1);                        // frame_mbs_only, direct_8x8
+        if (cropBottom > 0) {
+            w.bit(1).ue(0).ue(0).ue(0).ue(cropBottom);
+        } else {
+            w.bit(0);
+        }
+        w.bit(0).trailing();                    // no VUI
+    }
+
+    /** Inserts emulation prevention bytes (00 00 0x -> 00 00 03 0x). */
+    private static byte[] escape(byte[] rbsp) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int zeros = 0;
+        for (byte b : rbsp) {
+            if (zeros >= 2 && (b & 0xFF) <= 3) {
+                out.write(3);
+                zeros = 0;
+            }
+            out.write(b);
+            zeros = b == 0 ? zeros + 1 : 0;
+        }
+        return out.toByteArray();
+    }
+
+    private static final class BitWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int current;
+        private int count;
+
+        BitWriter bit(int value) {
+            current = (current << 1) | (value & 1);
+            if (++count == 8) {
+                out.write(current);
+                current = 0;
+                count = 0;
+            }
+            return this;
+        }
+
+        BitWriter bits(int value, int n) {
+            for (int i = n - 1; i >= 0; i--) {
+                bit(value >>> i);
+            }
+            return this;
+        }
+
+        BitWriter ue(int value) {
+            int code = value + 1;
+            int length = 32 - Integer.numberOfLeadingZeros(code);
+            bits(0, length - 1);
+            return bits(code, length);
+        }
+
+        BitWriter trailing() {
+            bit(1);
+            while (count != 0) {
+                bit(0);
+            }
+            return this;
+        }
+
+        byte[] bytes() {
+            return out.toByteArray();
+        }
+    }
+}
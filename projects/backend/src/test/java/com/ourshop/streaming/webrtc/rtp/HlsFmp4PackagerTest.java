@@ -0,0 +1,83 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HlsFmp4PackagerTest {
+
+    /** Constrained Baseline 1280x720. */
+    private static final byte[] SPS = {0x67, 0x42, (byte) 0xC0, 0x1F, 0x56, (byte) 0x80, 0x50, 0x05, (byte) 0xB9};
+    private static final byte[] PPS = {0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+    private static final int FRAME_TICKS = 3000; // 30 fps at 90 kHz
+
+    @TempDir
+    Path dir;
+
+    private final AtomicInteger keyframeRequests = new AtomicInteger();
+
+    @Test
+    void cutsOnKeyframesWhileTheyArriveInTime() throws IOException {
+        HlsFmp4Packager packager = packager(6, 16 << 20);
+        for (int frame = 0; frame <= 150; frame++) {
+            feed(packager, frame, frame % 60 == 0, 100); // IDR every 2 s
+        }
+
+        assertThat(segments()).containsExactly("seg_00000.m4s", "seg_00001.m4s");
+        assertThat(playlist()).contains("#EXT-X-INDEPENDENT-SEGMENTS");
+        assertThat(keyframeRequests).hasValue(0);
+    }
+
+    @Test
+    void withoutKeyframesSegmentsAreCutAtMaxDuration() throws IOException {
+        HlsFmp4Packager packager = packager(6, 16 << 20);
+        for (int frame = 0; frame <= 400; frame++) {
+            feed(packager, frame, frame == 0, 100);
+        }
+
+        assertThat(segments()).containsExactly("seg_00000.m4s", "seg_00001.m4s");
+        assertThat(playlist()).contains("#EXTINF:6.000,").doesNotContain("#EXT-X-INDEPENDENT-SEGMENTS");
+        assertThat(keyframeRequests.get()).isPositive();
+    }
+
+    @Test
+    void withoutKeyframesSegmentsAreCutAtMaxBytes() throws IOException {
+        HlsFmp4Packager packager = packager(60, 20_000);
+        for (int frame = 0; frame <= 30; frame++) {
+            feed(packager, frame, frame == 0, 1_000);
+        }
+
+        assertThat(segments()).isNotEmpty();
+        assertThat(Files.size(dir.resolve("seg_00000.m4s"))).isLessThan(21_000);
+    }
+
+    private HlsFmp4Packager packager(double maxSegmentSeconds, long maxSegmentBytes) {
+        return new HlsFmp4Packager("s", dir, 2, maxSegmentSeconds, maxSegmentBytes, 6, null, false,
+                keyframeRequests::incrementAndGet);
+    }
+
+    private static void feed(HlsFmp4Packager packager, int frame, boolean keyframe, int size) {
+        byte[] slice = new byte[size];
+        slice[0] = (byte) (keyframe ? 0x65 : 0x41);
+        List<byte[]> nals = keyframe ? List.of(SPS, PPS, slice) : List.of(slice);
+        packager.onAccessUnit((long) frame * FRAME_TICKS, nals, keyframe);
+    }
+
+    private List<String> segments() throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString()).filter(n -> n.endsWith(".m4s")).sorted().toList();
+        }
+    }
+
+    private String playlist() throws IOException {
+        return Files.readString(dir.resolve("index.m3u8"), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,108 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RtpPortAllocatorTest {
+
+    /** Four slots; far from the configured default range. */
+    private static final int MIN_PORT = 47_600;
+    private static final int MAX_PORT = MIN_PORT + 15;
+
+    private final RtpPortAllocator allocator =
+            new RtpPortAllocator(MIN_PORT, MAX_PORT, 1000, new SimpleMeterRegistry());
+
+    @AfterEach
+    void shutdown() {
+        allocator.shutdown();
+    }
+
+    @Test
+    void streamsGetDisjointSlotsOnEvenPorts() {
+        RtpPortLease a = allocator.lease("a");
+        RtpPortLease b = allocator.lease("b");
+
+        assertThat(a.audioPort() % 2).isZero();
+        assertThat(a.videoPort()).isEqualTo(a.audioPort() + 2);
+        assertThat(Math.abs(b.audioPort() - a.audioPort())).isGreaterThanOrEqualTo(4);
+        assertThat(allocator.leased()).isEqualTo(2);
+    }
+
+    @Test
+    void exhaustedRangeIsRefused() {
+        for (int i = 0; i < 4; i++) {
+            allocator.lease("s" + i);
+        }
+
+        assertThatThrownBy(() -> allocator.lease("s4")).isInstanceOf(IllegalStateException.class);
+
+        allocator.release("s0");
+        assertThat(allocator.lease("s4")).isNotNull();
+    }
+
+    @Test
+    void releasedSlotIsNotHandedStraightBack() {
+        RtpPortLease a = allocator.lease("a");
+        allocator.release("a");
+
+        assertThat(allocator.lease("b").audioPort()).isNotEqualTo(a.audioPort());
+    }
+
+    @Test
+    void staleReleaseKeepsTheReplacementLease() {
+        RtpPortLease first = allocator.lease("a");
+        RtpPortLease second = allocator.lease("a");
+
+        assertThat(allocator.release("a", first.audioPort())).isFalse();
+        assertThat(allocator.leased()).isEqualTo(1);
+        assertThat(allocator.release("a", second.audioPort())).isTrue();
+        assertThat(allocator.leased()).isZero();
+    }
+
+    @Test
+    void portsHeldElsewhereAreSkipped() throws IOException {
+        try (DatagramSocket squatter = new DatagramSocket(new InetSocketAddress(MIN_PORT + 1))) {
+            RtpPortLease lease = allocator.lease("a");
+
+            assertThat(lease.audioPort()).isEqualTo(MIN_PORT + 4);
+        }
+    }
+
+    @Test
+    void leaseOfADeadProcessIsReclaimedAfterTheGracePeriod() throws Exception {
+        allocator.lease("a");
+        Process process = new ProcessBuilder("true").start();
+        process.waitFor();
+        allocator.bindProcess("a", process.toHandle());
+
+        allocator.reclaimDead(); // first sighting starts the grace period
+        assertThat(allocator.leased()).isEqualTo(1);
+
+        Thread.sleep(1100);
+        allocator.reclaimDead();
+        assertThat(allocator.leased()).isZero();
+    }
+
+    @Test
+    void rebindingALiveProcessCancelsReclaim() throws Exception {
+        allocator.lease("a");
+        Process dead = new ProcessBuilder("true").start();
+        dead.waitFor();
+        allocator.bindProcess("a", dead.toHandle());
+        allocator.reclaimDead();
+
+        allocator.bindProcess("a", ProcessHandle.current());
+        Thread.sleep(1100);
+        allocator.reclaimDead();
+
+        assertThat(allocator.leased()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,78 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RtpRingBufferTest {
+
+    @Test
+    void roundsCapacityUpToAPowerOfTwoAndDropsWhenFull() {
+        RtpRingBuffer ring = new RtpRingBuffer(5, 16);
+
+        for (int i = 0; i < 8; i++) {
+            assertThat(ring.offer(new byte[] {(byte) i}, 1, false)).isTrue();
+        }
+        assertThat(ring.offer(new byte[] {8}, 1, false)).isFalse();
+        assertThat(drain(ring)).containsExactly("a0", "a1", "a2", "a3", "a4", "a5", "a6", "a7");
+    }
+
+    @Test
+    void dropsDatagramsLargerThanASlot() {
+        RtpRingBuffer ring = new RtpRingBuffer(4, 16);
+
+        assertThat(ring.offer(new byte[17], 17, true)).isFalse();
+        assertThat(ring.isEmpty()).isTrue();
+        assertThat(ring.offer(new byte[16], 16, true)).isTrue();
+        assertThat(ring.isEmpty()).isFalse();
+    }
+
+    @Test
+    void drainsInOrderAndReusesSlotsAcrossWraps() {
+        RtpRingBuffer ring = new RtpRingBuffer(4, 16);
+        List<String> seen = new ArrayList<>();
+
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 3; i++) {
+                int n = round * 3 + i;
+                assertThat(ring.offer(new byte[] {(byte) n, 99}, 1, n % 2 == 0)).isTrue();
+            }
+            seen.addAll(drain(ring));
+            assertThat(ring.isEmpty()).isTrue();
+        }
+
+        assertThat(seen).hasSize(15);
+        for (int n = 0; n < 15; n++) {
+            assertThat(seen.get(n)).isEqualTo((n % 2 == 0 ? "v" : "a") + n);
+        }
+    }
+
+    @Test
+    void aFailingConsumerStillAdvancesPastThePacket() {
+        RtpRingBuffer ring = new RtpRingBuffer(4, 16);
+        ring.offer(new byte[] {1}, 1, false);
+        ring.offer(new byte[] {2}, 1, false);
+
+        try {
+            ring.drain((buffer, length, video) -> {
+                throw new IllegalStateException("boom");
+            });
+        } catch (IllegalStateException expected) {
+            // the receiver logs and reschedules
+        }
+
+        assertThat(drain(ring)).containsExactly("a2");
+    }
+
+    private static List<String> drain(RtpRingBuffer ring) {
+        List<String> out = new ArrayList<>();
+        ring.drain((buffer, length, video) -> {
+            assertThat(length).isEqualTo(1);
+            out.add((video ? "v" : "a") + buffer[0]);
+        });
+        return out;
+    }
+}
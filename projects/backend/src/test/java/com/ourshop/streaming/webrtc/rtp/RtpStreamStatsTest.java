@@ -0,0 +1,109 @@
+package com.ourshop.streaming.webrtc.rtp;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class RtpStreamStatsTest {
+
+    private static final int CLOCK_RATE = 90_000;
+    /** 20 ms in nanoseconds and in 90 kHz RTP units. */
+    private static final long TICK_NANOS = 20_000_000L;
+    private static final long TICK_RTP = 1_800;
+
+    @Test
+    void countsLossFromTheHighestSequenceSeen() {
+        RtpStreamStats stats = new RtpStreamStats(CLOCK_RATE);
+        for (int seq : new int[] {100, 101, 104, 105}) {
+            packet(stats, seq, seq - 100);
+        }
+
+        assertThat(stats.received()).isEqualTo(4);
+        assertThat(stats.bytes()).isEqualTo(4 * 1_000);
+        assertThat(stats.lost()).isEqualTo(2);
+    }
+
+    @Test
+    void aLatePacketFillsTheGapAndCountsAsReordered() {
+        RtpStreamStats stats = new RtpStreamStats(CLOCK_RATE);
+        packet(stats, 10, 0);
+        packet(stats, 12, 2);
+        packet(stats, 11, 1);
+
+        assertThat(stats.reordered()).isEqualTo(1);
+        assertThat(stats.lost()).isZero();
+    }
+
+    @Test
+    void sequenceWrapAddsACycleInsteadOfCountingLoss() {
+        RtpStreamStats stats = new RtpStreamStats(CLOCK_RATE);
+        int[] sequences = {65_533, 65_534, 65_535, 0, 1, 3};
+        for (int i = 0; i < sequences.length; i++) {
+            packet(stats, sequences[i], i);
+        }
+
+        assertThat(stats.reordered()).isZero();
+        // 65533..3 across the wrap is 7 packets; 2 never arrived.
+        assertThat(stats.lost()).isEqualTo(1);
+        assertThat(stats.received()).isEqualTo(6);
+    }
+
+    @Test
+    void neverReportsNegativeLossForDuplicates() {
+        RtpStreamStats stats = new RtpStreamStats(CLOCK_RATE);
+        packet(stats, 7, 0);
+        packet(stats, 7, 0);
+        packet(stats, 8, 1);
+
+        assertThat(stats.lost()).isZero();
+    }
+
+    @Test
+    void jitterIsZeroForEvenlyPacedPackets() {
+        RtpStreamStats stats = new RtpStreamStats(CLOCK_RATE);
+        for (int i = 0; i < 50; i++) {
+            packet(stats, i, i);
+        }
+
+        assertThat(stats.jitterMillis()).isCloseTo(0.0, within(0.01));
+    }
+
+    @Test
+    void jitterConvergesOnAConstantArrivalDeviation() {
+        RtpStreamStats stats = new RtpStreamStats(CLOCK_RATE);
+        // Packets alternately arrive 5 ms early and late: |D| is 10 ms for every pair.
+        for (int i = 0; i < 400; i++) {
+            long offset = (i % 2 == 0 ? 5_000_000L : -5_000_000L);
+            stats.onPacket(i, i * TICK_RTP, i * TICK_NANOS + offset, 1_000);
+        }
+
+        assertThat(stats.jitterMillis()).isCloseTo(10.0, within(0.1));
+    }
+
+    @Test
+    void timestampWrapDoesNotSpikeJitter() {
+        RtpStreamStats stats = new RtpStreamStats(CLOCK_RATE);
+        long start = 0x1_0000_0000L - 10 * TICK_RTP;
+        for (int i = 0; i < 20; i++) {
+            long timestamp = (start + i * TICK_RTP) & 0xFFFF_FFFFL;
+            stats.onPacket(i, timestamp, i * TICK_NANOS, 1_000);
+        }
+
+        assertThat(stats.jitterMillis()).isCloseTo(0.0, within(0.01));
+    }
+
+    @Test
+    void dropsAreCountedSeparatelyFromNetworkLoss() {
+        RtpStreamStats stats = new RtpStreamStats(CLOCK_RATE);
+        packet(stats, 1, 0);
+        stats.onDropped();
+
+        assertThat(stats.dropped()).isEqualTo(1);
+        assertThat(stats.lost()).isZero();
+    }
+
+    private static void packet(RtpStreamStats stats, int sequence, int tick) {
+        stats.onPacket(sequence, tick * TICK_RTP, tick * TICK_NANOS, 1_000);
+    }
+}
@@ -0,0 +1,132 @@
+package com.ourshop.streaming.webrtc.service;
+
+import com.ourshop.streaming.webrtc.dto.WebRtcEventResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebRtcEventHubTest {
+
+    private static final UUID STREAM = UUID.fromString("00000000-0000-0000-0000-0000000000aa");
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final WebRtcEventHub hub = new WebRtcEventHub(registry);
+
+    @Test
+    void aLateSubscriberGetsTheNegotiationSoFarThenLiveEvents() {
+        hub.restart(STREAM, event("NEGOTIATING"));
+        hub.publish(STREAM, event("c1"));
+
+        List<String> seen = new CopyOnWriteArrayList<>();
+        Disposable subscription = hub.subscribe(STREAM).subscribe(e -> seen.add(e.status()));
+        hub.publish(STREAM, event("c2"));
+
+        assertThat(seen).containsExactly("NEGOTIATING", "c1", "c2");
+        assertThat(registry.get("webrtc.events.subscribers").gauge().value()).isEqualTo(1.0);
+        subscription.dispose();
+        assertThat(registry.get("webrtc.events.subscribers").gauge().value()).isZero();
+    }
+
+    @Test
+    void subscribingWhilePublishingNeitherMissesNorDoublesAnEvent() throws InterruptedException {
+        int total = 20_000;
+        Thread publisher = new Thread(() -> {
+            for (int i = 0; i < total; i++) {
+                hub.publish(STREAM, event(Integer.toString(i)));
+            }
+        });
+        List<Integer> seen = new CopyOnWriteArrayList<>();
+        publisher.start();
+        while (hub.channels() == 0) {
+            Thread.onSpinWait();
+        }
+        Disposable subscription = hub.subscribe(STREAM).subscribe(e -> seen.add(Integer.parseInt(e.status())));
+        publisher.join();
+
+        // A contiguous run ending at the last event: the replayed history joins the live events seamlessly.
+        assertThat(seen).isNotEmpty();
+        assertThat(seen.get(seen.size() - 1)).isEqualTo(total - 1);
+        for (int i = 1; i < seen.size(); i++) {
+            assertThat(seen.get(i)).isEqualTo(seen.get(i - 1) + 1);
+        }
+        subscription.dispose();
+    }
+
+    @Test
+    void aRestartDropsThePreviousNegotiationsHistory() {
+        hub.restart(STREAM, event("NEGOTIATING"));
+        hub.publish(STREAM, event("old-candidate"));
+        hub.restart(STREAM, event("RENEGOTIATING"));
+
+        List<String> seen = new CopyOnWriteArrayList<>();
+        hub.subscribe(STREAM).subscribe(e -> seen.add(e.status())).dispose();
+
+        assertThat(seen).containsExactly("RENEGOTIATING");
+    }
+
+    @Test
+    void historyIsBounded() {
+        for (int i = 0; i < 100; i++) {
+            hub.publish(STREAM, event(Integer.toString(i)));
+        }
+
+        List<String> seen = new CopyOnWriteArrayList<>();
+        hub.subscribe(STREAM).subscribe(e -> seen.add(e.status())).dispose();
+
+        assertThat(seen).hasSize(64).startsWith("36").endsWith("99");
+    }
+
+    @Test
+    void clearDropsAnIdleChannel() {
+        hub.publish(STREAM, event("CLOSED"));
+        assertThat(hub.channels()).isEqualTo(1);
+
+        hub.clear(STREAM);
+
+        assertThat(hub.channels()).isZero();
+        List<String> seen = new CopyOnWriteArrayList<>();
+        hub.subscribe(STREAM).subscribe(e -> seen.add(e.status())).dispose();
+        assertThat(seen).isEmpty();
+        assertThat(hub.channels()).isZero();
+    }
+
+    @Test
+    void clearKeepsAChannelSomeoneListensOnUntilTheyLeave() {
+        List<String> seen = new CopyOnWriteArrayList<>();
+        Disposable subscription = hub.subscribe(STREAM).subscribe(e -> seen.add(e.status()));
+        hub.publish(STREAM, event("CLOSED"));
+
+        hub.clear(STREAM);
+        hub.publish(STREAM, event("after"));
+
+        assertThat(hub.channels()).isEqualTo(1);
+        assertThat(seen).containsExactly("CLOSED", "after");
+        subscription.dispose();
+        // The last listener leaving drops the channel only if nothing was published since the clear.
+        assertThat(hub.channels()).isEqualTo(1);
+        hub.clear(STREAM);
+        assertThat(hub.channels()).isZero();
+    }
+
+    @Test
+    void theLastListenerLeavingDropsAChannelWithoutHistory() {
+        Disposable first = hub.subscribe(STREAM).subscribe();
+        Disposable second = hub.subscribe(STREAM).subscribe();
+        assertThat(hub.channels()).isEqualTo(1);
+
+        first.dispose();
+        assertThat(hub.channels()).isEqualTo(1);
+        second.dispose();
+        assertThat(hub.channels()).isZero();
+    }
+
+    private static WebRtcEventResponse event(String status) {
+        return new WebRtcEventResponse("state", STREAM, status, null, null, null, null, 0L);
+    }
+}
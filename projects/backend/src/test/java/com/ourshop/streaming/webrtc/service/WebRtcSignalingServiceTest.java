@@ -0,0 +1,136 @@
+package com.ourshop.streaming.webrtc.service;
+
+import com.ourshop.streaming.streams.application.StreamMetaService;
+import com.ourshop.streaming.streams.domain.StreamMeta;
+import com.ourshop.streaming.streams.domain.StreamStatus;
+import com.ourshop.streaming.webrtc.dto.SdpOfferRequest;
+import com.ourshop.streaming.webrtc.hls.FfmpegHlsService;
+import com.ourshop.streaming.webrtc.janus.JanusClient;
+import com.ourshop.streaming.webrtc.janus.JanusEventBus;
+import com.ourshop.streaming.webrtc.janus.JanusKeepaliveScheduler;
+import com.ourshop.streaming.webrtc.janus.JanusSessionPool;
+import com.ourshop.streaming.webrtc.janus.JanusTrickleBatcher;
+import com.ourshop.streaming.webrtc.model.StreamSession;
+import com.ourshop.streaming.webrtc.model.StreamSessionRole;
+import com.ourshop.streaming.webrtc.model.StreamSessionStatus;
+import com.ourshop.streaming.webrtc.repo.StreamSessionRepository;
+import com.ourshop.streaming.webrtc.rtp.RtpPortAllocator;
+import com.ourshop.streaming.webrtc.rtp.RtpReceiver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WebRtcSignalingServiceTest {
+
+    private static final String OFFER = "v=0\r\nm=video 9 UDP/TLS/RTP/SAVPF 96\r\na=sendonly\r\n";
+
+    private final StreamMetaService streams = mock(StreamMetaService.class);
+    private final StreamSessionRepository sessions = mock(StreamSessionRepository.class);
+    private final JanusClient janus = mock(JanusClient.class);
+    private final JanusEventBus janusEvents = mock(JanusEventBus.class);
+    private final JanusSessionPool pool = mock(JanusSessionPool.class);
+    private final JanusKeepaliveScheduler keepalives = mock(JanusKeepaliveScheduler.class);
+    private final Sinks.Many<String> nodeFailures = Sinks.many().multicast().directBestEffort();
+    /** Statuses the service moved sessions to, as "sessionId status". */
+    private final List<String> transitions = new CopyOnWriteArrayList<>();
+
+    private WebRtcSignalingService service;
+
+    @BeforeEach
+    void setUp() {
+        when(janus.nodeFailures()).thenReturn(nodeFailures.asFlux());
+        when(janus.transport()).thenReturn("http");
+        when(janus.publishToRoom(anyLong(), anyLong(), anyLong(), any(), anyString())).thenReturn(Mono.never());
+        when(janus.detachHandle(anyLong(), anyLong())).thenReturn(Mono.empty());
+        when(janus.destroySession(anyLong())).thenReturn(Mono.empty());
+        when(janusEvents.events(anyLong(), anyLong(), any())).thenReturn(Flux.never());
+        when(pool.borrow(anyString())).thenReturn(Mono.never());
+        when(keepalives.reaped()).thenReturn(Flux.never());
+        when(streams.endIfLive(any())).thenReturn(Mono.empty());
+        when(sessions.transition(any(), anySet())).thenAnswer(inv -> Mono.fromCallable(() -> {
+            StreamSession next = inv.getArgument(0);
+            transitions.add(next.id() + " " + next.status());
+            return true;
+        }));
+        when(sessions.findActivePublisherByStreamId(any())).thenReturn(Mono.empty());
+
+        service = new WebRtcSignalingService(streams, sessions, janus, janusEvents, pool,
+                keepalives, mock(JanusTrickleBatcher.class), mock(FfmpegHlsService.class), mock(RtpReceiver.class),
+                mock(RtpPortAllocator.class), mock(WebRtcEventHub.class), new SimpleMeterRegistry(),
+                1234, "", 6_000, 30_000);
+    }
+
+    @Test
+    void failoverOnlyFailsSessionsThisInstanceDrives() {
+        StreamSession ours = session(10L);
+        StreamSession theirs = session(20L);
+        Disposable offer = negotiate(ours);
+        when(sessions.findActiveByJanusNode("n1")).thenReturn(Flux.just(ours, theirs));
+
+        nodeFailures.tryEmitNext("n1");
+
+        assertThat(transitions).containsExactly(ours.id() + " NEGOTIATING", ours.id() + " FAILED");
+        verify(janusEvents).close(10L);
+        verify(janusEvents, never()).close(20L);
+        offer.dispose();
+    }
+
+    @Test
+    void aClosedSessionIsNoLongerOwned() {
+        StreamSession ours = session(10L);
+        Disposable offer = negotiate(ours);
+        service.closePublisher(ours.streamId()).block();
+        when(sessions.findActiveByJanusNode("n1")).thenReturn(Flux.just(ours));
+        assertThat(transitions).containsExactly(ours.id() + " NEGOTIATING", ours.id() + " CLOSED");
+        transitions.clear();
+
+        nodeFailures.tryEmitNext("n1");
+
+        assertThat(transitions).isEmpty();
+        offer.dispose();
+    }
+
+    @Test
+    void ignoresNodeFailuresWhenItOwnsNothing() {
+        when(sessions.findActiveByJanusNode(eq("n1"))).thenReturn(Flux.just(session(20L)));
+
+        nodeFailures.tryEmitNext("n1");
+
+        assertThat(transitions).isEmpty();
+    }
+
+    /** Serves an offer for {@code session} that stays parked on Janus' answer. */
+    private Disposable negotiate(StreamSession session) {
+        when(streams.get(session.streamId())).thenReturn(Mono.just(new StreamMeta(session.streamId(), "key", "t",
+                null, StreamStatus.LIVE, Instant.now(), Instant.now(), null)));
+        when(sessions.findActivePublisherByStreamId(session.streamId())).thenReturn(Mono.just(session));
+        return service.handleOffer(session.streamId(),
+                new SdpOfferRequest(OFFER, "offer", "key", null, null, null, null, null)).subscribe();
+    }
+
+    private static StreamSession session(long janusSessionId) {
+        return new StreamSession(UUID.randomUUID(), UUID.randomUUID(), StreamSessionRole.PUBLISHER,
+                StreamSessionStatus.CREATED, Instant.now(), null, null, janusSessionId, janusSessionId + 1, 1234L,
+                null, "n1", null);
+    }
+}